@@ -0,0 +1,142 @@
+package au.id.deejay.webserver;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * A minimal blocking HTTP/1.1 client which makes requests over a single keep-alive connection, for driving the server
+ * from benchmarks. Response bodies are read and discarded.
+ *
+ * @author David Jessup
+ */
+public class BenchmarkClient implements Closeable {
+
+	private final Socket socket;
+	private final InputStream inputStream;
+	private final OutputStream outputStream;
+	private final byte[] discard = new byte[8192];
+
+	/**
+	 * Opens a new connection to a server on the local machine.
+	 *
+	 * @param port the port the server is listening on
+	 * @throws IOException if the connection cannot be established.
+	 */
+	public BenchmarkClient(int port) throws IOException {
+		socket = new Socket("localhost", port);
+		socket.setTcpNoDelay(true);
+		inputStream = new BufferedInputStream(socket.getInputStream());
+		outputStream = socket.getOutputStream();
+	}
+
+	/**
+	 * Makes a GET request and reads the full response.
+	 *
+	 * @param path the path to request
+	 * @return Returns the status code of the response.
+	 * @throws IOException if there is a problem communicating with the server.
+	 */
+	public int get(String path) throws IOException {
+		outputStream.write(("GET " + path + " HTTP/1.1" + CRLF + "Host: localhost" + CRLF + CRLF).getBytes(StandardCharsets.US_ASCII));
+		outputStream.flush();
+		return readResponse();
+	}
+
+	/**
+	 * Sends raw request data, such as a batch of pipelined requests, without reading the responses.
+	 *
+	 * @param requests the encoded requests
+	 * @throws IOException if the requests cannot be sent.
+	 */
+	public void send(byte[] requests) throws IOException {
+		outputStream.write(requests);
+		outputStream.flush();
+	}
+
+	/**
+	 * Reads a single response from the connection.
+	 *
+	 * @return Returns the status code of the response.
+	 * @throws IOException if there is a problem reading the response.
+	 */
+	public int readResponse() throws IOException {
+		String statusLine = readLine();
+		int status = Integer.parseInt(statusLine.split(" ")[1]);
+
+		long contentLength = 0;
+		boolean chunked = false;
+		String line = readLine();
+		while (!line.isEmpty()) {
+			String header = line.toLowerCase(Locale.ROOT);
+			if (header.startsWith("content-length:")) {
+				contentLength = Long.parseLong(header.substring(15).trim());
+			} else if (header.startsWith("transfer-encoding:") && header.contains("chunked")) {
+				chunked = true;
+			}
+			line = readLine();
+		}
+
+		if (chunked) {
+			skipChunkedBody();
+		} else {
+			skip(contentLength);
+		}
+
+		return status;
+	}
+
+	private void skipChunkedBody() throws IOException {
+		long chunkSize = Long.parseLong(readLine().split(";")[0].trim(), 16);
+		while (chunkSize > 0) {
+			skip(chunkSize);
+			readLine();
+			chunkSize = Long.parseLong(readLine().split(";")[0].trim(), 16);
+		}
+		// Skip any trailers up to the terminating empty line
+		String line = readLine();
+		while (!line.isEmpty()) {
+			line = readLine();
+		}
+	}
+
+	private void skip(long length) throws IOException {
+		long remaining = length;
+		while (remaining > 0) {
+			int read = inputStream.read(discard, 0, (int) Math.min(discard.length, remaining));
+			if (read < 0) {
+				throw new EOFException("Connection closed mid-response");
+			}
+			remaining -= read;
+		}
+	}
+
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b = inputStream.read();
+		while (b != '\n') {
+			if (b < 0) {
+				throw new EOFException("Connection closed mid-response");
+			}
+			if (b != '\r') {
+				line.write(b);
+			}
+			b = inputStream.read();
+		}
+		return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
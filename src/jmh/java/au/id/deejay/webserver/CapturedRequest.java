@@ -0,0 +1,109 @@
+package au.id.deejay.webserver;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.io.RequestParser;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A request head captured from a browser (or curl) loading the bundled docroot, for feeding realistic requests to
+ * benchmarks. The captures are kept in <code>src/jmh/resources/requests</code>, one request head per file with LF line
+ * endings, and are named by the {@link #NAMES} benchmarks take as a <code>@Param</code>.
+ *
+ * @author David Jessup
+ */
+public final class CapturedRequest {
+
+	/**
+	 * The names of the captured requests: a page, a stylesheet and an image requested by Firefox, Chrome and Safari,
+	 * and a bare request from curl.
+	 */
+	public static final List<String> NAMES = Arrays.asList("firefox-page", "chrome-stylesheet", "safari-image", "curl");
+
+	private final String head;
+
+	private CapturedRequest(String head) {
+		this.head = head;
+	}
+
+	/**
+	 * Loads a captured request.
+	 *
+	 * @param name the name of the capture
+	 * @return Returns the captured request.
+	 * @throws UncheckedIOException if there is no such capture.
+	 */
+	public static CapturedRequest load(String name) {
+		try (InputStream stream = CapturedRequest.class.getResourceAsStream("/requests/" + name + ".txt")) {
+			if (stream == null) {
+				throw new IOException("No captured request named " + name);
+			}
+			return new CapturedRequest(IOUtils.toString(stream, UTF_8));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Gets the request head as it is sent over the wire, with CRLF line endings and the empty line which ends it.
+	 *
+	 * @return Returns the encoded request head.
+	 */
+	public byte[] bytes() {
+		StringBuilder encoded = new StringBuilder();
+		for (String line : lines()) {
+			encoded.append(line).append(CRLF);
+		}
+		return encoded.append(CRLF).toString().getBytes(UTF_8);
+	}
+
+	/**
+	 * Gets the request line, e.g. <code>GET / HTTP/1.1</code>.
+	 *
+	 * @return Returns the request line.
+	 */
+	public String requestLine() {
+		return lines().get(0);
+	}
+
+	/**
+	 * Gets the header fields of the request, each split into its name and (untrimmed) value.
+	 *
+	 * @return Returns the name and value of each header field, in the order they were sent.
+	 */
+	public List<String[]> fields() {
+		List<String[]> fields = new ArrayList<>();
+		for (String line : lines().subList(1, lines().size())) {
+			int colon = line.indexOf(':');
+			fields.add(new String[]{line.substring(0, colon), line.substring(colon + 1)});
+		}
+		return fields;
+	}
+
+	/**
+	 * Parses the captured request, the way the server would.
+	 *
+	 * @return Returns the parsed request, without a body.
+	 */
+	public Request parse() {
+		RequestParser parser = new RequestParser();
+		parser.parse(ByteBuffer.wrap(bytes()));
+		return parser.request(new byte[0]);
+	}
+
+	private List<String> lines() {
+		List<String> lines = new ArrayList<>(Arrays.asList(head.split("\n")));
+		lines.removeIf(String::isEmpty);
+		return lines;
+	}
+}
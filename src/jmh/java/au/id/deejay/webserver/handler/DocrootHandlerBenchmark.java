@@ -0,0 +1,59 @@
+package au.id.deejay.webserver.handler;
+
+import au.id.deejay.webserver.CapturedRequest;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.response.FileCache;
+import au.id.deejay.webserver.response.PrecompressedFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DocrootHandler#handle(Request)} providing responses to {@link CapturedRequest captured} browser
+ * requests for the bundled docroot's page, stylesheet and image, with and without a {@link FileCache}. Only the
+ * response is created; its body isn't read.
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@State(Scope.Thread)
+public class DocrootHandlerBenchmark {
+
+	@Param({"firefox-page", "chrome-stylesheet", "safari-image", "curl"})
+	private String capture;
+
+	@Param({"false", "true"})
+	private boolean cached;
+
+	private DocrootHandler handler;
+	private Request request;
+
+	@Setup
+	public void setUp() {
+		FileCache fileCache = cached ? new FileCache(16 * 1024 * 1024, 1024 * 1024) : null;
+		handler = new DocrootHandler(new File("docroot"), Collections.singletonList("index.html"), true, fileCache, new PrecompressedFiles());
+		request = CapturedRequest.load(capture).parse();
+	}
+
+	@Benchmark
+	public Response handle() {
+		return handler.handle(request);
+	}
+}
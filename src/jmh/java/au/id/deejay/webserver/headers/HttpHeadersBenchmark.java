@@ -0,0 +1,72 @@
+package au.id.deejay.webserver.headers;
+
+import au.id.deejay.webserver.CapturedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building, querying and printing {@link HttpHeaders} holding the header fields of {@link CapturedRequest
+ * captured} requests.
+ * <p>
+ * {@link #value(Blackhole)} looks up the fields the server reads for every request (one of which is never sent by
+ * browsers), using the case the server uses, which differs from the case some browsers send.
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@State(Scope.Thread)
+public class HttpHeadersBenchmark {
+
+	private static final String[] LOOKUPS = {"Connection", "Content-length", "Transfer-Encoding", "Accept-Encoding", "If-None-Match", "Range"};
+
+	@Param({"firefox-page", "chrome-stylesheet", "safari-image", "curl"})
+	private String capture;
+
+	private String[][] fields;
+	private HttpHeaders headers;
+
+	@Setup
+	public void setUp() {
+		List<String[]> captured = CapturedRequest.load(capture).fields();
+		fields = captured.toArray(new String[captured.size()][]);
+		headers = add();
+	}
+
+	@Benchmark
+	public HttpHeaders add() {
+		HttpHeaders built = new HttpHeaders();
+		for (String[] field : fields) {
+			built.add(field[0], field[1].trim());
+		}
+		return built;
+	}
+
+	@Benchmark
+	public void value(Blackhole blackhole) {
+		for (String name : LOOKUPS) {
+			blackhole.consume(headers.value(name));
+		}
+	}
+
+	@Benchmark
+	public String print() {
+		return headers.toString();
+	}
+}
@@ -0,0 +1,141 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.CapturedRequest;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeader;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.request.HttpRequest;
+import au.id.deejay.webserver.request.RequestLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the cost of parsing request heads {@link CapturedRequest captured} from browsers. Compare the allocations
+ * per request, reported by the GC profiler as <code>gc.alloc.rate.norm</code>, as well as the throughput.
+ * <p>
+ * {@link #bufferedReader()} reproduces the original line-based parsing, where each request wrapped the stream in a new
+ * {@link BufferedReader} and split every line into strings, as a baseline for the byte-level {@link RequestParser}.
+ * Each benchmark looks up the URI and Connection header, as every request served does.
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@State(Scope.Thread)
+public class RequestParserBenchmark {
+
+	@Param({"firefox-page", "chrome-stylesheet", "safari-image", "curl"})
+	private String capture;
+
+	private static final byte[] EMPTY_BODY = new byte[0];
+
+	private ByteBuffer buffer;
+	private RequestParser parser;
+	private RequestReader reader;
+	private ByteArrayInputStream stream;
+
+	@Setup
+	public void setUp() {
+		byte[] request = CapturedRequest.load(capture).bytes();
+		buffer = ByteBuffer.wrap(request);
+		parser = new RequestParser();
+		reader = new RequestReader(new RepeatingInputStream(request));
+		stream = new ByteArrayInputStream(request);
+	}
+
+	@Benchmark
+	public Object requestParser() {
+		buffer.rewind();
+		parser.parse(buffer);
+		return use(parser.request(EMPTY_BODY));
+	}
+
+	@Benchmark
+	public Object requestReader() throws IOException {
+		return use(reader.readRequest());
+	}
+
+	@Benchmark
+	public Object bufferedReader() throws IOException {
+		stream.reset();
+		BufferedReader inputReader = new BufferedReader(new InputStreamReader(stream, UTF_8));
+
+		RequestLine requestLine = new RequestLine(inputReader.readLine());
+		Headers headers = new HttpHeaders();
+		String line = inputReader.readLine();
+		while (line != null && !"".equals(line)) {
+			headers.add(parseHeaderLine(line));
+			line = inputReader.readLine();
+		}
+
+		return use(new HttpRequest(requestLine, headers, ""));
+	}
+
+	private static Object use(Request request) {
+		List<String> connection = request.headers().values("Connection");
+		return connection != null ? request.uri() : null;
+	}
+
+	private static Header parseHeaderLine(String line) {
+		int splitPos = line.indexOf(':');
+		String name = line.substring(0, splitPos).trim();
+		String[] values = line.substring(splitPos + 1, line.length()).split(",");
+		for (int i = 0; i < values.length; i++) {
+			values[i] = values[i].trim();
+		}
+		return new HttpHeader(name, values);
+	}
+
+	/**
+	 * An endless stream of the same request, as from a client pipelining requests over a keep-alive connection.
+	 */
+	private static class RepeatingInputStream extends InputStream {
+
+		private final byte[] data;
+		private int position;
+
+		RepeatingInputStream(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			int b = data[position];
+			position = (position + 1) % data.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			int count = Math.min(len, data.length - position);
+			System.arraycopy(data, position, b, off, count);
+			position = (position + count) % data.length;
+			return count;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.response.ErrorResponse;
+import au.id.deejay.webserver.response.FileCache;
+import au.id.deejay.webserver.response.HttpResponse;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ResponseWriter#writeResponse(Response)} writing the kinds of response the server sends most, to a
+ * stream which discards them so only the cost of encoding and copying them is measured:
+ * <ul>
+ * <li><code>text</code>: a small generated page with a declared length, such as the server info page</li>
+ * <li><code>chunked</code>: the same page without a declared length, which is sent with the chunked coding</li>
+ * <li><code>error</code>: a pre-encoded error response</li>
+ * <li><code>cached</code>: the docroot's index page from the {@link FileCache}</li>
+ * </ul>
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@State(Scope.Thread)
+public class ResponseWriterBenchmark {
+
+	private static final String PAGE = "<html><head><title>Server Info</title></head><body><h1>Server Info</h1>"
+			+ "<table><tr><td>Port</td><td>8080</td></tr><tr><td>Timeout</td><td>10</td></tr>"
+			+ "<tr><td>Max threads</td><td>20</td></tr><tr><td>Docroot</td><td>./docroot</td></tr></table></body></html>";
+
+	@Param({"text", "chunked", "error", "cached"})
+	private String response;
+
+	private Response toWrite;
+	private ResponseWriter writer;
+
+	@Setup
+	public void setUp() {
+		writer = new ResponseWriter(new NullOutputStream());
+		toWrite = response(response);
+	}
+
+	@Benchmark
+	public long writeResponse() {
+		writer.writeResponse(toWrite);
+		return writer.bytesWritten();
+	}
+
+	private static Response response(String kind) {
+		switch (kind) {
+			case "text":
+				return page();
+			case "chunked":
+				Response chunked = page();
+				chunked.headers().remove("Content-length");
+				return chunked;
+			case "error":
+				return ErrorResponse.NOT_FOUND_404;
+			case "cached":
+				return new FileCache(1024 * 1024, 1024 * 1024).get(new File("docroot/index.html"), HttpVersion.HTTP_1_1);
+			default:
+				throw new IllegalArgumentException("Unknown response: " + kind);
+		}
+	}
+
+	private static Response page() {
+		Response page = new HttpResponse(HttpStatus.OK_200, PAGE, HttpVersion.HTTP_1_1);
+		page.headers().set("Content-type", "text/html; charset=utf-8");
+		return page;
+	}
+}
@@ -0,0 +1,80 @@
+package au.id.deejay.webserver.load;
+
+import java.util.Arrays;
+
+/**
+ * Records every latency measured by a load test exactly, so percentiles can be reported without the rounding of a
+ * bucketed histogram. A recorder is only used by one thread until it is {@link #merge(LatencyRecorder) merged}.
+ *
+ * @author David Jessup
+ */
+class LatencyRecorder {
+
+	private long[] latencies = new long[1024];
+	private int count;
+	private boolean sorted;
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	void record(long nanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = nanos;
+		sorted = false;
+	}
+
+	/**
+	 * Adds the latencies recorded by another recorder to this one.
+	 *
+	 * @param other the recorder to merge
+	 */
+	void merge(LatencyRecorder other) {
+		if (count + other.count > latencies.length) {
+			latencies = Arrays.copyOf(latencies, Math.max(count + other.count, latencies.length * 2));
+		}
+		System.arraycopy(other.latencies, 0, latencies, count, other.count);
+		count += other.count;
+		sorted = false;
+	}
+
+	/**
+	 * Gets the number of latencies recorded.
+	 *
+	 * @return Returns the number of latencies.
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies: the smallest latency which at least the given fraction of the
+	 * latencies are less than or equal to.
+	 *
+	 * @param quantile the fraction, from 0 to 1 (e.g. 0.99 for the 99th percentile)
+	 * @return Returns the latency in nanoseconds, or 0 if nothing has been recorded.
+	 */
+	long percentile(double quantile) {
+		if (count == 0) {
+			return 0;
+		}
+		if (!sorted) {
+			Arrays.sort(latencies, 0, count);
+			sorted = true;
+		}
+		int index = (int) Math.ceil(quantile * count) - 1;
+		return latencies[Math.min(Math.max(index, 0), count - 1)];
+	}
+
+	/**
+	 * Gets the largest latency recorded.
+	 *
+	 * @return Returns the maximum latency in nanoseconds, or 0 if nothing has been recorded.
+	 */
+	long max() {
+		return percentile(1);
+	}
+}
@@ -0,0 +1,170 @@
+package au.id.deejay.webserver.load;
+
+import au.id.deejay.webserver.BenchmarkClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * A client connection driving the server during a load test. It sends batches of pipelined requests (a batch of one
+ * when not pipelining) on a fixed schedule, and records the latency of every response.
+ * <p>
+ * Latencies are measured from when each batch was scheduled to be sent, not from when it was actually sent. If the
+ * server stalls, the batches which should have been sent during the stall are sent late, and their latencies include
+ * the time they spent waiting. Measuring from the actual send time would only record one slow response per stall, and
+ * hide the rest of the stall from the percentiles (coordinated omission). When no rate is set the connection sends
+ * each batch as soon as the last one completes, and the latencies are only the server's response times.
+ *
+ * @author David Jessup
+ */
+class LoadConnection implements Callable<LatencyRecorder> {
+
+	private final int port;
+	private final RequestMix mix;
+	private final int pipeline;
+	private final boolean keepAlive;
+	private final Schedule schedule;
+	private final Random random;
+	private final LatencyRecorder latencies;
+	private int errors;
+
+	/**
+	 * Creates a new {@link LoadConnection}.
+	 *
+	 * @param port      the port the server is listening on
+	 * @param mix       the paths to request
+	 * @param scenario  the scenario, which decides the pipelining depth and whether connections are kept alive
+	 * @param schedule  when to send batches
+	 * @param seed      the seed for picking paths from the mix
+	 */
+	LoadConnection(int port, RequestMix mix, Scenario scenario, Schedule schedule, long seed) {
+		this.port = port;
+		this.mix = mix;
+		this.pipeline = scenario.pipeline();
+		this.keepAlive = scenario.keepAlive();
+		this.schedule = schedule;
+		this.random = new Random(seed);
+		this.latencies = new LatencyRecorder();
+	}
+
+	@Override
+	public LatencyRecorder call() {
+		BenchmarkClient client = null;
+		long scheduled = schedule.start;
+
+		while (scheduled < schedule.end) {
+			long sent = schedule.interval > 0 ? waitUntil(scheduled) : System.nanoTime();
+			boolean measured = sent >= schedule.measureFrom;
+			try {
+				if (client == null) {
+					client = new BenchmarkClient(port);
+				}
+				client.send(batch());
+				for (int i = 0; i < pipeline; i++) {
+					int status = client.readResponse();
+					if (measured) {
+						latencies.record(System.nanoTime() - sent);
+						if (status >= 500) {
+							errors++;
+						}
+					}
+				}
+				if (!keepAlive) {
+					client = close(client);
+				}
+			} catch (IOException e) {
+				if (measured) {
+					errors++;
+				}
+				client = close(client);
+			}
+			scheduled = schedule.interval > 0 ? scheduled + schedule.interval : System.nanoTime();
+		}
+
+		close(client);
+		return latencies;
+	}
+
+	/**
+	 * Gets the number of failed requests, which either got a 5xx response or no response at all. Only valid once the
+	 * connection has finished.
+	 *
+	 * @return Returns the number of errors.
+	 */
+	int errors() {
+		return errors;
+	}
+
+	/**
+	 * Encodes the next batch of requests. When connections aren't kept alive the last request asks the server to close
+	 * the connection.
+	 */
+	private byte[] batch() {
+		StringBuilder requests = new StringBuilder();
+		for (int i = 0; i < pipeline; i++) {
+			requests.append("GET ").append(mix.pick(random)).append(" HTTP/1.1").append(CRLF)
+					.append("Host: localhost").append(CRLF);
+			if (!keepAlive && i == pipeline - 1) {
+				requests.append("Connection: close").append(CRLF);
+			}
+			requests.append(CRLF);
+		}
+		return requests.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Waits until a batch is due, returning immediately if it is already late.
+	 *
+	 * @return Returns the time the batch was due.
+	 */
+	private static long waitUntil(long due) {
+		long remaining = due - System.nanoTime();
+		while (remaining > 0) {
+			LockSupport.parkNanos(remaining);
+			remaining = due - System.nanoTime();
+		}
+		return due;
+	}
+
+	private static BenchmarkClient close(BenchmarkClient client) {
+		if (client != null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				// Nothing more to do with the connection
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * When a connection sends its batches of requests, in {@link System#nanoTime()} nanoseconds.
+	 */
+	static final class Schedule {
+
+		private final long start;
+		private final long interval;
+		private final long measureFrom;
+		private final long end;
+
+		/**
+		 * Creates a new {@link Schedule}.
+		 *
+		 * @param start       when to send the first batch
+		 * @param interval    the time between batches, or 0 to send each batch as soon as the last one completes
+		 * @param measureFrom when the warmup ends, and latencies start being recorded
+		 * @param end         when to stop sending batches
+		 */
+		Schedule(long start, long interval, long measureFrom, long end) {
+			this.start = start;
+			this.interval = interval;
+			this.measureFrom = measureFrom;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package au.id.deejay.webserver.load;
+
+import au.id.deejay.webserver.BenchmarkClient;
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.handler.DocrootHandler;
+import au.id.deejay.webserver.response.FileCache;
+import au.id.deejay.webserver.response.PrecompressedFiles;
+import au.id.deejay.webserver.response.ResponseFactory;
+import au.id.deejay.webserver.route.RouteTable;
+import au.id.deejay.webserver.server.Engine;
+import au.id.deejay.webserver.server.WebServer;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An end-to-end load test, which starts a {@link WebServer} serving the bundled docroot for each scenario and drives it
+ * with a number of concurrent {@link LoadConnection}s, then prints the throughput and latency percentiles of each.
+ * <p>
+ * Scenarios are every combination of the engines, file cache sizes, connection counts, pipelining depths and
+ * connection modes given, so they can be compared side by side, e.g.
+ * <code>mvn -P load test -Dload.args="--engine threads,selector --cachesize 0,64 --connections 16,256"</code>.
+ * <p>
+ * Requests are sent at a fixed total rate and latencies are corrected for coordinated omission (see {@link
+ * LoadConnection}), so the rate should be set below the server's capacity. A rate of 0 sends requests as fast as the
+ * server responds, to find its capacity, but the latencies are then uncorrected.
+ *
+ * @author David Jessup
+ */
+public final class LoadGenerator {
+
+	private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+	private static final String DEFAULT_MIX = "/=4,/index.html=2,/bootstrap-3.3.7/dist/css/bootstrap.css=2,/bg.png=1,/favicon.ico=1";
+
+	private final OptionParser parser;
+	private final OptionSpec<String> engines;
+	private final OptionSpec<Integer> cacheSizes;
+	private final OptionSpec<Integer> connections;
+	private final OptionSpec<Integer> pipelines;
+	private final OptionSpec<String> modes;
+	private final OptionSpec<Integer> rate;
+	private final OptionSpec<Integer> duration;
+	private final OptionSpec<Integer> warmup;
+	private final OptionSpec<String> mix;
+	private final OptionSpec<String> docroot;
+	private final OptionSpec<Integer> threads;
+	private final OptionSpec<Void> help;
+
+	private LoadGenerator() {
+		parser = new OptionParser();
+		engines = parser.accepts("engine", "Connection handling engines to test")
+				.withRequiredArg().withValuesSeparatedBy(',').defaultsTo("threads", "selector");
+		cacheSizes = parser.accepts("cachesize", "File cache sizes to test, in megabytes. 0 serves files from disk")
+				.withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',').defaultsTo(0);
+		connections = parser.accepts("connections", "Numbers of concurrent client connections to test")
+				.withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',').defaultsTo(16);
+		pipelines = parser.accepts("pipeline", "Numbers of requests each connection sends before reading the responses")
+				.withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',').defaultsTo(1);
+		modes = parser.accepts("mode", "Connection modes to test: \"keep-alive\", or \"close\" to open a connection per batch")
+				.withRequiredArg().withValuesSeparatedBy(',').defaultsTo("keep-alive");
+		rate = parser.accepts("rate", "Total requests per second to send. 0 sends requests as fast as possible, without latency correction")
+				.withRequiredArg().ofType(Integer.class).defaultsTo(2000);
+		duration = parser.accepts("duration", "Seconds to measure each scenario for")
+				.withRequiredArg().ofType(Integer.class).defaultsTo(10);
+		warmup = parser.accepts("warmup", "Seconds to run each scenario for before measuring")
+				.withRequiredArg().ofType(Integer.class).defaultsTo(3);
+		mix = parser.accepts("mix", "Paths to request, with their relative weights")
+				.withRequiredArg().defaultsTo(DEFAULT_MIX);
+		docroot = parser.accepts("docroot", "Document root to serve")
+				.withRequiredArg().defaultsTo("docroot");
+		threads = parser.accepts("maxthreads", "Server worker threads")
+				.withRequiredArg().ofType(Integer.class).defaultsTo(20);
+		help = parser.accepts("help", "Display the options").forHelp();
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param args the load test options, see <code>--help</code>
+	 * @throws Exception if the load test cannot be run.
+	 */
+	public static void main(String[] args) throws Exception {
+		new LoadGenerator().run(args);
+	}
+
+	private void run(String[] args) throws Exception {
+		OptionSet options = parser.parse(args);
+		if (options.has(help)) {
+			parser.printHelpOn(System.out);
+			return;
+		}
+
+		RequestMix requestMix = new RequestMix(options.valueOf(mix));
+		int requestRate = options.valueOf(rate);
+		System.out.printf("Requesting %s at %s for %ds per scenario, after a %ds warmup%n", requestMix,
+						  requestRate > 0 ? requestRate + " requests/s" : "full speed (latencies are not corrected)",
+						  options.valueOf(duration), options.valueOf(warmup));
+		System.out.printf("%-52s %10s %7s %10s %10s %10s %10s %10s%n", "Scenario", "Requests", "Errors", "Req/s", "p50 ms", "p99 ms",
+						  "p99.9 ms", "max ms");
+
+		for (Scenario scenario : scenarios(options)) {
+			System.out.println(report(scenario, measure(scenario, options, requestMix)));
+		}
+	}
+
+	private List<Scenario> scenarios(OptionSet options) {
+		List<Scenario> scenarios = new ArrayList<>();
+		for (String engine : options.valuesOf(engines)) {
+			for (int cacheSize : options.valuesOf(cacheSizes)) {
+				for (int connectionCount : options.valuesOf(connections)) {
+					for (int pipeline : options.valuesOf(pipelines)) {
+						for (String mode : options.valuesOf(modes)) {
+							scenarios.add(new Scenario(Engine.valueOf(engine.toUpperCase(Locale.ROOT)), cacheSize, connectionCount, pipeline,
+													   !"close".equalsIgnoreCase(mode)));
+						}
+					}
+				}
+			}
+		}
+		return scenarios;
+	}
+
+	private Result measure(Scenario scenario, OptionSet options, RequestMix requestMix) throws Exception {
+		int port = freePort();
+		WebServer server = server(scenario, port, options);
+		server.start();
+		awaitListening(port);
+
+		int connectionCount = scenario.connections();
+		int requestRate = options.valueOf(rate);
+		// Each connection sends its share of the rate, in batches of pipelined requests
+		long interval = requestRate > 0 ? TimeUnit.SECONDS.toNanos(1) * connectionCount * scenario.pipeline() / requestRate : 0;
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(options.valueOf(warmup));
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(options.valueOf(duration));
+
+		ExecutorService clients = Executors.newFixedThreadPool(connectionCount);
+		List<LoadConnection> loadConnections = new ArrayList<>();
+		List<Future<LatencyRecorder>> results = new ArrayList<>();
+		try {
+			for (int i = 0; i < connectionCount; i++) {
+				// Stagger the connections, so requests are spread evenly over each interval
+				long offset = interval * i / connectionCount;
+				LoadConnection connection = new LoadConnection(port, requestMix, scenario,
+															   new LoadConnection.Schedule(start + offset, interval, measureFrom, end), i);
+				loadConnections.add(connection);
+				results.add(clients.submit(connection));
+			}
+
+			Result result = new Result(TimeUnit.NANOSECONDS.toSeconds(end - measureFrom));
+			for (int i = 0; i < connectionCount; i++) {
+				result.latencies.merge(results.get(i).get());
+				result.errors += loadConnections.get(i).errors();
+			}
+			return result;
+		} finally {
+			clients.shutdownNow();
+			server.stop();
+		}
+	}
+
+	private WebServer server(Scenario scenario, int port, OptionSet options) {
+		FileCache fileCache = scenario.cacheSize() > 0 ? new FileCache(scenario.cacheSize() * 1024L * 1024L, 1024L * 1024L) : null;
+		DocrootHandler handler = new DocrootHandler(new File(options.valueOf(docroot)), Collections.singletonList("index.html"), true,
+													fileCache, new PrecompressedFiles());
+		RouteTable routes = new RouteTable.Builder().route(HttpMethod.GET, "/**", handler).build();
+		ResponseFactory responseFactory = new ResponseFactory.Builder(routes).serverName(null).build();
+		int maxThreads = options.valueOf(threads);
+		return new WebServer.Builder(responseFactory)
+				.port(port)
+				.maxThreads(maxThreads)
+				.maxConnections(Math.max(maxThreads, scenario.connections()))
+				.engine(scenario.engine())
+				.build();
+	}
+
+	private static String report(Scenario scenario, Result result) {
+		StringBuilder row = new StringBuilder(String.format("%-52s %10d %7d %10.1f", scenario, result.latencies.count(), result.errors,
+															(double) result.latencies.count() / result.seconds));
+		for (double percentile : PERCENTILES) {
+			row.append(String.format(" %10.3f", millis(result.latencies.percentile(percentile))));
+		}
+		return row.append(String.format(" %10.3f", millis(result.latencies.max()))).toString();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * The server is started asynchronously, so waits until it accepts connections.
+	 */
+	private static void awaitListening(int port) throws Exception {
+		for (int attempt = 0; ; attempt++) {
+			try (BenchmarkClient ignored = new BenchmarkClient(port)) {
+				return;
+			} catch (ConnectException e) {
+				if (attempt > 50) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * The measurements of a scenario.
+	 */
+	private static class Result {
+
+		private final long seconds;
+		private final LatencyRecorder latencies = new LatencyRecorder();
+		private int errors;
+
+		Result(long seconds) {
+			this.seconds = seconds;
+		}
+	}
+}
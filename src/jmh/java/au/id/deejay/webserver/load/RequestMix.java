@@ -0,0 +1,74 @@
+package au.id.deejay.webserver.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The paths a load test requests, each with a weight deciding how often it is picked, parsed from a list such as
+ * <code>/index.html=8,/bg.png=1</code>. Paths without a weight have a weight of 1.
+ *
+ * @author David Jessup
+ */
+class RequestMix {
+
+	private final List<String> paths;
+	private final int[] cumulativeWeights;
+	private final int totalWeight;
+
+	/**
+	 * Parses a request mix.
+	 *
+	 * @param mix the comma separated paths and weights
+	 * @throws IllegalArgumentException if the mix is empty, or a weight is not a positive number.
+	 */
+	RequestMix(String mix) {
+		paths = new ArrayList<>();
+		List<Integer> weights = new ArrayList<>();
+		for (String entry : mix.split(",")) {
+			String trimmed = entry.trim();
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+			int equals = trimmed.lastIndexOf('=');
+			int weight = equals < 0 ? 1 : Integer.parseInt(trimmed.substring(equals + 1).trim());
+			if (weight < 1) {
+				throw new IllegalArgumentException("Weights must be positive: " + trimmed);
+			}
+			paths.add(equals < 0 ? trimmed : trimmed.substring(0, equals).trim());
+			weights.add(weight);
+		}
+		if (paths.isEmpty()) {
+			throw new IllegalArgumentException("The request mix must have at least one path");
+		}
+
+		cumulativeWeights = new int[weights.size()];
+		int total = 0;
+		for (int i = 0; i < weights.size(); i++) {
+			total += weights.get(i);
+			cumulativeWeights[i] = total;
+		}
+		totalWeight = total;
+	}
+
+	/**
+	 * Picks the path for the next request.
+	 *
+	 * @param random the source of randomness, which is per connection
+	 * @return Returns a path, picked in proportion to its weight.
+	 */
+	String pick(Random random) {
+		int target = random.nextInt(totalWeight);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (target < cumulativeWeights[i]) {
+				return paths.get(i);
+			}
+		}
+		return paths.get(paths.size() - 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.join(",", paths);
+	}
+}
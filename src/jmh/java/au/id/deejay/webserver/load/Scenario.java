@@ -0,0 +1,60 @@
+package au.id.deejay.webserver.load;
+
+import au.id.deejay.webserver.server.Engine;
+
+/**
+ * One configuration of the server and the clients driving it, which a load test measures separately.
+ *
+ * @author David Jessup
+ */
+class Scenario {
+
+	private final Engine engine;
+	private final int cacheSize;
+	private final int connections;
+	private final int pipeline;
+	private final boolean keepAlive;
+
+	/**
+	 * Creates a new {@link Scenario}.
+	 *
+	 * @param engine      the server's connection handling engine
+	 * @param cacheSize   the size of the server's file cache in megabytes, or 0 to serve files from disk
+	 * @param connections the number of concurrent client connections
+	 * @param pipeline    the number of requests each connection sends before reading their responses
+	 * @param keepAlive   whether connections are kept alive, or closed after each batch of requests
+	 */
+	Scenario(Engine engine, int cacheSize, int connections, int pipeline, boolean keepAlive) {
+		this.engine = engine;
+		this.cacheSize = cacheSize;
+		this.connections = connections;
+		this.pipeline = pipeline;
+		this.keepAlive = keepAlive;
+	}
+
+	Engine engine() {
+		return engine;
+	}
+
+	int cacheSize() {
+		return cacheSize;
+	}
+
+	int connections() {
+		return connections;
+	}
+
+	int pipeline() {
+		return pipeline;
+	}
+
+	boolean keepAlive() {
+		return keepAlive;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s cache=%dMB conns=%d pipeline=%d %s", engine.name().toLowerCase(), cacheSize, connections, pipeline,
+							 keepAlive ? "keep-alive" : "close");
+	}
+}
@@ -0,0 +1,54 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.CapturedRequest;
+import au.id.deejay.webserver.api.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing the request lines of {@link CapturedRequest captured} requests into a {@link RequestLine}, and of
+ * their protocol versions into an {@link HttpVersion}.
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@State(Scope.Thread)
+public class RequestLineBenchmark {
+
+	@Param({"firefox-page", "chrome-stylesheet", "safari-image", "curl"})
+	private String capture;
+
+	private String requestLine;
+	private String version;
+
+	@Setup
+	public void setUp() {
+		requestLine = CapturedRequest.load(capture).requestLine();
+		version = requestLine.substring(requestLine.lastIndexOf(' ') + 1);
+	}
+
+	@Benchmark
+	public RequestLine requestLine() {
+		return new RequestLine(requestLine);
+	}
+
+	@Benchmark
+	public HttpVersion httpVersion() {
+		return new HttpVersion(version);
+	}
+}
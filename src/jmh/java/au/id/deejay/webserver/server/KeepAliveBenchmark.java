@@ -0,0 +1,118 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.BenchmarkClient;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.handler.DocrootHandler;
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares pooled platform threads ({@link Engine#THREADS}) with virtual threads ({@link Engine#VIRTUAL}) while the
+ * server holds a large number of concurrent keep-alive connections open. Every connection is established (and so
+ * assigned a worker) before measurement starts, then the benchmark threads make requests over them in turn.
+ * <p>
+ * The platform thread pool is sized to the number of clients so that both engines service every connection at once.
+ * Running the 10k client case needs a file descriptor limit of at least 20k (<code>ulimit -n</code>).
+ *
+ * @author David Jessup
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+@Threads(16)
+@State(Scope.Benchmark)
+public class KeepAliveBenchmark {
+
+	private static final String PATH = "/index.html";
+
+	@Param({"THREADS", "VIRTUAL"})
+	private Engine engine;
+
+	@Param({"1000", "10000"})
+	private int clients;
+
+	private WebServer server;
+	private BlockingQueue<BenchmarkClient> connections;
+
+	@Setup(Level.Trial)
+	public void startServer() throws Exception {
+		int port = freePort();
+
+		List<RequestHandler> handlers = Collections.singletonList(new DocrootHandler("docroot", Collections.singletonList("index.html"), false));
+		server = new WebServer.Builder(new ResponseFactory(handlers))
+				.port(port)
+				.timeout(600)
+				.maxThreads(clients)
+				.engine(engine)
+				.build();
+		server.start();
+
+		connections = new ArrayBlockingQueue<>(clients);
+		for (int i = 0; i < clients; i++) {
+			BenchmarkClient client = connect(port);
+			client.get(PATH);
+			connections.add(client);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() throws Exception {
+		for (BenchmarkClient client : connections) {
+			client.close();
+		}
+		server.stop();
+	}
+
+	@Benchmark
+	public int keepAliveRequest() throws Exception {
+		BenchmarkClient client = connections.take();
+		try {
+			return client.get(PATH);
+		} finally {
+			connections.put(client);
+		}
+	}
+
+	private BenchmarkClient connect(int port) throws Exception {
+		// The server is started asynchronously, so retry until it is listening
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return new BenchmarkClient(port);
+			} catch (ConnectException e) {
+				if (attempt > 50) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -1,17 +1,30 @@
 package au.id.deejay.webserver;
 
 
+import au.id.deejay.webserver.handler.CompressingHandler;
 import au.id.deejay.webserver.handler.DocrootHandler;
+import au.id.deejay.webserver.handler.MetricsHandler;
 import au.id.deejay.webserver.handler.ServerInfoHandler;
+import au.id.deejay.webserver.log.AccessLog;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.response.ConcurrencyLimiter;
+import au.id.deejay.webserver.response.FileCache;
+import au.id.deejay.webserver.response.PrecompressedFiles;
+import au.id.deejay.webserver.response.ResponseCompressor;
+import au.id.deejay.webserver.response.ResponseFactory;
+import au.id.deejay.webserver.route.RouteTable;
+import au.id.deejay.webserver.server.Engine;
+import au.id.deejay.webserver.server.QueueLimits;
 import au.id.deejay.webserver.server.WebServer;
+import au.id.deejay.webserver.api.HttpMethod;
 import au.id.deejay.webserver.api.RequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.file.Paths;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * Main application bootstrap class. Parses CLI options and uses them to create a new server instance.
@@ -43,24 +56,91 @@ public class App {
 		int port = options.port();
 		int timeout = options.timeout();
 		int maxThreads = options.maxThreads();
+		int maxConnections = options.maxConnections();
+		Engine engine = options.engine();
+		QueueLimits queueLimits = new QueueLimits(options.queueCapacity(), options.queueWait());
 		String docroot = options.docroot();
 
+		// Cache small files in memory, and larger files off-heap, if enabled
+		FileCache fileCache = null;
+		if (options.cacheSize() > 0 || options.offHeapCacheSize() > 0) {
+			fileCache = new FileCache(options.cacheSize() * 1024L * 1024L, options.cacheMaxFileSize() * 1024L,
+									  options.offHeapCacheSize() * 1024L * 1024L, options.offHeapCacheMaxFileSize() * 1024L);
+		}
+
+		// Limit the requests handled at once, adapting to the handlers' latency, if enabled
+		ConcurrencyLimiter limiter = options.concurrencyLimit() > 0 ? new ConcurrencyLimiter(options.concurrencyLimit()) : null;
+
 		// Configure request handlers
-		RequestHandler serverInfoHandler = new ServerInfoHandler(port, timeout, maxThreads, docroot, System.currentTimeMillis());
-		RequestHandler docrootHandler = new DocrootHandler(docroot, Collections.singletonList("index.html"), true);
+		ServerMetrics metrics = new ServerMetrics();
+		RequestHandler metricsHandler = new MetricsHandler(metrics);
+		RequestHandler serverInfoHandler = new ServerInfoHandler(port, timeout, maxThreads, docroot, System.currentTimeMillis(), fileCache,
+																 limiter);
+		RequestHandler docrootHandler = new DocrootHandler(new File(docroot), Collections.singletonList("index.html"), true, fileCache,
+														   new PrecompressedFiles());
+
+		// Compress text responses on the fly, if enabled
+		if (options.compressionLevel() > 0) {
+			ResponseCompressor compressor = new ResponseCompressor(options.compressionLevel(), ResponseCompressor.DEFAULT_MIN_SIZE,
+																   ResponseCompressor.DEFAULT_TYPES,
+																   options.compressionCacheSize() * 1024L * 1024L);
+			metricsHandler = new CompressingHandler(metricsHandler, compressor);
+			serverInfoHandler = new CompressingHandler(serverInfoHandler, compressor);
+			docrootHandler = new CompressingHandler(docrootHandler, compressor);
+		}
 
-		List<RequestHandler> requestHandlers = Arrays.asList(serverInfoHandler, docrootHandler);
+		RouteTable routes = new RouteTable.Builder()
+				.route(HttpMethod.GET, "/serverInfo", serverInfoHandler)
+				.route(HttpMethod.GET, "/metrics", metricsHandler)
+				.route(HttpMethod.GET, "/**", docrootHandler)
+				.build();
+
+		// Log requests from a background thread, unless the access log is disabled
+		AccessLog accessLog = accessLog(options, metrics);
 
 		// Create the server
-		WebServer server = new WebServer(port, timeout, maxThreads, requestHandlers);
+		ResponseFactory responseFactory = new ResponseFactory.Builder(routes)
+				.serverName(options.serverName())
+				.timeoutMillis(WebServer.handlerTimeoutMillis(timeout))
+				.metrics(metrics)
+				.accessLog(accessLog)
+				.concurrencyLimiter(limiter)
+				.build();
+		WebServer server = new WebServer.Builder(responseFactory)
+				.port(port)
+				.timeout(timeout)
+				.maxThreads(maxThreads)
+				.maxConnections(maxConnections)
+				.engine(engine)
+				.queueLimits(queueLimits)
+				.build();
 
 		// Register a shutdown hook to gracefully stop the server when the JVM is terminated
-		Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHook(server)));
+		Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHook(server, accessLog)));
 
 		// Start the server
 		server.start();
 	}
 
+	/**
+	 * Opens the access log, if one is configured, and exports its count of dropped entries in the server's metrics.
+	 * Requests are logged with the application logger instead if the log is disabled or cannot be opened.
+	 */
+	private static AccessLog accessLog(CommandLineOptions options, ServerMetrics metrics) {
+		if (options.accessLog().isEmpty()) {
+			return null;
+		}
+		try {
+			AccessLog accessLog = new AccessLog(Paths.get(options.accessLog()), options.accessLogBuffer(), options.accessLogFormat(),
+												options.accessLogOverflow());
+			metrics.accessLogDropped(accessLog::dropped);
+			return accessLog;
+		} catch (IOException e) {
+			LOG.error("Unable to open the access log, requests will be logged with the application logger", e);
+			return null;
+		}
+	}
+
 	/**
 	 * Displays usage information
 	 */
@@ -92,9 +172,11 @@ public class App {
 		private static final Logger LOG = LoggerFactory.getLogger(ShutdownHook.class);
 
 		private WebServer server;
+		private AccessLog accessLog;
 
-		ShutdownHook(WebServer server) {
+		ShutdownHook(WebServer server, AccessLog accessLog) {
 			this.server = server;
+			this.accessLog = accessLog;
 		}
 
 		@Override
@@ -104,6 +186,10 @@ public class App {
 			} else {
 				LOG.debug("Server not running, nothing to do.");
 			}
+			// Write out any requests still waiting to be logged
+			if (accessLog != null) {
+				accessLog.close();
+			}
 		}
 	}
 
@@ -1,12 +1,19 @@
 package au.id.deejay.webserver;
 
+import au.id.deejay.webserver.io.ResponseWriter;
+import au.id.deejay.webserver.log.AccessLog;
+import au.id.deejay.webserver.log.LogFormat;
+import au.id.deejay.webserver.log.OverflowPolicy;
+import au.id.deejay.webserver.server.Engine;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
+import joptsimple.util.EnumConverter;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * Facilitates reading values of interest supplied via command line arguments.
@@ -30,12 +37,110 @@ public class CommandLineOptions {
 	 */
 	private static final int DEFAULT_MAX_THREADS = 20;
 
+	/**
+	 * Default max number of concurrent connections when using virtual threads.
+	 */
+	private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+	/**
+	 * Default number of connections or requests which may wait for a pooled worker thread.
+	 */
+	private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	/**
+	 * Default maximum time work may wait for a pooled worker thread, in milliseconds. Work may wait indefinitely by
+	 * default.
+	 */
+	private static final int DEFAULT_QUEUE_WAIT = 0;
+
+	/**
+	 * Default maximum of the adaptive concurrency limit. The limit is disabled by default.
+	 */
+	private static final int DEFAULT_CONCURRENCY_LIMIT = 0;
+
 	/**
 	 * Default request timeout.
 	 */
 	private static final int DEFAULT_TIMEOUT = 10;
+
+	/**
+	 * Default connection handling engine.
+	 */
+	private static final Engine DEFAULT_ENGINE = Engine.THREADS;
+
+	/**
+	 * Default size of the file cache, in megabytes. The cache is disabled by default.
+	 */
+	private static final int DEFAULT_CACHE_SIZE = 0;
+
+	/**
+	 * Default size of the largest file which may be cached, in kilobytes.
+	 */
+	private static final int DEFAULT_CACHE_MAX_FILE_SIZE = 1024;
+
+	/**
+	 * Default size of the off-heap tier of the file cache, in megabytes. The off-heap tier is disabled by default.
+	 */
+	private static final int DEFAULT_OFF_HEAP_CACHE_SIZE = 0;
+
+	/**
+	 * Default size of the largest file which may be cached off-heap, in kilobytes.
+	 */
+	private static final int DEFAULT_OFF_HEAP_CACHE_MAX_FILE_SIZE = 16384;
+
+	/**
+	 * Default compression level for compressing responses on the fly.
+	 */
+	private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+	/**
+	 * Default size of the cache of compressed responses, in megabytes.
+	 */
+	private static final int DEFAULT_COMPRESSION_CACHE_SIZE = 16;
+
+	/**
+	 * Default value of the Server response header.
+	 */
+	private static final String DEFAULT_SERVER_NAME = ResponseWriter.DEFAULT_SERVER_NAME;
+
+	/**
+	 * Default access log file.
+	 */
+	private static final String DEFAULT_ACCESS_LOG = "logs/access.log";
+
+	/**
+	 * Default access log format.
+	 */
+	private static final LogFormat DEFAULT_ACCESS_LOG_FORMAT = LogFormat.COMBINED;
+
+	/**
+	 * Default treatment of access log entries logged while the log's buffer is full.
+	 */
+	private static final OverflowPolicy DEFAULT_ACCESS_LOG_OVERFLOW = OverflowPolicy.DROP;
+
+	/**
+	 * Default number of access log entries buffered for the log's writer thread.
+	 */
+	private static final int DEFAULT_ACCESS_LOG_BUFFER = AccessLog.DEFAULT_CAPACITY;
+
 	private final OptionSpec<Integer> timeout;
 	private final OptionSpec<Integer> maxThreads;
+	private final OptionSpec<Integer> maxConnections;
+	private final OptionSpec<Integer> queueCapacity;
+	private final OptionSpec<Integer> queueWait;
+	private final OptionSpec<Integer> concurrencyLimit;
+	private final OptionSpec<Engine> engine;
+	private final OptionSpec<Integer> cacheSize;
+	private final OptionSpec<Integer> cacheMaxFileSize;
+	private final OptionSpec<Integer> offHeapCacheSize;
+	private final OptionSpec<Integer> offHeapCacheMaxFileSize;
+	private final OptionSpec<Integer> compressionLevel;
+	private final OptionSpec<Integer> compressionCacheSize;
+	private final OptionSpec<String> serverName;
+	private final OptionSpec<String> accessLog;
+	private final OptionSpec<LogFormat> accessLogFormat;
+	private final OptionSpec<OverflowPolicy> accessLogOverflow;
+	private final OptionSpec<Integer> accessLogBuffer;
 	private final OptionSpec<Void> help;
 	private final OptionParser parser;
 	private final OptionSet options;
@@ -56,6 +161,22 @@ public class CommandLineOptions {
 		docroot = withDocroot();
 		timeout = withTimeout();
 		maxThreads = withMaxThreads();
+		maxConnections = withMaxConnections();
+		queueCapacity = withQueueCapacity();
+		queueWait = withQueueWait();
+		concurrencyLimit = withConcurrencyLimit();
+		engine = withEngine();
+		cacheSize = withCacheSize();
+		cacheMaxFileSize = withCacheMaxFileSize();
+		offHeapCacheSize = withOffHeapCacheSize();
+		offHeapCacheMaxFileSize = withOffHeapCacheMaxFileSize();
+		compressionLevel = withCompressionLevel();
+		compressionCacheSize = withCompressionCacheSize();
+		serverName = withServerName();
+		accessLog = withAccessLog();
+		accessLogFormat = withAccessLogFormat();
+		accessLogOverflow = withAccessLogOverflow();
+		accessLogBuffer = withAccessLogBuffer();
 		help = withHelp();
 
 		// Parse the supplied args
@@ -105,6 +226,190 @@ public class CommandLineOptions {
 				.defaultsTo(DEFAULT_MAX_THREADS);
 	}
 
+	/**
+	 * Builds the "maxconnections" option
+	 */
+	private OptionSpec<Integer> withMaxConnections() {
+		return parser.acceptsAll(Arrays.asList("maxconnections", "c"),
+								 "Maximum number of client connections serviced concurrently by the \"virtual\" engine")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Builds the "queuecapacity" option
+	 */
+	private OptionSpec<Integer> withQueueCapacity() {
+		return parser.accepts("queuecapacity",
+							  "Maximum number of connections (or requests, with the \"selector\" engine) which may wait for a worker thread. " +
+									  "Further clients are answered with 503 Service Unavailable. 0 only hands work to idle workers")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Builds the "queuewait" option
+	 */
+	private OptionSpec<Integer> withQueueWait() {
+		return parser.accepts("queuewait",
+							  "Maximum time (in milliseconds) work may wait for a worker thread before the client is answered with 503 " +
+									  "Service Unavailable instead. 0 waits indefinitely, except on the virtual engine, whose accept loop only waits briefly")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_QUEUE_WAIT);
+	}
+
+	/**
+	 * Builds the "concurrencylimit" option
+	 */
+	private OptionSpec<Integer> withConcurrencyLimit() {
+		return parser.accepts("concurrencylimit",
+							  "Maximum number of requests handled at once. The limit adapts below this as handler latency rises, and " +
+									  "requests beyond it are answered with 503 Service Unavailable. 0 disables the limit")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_CONCURRENCY_LIMIT);
+	}
+
+	/**
+	 * Builds the "engine" option
+	 */
+	private OptionSpec<Engine> withEngine() {
+		return parser.acceptsAll(Arrays.asList("engine", "e"),
+								 "Connection handling engine. \"threads\" assigns each connection a pooled worker thread, \"virtual\" assigns " +
+										 "each connection a virtual thread (Java 21+), \"selector\" multiplexes connections over non-blocking event " +
+										 "loops and only uses a worker thread while servicing a request, but only accepts request bodies with a Content-Length of up " +
+										 "to 1MB (larger bodies are answered with 413, chunked bodies with 501)")
+				.withRequiredArg()
+				.withValuesConvertedBy(new UpperCaseConverter<>(Engine.class))
+				.defaultsTo(DEFAULT_ENGINE);
+	}
+
+	/**
+	 * Builds the "cachesize" option
+	 */
+	private OptionSpec<Integer> withCacheSize() {
+		return parser.accepts("cachesize",
+							  "Size of the in-memory cache of frequently requested files (in megabytes). 0 disables the cache")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Builds the "cachemaxfile" option
+	 */
+	private OptionSpec<Integer> withCacheMaxFileSize() {
+		return parser.accepts("cachemaxfile",
+							  "Size of the largest file which may be held in the file cache (in kilobytes)")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_CACHE_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Builds the "offheapcachesize" option
+	 */
+	private OptionSpec<Integer> withOffHeapCacheSize() {
+		return parser.accepts("offheapcachesize",
+							  "Size of the off-heap file cache (in megabytes), which holds files too large for the in-memory cache " +
+									  "outside of the Java heap. 0 disables the off-heap cache")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_OFF_HEAP_CACHE_SIZE);
+	}
+
+	/**
+	 * Builds the "offheapcachemaxfile" option
+	 */
+	private OptionSpec<Integer> withOffHeapCacheMaxFileSize() {
+		return parser.accepts("offheapcachemaxfile",
+							  "Size of the largest file which may be held in the off-heap file cache (in kilobytes)")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_OFF_HEAP_CACHE_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Builds the "compression" option
+	 */
+	private OptionSpec<Integer> withCompressionLevel() {
+		return parser.accepts("compression",
+							  "Level (1-9) to gzip or deflate text responses with on the fly, for clients which accept it. 0 disables compression")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_COMPRESSION_LEVEL);
+	}
+
+	/**
+	 * Builds the "compressioncache" option
+	 */
+	private OptionSpec<Integer> withCompressionCacheSize() {
+		return parser.accepts("compressioncache",
+							  "Size of the cache of compressed files (in megabytes)")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_COMPRESSION_CACHE_SIZE);
+	}
+
+	/**
+	 * Builds the "servername" option
+	 */
+	private OptionSpec<String> withServerName() {
+		return parser.accepts("servername",
+							  "Value of the Server header sent with responses. An empty value omits the header")
+				.withRequiredArg()
+				.ofType(String.class)
+				.defaultsTo(DEFAULT_SERVER_NAME);
+	}
+
+	/**
+	 * Builds the "accesslog" option
+	 */
+	private OptionSpec<String> withAccessLog() {
+		return parser.accepts("accesslog",
+							  "File requests are logged to, by a background thread. An empty value logs requests with the application logger instead")
+				.withRequiredArg()
+				.ofType(String.class)
+				.defaultsTo(DEFAULT_ACCESS_LOG);
+	}
+
+	/**
+	 * Builds the "accesslogformat" option
+	 */
+	private OptionSpec<LogFormat> withAccessLogFormat() {
+		return parser.accepts("accesslogformat",
+							  "Format of the access log. \"common\" is the Common Log Format, \"combined\" adds the Referer and User-Agent")
+				.withRequiredArg()
+				.withValuesConvertedBy(new UpperCaseConverter<>(LogFormat.class))
+				.defaultsTo(DEFAULT_ACCESS_LOG_FORMAT);
+	}
+
+	/**
+	 * Builds the "accesslogoverflow" option
+	 */
+	private OptionSpec<OverflowPolicy> withAccessLogOverflow() {
+		return parser.accepts("accesslogoverflow",
+							  "What to do when requests are logged faster than the access log can be written. \"drop\" discards (and counts) " +
+									  "entries, \"block\" makes workers wait for the log")
+				.withRequiredArg()
+				.withValuesConvertedBy(new UpperCaseConverter<>(OverflowPolicy.class))
+				.defaultsTo(DEFAULT_ACCESS_LOG_OVERFLOW);
+	}
+
+	/**
+	 * Builds the "accesslogbuffer" option
+	 */
+	private OptionSpec<Integer> withAccessLogBuffer() {
+		return parser.accepts("accesslogbuffer",
+							  "Number of access log entries which may be waiting to be written")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(DEFAULT_ACCESS_LOG_BUFFER);
+	}
+
 	/**
 	 * Builds the "help" (usage) option
 	 */
@@ -150,6 +455,151 @@ public class CommandLineOptions {
 		return options.valueOf(maxThreads);
 	}
 
+	/**
+	 * Gets the max connections option.
+	 *
+	 * @return Returns the max connections.
+	 */
+	public int maxConnections() {
+		return options.valueOf(maxConnections);
+	}
+
+	/**
+	 * Gets the queue capacity option.
+	 *
+	 * @return Returns the number of connections or requests which may wait for a worker thread.
+	 */
+	public int queueCapacity() {
+		return options.valueOf(queueCapacity);
+	}
+
+	/**
+	 * Gets the queue wait option.
+	 *
+	 * @return Returns the maximum time work may wait for a worker thread in milliseconds, or 0 to wait indefinitely.
+	 */
+	public int queueWait() {
+		return options.valueOf(queueWait);
+	}
+
+	/**
+	 * Gets the concurrency limit option.
+	 *
+	 * @return Returns the maximum of the adaptive concurrency limit, or 0 if requests aren't limited.
+	 */
+	public int concurrencyLimit() {
+		return options.valueOf(concurrencyLimit);
+	}
+
+	/**
+	 * Gets the engine option.
+	 *
+	 * @return Returns the connection handling engine.
+	 */
+	public Engine engine() {
+		return options.valueOf(engine);
+	}
+
+	/**
+	 * Gets the file cache size option.
+	 *
+	 * @return Returns the size of the file cache, in megabytes.
+	 */
+	public int cacheSize() {
+		return options.valueOf(cacheSize);
+	}
+
+	/**
+	 * Gets the file cache max file size option.
+	 *
+	 * @return Returns the size of the largest file which may be cached, in kilobytes.
+	 */
+	public int cacheMaxFileSize() {
+		return options.valueOf(cacheMaxFileSize);
+	}
+
+	/**
+	 * Gets the off-heap file cache size option.
+	 *
+	 * @return Returns the size of the off-heap file cache, in megabytes.
+	 */
+	public int offHeapCacheSize() {
+		return options.valueOf(offHeapCacheSize);
+	}
+
+	/**
+	 * Gets the off-heap file cache max file size option.
+	 *
+	 * @return Returns the size of the largest file which may be cached off-heap, in kilobytes.
+	 */
+	public int offHeapCacheMaxFileSize() {
+		return options.valueOf(offHeapCacheMaxFileSize);
+	}
+
+	/**
+	 * Gets the compression level option.
+	 *
+	 * @return Returns the level responses are compressed with, or 0 if compression is disabled.
+	 */
+	public int compressionLevel() {
+		return options.valueOf(compressionLevel);
+	}
+
+	/**
+	 * Gets the compression cache size option.
+	 *
+	 * @return Returns the size of the cache of compressed files, in megabytes.
+	 */
+	public int compressionCacheSize() {
+		return options.valueOf(compressionCacheSize);
+	}
+
+	/**
+	 * Gets the server name option.
+	 *
+	 * @return Returns the value of the Server response header, which is empty if the header should be omitted.
+	 */
+	public String serverName() {
+		return options.valueOf(serverName);
+	}
+
+	/**
+	 * Gets the access log option.
+	 *
+	 * @return Returns the path of the access log file, which is empty if requests should be logged with the application
+	 * logger.
+	 */
+	public String accessLog() {
+		return options.valueOf(accessLog);
+	}
+
+	/**
+	 * Gets the access log format option.
+	 *
+	 * @return Returns the format of the access log.
+	 */
+	public LogFormat accessLogFormat() {
+		return options.valueOf(accessLogFormat);
+	}
+
+	/**
+	 * Gets the access log overflow option.
+	 *
+	 * @return Returns what to do with access log entries logged while the log's buffer is full.
+	 */
+	public OverflowPolicy accessLogOverflow() {
+		return options.valueOf(accessLogOverflow);
+	}
+
+	/**
+	 * Gets the access log buffer option.
+	 *
+	 * @return Returns the number of access log entries which may be waiting to be written.
+	 */
+	public int accessLogBuffer() {
+		return options.valueOf(accessLogBuffer);
+	}
+
 	/**
 	 * Gets the help flag option.
 	 *
@@ -168,4 +618,21 @@ public class CommandLineOptions {
 	public void printHelpOn(OutputStream sink) throws IOException {
 		parser.printHelpOn(sink);
 	}
+
+	/**
+	 * Converts names into the constants of an enum (such as {@link Engine}), ignoring case.
+	 *
+	 * @param <E> the type of the enum
+	 */
+	private static class UpperCaseConverter<E extends Enum<E>> extends EnumConverter<E> {
+
+		UpperCaseConverter(Class<E> type) {
+			super(type);
+		}
+
+		@Override
+		public E convert(String value) {
+			return super.convert(value.toUpperCase(Locale.ROOT));
+		}
+	}
 }
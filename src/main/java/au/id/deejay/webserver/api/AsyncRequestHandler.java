@@ -0,0 +1,37 @@
+package au.id.deejay.webserver.api;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link RequestHandler} which provides its responses asynchronously, so a handler waiting on slow I/O (e.g. a call
+ * to another service) doesn't hold a worker thread while it waits.
+ * <p>
+ * Servers wait for the response for at most the server's request timeout, after which a "504 Gateway Timeout" response
+ * is sent instead. Handlers which are too busy to take on a request may complete the stage with a {@link
+ * java.util.concurrent.RejectedExecutionException} (or cancel it), in which case a "503 Service Unavailable" response
+ * is sent.
+ *
+ * @author David Jessup
+ */
+public interface AsyncRequestHandler extends RequestHandler {
+
+	/**
+	 * Provides a response to a request asynchronously.
+	 *
+	 * @param request the request to provide a response for
+	 * @return Returns a stage which completes with the response to the request.
+	 */
+	CompletionStage<Response> handleAsync(Request request);
+
+	/**
+	 * Provides a response to a request, blocking until the asynchronous response is complete.
+	 *
+	 * @param request the request to provide a response for
+	 * @return Returns the response to the request.
+	 * @throws java.util.concurrent.CompletionException if the response could not be provided.
+	 */
+	@Override
+	default Response handle(Request request) {
+		return handleAsync(request).toCompletableFuture().join();
+	}
+}
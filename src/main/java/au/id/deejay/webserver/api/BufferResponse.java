@@ -0,0 +1,23 @@
+package au.id.deejay.webserver.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Response} whose body is already held in memory, in a {@link ByteBuffer}. Rather than copying the body
+ * through {@link #stream()}, writers may write the buffer straight to the client connection. When the buffer is a
+ * direct buffer this also avoids the body being copied into a temporary direct buffer by the channel.
+ *
+ * @author David Jessup
+ */
+public interface BufferResponse extends Response {
+
+	/**
+	 * Gets the response body.
+	 * <p>
+	 * Implementations should return a new, read-only view of the body for each invocation, positioned at the start of
+	 * the body, since the consumer is expected to advance the buffer's position as it writes it.
+	 *
+	 * @return Returns a buffer containing the response body.
+	 */
+	ByteBuffer body();
+}
@@ -0,0 +1,27 @@
+package au.id.deejay.webserver.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferResponse} whose head has already been encoded. Rather than serialising the status line and headers
+ * each time the response is sent, writers may write the encoded head to the client connection as is, followed by any
+ * header fields of their own (e.g. Date) and the body.
+ * <p>
+ * Since the encoded head must stay consistent with the response's status and headers, implementations should be
+ * immutable.
+ *
+ * @author David Jessup
+ */
+public interface EncodedResponse extends BufferResponse {
+
+	/**
+	 * Gets the encoded status line and header fields of the response, each ending with a CRLF. The empty line which
+	 * ends the head is not included, so writers can add header fields of their own.
+	 * <p>
+	 * Implementations should return a new, read-only view of the head for each invocation, positioned at its start,
+	 * since the consumer is expected to advance the buffer's position as it writes it.
+	 *
+	 * @return Returns a buffer containing the encoded head.
+	 */
+	ByteBuffer head();
+}
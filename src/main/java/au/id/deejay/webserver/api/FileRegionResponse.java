@@ -0,0 +1,37 @@
+package au.id.deejay.webserver.api;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link Response} whose body is a region of a file. Rather than copying the body through {@link #stream()}, writers
+ * may transfer the region straight from the file to the client connection (e.g. with {@link FileChannel#transferTo},
+ * which allows the operating system to send the file without copying it into user space).
+ *
+ * @author David Jessup
+ */
+public interface FileRegionResponse extends Response {
+
+	/**
+	 * Opens a {@link FileChannel} to the file containing the response body.
+	 * <p>
+	 * Implementations should return a new instance for each invocation, since the consumer is expected to close the
+	 * channel when they are finished with it.
+	 *
+	 * @return Returns a channel for reading the file.
+	 */
+	FileChannel channel();
+
+	/**
+	 * Gets the position within the file at which the response body starts.
+	 *
+	 * @return Returns the offset of the body within the file, in bytes.
+	 */
+	long position();
+
+	/**
+	 * Gets the length of the response body.
+	 *
+	 * @return Returns the number of bytes of the file to send, starting from {@link #position()}.
+	 */
+	long count();
+}
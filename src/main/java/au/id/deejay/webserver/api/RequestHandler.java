@@ -22,4 +22,13 @@ public interface RequestHandler {
 	 * @return Returns the response to the request.
 	 */
 	Response handle(Request request);
+
+	/**
+	 * Gets the name the handler's requests are counted under in the server's metrics.
+	 *
+	 * @return Returns the handler's name, which is the simple name of its class by default.
+	 */
+	default String name() {
+		return getClass().getSimpleName();
+	}
 }
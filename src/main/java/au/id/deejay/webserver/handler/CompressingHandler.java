@@ -0,0 +1,67 @@
+package au.id.deejay.webserver.handler;
+
+import au.id.deejay.webserver.api.AsyncRequestHandler;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.response.ResponseCompressor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A request handler which wraps another handler, compressing its responses with a {@link ResponseCompressor} when the
+ * client accepts it.
+ * <p>
+ * Responses from an {@link AsyncRequestHandler} are compressed once they complete, without waiting for them.
+ *
+ * @author David Jessup
+ */
+public class CompressingHandler implements AsyncRequestHandler {
+
+	private final RequestHandler handler;
+	private final ResponseCompressor compressor;
+
+	/**
+	 * Creates a new {@link CompressingHandler}.
+	 *
+	 * @param handler    the handler whose responses will be compressed
+	 * @param compressor the compressor to compress responses with
+	 */
+	public CompressingHandler(RequestHandler handler, ResponseCompressor compressor) {
+		if (handler == null || compressor == null) {
+			throw new IllegalArgumentException("Handler and compressor cannot be null");
+		}
+		this.handler = handler;
+		this.compressor = compressor;
+	}
+
+	@Override
+	public boolean canHandle(Request request) {
+		return handler.canHandle(request);
+	}
+
+	@Override
+	public Response handle(Request request) {
+		return compressor.compress(request, handler.handle(request));
+	}
+
+	/**
+	 * Counts requests under the name of the handler whose responses are compressed.
+	 *
+	 * @return Returns the wrapped handler's name.
+	 */
+	@Override
+	public String name() {
+		return handler.name();
+	}
+
+	@Override
+	public CompletionStage<Response> handleAsync(Request request) {
+		if (handler instanceof AsyncRequestHandler) {
+			CompletionStage<Response> response = ((AsyncRequestHandler) handler).handleAsync(request);
+			return response == null ? null : response.thenApply(result -> compressor.compress(request, result));
+		}
+		return CompletableFuture.completedFuture(handle(request));
+	}
+}
@@ -1,12 +1,27 @@
 package au.id.deejay.webserver.handler;
 
 import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.api.RequestHandler;
 import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.request.AcceptEncoding;
+import au.id.deejay.webserver.request.ByteRange;
+import au.id.deejay.webserver.request.ConditionalRequest;
+import au.id.deejay.webserver.request.RangeRequest;
+import au.id.deejay.webserver.response.CachedFileResponse;
 import au.id.deejay.webserver.response.DirectoryListingResponse;
 import au.id.deejay.webserver.response.ErrorResponse;
+import au.id.deejay.webserver.response.FileCache;
 import au.id.deejay.webserver.response.FileResponse;
+import au.id.deejay.webserver.response.HttpResponse;
+import au.id.deejay.webserver.response.MultipartRangeResponse;
+import au.id.deejay.webserver.response.NotModifiedResponse;
+import au.id.deejay.webserver.response.PartialFileResponse;
+import au.id.deejay.webserver.response.PrecompressedFileResponse;
+import au.id.deejay.webserver.response.PrecompressedFiles;
 import au.id.deejay.webserver.response.RedirectResponse;
 
 import java.io.File;
@@ -23,9 +38,13 @@ import java.util.List;
  */
 public class DocrootHandler implements RequestHandler {
 
+	private static final String[] NO_CODINGS = {};
+
 	private final File docroot;
 	private final List<String> indexFiles;
 	private final Boolean allowDirectoryListings;
+	private final FileCache fileCache;
+	private final PrecompressedFiles precompressedFiles;
 
 	/**
 	 * Creates a new handler serving files from the path provided. If a list of index file names is provided then when a
@@ -57,9 +76,29 @@ public class DocrootHandler implements RequestHandler {
 	 * @throws IllegalArgumentException if the docroot provided is not to a directory
 	 */
 	public DocrootHandler(File docroot, List<String> indexFiles, boolean allowDirectoryListings) {
+		this(docroot, indexFiles, allowDirectoryListings, null, null);
+	}
+
+	/**
+	 * Creates a new handler serving files from the directory provided, as per {@link #DocrootHandler(File, List,
+	 * boolean)}, which serves small files from a {@link FileCache} rather than reading them from disk on every
+	 * request, and serves precompressed copies of files to clients which accept them.
+	 *
+	 * @param docroot                the document root directory
+	 * @param indexFiles             the list of valid index file names
+	 * @param allowDirectoryListings if directory listings should be enabled
+	 * @param fileCache              the cache to serve files from, or null to always read files from disk
+	 * @param precompressedFiles     the record of files' precompressed copies, or null to only serve files as-is
+	 * @throws IllegalStateException    if the document root cannot be read by the server process.
+	 * @throws IllegalArgumentException if the docroot provided is not to a directory
+	 */
+	public DocrootHandler(File docroot, List<String> indexFiles, boolean allowDirectoryListings, FileCache fileCache,
+						  PrecompressedFiles precompressedFiles) {
 		this.docroot = docroot;
 		this.indexFiles = indexFiles;
 		this.allowDirectoryListings = allowDirectoryListings;
+		this.fileCache = fileCache;
+		this.precompressedFiles = precompressedFiles;
 
 		if (!this.docroot.canRead()) {
 			throw new IllegalStateException("Unable to read docroot: " + docroot.getPath());
@@ -87,7 +126,18 @@ public class DocrootHandler implements RequestHandler {
 	 * <p>
 	 * If the requested file does not exist a "404 Not Found" response will be sent.
 	 * <p>
-	 * If the requested file does exist it will be streamed back to the client via a {@link FileResponse}.
+	 * If the requested file does exist it will be streamed back to the client via a {@link FileResponse}, unless the
+	 * request is conditional (If-None-Match or If-Modified-Since) and the client's copy is current, in which case a
+	 * {@link NotModifiedResponse} is sent instead. Requests with a Range header are sent only the ranges of the file they
+	 * ask for, via a {@link PartialFileResponse} or {@link MultipartRangeResponse}.
+	 * <p>
+	 * If the handler has a {@link FileCache}, files held in the cache are served from memory via a {@link
+	 * CachedFileResponse} without checking the file system (beyond the cache's periodic revalidation). Range requests
+	 * are always served from disk.
+	 * <p>
+	 * If the handler has {@link PrecompressedFiles} and the requested file has a precompressed copy alongside it (e.g.
+	 * "style.css.gz") in a content coding the client accepts, the copy is sent in its place via a {@link
+	 * PrecompressedFileResponse}. Responses for files with precompressed copies have a "Vary: Accept-Encoding" header.
 	 * <p>
 	 * If the requested file is actually a directory the handler will check the request has a trailing slash, and if
 	 * not will send a {@link RedirectResponse} to redirect the client to the correct directory URL.
@@ -104,6 +154,11 @@ public class DocrootHandler implements RequestHandler {
 	public Response handle(Request request) {
 		File requestedFile = child(request.uri().getPath());
 
+		Response cachedResponse = cachedFileResponse(request, requestedFile);
+		if (cachedResponse != null) {
+			return cachedResponse;
+		}
+
 		if (!requestedFile.exists()) {
 			return ErrorResponse.NOT_FOUND_404;
 		}
@@ -113,8 +168,8 @@ public class DocrootHandler implements RequestHandler {
 			return handleDirectoryRequest(request, requestedFile);
 
 		} else if (requestedFile.isFile()) {
-			// Serve the file
-			return new FileResponse(requestedFile, request.version());
+			// Serve the file (which isn't cacheable, or it would have been served above)
+			return diskFileResponse(request, requestedFile);
 		} else {
 			return ErrorResponse.INTERNAL_SERVER_ERROR_500;
 		}
@@ -168,6 +223,100 @@ public class DocrootHandler implements RequestHandler {
 		return null;
 	}
 
+	/**
+	 * Serves a file from the cache if possible, otherwise from disk.
+	 *
+	 * @param request the request for the file
+	 * @param file    the file requested
+	 * @return Returns the response to send.
+	 */
+	private Response fileResponse(Request request, File file) {
+		Response cachedResponse = cachedFileResponse(request, file);
+		return cachedResponse != null ? cachedResponse : diskFileResponse(request, file);
+	}
+
+	/**
+	 * Serves a file from the cache, or a "304 Not Modified" response if the client already has the current version of
+	 * it.
+	 *
+	 * @param request the request for the file
+	 * @param file    the file requested
+	 * @return Returns the response to send, or null if the file must be served from disk.
+	 */
+	private Response cachedFileResponse(Request request, File file) {
+		if (fileCache == null || request.headers().contains("Range")) {
+			return null;
+		}
+
+		String[] codings = codings(file);
+		String coding = AcceptEncoding.preferred(request, codings);
+		File source = coding != null ? precompressedFiles.encodedFile(file, coding) : file;
+
+		CachedFileResponse response = fileCache.get(source, coding, codings.length > 0, request.version());
+
+		if (response != null && ConditionalRequest.notModified(request, response.etag(), response.lastModified())) {
+			return new NotModifiedResponse(response);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Serves a file from disk, the ranges of it requested, or a "304 Not Modified" response if the client already has
+	 * the current version of it.
+	 *
+	 * @param request the request for the file
+	 * @param file    the file requested
+	 * @return Returns the response to send.
+	 */
+	private Response diskFileResponse(Request request, File file) {
+		String[] codings = codings(file);
+		String coding = AcceptEncoding.preferred(request, codings);
+
+		FileResponse response;
+		if (coding != null) {
+			response = new PrecompressedFileResponse(precompressedFiles.encodedFile(file, coding), coding, request.version());
+		} else {
+			response = new FileResponse(file, request.version());
+			if (codings.length > 0) {
+				response.headers().set("Vary", "Accept-Encoding");
+			}
+		}
+
+		if (ConditionalRequest.notModified(request, response.etag(), response.lastModified())) {
+			return new NotModifiedResponse(response);
+		}
+
+		List<ByteRange> ranges = RangeRequest.ranges(request, response.count(), response.etag(), response.lastModified());
+
+		if (ranges == null) {
+			return response;
+		} else if (ranges.isEmpty()) {
+			return rangeNotSatisfiable(response);
+		} else if (ranges.size() == 1) {
+			return new PartialFileResponse(response, ranges.get(0));
+		} else {
+			return new MultipartRangeResponse(response, ranges);
+		}
+	}
+
+	/**
+	 * Gets the content codings a file has precompressed copies for.
+	 *
+	 * @param file the file
+	 * @return Returns the available codings, which are empty if precompressed copies aren't served.
+	 */
+	private String[] codings(File file) {
+		return precompressedFiles != null ? precompressedFiles.codings(file) : NO_CODINGS;
+	}
+
+	private Response rangeNotSatisfiable(FileResponse response) {
+		Headers headers = new HttpHeaders();
+		headers.set("Content-length", "0");
+		headers.set("Content-Range", "bytes */" + response.count());
+		return new HttpResponse(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE_416, headers, "", response.version());
+	}
+
 	private Response handleDirectoryRequest(Request request, File requestedFile) {
 		// Redirect requests for "/directory" to "/directory/"
 		if (uriDoesNotEndWithSlash(request.uri())) {
@@ -177,7 +326,7 @@ public class DocrootHandler implements RequestHandler {
 		if (indexFilesAreEnabled()) {
 			File indexFile = findIndexFile(requestedFile);
 			if (indexFile != null) {
-				return new FileResponse(indexFile, request.version());
+				return fileResponse(request, indexFile);
 			}
 		}
 
@@ -0,0 +1,71 @@
+package au.id.deejay.webserver.handler;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.response.HttpResponse;
+
+import java.io.IOException;
+
+/**
+ * A request handler which serves the server's {@link ServerMetrics} in the Prometheus text format when a GET request
+ * is made to "/metrics".
+ *
+ * @author David Jessup
+ */
+public class MetricsHandler implements RequestHandler {
+
+	/**
+	 * The path the metrics will be served from
+	 */
+	private static final String METRICS_PATH = "/metrics";
+
+	private final ServerMetrics metrics;
+
+	/**
+	 * Creates a new {@link MetricsHandler}.
+	 *
+	 * @param metrics the metrics to serve
+	 */
+	public MetricsHandler(ServerMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics cannot be null");
+		}
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Checks that the request is a GET request to /metrics.
+	 *
+	 * @param request the request to be handled.
+	 * @return Returns true if the request is a GET request to the metrics path
+	 */
+	@Override
+	public boolean canHandle(Request request) {
+		return request.method() == HttpMethod.GET && METRICS_PATH.equals(request.uri().getPath());
+	}
+
+	/**
+	 * Sends the current value of each metric.
+	 *
+	 * @param request the request to provide a response for
+	 * @return Returns a 200 OK response containing the metrics.
+	 */
+	@Override
+	public Response handle(Request request) {
+		StringBuilder body = new StringBuilder();
+		try {
+			metrics.writeTo(body);
+		} catch (IOException e) {
+			throw new ResponseException("Unable to write metrics", e);
+		}
+
+		Response response = new HttpResponse(HttpStatus.OK_200, body.toString(), request.version());
+		response.headers().set("Content-type", ServerMetrics.CONTENT_TYPE);
+		return response;
+	}
+}
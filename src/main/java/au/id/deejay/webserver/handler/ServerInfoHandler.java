@@ -1,6 +1,8 @@
 package au.id.deejay.webserver.handler;
 
 import au.id.deejay.webserver.api.*;
+import au.id.deejay.webserver.response.ConcurrencyLimiter;
+import au.id.deejay.webserver.response.FileCache;
 import au.id.deejay.webserver.response.HttpResponse;
 
 import java.text.MessageFormat;
@@ -24,6 +26,8 @@ public class ServerInfoHandler implements RequestHandler {
 	private int maxThreads;
 	private String docroot;
 	private long startTime;
+	private FileCache fileCache;
+	private ConcurrencyLimiter limiter;
 
 	/**
 	 * Creates a new {@link ServerInfoHandler}.
@@ -35,11 +39,30 @@ public class ServerInfoHandler implements RequestHandler {
 	 * @param startTime  the time the server was started (as reported by {@link System#currentTimeMillis()}
 	 */
 	public ServerInfoHandler(int port, int timeout, int maxThreads, String docroot, long startTime) {
+		this(port, timeout, maxThreads, docroot, startTime, null, null);
+	}
+
+	/**
+	 * Creates a new {@link ServerInfoHandler} which also reports the statistics of the server's file cache and its
+	 * current concurrency limit.
+	 *
+	 * @param port       the port the server is being run on
+	 * @param timeout    the client timeout, in seconds
+	 * @param maxThreads the maximum number of worker threads the server is configured to use
+	 * @param docroot    the path to the server's document root
+	 * @param startTime  the time the server was started (as reported by {@link System#currentTimeMillis()}
+	 * @param fileCache  the server's file cache, or null if it is disabled
+	 * @param limiter    the server's concurrency limiter, or null if it is disabled
+	 */
+	public ServerInfoHandler(int port, int timeout, int maxThreads, String docroot, long startTime, FileCache fileCache,
+							 ConcurrencyLimiter limiter) {
 		this.port = port;
 		this.timeout = timeout;
 		this.maxThreads = maxThreads;
 		this.docroot = docroot;
 		this.startTime = startTime;
+		this.fileCache = fileCache;
+		this.limiter = limiter;
 	}
 
 	/**
@@ -92,10 +115,39 @@ public class ServerInfoHandler implements RequestHandler {
 				"<th>Document root</th>" +
 				"<td>{3}</td>" +
 				"</tr>" +
+				"<tr>" +
+				"<th>File cache</th>" +
+				"<td>{8}</td>" +
+				"</tr>" +
+				"<tr>" +
+				"<th>Concurrency limit</th>" +
+				"<td>{9}</td>" +
+				"</tr>" +
 				"</table>";
 
-		return new HttpResponse(HttpStatus.OK_200,
-								MessageFormat.format(template, String.valueOf(port), timeout, maxThreads, docroot, upDays, upHours, upMins, upSecs),
-								request.version());
+		Response response = new HttpResponse(HttpStatus.OK_200,
+											 MessageFormat.format(template, String.valueOf(port), timeout, maxThreads, docroot, upDays, upHours, upMins,
+																  upSecs, fileCacheSummary(), concurrencyLimitSummary()),
+											 request.version());
+		response.headers().set("Content-type", "text/html");
+		return response;
+	}
+
+	private String concurrencyLimitSummary() {
+		if (limiter == null) {
+			return "Disabled";
+		}
+
+		return MessageFormat.format("{0} (up to {1}), {2} requests in flight", limiter.limit(), limiter.maxLimit(), limiter.inFlight());
+	}
+
+	private String fileCacheSummary() {
+		if (fileCache == null) {
+			return "Disabled";
+		}
+
+		return MessageFormat.format("{0} files ({1} bytes, of which {2} files ({3} bytes) off-heap), {4} hits, {5} misses, {6} evictions",
+									fileCache.size(), fileCache.bytes(), fileCache.offHeapSize(), fileCache.offHeapBytes(),
+									fileCache.hits(), fileCache.misses(), fileCache.evictions());
 	}
 }
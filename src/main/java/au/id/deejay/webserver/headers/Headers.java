@@ -2,15 +2,17 @@ package au.id.deejay.webserver.headers;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 /**
- * A collection of HTTP headers.
+ * A collection of HTTP headers. Iterating over the collection visits each {@link Header} in the order they were added,
+ * without copying the collection as {@link #headers()} does. The headers visited are immutable.
  *
  * @author David Jessup
  */
-public interface Headers {
+public interface Headers extends Iterable<Header> {
 
 	/**
 	 * Gets the number of headers in the collection.
@@ -146,6 +148,16 @@ public interface Headers {
 	@Nonnull
 	Set<String> names();
 
+	/**
+	 * Gets an iterator over the {@link Header}s in the collection, in the order they were added. The headers are
+	 * immutable, and the iterator does not support removal.
+	 *
+	 * @return Returns an iterator over the headers in the collection.
+	 */
+	@Nonnull
+	@Override
+	Iterator<Header> iterator();
+
 	/**
 	 * Gets an RFC2616-formatted version of all the headers in the collection. The order of the headers are output is
 	 * the same order they were added in.
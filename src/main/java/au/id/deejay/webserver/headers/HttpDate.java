@@ -0,0 +1,47 @@
+package au.id.deejay.webserver.headers;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Formats and parses the dates used in HTTP headers such as Last-Modified and If-Modified-Since (e.g. "Sun, 06 Nov
+ * 1994 08:49:37 GMT"), as specified in RFC7231.
+ *
+ * @author David Jessup
+ */
+public final class HttpDate {
+
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+			.withZone(ZoneOffset.UTC);
+
+	private HttpDate() {
+	}
+
+	/**
+	 * Formats a time as an HTTP date.
+	 *
+	 * @param epochMillis the time to format, in milliseconds since the epoch
+	 * @return Returns the formatted date, truncated to the second.
+	 */
+	public static String format(long epochMillis) {
+		return FORMAT.format(Instant.ofEpochMilli(epochMillis));
+	}
+
+	/**
+	 * Parses an HTTP date. Only the preferred format is supported; the obsolete RFC850 and asctime formats are treated
+	 * as invalid, which recipients are allowed to ignore.
+	 *
+	 * @param date the date to parse
+	 * @return Returns the time in milliseconds since the epoch, or -1 if the date is not valid.
+	 */
+	public static long parse(String date) {
+		try {
+			return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.trim())).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+}
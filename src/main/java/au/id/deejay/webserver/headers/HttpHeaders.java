@@ -136,6 +136,23 @@ public class HttpHeaders implements Headers {
 		return Collections.unmodifiableSet(headers.keySet());
 	}
 
+	@Nonnull
+	@Override
+	public Iterator<Header> iterator() {
+		Iterator<Header> modifiable = headers.values().iterator();
+		return new Iterator<Header>() {
+			@Override
+			public boolean hasNext() {
+				return modifiable.hasNext();
+			}
+
+			@Override
+			public Header next() {
+				return new UnmodifiableHttpHeader(modifiable.next());
+			}
+		};
+	}
+
 	@Override
 	public int hashCode() {
 		return headers().hashCode();
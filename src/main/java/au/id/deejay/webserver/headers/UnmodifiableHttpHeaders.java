@@ -2,6 +2,7 @@ package au.id.deejay.webserver.headers;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -128,6 +129,12 @@ public class UnmodifiableHttpHeaders implements Headers {
 		return origin.names();
 	}
 
+	@Nonnull
+	@Override
+	public Iterator<Header> iterator() {
+		return origin.iterator();
+	}
+
 	@Override
 	public int hashCode() {
 		return origin.hashCode();
@@ -0,0 +1,208 @@
+package au.id.deejay.webserver.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A buffered {@link OutputStream} which writes to a {@link WritableByteChannel}, typically a client's socket channel.
+ * Besides ordinary stream writes, it can transfer regions of files directly to the channel with {@link
+ * #transferFrom(FileChannel, long, long)}, avoiding copying file content through the Java heap.
+ * <p>
+ * Small writes are collected in a direct buffer, which is reused for the life of the stream. Buffers and large writes
+ * are sent to a {@link GatheringByteChannel} together with any data already buffered (e.g. a response head) in a single
+ * gathering write, rather than flushing the buffered data in a separate write first.
+ * <p>
+ * The channel may be in non-blocking mode, in which case writes block the calling thread until all the data has been
+ * accepted by the channel, waiting for the channel to become writable whenever the socket's send buffer is full.
+ * <p>
+ * Closing the stream flushes it and releases any resources used to wait on the channel, but leaves the channel itself
+ * open so it can continue to be used by the connection.
+ *
+ * @author David Jessup
+ */
+public class ChannelOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final WritableByteChannel channel;
+	private final long timeoutMillis;
+	private ByteBuffer buffer;
+	private Selector selector;
+
+	/**
+	 * Creates a new {@link ChannelOutputStream}.
+	 *
+	 * @param channel       the channel to write to
+	 * @param timeoutMillis the maximum time to wait for a non-blocking channel to become writable, in milliseconds
+	 */
+	public ChannelOutputStream(WritableByteChannel channel, long timeoutMillis) {
+		this.channel = channel;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ByteBuffer writeBuffer = buffer();
+		if (!writeBuffer.hasRemaining()) {
+			flushBuffer();
+		}
+		writeBuffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len >= BUFFER_SIZE) {
+			// Large writes bypass the buffer
+			write(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+
+		if (len > buffer().remaining()) {
+			flushBuffer();
+		}
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * Writes the remaining content of a buffer to the channel, after any data already buffered by the stream.
+	 *
+	 * @param source the buffer to write
+	 * @throws SocketTimeoutException if the channel does not become writable within the timeout.
+	 * @throws IOException            if there is a problem writing to the channel.
+	 */
+	public void write(ByteBuffer source) throws IOException {
+		if (buffer == null || buffer.position() == 0 || !(channel instanceof GatheringByteChannel)) {
+			flushBuffer();
+			writeFully(source);
+			return;
+		}
+
+		buffer.flip();
+		try {
+			ByteBuffer[] sources = {buffer, source};
+			while (buffer.hasRemaining() || source.hasRemaining()) {
+				if (((GatheringByteChannel) channel).write(sources) == 0) {
+					awaitWritable();
+				}
+			}
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Transfers a region of a file to the channel, after any data already buffered by the stream.
+	 *
+	 * @param file     the file to transfer from
+	 * @param position the position within the file to start from
+	 * @param count    the number of bytes to transfer
+	 * @throws EOFException           if the file ends before the whole region has been transferred.
+	 * @throws SocketTimeoutException if the channel does not become writable within the timeout.
+	 * @throws IOException            if there is a problem reading the file or writing to the channel.
+	 */
+	public void transferFrom(FileChannel file, long position, long count) throws IOException {
+		flushBuffer();
+
+		long offset = position;
+		long end = position + count;
+
+		while (offset < end) {
+			long transferred = file.transferTo(offset, end - offset, channel);
+			if (transferred > 0) {
+				offset += transferred;
+			} else if (offset >= file.size()) {
+				throw new EOFException("File was truncated while being transferred");
+			} else {
+				awaitWritable();
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	/**
+	 * Blocks until the channel is able to accept more data. Does nothing if the channel is in blocking mode.
+	 *
+	 * @throws SocketTimeoutException if the channel does not become writable within the timeout.
+	 * @throws IOException            if there is a problem waiting on the channel.
+	 */
+	public void awaitWritable() throws IOException {
+		if (!(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking()) {
+			return;
+		}
+
+		if (selector == null) {
+			selector = Selector.open();
+		}
+
+		SelectionKey key = ((SelectableChannel) channel).register(selector, SelectionKey.OP_WRITE);
+		try {
+			if (selector.select(timeoutMillis) == 0) {
+				throw new SocketTimeoutException("Timed out waiting for the client connection to become writable");
+			}
+		} finally {
+			// Flush the cancelled key so the channel can be registered again by the next wait
+			key.cancel();
+			selector.selectNow();
+		}
+	}
+
+	/**
+	 * Gets the channel the stream writes to.
+	 *
+	 * @return Returns the underlying channel.
+	 */
+	public WritableByteChannel channel() {
+		return channel;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (selector != null) {
+				selector.close();
+				selector = null;
+			}
+		}
+	}
+
+	private ByteBuffer buffer() {
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+		return buffer;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (buffer != null && buffer.position() > 0) {
+			buffer.flip();
+			try {
+				writeFully(buffer);
+			} finally {
+				buffer.clear();
+			}
+		}
+	}
+
+	private void writeFully(ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			if (channel.write(source) == 0) {
+				awaitWritable();
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package au.id.deejay.webserver.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which decodes an entity body sent with the "chunked" transfer coding (RFC7230 section 4.1)
+ * from another stream, and then reports the end of the stream. Chunk extensions and trailer fields are discarded.
+ * <p>
+ * Closing the stream does not close the underlying stream, since it is shared by every request on a connection.
+ *
+ * @author David Jessup
+ */
+public class ChunkedInputStream extends InputStream {
+
+	/**
+	 * The maximum length of a chunk size or trailer line.
+	 */
+	public static final int MAX_LINE_LENGTH = 4096;
+
+	/**
+	 * The maximum number of trailer fields accepted after the last chunk.
+	 */
+	public static final int MAX_TRAILERS = 100;
+
+	private final InputStream source;
+	private long remaining;
+	private boolean started;
+	private boolean finished;
+
+	/**
+	 * Creates a new {@link ChunkedInputStream}.
+	 *
+	 * @param source the stream to read the chunked body from
+	 */
+	public ChunkedInputStream(InputStream source) {
+		this.source = source;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+
+		int b = source.read();
+		if (b < 0) {
+			throw new EOFException("Connection was closed part way through a chunk");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+
+		int read = source.read(b, off, (int) Math.min(len, remaining));
+		if (read < 0) {
+			throw new EOFException("Connection was closed part way through a chunk");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return finished ? 0 : (int) Math.min(source.available(), remaining);
+	}
+
+	/**
+	 * Closes the stream, without closing the underlying stream.
+	 */
+	@Override
+	public void close() {
+		// The rest of the body is drained by the RequestReader before the next request is read
+	}
+
+	/**
+	 * Moves on to the next chunk if the current one has been read.
+	 *
+	 * @return Returns false once the last chunk has been read.
+	 */
+	private boolean nextChunk() throws IOException {
+		if (finished) {
+			return false;
+		}
+		if (remaining > 0) {
+			return true;
+		}
+
+		if (started && !readLine().isEmpty()) {
+			throw new IOException("Chunk data was not followed by a line break");
+		}
+		started = true;
+
+		remaining = chunkSize(readLine());
+		if (remaining == 0) {
+			readTrailers();
+			finished = true;
+			return false;
+		}
+		return true;
+	}
+
+	private static long chunkSize(String line) throws IOException {
+		// Ignore any chunk extensions
+		int semicolon = line.indexOf(';');
+		String size = (semicolon < 0 ? line : line.substring(0, semicolon)).trim();
+
+		if (size.isEmpty() || size.length() > 15) {
+			throw new IOException("Invalid chunk size: " + line);
+		}
+		try {
+			return Long.parseLong(size, 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid chunk size: " + line, e);
+		}
+	}
+
+	private void readTrailers() throws IOException {
+		for (int i = 0; i <= MAX_TRAILERS; i++) {
+			if (readLine().isEmpty()) {
+				return;
+			}
+		}
+		throw new IOException("Too many trailer fields");
+	}
+
+	/**
+	 * Reads a line terminated by either CRLF or LF, excluding the terminator.
+	 */
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = source.read()) != '\n') {
+			if (b < 0) {
+				throw new EOFException("Connection was closed part way through a chunked body");
+			}
+			if (line.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("Chunk size or trailer line is too long");
+			}
+			line.append((char) b);
+		}
+
+		int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r') {
+			line.setLength(length - 1);
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,77 @@
+package au.id.deejay.webserver.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * An {@link OutputStream} which encodes the data written to it with the "chunked" transfer coding (RFC7230 section
+ * 4.1), so a message body can be sent before its length is known.
+ * <p>
+ * Each write is sent as a single chunk. Closing the stream (or calling {@link #finish()}) writes the last chunk, which
+ * marks the end of the body, but does not close the underlying stream, so the connection can be reused.
+ *
+ * @author David Jessup
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+
+	private static final byte[] CRLF_BYTES = CRLF.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LAST_CHUNK = ("0" + CRLF + CRLF).getBytes(StandardCharsets.US_ASCII);
+
+	private boolean finished;
+
+	/**
+	 * Creates a new {@link ChunkedOutputStream}.
+	 *
+	 * @param outputStream the stream the encoded data will be written to
+	 */
+	public ChunkedOutputStream(OutputStream outputStream) {
+		super(outputStream);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("Cannot write to a finished chunked stream");
+		}
+		// An empty chunk would mark the end of the body
+		if (len == 0) {
+			return;
+		}
+
+		out.write((Integer.toHexString(len) + CRLF).getBytes(StandardCharsets.US_ASCII));
+		out.write(b, off, len);
+		out.write(CRLF_BYTES);
+	}
+
+	/**
+	 * Writes the last chunk, ending the body. Further writes are not allowed.
+	 *
+	 * @throws IOException if the last chunk cannot be written.
+	 */
+	public void finish() throws IOException {
+		if (!finished) {
+			finished = true;
+			out.write(LAST_CHUNK);
+		}
+	}
+
+	/**
+	 * Finishes the body and flushes the underlying stream, without closing it.
+	 *
+	 * @throws IOException if the last chunk cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		flush();
+	}
+}
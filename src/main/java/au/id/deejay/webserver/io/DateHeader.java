@@ -0,0 +1,76 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.headers.HttpDate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * Provides the encoded Date header field (RFC7231 section 7.1.1.2) for responses. Since the date only has a resolution
+ * of one second, it is formatted at most once per second, by the first response written in each second, and the
+ * encoded field is shared by every writer until the clock moves on.
+ *
+ * @author David Jessup
+ */
+final class DateHeader {
+
+	private static final DateHeader SHARED = new DateHeader(Clock.systemUTC());
+	private static final long MILLIS_PER_SECOND = 1000;
+
+	private final Clock clock;
+	private volatile EncodedDate current;
+
+	/**
+	 * Creates a new {@link DateHeader}.
+	 *
+	 * @param clock the clock to take the date from
+	 */
+	DateHeader(Clock clock) {
+		this.clock = clock;
+		current = new EncodedDate(Long.MIN_VALUE, null);
+	}
+
+	/**
+	 * Gets the {@link DateHeader} shared by all {@link ResponseWriter}s, which uses the system clock.
+	 *
+	 * @return Returns the shared instance.
+	 */
+	static DateHeader shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Gets the encoded header field for the current date, including the trailing CRLF. The array is shared, so must
+	 * not be modified.
+	 *
+	 * @return Returns the encoded Date header field.
+	 */
+	byte[] field() {
+		long second = Math.floorDiv(clock.millis(), MILLIS_PER_SECOND);
+
+		// Writers racing at the turn of a second may both format the new date, which is harmless
+		EncodedDate date = current;
+		if (date.second != second) {
+			String field = "Date: " + HttpDate.format(second * MILLIS_PER_SECOND) + CRLF;
+			date = new EncodedDate(second, field.getBytes(StandardCharsets.US_ASCII));
+			current = date;
+		}
+		return date.field;
+	}
+
+	/**
+	 * An encoded Date header field, and the second it was formatted for.
+	 */
+	private static final class EncodedDate {
+
+		private final long second;
+		private final byte[] field;
+
+		private EncodedDate(long second, byte[] field) {
+			this.second = second;
+			this.field = field;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.Header;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * Pre-encoded status lines and common header fields, so the heads of most responses can be written by copying byte
+ * constants rather than formatting and encoding strings for every response.
+ * <p>
+ * Header fields are matched by their exact name and value, so a header written with a different case is simply encoded
+ * as usual.
+ *
+ * @author David Jessup
+ */
+final class EncodedFields {
+
+	/**
+	 * The encoded "Transfer-Encoding: chunked" header field.
+	 */
+	static final byte[] CHUNKED = encode("Transfer-Encoding: chunked" + CRLF);
+
+	/**
+	 * The empty line which ends a response head.
+	 */
+	static final byte[] END_OF_HEAD = encode(CRLF);
+
+	private static final Map<HttpStatus, byte[]> HTTP_1_1_STATUS_LINES = statusLines(HttpVersion.HTTP_1_1);
+	private static final Map<HttpStatus, byte[]> HTTP_1_0_STATUS_LINES = statusLines(HttpVersion.HTTP_1_0);
+	private static final Map<String, Map<String, byte[]>> FIELDS = new HashMap<>();
+
+	static {
+		field("Content-type", "text/html", "text/html; charset=utf-8", "text/plain", "text/css", "application/javascript",
+			  "application/json", "image/png", "image/jpeg", "image/gif", "image/svg+xml", "image/x-icon", "font/woff",
+			  "font/woff2");
+		field("Connection", "keep-alive", "close");
+		field("Accept-Ranges", "bytes");
+		field("Vary", "Accept-Encoding");
+		field("Content-Encoding", "gzip", "deflate", "br");
+		field("Transfer-Encoding", "chunked");
+	}
+
+	private EncodedFields() {
+	}
+
+	/**
+	 * Gets the encoded status line for a status and HTTP version, including the trailing CRLF.
+	 *
+	 * @param version the HTTP version of the response
+	 * @param status  the status of the response
+	 * @return Returns the encoded status line. The array may be shared, so must not be modified.
+	 */
+	static byte[] statusLine(HttpVersion version, HttpStatus status) {
+		if (HttpVersion.HTTP_1_1.equals(version)) {
+			return HTTP_1_1_STATUS_LINES.get(status);
+		} else if (HttpVersion.HTTP_1_0.equals(version)) {
+			return HTTP_1_0_STATUS_LINES.get(status);
+		}
+		return encode(statusLineString(version, status));
+	}
+
+	/**
+	 * Gets the encoded header field for a header, including the trailing CRLF.
+	 *
+	 * @param header the header
+	 * @return Returns the encoded header field. The array may be shared, so must not be modified.
+	 */
+	static byte[] field(Header header) {
+		List<String> values = header.values();
+		if (values.size() == 1) {
+			Map<String, byte[]> fields = FIELDS.get(header.name());
+			byte[] field = fields != null ? fields.get(values.get(0)) : null;
+			if (field != null) {
+				return field;
+			}
+		}
+		return encode(header.toString() + CRLF);
+	}
+
+	private static void field(String name, String... values) {
+		Map<String, byte[]> fields = new HashMap<>();
+		for (String value : values) {
+			fields.put(value, encode(name + ": " + value + CRLF));
+		}
+		FIELDS.put(name, fields);
+	}
+
+	private static Map<HttpStatus, byte[]> statusLines(HttpVersion version) {
+		Map<HttpStatus, byte[]> lines = new EnumMap<>(HttpStatus.class);
+		for (HttpStatus status : HttpStatus.values()) {
+			lines.put(status, encode(statusLineString(version, status)));
+		}
+		return lines;
+	}
+
+	private static String statusLineString(HttpVersion version, HttpStatus status) {
+		return version.toString() + " " + status.code() + " " + status.description() + CRLF;
+	}
+
+	private static byte[] encode(String string) {
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+}
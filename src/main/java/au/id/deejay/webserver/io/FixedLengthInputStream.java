@@ -0,0 +1,74 @@
+package au.id.deejay.webserver.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which reads an entity body of a known length (as declared by a Content-length header) from
+ * another stream, and then reports the end of the stream.
+ * <p>
+ * Closing the stream does not close the underlying stream, since it is shared by every request on a connection.
+ *
+ * @author David Jessup
+ */
+public class FixedLengthInputStream extends InputStream {
+
+	private final InputStream source;
+	private long remaining;
+
+	/**
+	 * Creates a new {@link FixedLengthInputStream}.
+	 *
+	 * @param source the stream to read the body from
+	 * @param length the length of the body, in bytes
+	 */
+	public FixedLengthInputStream(InputStream source, long length) {
+		this.source = source;
+		this.remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+
+		int b = source.read();
+		if (b < 0) {
+			throw new EOFException("Connection was closed part way through a request body");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (remaining <= 0) {
+			return -1;
+		}
+
+		int read = source.read(b, off, (int) Math.min(len, remaining));
+		if (read < 0) {
+			throw new EOFException("Connection was closed part way through a request body");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(source.available(), remaining);
+	}
+
+	/**
+	 * Closes the stream, without closing the underlying stream.
+	 */
+	@Override
+	public void close() {
+		// The rest of the body is drained by the RequestReader before the next request is read
+	}
+}
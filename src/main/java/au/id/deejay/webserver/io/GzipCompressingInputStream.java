@@ -0,0 +1,110 @@
+package au.id.deejay.webserver.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * An {@link InputStream} which reads another stream and compresses it in the gzip format (RFC1952) as it is read. This
+ * is the reverse of {@link java.util.zip.GZIPInputStream}, and allows a body of unknown length to be compressed without
+ * reading all of it first.
+ *
+ * @author David Jessup
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+	/**
+	 * A minimal gzip header: magic number, the deflate compression method, and no flags, modification time or OS.
+	 */
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+	private static final int TRAILER_SIZE = 8;
+
+	private final InputStream source;
+	private final CRC32 crc;
+	private final Deflater deflater;
+	private final DeflaterInputStream deflated;
+
+	private byte[] header = HEADER;
+	private byte[] trailer;
+	private int position;
+
+	/**
+	 * Creates a new {@link GzipCompressingInputStream}.
+	 *
+	 * @param source the stream to compress
+	 * @param level  the compression level, from 1 (fastest) to 9 (smallest)
+	 */
+	public GzipCompressingInputStream(InputStream source, int level) {
+		this.source = source;
+		crc = new CRC32();
+		deflater = new Deflater(level, true);
+		deflated = new DeflaterInputStream(new CheckedInputStream(source, crc), deflater);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (header != null) {
+			int count = copy(header, b, off, len);
+			if (position == header.length) {
+				header = null;
+				position = 0;
+			}
+			return count;
+		}
+
+		if (trailer == null) {
+			int count = deflated.read(b, off, len);
+			if (count >= 0) {
+				return count;
+			}
+			trailer = trailer();
+		}
+
+		return position < trailer.length ? copy(trailer, b, off, len) : -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			source.close();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private int copy(byte[] from, byte[] to, int off, int len) {
+		int count = Math.min(len, from.length - position);
+		System.arraycopy(from, position, to, off, count);
+		position += count;
+		return count;
+	}
+
+	/**
+	 * Builds the gzip trailer: the CRC-32 and length (modulo 2^32) of the uncompressed data, both little-endian.
+	 */
+	private byte[] trailer() {
+		byte[] bytes = new byte[TRAILER_SIZE];
+		writeInt(bytes, 0, crc.getValue());
+		writeInt(bytes, 4, deflater.getBytesRead());
+		return bytes;
+	}
+
+	private static void writeInt(byte[] bytes, int offset, long value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (8 * i));
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.exception.RequestException;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeader;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.headers.UnmodifiableHttpHeaders;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable collection of request headers backed by the raw bytes of a request head, as parsed by a {@link
+ * RequestParser}.
+ * <p>
+ * Looking up a header by name compares the name against the raw header bytes, and only decodes the values of the
+ * matching header. The full set of {@link Header} objects is only built if the collection is enumerated.
+ *
+ * @author David Jessup
+ */
+class ParsedHeaders implements Headers {
+
+	private static final int MAX_CONTENT_LENGTH_DIGITS = 18;
+
+	private final byte[] head;
+	private final int[] slices;
+	private Headers decoded;
+
+	/**
+	 * Creates a new {@link ParsedHeaders} collection.
+	 *
+	 * @param head   the raw bytes of the request head
+	 * @param slices the offsets of each header within the head, as groups of four: the start and end of the header's
+	 *               name, followed by the start and end of its value
+	 */
+	ParsedHeaders(byte[] head, int[] slices) {
+		this.head = head;
+		this.slices = slices;
+	}
+
+	/**
+	 * Gets the value of the Content-length header. A request may repeat the header, but only with the same value.
+	 *
+	 * @return Returns the declared length of the entity body, or -1 if there is no Content-length header.
+	 * @throws RequestException if a header value is not a valid length, or the request has conflicting lengths.
+	 */
+	long contentLength() {
+		long length = -1;
+
+		for (int index = indexOf("Content-length", 0); index >= 0; index = indexOf("Content-length", index + 4)) {
+			long value = parseLength(slices[index + 2], slices[index + 3]);
+			if (length >= 0 && value != length) {
+				throw new RequestException("Conflicting Content-length values: " + length + " and " + value);
+			}
+			length = value;
+		}
+
+		return length;
+	}
+
+	private long parseLength(int from, int to) {
+		if (from == to || to - from > MAX_CONTENT_LENGTH_DIGITS) {
+			throw new RequestException("Invalid Content-length: " + decode(from, to));
+		}
+
+		long length = 0;
+		for (int i = from; i < to; i++) {
+			if (head[i] < '0' || head[i] > '9') {
+				throw new RequestException("Invalid Content-length: " + decode(from, to));
+			}
+			length = length * 10 + (head[i] - '0');
+		}
+		return length;
+	}
+
+	@Override
+	public int size() {
+		return decoded().size();
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return indexOf(key, 0) >= 0;
+	}
+
+	@CheckForNull
+	@Override
+	public String value(String key) {
+		List<String> values = values(key);
+		return values != null && !values.isEmpty() ? values.get(0) : null;
+	}
+
+	@CheckForNull
+	@Override
+	public List<String> values(String key) {
+		List<String> values = null;
+
+		for (int index = indexOf(key, 0); index >= 0; index = indexOf(key, index + 4)) {
+			if (values == null) {
+				values = new ArrayList<>(1);
+			}
+			addValues(values, slices[index + 2], slices[index + 3]);
+		}
+
+		return values != null ? Collections.unmodifiableList(values) : null;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers add(Header header) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers add(String key, String value) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers add(String key, String... values) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers set(Header header) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers set(String key, String value) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers set(String key, String... values) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this method is called.
+	 */
+	@Nonnull
+	@Override
+	public Headers remove(String key) {
+		throw new UnsupportedOperationException();
+	}
+
+	@CheckForNull
+	@Override
+	public Header header(String key) {
+		return decoded().header(key);
+	}
+
+	@Nonnull
+	@Override
+	public List<Header> headers() {
+		return decoded().headers();
+	}
+
+	@Nonnull
+	@Override
+	public Set<String> names() {
+		return decoded().names();
+	}
+
+	@Nonnull
+	@Override
+	public Iterator<Header> iterator() {
+		return decoded().iterator();
+	}
+
+	@Override
+	public int hashCode() {
+		return decoded().hashCode();
+	}
+
+	@SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+	@Override
+	public boolean equals(Object obj) {
+		return decoded().equals(obj);
+	}
+
+	@Nonnull
+	@Override
+	public String toString() {
+		return decoded().toString();
+	}
+
+	/**
+	 * Decodes every header into a conventional {@link Headers} collection, the first time it is needed.
+	 */
+	private Headers decoded() {
+		if (decoded == null) {
+			Headers headers = new HttpHeaders();
+			for (int index = 0; index < slices.length; index += 4) {
+				List<String> values = new ArrayList<>(1);
+				addValues(values, slices[index + 2], slices[index + 3]);
+				headers.add(new HttpHeader(decode(slices[index], slices[index + 1]), values));
+			}
+			decoded = new UnmodifiableHttpHeaders(headers);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Finds the next header with a name matching the key, ignoring case.
+	 *
+	 * @return Returns the index of the header's slices, or -1 if there are no further matching headers.
+	 */
+	private int indexOf(String key, int fromIndex) {
+		for (int index = fromIndex; index < slices.length; index += 4) {
+			if (nameMatches(slices[index], slices[index + 1], key)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private boolean nameMatches(int from, int to, String key) {
+		if (to - from != key.length()) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			if (toLowerCase(head[from + i]) != toLowerCase(key.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int toLowerCase(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+
+	/**
+	 * Splits a comma separated header value, adding each trimmed element to a list.
+	 */
+	private void addValues(List<String> values, int from, int to) {
+		int elementStart = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || head[i] == ',') {
+				values.add(decodeTrimmed(elementStart, i));
+				elementStart = i + 1;
+			}
+		}
+	}
+
+	private String decodeTrimmed(int from, int to) {
+		int start = from;
+		int end = to;
+		while (start < end && isWhitespace(head[start])) {
+			start++;
+		}
+		while (end > start && isWhitespace(head[end - 1])) {
+			end--;
+		}
+		return decode(start, end);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private String decode(int from, int to) {
+		return new String(head, from, to - from, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,88 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * A {@link Request} read from a client connection by a {@link RequestParser}.
+ * <p>
+ * Requests created with a stream of their body (rather than the body itself) read it lazily from the connection, so
+ * {@link #stream()} returns the same stream on every call, and the body can only be read once.
+ *
+ * @author David Jessup
+ */
+class ParsedRequest implements Request {
+
+	private final HttpMethod method;
+	private final URI uri;
+	private final HttpVersion version;
+	private final Headers headers;
+	private final byte[] body;
+	private final InputStream bodyStream;
+
+	/**
+	 * Creates a new {@link ParsedRequest}.
+	 *
+	 * @param method  the request method
+	 * @param uri     the request URI
+	 * @param version the HTTP version of the request
+	 * @param headers the request headers
+	 * @param body    the request's entity body
+	 */
+	ParsedRequest(HttpMethod method, URI uri, HttpVersion version, Headers headers, byte[] body) {
+		this(method, uri, version, headers, body, null);
+	}
+
+	/**
+	 * Creates a new {@link ParsedRequest} whose body is read from a stream.
+	 *
+	 * @param method     the request method
+	 * @param uri        the request URI
+	 * @param version    the HTTP version of the request
+	 * @param headers    the request headers
+	 * @param bodyStream a stream of the request's entity body
+	 */
+	ParsedRequest(HttpMethod method, URI uri, HttpVersion version, Headers headers, InputStream bodyStream) {
+		this(method, uri, version, headers, null, bodyStream);
+	}
+
+	private ParsedRequest(HttpMethod method, URI uri, HttpVersion version, Headers headers, byte[] body, InputStream bodyStream) {
+		this.method = method;
+		this.uri = uri;
+		this.version = version;
+		this.headers = headers;
+		this.body = body;
+		this.bodyStream = bodyStream;
+	}
+
+	@Override
+	public InputStream stream() {
+		return bodyStream != null ? bodyStream : new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public Headers headers() {
+		return headers;
+	}
+
+	@Override
+	public HttpVersion version() {
+		return version;
+	}
+
+	@Override
+	public HttpMethod method() {
+		return method;
+	}
+
+	@Override
+	public URI uri() {
+		return uri;
+	}
+}
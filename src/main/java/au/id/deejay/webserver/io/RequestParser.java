@@ -0,0 +1,458 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.exception.RequestException;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An incremental parser for HTTP request heads (the request line and headers), which works directly on the bytes in a
+ * {@link ByteBuffer}.
+ * <p>
+ * The parser is fed the contents of a connection's buffer as data arrives with {@link #parse(ByteBuffer)}, and resumes
+ * scanning from where it left off on each call. Rather than building strings for each line, it records the offsets of
+ * the method, URI, version, and each header name and value within the head. Once the head is complete it is copied out
+ * of the buffer in one piece, and headers are only decoded into strings when they are looked up (see {@link
+ * ParsedHeaders}).
+ * <p>
+ * A single parser is intended to be reused for every request read from a connection, and is not thread safe.
+ *
+ * @author David Jessup
+ */
+public class RequestParser {
+
+	/**
+	 * The default maximum size of a request head, in bytes.
+	 */
+	public static final int DEFAULT_MAX_HEAD_SIZE = 65536;
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	private static final byte[] HTTP_1_0 = HttpVersion.HTTP_1_0.toString().getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] HTTP_1_1 = HttpVersion.HTTP_1_1.toString().getBytes(StandardCharsets.US_ASCII);
+
+	private static final int REQUEST_LINE_SLICES = 6;
+	private static final int INITIAL_SLICES = REQUEST_LINE_SLICES + 4 * 16;
+
+	private final int maxHeadSize;
+
+	// Scanning state, relative to the start of the head in the buffer
+	private int scanned;
+	private int lineStart;
+	private int[] slices;
+	private int sliceCount;
+
+	// Time spent scanning the head in progress, and the size and parse time of the last head completed
+	private long parseNanos;
+	private int headSize;
+	private long headParseNanos;
+
+	// The parsed head, once complete
+	private HttpMethod method;
+	private URI uri;
+	private HttpVersion version;
+	private ParsedHeaders headers;
+
+	/**
+	 * Creates a new {@link RequestParser} which accepts request heads up to {@link #DEFAULT_MAX_HEAD_SIZE} bytes.
+	 */
+	public RequestParser() {
+		this(DEFAULT_MAX_HEAD_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link RequestParser}.
+	 *
+	 * @param maxHeadSize the maximum size of a request head in bytes, including the request line, headers, and the
+	 *                    terminating empty line
+	 */
+	public RequestParser(int maxHeadSize) {
+		this.maxHeadSize = maxHeadSize;
+		slices = new int[INITIAL_SLICES];
+	}
+
+	/**
+	 * Parses a request head from a buffer. The head is expected to start at the buffer's position, and the buffer's
+	 * limit marks the end of the data read so far.
+	 * <p>
+	 * If the head is incomplete the buffer is left untouched, and the method should be called again once more data has
+	 * been added to it. Callers may compact or reallocate the buffer between calls, so long as the unconsumed data
+	 * still starts at the buffer's position. Once the head is complete the buffer's position is advanced past it, so
+	 * the buffer is left positioned at the start of the request body (if any).
+	 * <p>
+	 * Once a head has been parsed, further calls return true without consuming any more data until the request has
+	 * been collected with {@link #request(byte[])}.
+	 *
+	 * @param buffer the buffer containing the request data, ready for reading
+	 * @return Returns true if a complete request head has been parsed.
+	 * @throws RequestException if the request head is malformed or exceeds the maximum head size.
+	 */
+	public boolean parse(ByteBuffer buffer) {
+		if (complete()) {
+			return true;
+		}
+
+		long start = System.nanoTime();
+		boolean complete;
+		try {
+			complete = scan(buffer);
+		} catch (RequestException e) {
+			// Don't carry the malformed lines over into the next attempt to parse a head
+			resetScan();
+			parseNanos = 0;
+			throw e;
+		}
+		parseNanos += System.nanoTime() - start;
+
+		if (complete) {
+			headParseNanos = parseNanos;
+			parseNanos = 0;
+		}
+		return complete;
+	}
+
+	private boolean scan(ByteBuffer buffer) {
+		if (scanned == 0) {
+			skipEmptyLines(buffer);
+		}
+
+		int start = buffer.position();
+		int available = Math.min(buffer.limit() - start, maxHeadSize);
+
+		while (scanned < available) {
+			byte b = buffer.get(start + scanned++);
+			if (b == '\n') {
+				if (parseLine(buffer, start, lineStart, scanned)) {
+					completeHead(buffer);
+					return true;
+				}
+				lineStart = scanned;
+			}
+		}
+
+		if (scanned >= maxHeadSize) {
+			throw new RequestException("Request head exceeds the maximum size of " + maxHeadSize + " bytes");
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if a complete request head has been parsed, and is waiting to be collected with {@link
+	 * #request(byte[])}.
+	 *
+	 * @return Returns true if a request head has been parsed.
+	 */
+	public boolean complete() {
+		return headers != null;
+	}
+
+	/**
+	 * Gets the size of the last request head parsed.
+	 *
+	 * @return Returns the size of the head in bytes, including the terminating empty line.
+	 */
+	public int headSize() {
+		return headSize;
+	}
+
+	/**
+	 * Gets the time spent parsing the last request head, across all the calls to {@link #parse(ByteBuffer)} it took.
+	 * Time spent waiting for the rest of the head to arrive between calls is not included.
+	 *
+	 * @return Returns the parse time in nanoseconds.
+	 */
+	public long parseNanos() {
+		return headParseNanos;
+	}
+
+	/**
+	 * Gets the declared length of the parsed request's entity body.
+	 *
+	 * @return Returns the value of the Content-length header, or -1 if the request does not have one.
+	 * @throws IllegalStateException if a request head has not been parsed.
+	 * @throws RequestException      if the Content-length header is not a valid length.
+	 */
+	public long contentLength() {
+		return parsedHeaders().contentLength();
+	}
+
+	/**
+	 * Checks if the parsed request declares a Transfer-Encoding for its entity body.
+	 *
+	 * @return Returns true if the request has a Transfer-Encoding header.
+	 * @throws IllegalStateException if a request head has not been parsed.
+	 * @throws RequestException      if the request also has a Content-length header, as the two headers would leave it
+	 *                               ambiguous where the body ends.
+	 */
+	public boolean hasTransferEncoding() {
+		ParsedHeaders parsed = parsedHeaders();
+		if (!parsed.contains("Transfer-Encoding")) {
+			return false;
+		}
+
+		if (parsed.contains("Content-length")) {
+			throw new RequestException("Request has both Transfer-Encoding and Content-length headers");
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the parsed request's entity body is sent with the chunked transfer coding, i.e. it has a
+	 * Transfer-Encoding header whose only coding is "chunked".
+	 *
+	 * @return Returns true if the request body is chunked.
+	 * @throws IllegalStateException if a request head has not been parsed.
+	 */
+	public boolean isChunked() {
+		List<String> codings = parsedHeaders().values("Transfer-Encoding");
+		return codings != null && codings.size() == 1 && "chunked".equalsIgnoreCase(codings.get(0).trim());
+	}
+
+	/**
+	 * Creates a {@link Request} from the parsed head and the provided entity body, and resets the parser ready to
+	 * parse the next request.
+	 *
+	 * @param body the request's entity body
+	 * @return Returns the parsed request.
+	 * @throws IllegalStateException if a request head has not been parsed.
+	 */
+	public Request request(byte[] body) {
+		return reset(new ParsedRequest(method, uri, version, parsedHeaders(), body));
+	}
+
+	/**
+	 * Creates a {@link Request} from the parsed head and a stream of its entity body, which will be read lazily, and
+	 * resets the parser ready to parse the next request.
+	 *
+	 * @param body a stream of the request's entity body
+	 * @return Returns the parsed request.
+	 * @throws IllegalStateException if a request head has not been parsed.
+	 */
+	public Request request(InputStream body) {
+		return reset(new ParsedRequest(method, uri, version, parsedHeaders(), body));
+	}
+
+	private Request reset(Request request) {
+		method = null;
+		uri = null;
+		version = null;
+		headers = null;
+
+		return request;
+	}
+
+	private ParsedHeaders parsedHeaders() {
+		if (!complete()) {
+			throw new IllegalStateException("A request head has not been parsed");
+		}
+		return headers;
+	}
+
+	/**
+	 * Skips over any empty lines preceding the request line, which clients may send after a request body.
+	 */
+	private static void skipEmptyLines(ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get(buffer.position());
+			if (b != '\r' && b != '\n') {
+				return;
+			}
+			buffer.position(buffer.position() + 1);
+		}
+	}
+
+	/**
+	 * Parses a single line of the head.
+	 *
+	 * @return Returns true if the line was the empty line terminating the head.
+	 */
+	private boolean parseLine(ByteBuffer buffer, int start, int from, int to) {
+		// Exclude the line terminator, which may be either CRLF or LF
+		int end = to - 1;
+		if (end > from && buffer.get(start + end - 1) == '\r') {
+			end--;
+		}
+
+		if (sliceCount == 0) {
+			parseRequestLine(buffer, start, from, end);
+			return false;
+		}
+
+		if (end == from) {
+			return true;
+		}
+
+		parseHeaderLine(buffer, start, from, end);
+		return false;
+	}
+
+	private void parseRequestLine(ByteBuffer buffer, int start, int from, int end) {
+		int methodEnd = indexOf(buffer, start, from, end, ' ');
+		int uriStart = skipWhitespace(buffer, start, methodEnd, end);
+		int uriEnd = indexOf(buffer, start, uriStart, end, ' ');
+		int versionStart = skipWhitespace(buffer, start, uriEnd, end);
+		int versionEnd = trimEnd(buffer, start, versionStart, end);
+
+		if (methodEnd == from || uriEnd == end || versionStart == versionEnd) {
+			throw new RequestException("Invalid request line, must be in the format \"Method Request-URI HTTP-Version\" as specified in RFC2616: "
+											   + decode(buffer, start, from, end));
+		}
+
+		addSlice(from, methodEnd);
+		addSlice(uriStart, uriEnd);
+		addSlice(versionStart, versionEnd);
+	}
+
+	private void parseHeaderLine(ByteBuffer buffer, int start, int from, int end) {
+		if (isWhitespace(buffer.get(start + from))) {
+			throw new RequestException("Folded (multi-line) header values are not supported: " + decode(buffer, start, from, end));
+		}
+
+		int colon = indexOf(buffer, start, from, end, ':');
+		int nameEnd = trimEnd(buffer, start, from, colon);
+
+		if (colon == end || nameEnd == from) {
+			throw new RequestException("Malformed header: " + decode(buffer, start, from, end));
+		}
+
+		int valueStart = skipWhitespace(buffer, start, colon + 1, end);
+		addSlice(from, nameEnd);
+		addSlice(valueStart, trimEnd(buffer, start, valueStart, end));
+	}
+
+	/**
+	 * Copies the completed head out of the buffer and decodes the request line.
+	 */
+	private void completeHead(ByteBuffer buffer) {
+		byte[] head = new byte[scanned];
+		buffer.get(head);
+		headSize = scanned;
+
+		try {
+			method = decodeMethod(head, slices[0], slices[1]);
+			uri = decodeUri(head, slices[2], slices[3]);
+			version = decodeVersion(head, slices[4], slices[5]);
+			headers = new ParsedHeaders(head, Arrays.copyOfRange(slices, REQUEST_LINE_SLICES, sliceCount));
+		} finally {
+			resetScan();
+		}
+	}
+
+	private void resetScan() {
+		scanned = 0;
+		lineStart = 0;
+		sliceCount = 0;
+	}
+
+	private static HttpMethod decodeMethod(byte[] head, int from, int to) {
+		for (HttpMethod candidate : METHODS) {
+			if (equalsAscii(head, from, to, candidate.name())) {
+				return candidate;
+			}
+		}
+		throw new RequestException("Unsupported request method: " + new String(head, from, to - from, StandardCharsets.UTF_8));
+	}
+
+	private static URI decodeUri(byte[] head, int from, int to) {
+		try {
+			return new URI(new String(head, from, to - from, StandardCharsets.UTF_8));
+		} catch (URISyntaxException e) {
+			throw new RequestException("Invalid request URI", e);
+		}
+	}
+
+	private static HttpVersion decodeVersion(byte[] head, int from, int to) {
+		if (equalsBytes(head, from, to, HTTP_1_1)) {
+			return HttpVersion.HTTP_1_1;
+		} else if (equalsBytes(head, from, to, HTTP_1_0)) {
+			return HttpVersion.HTTP_1_0;
+		}
+
+		try {
+			return new HttpVersion(new String(head, from, to - from, StandardCharsets.UTF_8));
+		} catch (IllegalArgumentException e) {
+			throw new RequestException("Invalid HTTP version", e);
+		}
+	}
+
+	private static boolean equalsAscii(byte[] bytes, int from, int to, String value) {
+		if (to - from != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (bytes[from + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equalsBytes(byte[] bytes, int from, int to, byte[] value) {
+		if (to - from != value.length) {
+			return false;
+		}
+		for (int i = 0; i < value.length; i++) {
+			if (bytes[from + i] != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addSlice(int from, int to) {
+		if (sliceCount + 2 > slices.length) {
+			slices = Arrays.copyOf(slices, slices.length * 2);
+		}
+		slices[sliceCount++] = from;
+		slices[sliceCount++] = to;
+	}
+
+	/**
+	 * Finds the first occurrence of a character in a line.
+	 *
+	 * @return Returns the offset of the character, or the end of the line if it was not found.
+	 */
+	private static int indexOf(ByteBuffer buffer, int start, int from, int end, char c) {
+		int i = from;
+		while (i < end && buffer.get(start + i) != c) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipWhitespace(ByteBuffer buffer, int start, int from, int end) {
+		int i = from;
+		while (i < end && isWhitespace(buffer.get(start + i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int trimEnd(ByteBuffer buffer, int start, int from, int end) {
+		int i = end;
+		while (i > from && isWhitespace(buffer.get(start + i - 1))) {
+			i--;
+		}
+		return i;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private static String decode(ByteBuffer buffer, int start, int from, int end) {
+		byte[] bytes = new byte[end - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + from + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -2,26 +2,42 @@ package au.id.deejay.webserver.io;
 
 import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.exception.RequestException;
-import au.id.deejay.webserver.headers.Header;
-import au.id.deejay.webserver.headers.Headers;
-import au.id.deejay.webserver.headers.HttpHeader;
-import au.id.deejay.webserver.headers.HttpHeaders;
-import au.id.deejay.webserver.request.HttpRequest;
-import au.id.deejay.webserver.request.RequestLine;
-import org.apache.commons.io.IOUtils;
 
 import java.io.*;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
  * Reads {@link Request}s from an {@link InputStream}.
+ * <p>
+ * Data is read from the stream into a buffer which is kept for the life of the reader, and parsed with a {@link
+ * RequestParser}. Any bytes read beyond the end of one request (e.g. from pipelined requests) are retained for the
+ * next call to {@link #readRequest()}, so a single reader should be used for all requests on a connection.
+ * <p>
+ * Request bodies aren't read along with the request head. Instead each request's {@link Request#stream()} reads its
+ * body lazily from the connection (decoding it if it is chunked), so large bodies can be streamed by handlers rather
+ * than held in memory. Any part of a body left unread by the handler is skipped before the next request is read, or
+ * can be discarded up front with {@link #drain()}.
  *
  * @author David Jessup
  */
 public class RequestReader extends Reader {
 
-	private InputStream inputStream;
+	/**
+	 * The largest amount of unread request body which {@link #drain()} will discard to keep a connection open.
+	 */
+	public static final long MAX_DRAIN_SIZE = 1048576;
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	private static final byte[] EMPTY_BODY = new byte[0];
+
+	private final InputStream inputStream;
+	private final InputStream bufferedStream;
+	private final RequestParser parser;
+	private ByteBuffer buffer;
+	private InputStream body;
+	private long requestSize;
 
 	/**
 	 * Constructs a new {@link RequestReader} that deserialises the provided {@link InputStream} in {@link Request}
@@ -31,6 +47,11 @@ public class RequestReader extends Reader {
 	 */
 	public RequestReader(InputStream inputStream) {
 		this.inputStream = inputStream;
+
+		parser = new RequestParser();
+		buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		buffer.flip();
+		bufferedStream = new BufferedStream();
 	}
 
 	@Override
@@ -51,67 +72,188 @@ public class RequestReader extends Reader {
 	 * @throws SocketTimeoutException if the socket connection times out while waiting for data. This can happen as
 	 *                                part of normal operation when reading from a "keep-alive" connection, or due to
 	 *                                abnormal conditions like a broken network connection.
+	 * @throws EOFException           if the input stream ended cleanly before the start of a new request, such as
+	 *                                when a client closes a "keep-alive" connection.
 	 */
-	public Request readRequest() throws SocketTimeoutException {
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(inputStream));
-
+	public Request readRequest() throws SocketTimeoutException, EOFException {
 		try {
-			RequestLine requestLine = readRequestLine(inputReader);
-			Headers headers = readHeaders(inputReader);
+			skipBody(Long.MAX_VALUE);
 
-			// TODO: Full entity-body support as per RFC2616.
-			String body = "";
-			if (headers.contains("Content-length") || headers.contains("Transfer-Encoding")) {
-				body = readBody(inputReader);
+			while (!parser.parse(buffer)) {
+				fill();
 			}
 
-			return new HttpRequest(requestLine, headers, body);
-		} catch (SocketTimeoutException e) {
+			body = body();
+			requestSize = parser.headSize() + Math.max(parser.hasTransferEncoding() ? 0 : parser.contentLength(), 0);
+			return body != null ? parser.request(body) : parser.request(EMPTY_BODY);
+		} catch (SocketTimeoutException | EOFException | RequestException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new RequestException("Unable to parse input stream into a Request object.", e);
 		}
 	}
 
-	private RequestLine readRequestLine(BufferedReader inputReader) throws IOException {
-		return new RequestLine(inputReader.readLine());
+	/**
+	 * Gets the size of the last request read: the size of its head, and the declared length of its body. The bodies of
+	 * chunked requests aren't counted, as their length isn't known until they have been read.
+	 *
+	 * @return Returns the request size in bytes.
+	 */
+	public long requestSize() {
+		return requestSize;
 	}
 
-	// TODO: support multi-line header values (additional lines start with a space or tab character)
-	private Headers readHeaders(BufferedReader inputReader) throws IOException {
-		Headers headers = new HttpHeaders();
+	/**
+	 * Gets the time spent parsing the head of the last request read, excluding time spent waiting for it to arrive.
+	 *
+	 * @return Returns the parse time in nanoseconds.
+	 */
+	public long parseNanos() {
+		return parser.parseNanos();
+	}
 
-		// Subsequent lines are request headers until a blank line is encountered
-		if (inputReader.ready()) {
-			String line = inputReader.readLine();
-			while (line != null && !"".equals(line)) {
-				headers.add(parseHeaderLine(line));
-				line = inputReader.readLine();
+	/**
+	 * Reads more data from the input stream into the buffer, retaining any unconsumed data.
+	 */
+	private void fill() throws IOException {
+		if (buffer.position() > 0 && (!buffer.hasRemaining() || buffer.limit() == buffer.capacity())) {
+			buffer.compact();
+			buffer.flip();
+		} else if (buffer.limit() == buffer.capacity()) {
+			growBuffer();
+		}
+
+		int read = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.limit(), buffer.capacity() - buffer.limit());
+
+		if (read < 0) {
+			if (buffer.hasRemaining()) {
+				throw new RequestException("Connection was closed part way through a request");
 			}
+			throw new EOFException("Connection was closed");
+		}
+
+		buffer.limit(buffer.limit() + read);
+	}
+
+	private void growBuffer() {
+		// The parser will reject any head that grows beyond its maximum size, so this won't grow indefinitely
+		ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+		grown.put(buffer);
+		grown.flip();
+		buffer = grown;
+	}
+
+	/**
+	 * Checks if the head of another request has already been read into the buffer, as happens when a client pipelines
+	 * its requests, so that {@link #readRequest()} will return it without waiting for more data from the client.
+	 *
+	 * @return Returns true if a complete request head is buffered, or false if reading the next request may block.
+	 */
+	public boolean hasBufferedRequest() {
+		if (body != null) {
+			// The rest of the last request's body needs to be read first
+			return false;
+		}
+
+		try {
+			return parser.parse(buffer);
+		} catch (RequestException e) {
+			// The parser has discarded its progress, so readRequest() parses the head again and reports the error
+			return true;
 		}
+	}
 
-		return headers;
+	/**
+	 * Discards any part of the last request's body which hasn't been read, so the connection is ready for the next
+	 * request. Bodies with more than {@link #MAX_DRAIN_SIZE} bytes left unread aren't discarded, since it would be
+	 * cheaper to close the connection than to keep reading from it.
+	 *
+	 * @return Returns true if the body was discarded, or false if the connection should be closed instead.
+	 */
+	public boolean drain() {
+		try {
+			return skipBody(MAX_DRAIN_SIZE);
+		} catch (IOException e) {
+			return false;
+		}
 	}
 
-	private String readBody(BufferedReader inputReader) throws IOException {
-		return IOUtils.toString(inputReader);
+	/**
+	 * Skips the unread part of the last request's body, up to a limit.
+	 *
+	 * @return Returns true if the end of the body was reached.
+	 */
+	private boolean skipBody(long limit) throws IOException {
+		if (body == null) {
+			return true;
+		}
+
+		byte[] discard = new byte[INITIAL_BUFFER_SIZE];
+		long skipped = 0;
+		while (skipped <= limit) {
+			int read = body.read(discard);
+			if (read < 0) {
+				body = null;
+				return true;
+			}
+			skipped += read;
+		}
+		return false;
 	}
 
-	private Header parseHeaderLine(String line) {
-		int splitPos = line.indexOf(':');
+	/**
+	 * Creates a stream of the parsed request's body.
+	 *
+	 * @return Returns the body stream, or null if the request has no body.
+	 */
+	private InputStream body() {
+		if (parser.hasTransferEncoding()) {
+			if (!parser.isChunked()) {
+				throw new RequestException("Request bodies with a Transfer-Encoding other than chunked are not supported");
+			}
+			return new ChunkedInputStream(bufferedStream);
+		}
+
+		long contentLength = parser.contentLength();
+		return contentLength > 0 ? new FixedLengthInputStream(bufferedStream, contentLength) : null;
+	}
+
+	/**
+	 * Reads from the reader's buffer, refilling it from the input stream as needed, so request bodies are read from
+	 * the same data as the request heads preceding them.
+	 */
+	private class BufferedStream extends InputStream {
 
-		if (splitPos == -1) {
-			throw new IllegalArgumentException("Malformed header: " + line);
+		@Override
+		public int read() throws IOException {
+			if (!buffer.hasRemaining()) {
+				fill();
+			}
+			return buffer.get() & 0xFF;
 		}
 
-		String name = line.substring(0, splitPos).trim();
-		String[] values = line.substring(splitPos + 1, line.length())
-				.split(",");
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
 
-		for (int i = 0; i < values.length; i++) {
-			values[i] = values[i].trim();
+			if (!buffer.hasRemaining()) {
+				if (len >= buffer.capacity()) {
+					// Large reads bypass the buffer
+					return inputStream.read(b, off, len);
+				}
+				fill();
+			}
+
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
 		}
 
-		return new HttpHeader(name, values);
+		@Override
+		public int available() throws IOException {
+			return buffer.remaining() + inputStream.available();
+		}
 	}
 }
@@ -1,6 +1,13 @@
 package au.id.deejay.webserver.io;
 
+import au.id.deejay.webserver.api.BufferResponse;
+import au.id.deejay.webserver.api.EncodedResponse;
+import au.id.deejay.webserver.api.FileRegionResponse;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
 import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.headers.Headers;
 import au.id.deejay.webserver.exception.ResponseException;
 import org.apache.commons.io.IOUtils;
 
@@ -8,62 +15,252 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import static au.id.deejay.webserver.MessageConstants.CRLF;
 
 /**
  * Writes {@link Response}s to an {@link OutputStream}.
+ * <p>
+ * When writing to a {@link ChannelOutputStream}, the bodies of {@link FileRegionResponse}s are transferred directly
+ * from the file to the underlying channel, and the bodies of {@link BufferResponse}s are written straight from their
+ * buffers, instead of being copied through the response's input stream. The response head is written in a single
+ * write, so a buffered stream can send it together with the start of the body. The heads of {@link EncodedResponse}s
+ * are written as they were encoded, and the status lines and common header fields of other responses are copied from
+ * pre-encoded constants.
+ * <p>
+ * Every response is sent with a Date header, and a Server header if the writer has been given a server name.
+ * <p>
+ * HTTP/1.1 responses with a body but no Content-length (or Transfer-Encoding) header are sent with the "chunked"
+ * transfer coding, so handlers can stream generated content without knowing its length in advance, and the connection
+ * can still be reused afterwards.
  *
  * @author David Jessup
  */
 public class ResponseWriter extends Writer {
 
+	/**
+	 * The Server header value used by default.
+	 */
+	public static final String DEFAULT_SERVER_NAME = "java-webserver";
+
+	private static final String CONTENT_LENGTH = "Content-length";
+	private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+	private static final String DATE = "Date";
+	private static final String SERVER = "Server";
+
 	private OutputStream outputStream;
+	private final DateHeader dateHeader;
+	private final byte[] serverField;
+	private final HeadBuffer head;
+	private long bytesWritten;
+	private long bodyStart;
 
 	/**
 	 * Creates a new {@link ResponseWriter} that will stream {@link Response} objects to the provided {@link
-	 * OutputStream}.
+	 * OutputStream}, identifying the server as {@value #DEFAULT_SERVER_NAME}.
 	 *
 	 * @param outputStream the output stream {@link Response}s will be written to.
 	 */
 	public ResponseWriter(OutputStream outputStream) {
+		this(outputStream, DEFAULT_SERVER_NAME);
+	}
+
+	/**
+	 * Creates a new {@link ResponseWriter} that will stream {@link Response} objects to the provided {@link
+	 * OutputStream}.
+	 *
+	 * @param outputStream the output stream {@link Response}s will be written to.
+	 * @param serverName   the Server header value to send with each response, or null (or empty) to omit the header
+	 */
+	public ResponseWriter(OutputStream outputStream, String serverName) {
+		this(outputStream, serverName, DateHeader.shared());
+	}
+
+	/**
+	 * Creates a new {@link ResponseWriter} which takes the Date header from the provided {@link DateHeader}.
+	 */
+	ResponseWriter(OutputStream outputStream, String serverName, DateHeader dateHeader) {
 		super(outputStream);
 		this.outputStream = outputStream;
+		this.dateHeader = dateHeader;
+		serverField = serverName == null || serverName.isEmpty()
+				? null
+				: (SERVER + ": " + serverName + CRLF).getBytes(StandardCharsets.UTF_8);
+		head = new HeadBuffer();
 	}
 
 	/**
-	 * Writes a {@link Response} to the output stream.
+	 * Writes a {@link Response} to the output stream, and flushes the stream.
 	 *
 	 * @param response the response to write
 	 */
 	public void writeResponse(Response response) {
+		writeResponse(response, true);
+	}
+
+	/**
+	 * Writes a {@link Response} to the output stream, optionally without flushing it. Responses to pipelined requests
+	 * can be written without flushing, so they are sent to the client together once the last of them is flushed.
+	 *
+	 * @param response the response to write
+	 * @param flush    whether to flush the stream once the response has been written
+	 */
+	public void writeResponse(Response response, boolean flush) {
 		try {
-			writeStatusLine(response);
-			writeHeaders(response);
-			writeBody(response);
+			boolean chunked = false;
+			bodyStart = bytesWritten;
+			head.reset();
+			if (response instanceof EncodedResponse) {
+				head.put(((EncodedResponse) response).head());
+			} else {
+				chunked = isChunked(response);
+				encodeHead(response, chunked, head);
+			}
+			writeHead(response);
+			bodyStart = bytesWritten;
+			writeBody(response, chunked);
+			if (flush) {
+				flush();
+			}
 		} catch (IOException e) {
 			throw new ResponseException("Failed to write response", e);
 		}
 	}
 
-	private void writeStatusLine(Response response) throws IOException {
-		write(statusLine(response));
+	/**
+	 * Gets the number of bytes of the responses written so far: their heads and bodies, not counting the framing of
+	 * chunked bodies. Callers can find the size of a response from the difference before and after writing it.
+	 *
+	 * @return Returns the number of bytes written.
+	 */
+	public long bytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Gets the size of the body of the last response written (or of as much of it as was written, if writing it
+	 * failed), not counting the framing of a chunked body.
+	 *
+	 * @return Returns the number of bytes of the last response's body written.
+	 */
+	public long bodySize() {
+		return bytesWritten - bodyStart;
+	}
+
+	/**
+	 * Checks if a response will be sent with the chunked transfer coding, which is used for HTTP/1.1 responses with a
+	 * body whose length isn't declared.
+	 *
+	 * @param response the response
+	 * @return Returns true if the response body will be chunked.
+	 */
+	public static boolean isChunked(Response response) {
+		Headers headers = response.headers();
+		return HttpVersion.HTTP_1_1.compareTo(response.version()) <= 0
+				&& hasBody(response)
+				&& !headers.contains(CONTENT_LENGTH)
+				&& !headers.contains(TRANSFER_ENCODING);
+	}
+
+	/**
+	 * Checks if the client will be able to tell where a response ends without the connection being closed, i.e. that
+	 * it has no body, declares its length or is chunked. Connections must be closed after sending any other response.
+	 *
+	 * @param response the response
+	 * @return Returns true if the end of the response is delimited.
+	 */
+	public static boolean isDelimited(Response response) {
+		Headers headers = response.headers();
+		return !hasBody(response)
+				|| headers.contains(CONTENT_LENGTH)
+				|| headers.contains(TRANSFER_ENCODING)
+				|| isChunked(response);
+	}
+
+	/**
+	 * Informational, "204 No Content" and "304 Not Modified" responses never have a body.
+	 */
+	private static boolean hasBody(Response response) {
+		int code = response.status().code();
+		return code >= 200 && code != HttpStatus.NO_CONTENT_204.code() && code != HttpStatus.NOT_MODIFIED_304.code();
 	}
 
-	private void writeHeaders(Response response) throws IOException {
-		write(response.headers().toString());
-		write(CRLF);
+	/**
+	 * Encodes the status line and header fields of a response, the way they would be written by a {@link
+	 * ResponseWriter}. The Date and Server header fields added by the writer, and the empty line which ends the head,
+	 * are not included.
+	 *
+	 * @param response the response
+	 * @return Returns the encoded status line and header fields.
+	 */
+	public static byte[] encodeHead(Response response) {
+		HeadBuffer encoded = new HeadBuffer();
+		encodeHead(response, isChunked(response), encoded);
+		return encoded.toByteArray();
 	}
 
-	private void writeBody(Response response) throws IOException {
-		InputStream responseStream = response.stream();
-		IOUtils.copy(responseStream, outputStream);
-		responseStream.close();
+	private static void encodeHead(Response response, boolean chunked, HeadBuffer encoded) {
+		encoded.put(EncodedFields.statusLine(response.version(), response.status()));
+		for (Header header : response.headers()) {
+			encoded.put(EncodedFields.field(header));
+		}
+		if (chunked) {
+			encoded.put(EncodedFields.CHUNKED);
+		}
+	}
+
+	/**
+	 * Finishes the head with the Date and Server header fields (unless the response has its own) and writes it in a
+	 * single write, so it can be sent along with the start of the body.
+	 */
+	private void writeHead(Response response) throws IOException {
+		Headers headers = response.headers();
+		if (!headers.contains(DATE)) {
+			head.put(dateHeader.field());
+		}
+		if (serverField != null && !headers.contains(SERVER)) {
+			head.put(serverField);
+		}
+		head.put(EncodedFields.END_OF_HEAD);
+		head.writeTo(outputStream);
+		bytesWritten += head.length;
+	}
+
+	private void writeBody(Response response, boolean chunked) throws IOException {
+		if (chunked) {
+			try (InputStream responseStream = response.stream();
+				 ChunkedOutputStream chunkedStream = new ChunkedOutputStream(outputStream)) {
+				bytesWritten += IOUtils.copyLarge(responseStream, chunkedStream);
+			}
+			return;
+		}
+
+		if (response instanceof FileRegionResponse && outputStream instanceof ChannelOutputStream) {
+			transferBody((FileRegionResponse) response, (ChannelOutputStream) outputStream);
+			return;
+		}
+
+		if (response instanceof BufferResponse && outputStream instanceof ChannelOutputStream) {
+			ByteBuffer body = ((BufferResponse) response).body();
+			bytesWritten += body.remaining();
+			((ChannelOutputStream) outputStream).write(body);
+			return;
+		}
+
+		try (InputStream responseStream = response.stream()) {
+			bytesWritten += IOUtils.copyLarge(responseStream, outputStream);
+		}
 	}
 
-	private String statusLine(Response response) {
-		return response.version().toString() + " " + response.status().code() + " " + response.status().description() + CRLF;
+	private void transferBody(FileRegionResponse response, ChannelOutputStream channelStream) throws IOException {
+		try (FileChannel fileChannel = response.channel()) {
+			channelStream.transferFrom(fileChannel, response.position(), response.count());
+			bytesWritten += response.count();
+		}
 	}
 
 	@Override
@@ -80,4 +277,46 @@ public class ResponseWriter extends Writer {
 	public void close() throws IOException {
 		outputStream.close();
 	}
+
+	/**
+	 * A growable buffer a response head is assembled in, which is reused for each response written.
+	 */
+	private static final class HeadBuffer {
+
+		private static final int INITIAL_SIZE = 512;
+
+		private byte[] bytes = new byte[INITIAL_SIZE];
+		private int length;
+
+		void reset() {
+			length = 0;
+		}
+
+		void put(byte[] source) {
+			ensureCapacity(source.length);
+			System.arraycopy(source, 0, bytes, length, source.length);
+			length += source.length;
+		}
+
+		void put(ByteBuffer source) {
+			int count = source.remaining();
+			ensureCapacity(count);
+			source.get(bytes, length, count);
+			length += count;
+		}
+
+		void writeTo(OutputStream outputStream) throws IOException {
+			outputStream.write(bytes, 0, length);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		private void ensureCapacity(int count) {
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+			}
+		}
+	}
 }
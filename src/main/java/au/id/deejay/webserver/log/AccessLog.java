@@ -0,0 +1,363 @@
+package au.id.deejay.webserver.log;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An access log which is written by a background thread, so workers never wait on the log file (or on each other) to
+ * log their requests.
+ * <p>
+ * Workers claim a slot in a fixed-size ring buffer with a compare-and-set and copy the few fields of an entry into it,
+ * without formatting anything or taking a lock. Entries hold copies of the request's fields rather than the request
+ * itself, so the request may be reused or changed once it has been logged. A single writer thread drains the buffer in
+ * batches, formats the entries in the Common or Combined Log Format, and appends each batch to a file in one write,
+ * rolling the file over once it reaches a maximum size. While the buffer is empty the writer sleeps until the next
+ * entry is logged.
+ * <p>
+ * If entries are logged faster than they can be written the buffer fills up, in which case new entries are either
+ * dropped (and counted, see {@link #dropped()}) or the worker waits for space, according to the log's {@link
+ * OverflowPolicy}.
+ *
+ * @author David Jessup
+ */
+public final class AccessLog implements Closeable {
+
+	/**
+	 * The default number of entries the buffer holds.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The default size at which the log file is rolled over, in bytes.
+	 */
+	public static final long DEFAULT_MAX_FILE_SIZE = 10L * 1024 * 1024;
+
+	/**
+	 * The default number of rolled over log files to keep.
+	 */
+	public static final int DEFAULT_MAX_BACKUPS = 10;
+
+	private static final Logger LOG = LoggerFactory.getLogger(AccessLog.class);
+
+	private static final int MAX_BATCH_CHARS = 65536;
+	private static final long CLOSING_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+
+	private final RollingFileWriter writer;
+	private final LogFormat format;
+	private final OverflowPolicy overflow;
+	private final DateTimeFormatter dateFormat;
+
+	private final Entry[] entries;
+	private final int mask;
+	private final AtomicLong claimed;
+	private final AtomicLong consumed;
+	private final LongAdder dropped;
+	private final Thread writerThread;
+	private volatile boolean open;
+	private volatile boolean writerSleeping;
+
+	// Only used by the writer thread
+	private final StringBuilder batch;
+	private long dateSecond = Long.MIN_VALUE;
+	private String date;
+
+	/**
+	 * Creates a new {@link AccessLog} writing to a file, which is rolled over every {@link #DEFAULT_MAX_FILE_SIZE}
+	 * bytes, keeping up to {@link #DEFAULT_MAX_BACKUPS} old files. The log's writer thread is started immediately.
+	 *
+	 * @param file     the file to log to
+	 * @param capacity the number of entries the buffer holds, which is rounded up to a power of two
+	 * @param format   the format to write entries in
+	 * @param overflow what to do with entries logged while the buffer is full
+	 * @throws IOException if the log file cannot be opened.
+	 */
+	public AccessLog(Path file, int capacity, LogFormat format, OverflowPolicy overflow) throws IOException {
+		this(new RollingFileWriter(file, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_BACKUPS), capacity, format, overflow, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Creates a new {@link AccessLog}.
+	 *
+	 * @param writer   the file the log is written to
+	 * @param capacity the number of entries the buffer holds, which is rounded up to a power of two
+	 * @param format   the format to write entries in
+	 * @param overflow what to do with entries logged while the buffer is full
+	 * @param zone     the time zone to write the time of each entry in
+	 */
+	AccessLog(RollingFileWriter writer, int capacity, LogFormat format, OverflowPolicy overflow, ZoneId zone) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be in the range 1-2^30");
+		}
+		this.writer = writer;
+		this.format = format;
+		this.overflow = overflow;
+		this.dateFormat = DATE_FORMAT.withZone(zone);
+
+		int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		entries = new Entry[size];
+		for (int i = 0; i < size; i++) {
+			entries[i] = new Entry();
+		}
+		mask = size - 1;
+		claimed = new AtomicLong();
+		consumed = new AtomicLong();
+		dropped = new LongAdder();
+		batch = new StringBuilder();
+
+		open = true;
+		writerThread = new Thread(this::writeEntries, "access-log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Logs a request. The entry is written to the file later, by the log's writer thread.
+	 *
+	 * @param remoteAddress the address of the client that made the request
+	 * @param request       the request
+	 * @param status        the status of the response sent
+	 * @param bytes         the size of the response body sent
+	 * @return Returns true if the entry was logged, or false if it was dropped because the buffer was full (or the log
+	 * has been closed).
+	 */
+	public boolean log(InetAddress remoteAddress, Request request, HttpStatus status, long bytes) {
+		long sequence = claim();
+		if (sequence < 0) {
+			dropped.increment();
+			return false;
+		}
+
+		Entry entry = entries[(int) sequence & mask];
+		entry.time = System.currentTimeMillis();
+		entry.remoteAddress = remoteAddress;
+		entry.method = request.method();
+		entry.uri = request.uri().toString();
+		entry.version = request.version();
+		if (format == LogFormat.COMBINED) {
+			Headers headers = request.headers();
+			entry.referer = headers.value("Referer");
+			entry.userAgent = headers.value("User-Agent");
+		}
+		entry.status = status;
+		entry.bytes = bytes;
+		// Publishes the entry to the writer thread, waking it if it is waiting for one
+		entry.sequence = sequence;
+		if (writerSleeping) {
+			LockSupport.unpark(writerThread);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of entries which have been dropped because the buffer was full.
+	 *
+	 * @return Returns the number of dropped entries.
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Writes any entries still in the buffer and closes the log file. Entries logged after the log is closed are
+	 * dropped.
+	 */
+	@Override
+	public void close() {
+		open = false;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Claims the next slot in the buffer, waiting for one to become free if the overflow policy is to block.
+	 *
+	 * @return Returns the sequence number of the claimed slot, or -1 if the entry should be dropped.
+	 */
+	private long claim() {
+		while (open) {
+			long sequence = claimed.get();
+			if (sequence - consumed.get() > mask) {
+				if (overflow == OverflowPolicy.DROP) {
+					return -1;
+				}
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+			} else if (claimed.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The writer thread's loop, which drains and writes batches of entries until the log is closed.
+	 */
+	private void writeEntries() {
+		try {
+			while (open || consumed.get() < claimed.get()) {
+				if (!drain()) {
+					awaitEntries();
+				}
+			}
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LOG.error("Failed to close the access log", e);
+			}
+		}
+	}
+
+	/**
+	 * Sleeps until an entry is published, or the log is closed. Once the log is closed the writer only waits for
+	 * entries which were already claimed, so it checks for them periodically instead.
+	 */
+	private void awaitEntries() {
+		writerSleeping = true;
+		// Check again once the flag is set, so an entry published in the meantime isn't slept through
+		if (!published()) {
+			if (open) {
+				LockSupport.park(this);
+			} else {
+				LockSupport.parkNanos(this, CLOSING_PARK_NANOS);
+			}
+		}
+		writerSleeping = false;
+	}
+
+	private boolean published() {
+		long next = consumed.get();
+		return entries[(int) next & mask].sequence == next;
+	}
+
+	/**
+	 * Formats the published entries at the head of the buffer, and writes them in one batch.
+	 *
+	 * @return Returns true if any entries were written.
+	 */
+	private boolean drain() {
+		long next = consumed.get();
+		Entry entry = entries[(int) next & mask];
+		while (entry.sequence == next && batch.length() < MAX_BATCH_CHARS) {
+			format(entry);
+			entry.clear();
+			next++;
+			// Frees the slot for reuse
+			consumed.lazySet(next);
+			entry = entries[(int) next & mask];
+		}
+
+		if (batch.length() == 0) {
+			return false;
+		}
+
+		try {
+			writer.write(ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			LOG.error("Failed to write to the access log", e);
+		}
+		batch.setLength(0);
+		return true;
+	}
+
+	private void format(Entry entry) {
+		batch.append(entry.remoteAddress != null ? entry.remoteAddress.getHostAddress() : "-")
+				.append(" - - [").append(date(entry.time)).append("] \"")
+				.append(entry.method).append(' ').append(entry.uri).append(' ').append(entry.version)
+				.append("\" ").append(entry.status.code()).append(' ');
+		if (entry.bytes > 0) {
+			batch.append(entry.bytes);
+		} else {
+			batch.append('-');
+		}
+
+		if (format == LogFormat.COMBINED) {
+			batch.append(' ');
+			quote(entry.referer);
+			batch.append(' ');
+			quote(entry.userAgent);
+		}
+		batch.append('\n');
+	}
+
+	private void quote(String value) {
+		if (value == null) {
+			batch.append("\"-\"");
+			return;
+		}
+		batch.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				batch.append('\\');
+			}
+			batch.append(c);
+		}
+		batch.append('"');
+	}
+
+	/**
+	 * Formats the time of an entry, reusing the last formatted time for entries logged in the same second.
+	 */
+	private String date(long time) {
+		long second = time / 1000;
+		if (second != dateSecond) {
+			date = dateFormat.format(Instant.ofEpochSecond(second));
+			dateSecond = second;
+		}
+		return date;
+	}
+
+	/**
+	 * A slot in the buffer. Its fields are written by the worker which claimed it before it publishes the entry by
+	 * setting its sequence number, and read by the writer thread once it sees that sequence number.
+	 */
+	private static final class Entry {
+
+		private volatile long sequence = -1;
+		private long time;
+		private InetAddress remoteAddress;
+		private HttpMethod method;
+		private String uri;
+		private HttpVersion version;
+		private String referer;
+		private String userAgent;
+		private HttpStatus status;
+		private long bytes;
+
+		/**
+		 * Releases the entry's references, so the strings it copied aren't kept reachable by the buffer.
+		 */
+		void clear() {
+			remoteAddress = null;
+			uri = null;
+			referer = null;
+			userAgent = null;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package au.id.deejay.webserver.log;
+
+/**
+ * The formats an {@link AccessLog} can write its entries in.
+ *
+ * @author David Jessup
+ */
+public enum LogFormat {
+
+	/**
+	 * The Common Log Format: <code>host ident authuser [date] "request line" status bytes</code>. The ident and authuser
+	 * fields are always "-".
+	 */
+	COMMON,
+
+	/**
+	 * The Combined Log Format, which is the Common Log Format followed by the quoted Referer and User-Agent request
+	 * headers.
+	 */
+	COMBINED
+}
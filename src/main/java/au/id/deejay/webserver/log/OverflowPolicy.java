@@ -0,0 +1,20 @@
+package au.id.deejay.webserver.log;
+
+/**
+ * What an {@link AccessLog} does with a new entry when its buffer is full, because entries are being logged faster than
+ * they can be written.
+ *
+ * @author David Jessup
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The entry is dropped and counted, so requests are never slowed down by the access log.
+	 */
+	DROP,
+
+	/**
+	 * The worker logging the entry waits for space in the buffer, so no entries are lost.
+	 */
+	BLOCK
+}
@@ -0,0 +1,96 @@
+package au.id.deejay.webserver.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a file, and rolls it over to a numbered backup (e.g. access.log.1) once it reaches a maximum size. Older
+ * backups are renumbered, and the oldest is deleted once there are more than the maximum number of backups. This is
+ * the same scheme as log4j's RollingFileAppender.
+ *
+ * @author David Jessup
+ */
+class RollingFileWriter implements Closeable {
+
+	private final Path file;
+	private final long maxFileSize;
+	private final int maxBackups;
+	private FileChannel channel;
+
+	/**
+	 * Creates a new {@link RollingFileWriter}, creating the file (and its parent directories) if they don't exist.
+	 *
+	 * @param file        the file to write to
+	 * @param maxFileSize the size in bytes at which the file is rolled over
+	 * @param maxBackups  the number of rolled over files to keep
+	 * @throws IOException if the file cannot be opened.
+	 */
+	RollingFileWriter(Path file, long maxFileSize, int maxBackups) throws IOException {
+		if (maxFileSize < 1 || maxBackups < 0) {
+			throw new IllegalArgumentException("Max file size must be positive and max backups cannot be negative");
+		}
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		this.maxBackups = maxBackups;
+
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		open();
+	}
+
+	/**
+	 * Appends the contents of a buffer to the file, then rolls the file over if it has reached the maximum size. The
+	 * buffer is written whole, so a batch of entries is never split across files.
+	 *
+	 * @param bytes the bytes to append
+	 * @throws IOException if the bytes cannot be written, or the file cannot be rolled over.
+	 */
+	void write(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		if (channel.size() >= maxFileSize) {
+			rollOver();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void rollOver() throws IOException {
+		channel.close();
+
+		if (maxBackups == 0) {
+			Files.delete(file);
+		} else {
+			Files.deleteIfExists(backup(maxBackups));
+			for (int i = maxBackups - 1; i >= 1; i--) {
+				Path backup = backup(i);
+				if (Files.exists(backup)) {
+					Files.move(backup, backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		open();
+	}
+
+	private Path backup(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+}
@@ -0,0 +1,173 @@
+package au.id.deejay.webserver.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with log-linear buckets: each power of two from about a microsecond to about half a minute
+ * is split into equal sub-buckets, so the relative error of a bucket is the same for fast and slow durations.
+ * <p>
+ * Recording a duration finds its bucket with a few bit operations and increments a {@link LongAdder}, so threads
+ * recording at the same time don't contend with each other. Reads are not atomic across buckets, which is fine for
+ * monitoring.
+ *
+ * @author David Jessup
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The smallest bucket holds durations up to 2^10ns (about a microsecond).
+	 */
+	private static final int MIN_SHIFT = 10;
+
+	/**
+	 * The largest bounded bucket holds durations up to 2^35ns (about 34 seconds).
+	 */
+	private static final int MAX_SHIFT = 35;
+
+	/**
+	 * Each power of two is split into 2^SUB_BITS linear sub-buckets.
+	 */
+	private static final int SUB_BITS = 1;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private static final long[] UPPER_BOUNDS = upperBounds();
+
+	private final LongAdder[] counts;
+	private final LongAdder sum;
+
+	/**
+	 * Creates a new, empty {@link LatencyHistogram}.
+	 */
+	public LatencyHistogram() {
+		// One more bucket than there are bounds, for durations beyond the largest
+		counts = new LongAdder[UPPER_BOUNDS.length + 1];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+		sum = new LongAdder();
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos the duration, in nanoseconds
+	 */
+	public void record(long nanos) {
+		long duration = Math.max(nanos, 0);
+		counts[index(duration)].increment();
+		sum.add(duration);
+	}
+
+	/**
+	 * Gets the number of bounded buckets. Durations beyond the largest bound are counted in one more bucket, at this
+	 * index.
+	 *
+	 * @return Returns the number of bucket bounds.
+	 */
+	public static int bounds() {
+		return UPPER_BOUNDS.length;
+	}
+
+	/**
+	 * Gets the inclusive upper bound of a bucket.
+	 *
+	 * @param bucket the index of the bucket
+	 * @return Returns the largest duration the bucket holds, in nanoseconds.
+	 */
+	public static long upperBound(int bucket) {
+		return UPPER_BOUNDS[bucket];
+	}
+
+	/**
+	 * Gets the number of durations recorded in a bucket.
+	 *
+	 * @param bucket the index of the bucket, up to and including {@link #bounds()}
+	 * @return Returns the number of durations in the bucket.
+	 */
+	public long count(int bucket) {
+		return counts[bucket].sum();
+	}
+
+	/**
+	 * Gets the number of durations recorded.
+	 *
+	 * @return Returns the total count of all buckets.
+	 */
+	public long count() {
+		long count = 0;
+		for (LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the sum of the durations recorded.
+	 *
+	 * @return Returns the sum in nanoseconds.
+	 */
+	public long sum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Estimates a quantile of the durations recorded, as the upper bound of the bucket it falls in.
+	 *
+	 * @param quantile the quantile, from 0 to 1
+	 * @param unit     the unit to return the estimate in
+	 * @return Returns the estimated quantile, or 0 if no durations have been recorded. Quantiles beyond the largest
+	 * bound are reported as {@link Long#MAX_VALUE}.
+	 */
+	public long quantile(double quantile, TimeUnit unit) {
+		long[] snapshot = new long[counts.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			snapshot[i] = counts[i].sum();
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return unit.convert(UPPER_BOUNDS[i], TimeUnit.NANOSECONDS);
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Finds the bucket holding a duration. Buckets hold durations greater than the previous bucket's bound, up to and
+	 * including their own, so the duration is reduced by one before its bits are examined.
+	 */
+	static int index(long nanos) {
+		if (nanos <= 1L << MIN_SHIFT) {
+			return 0;
+		}
+
+		long value = nanos - 1;
+		int shift = 63 - Long.numberOfLeadingZeros(value);
+		if (shift >= MAX_SHIFT) {
+			return UPPER_BOUNDS.length;
+		}
+
+		int sub = (int) (value >>> (shift - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (shift - MIN_SHIFT) * SUB_BUCKETS + sub + 1;
+	}
+
+	private static long[] upperBounds() {
+		long[] bounds = new long[(MAX_SHIFT - MIN_SHIFT) * SUB_BUCKETS + 1];
+		bounds[0] = 1L << MIN_SHIFT;
+		for (int shift = MIN_SHIFT; shift < MAX_SHIFT; shift++) {
+			for (int sub = 0; sub < SUB_BUCKETS; sub++) {
+				bounds[(shift - MIN_SHIFT) * SUB_BUCKETS + sub + 1] = (1L << shift) + ((sub + 1L) << (shift - SUB_BITS));
+			}
+		}
+		return bounds;
+	}
+}
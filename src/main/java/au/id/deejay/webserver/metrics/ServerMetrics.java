@@ -0,0 +1,370 @@
+package au.id.deejay.webserver.metrics;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.api.Response;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a running server: request counts by status, method and handler, bytes received and sent, the time
+ * spent parsing requests, in handlers and writing responses, the number of open connections, the depth of the worker
+ * pool's queue, the concurrency limit and the number of clients shed while overloaded.
+ * <p>
+ * Counters are {@link LongAdder}s, which are striped so that worker threads recording at the same time don't contend
+ * on a single value, and the counters for each status and method are created up front so recording never locks. The
+ * metrics can be written in the Prometheus text exposition format with {@link #writeTo(Appendable)}.
+ *
+ * @author David Jessup
+ */
+public final class ServerMetrics {
+
+	/**
+	 * The content type of the Prometheus text exposition format.
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final Map<HttpStatus, LongAdder> statusCounts;
+	private final Map<HttpMethod, LongAdder> methodCounts;
+	private final Map<String, LongAdder> handlerCounts;
+	private final LongAdder bytesIn;
+	private final LongAdder bytesOut;
+	private final LatencyHistogram parseTime;
+	private final LatencyHistogram handlerTime;
+	private final LatencyHistogram writeTime;
+	private final LongAdder openConnections;
+	private final LongAdder activeConnections;
+	private final Map<ShedReason, LongAdder> shedCounts;
+	private volatile IntSupplier queueDepth = () -> 0;
+	private volatile IntSupplier concurrencyLimit = () -> 0;
+	private volatile LongSupplier accessLogDropped = () -> 0;
+
+	/**
+	 * Creates a new {@link ServerMetrics} with every metric at zero.
+	 */
+	public ServerMetrics() {
+		statusCounts = new EnumMap<>(HttpStatus.class);
+		for (HttpStatus status : HttpStatus.values()) {
+			statusCounts.put(status, new LongAdder());
+		}
+		methodCounts = new EnumMap<>(HttpMethod.class);
+		for (HttpMethod method : HttpMethod.values()) {
+			methodCounts.put(method, new LongAdder());
+		}
+		handlerCounts = new ConcurrentHashMap<>();
+		bytesIn = new LongAdder();
+		bytesOut = new LongAdder();
+		parseTime = new LatencyHistogram();
+		handlerTime = new LatencyHistogram();
+		writeTime = new LatencyHistogram();
+		openConnections = new LongAdder();
+		activeConnections = new LongAdder();
+		shedCounts = new EnumMap<>(ShedReason.class);
+		for (ShedReason reason : ShedReason.values()) {
+			shedCounts.put(reason, new LongAdder());
+		}
+	}
+
+	/**
+	 * Records a client connection being opened.
+	 */
+	public void connectionOpened() {
+		openConnections.increment();
+	}
+
+	/**
+	 * Records a client connection being closed.
+	 */
+	public void connectionClosed() {
+		openConnections.decrement();
+	}
+
+	/**
+	 * Records a request having been read, making its connection active until the response is sent.
+	 *
+	 * @param bytes      the size of the request, i.e. its head and declared body length
+	 * @param parseNanos the time spent parsing the request head, in nanoseconds
+	 */
+	public void requestRead(long bytes, long parseNanos) {
+		activeConnections.increment();
+		bytesIn.add(bytes);
+		parseTime.record(parseNanos);
+	}
+
+	/**
+	 * Records a handler having provided a response (or failed to).
+	 *
+	 * @param handler the handler
+	 * @param nanos   the time the handler took, in nanoseconds
+	 */
+	public void handled(RequestHandler handler, long nanos) {
+		String name = handlerName(handler);
+		LongAdder count = handlerCounts.get(name);
+		if (count == null) {
+			count = handlerCounts.computeIfAbsent(name, key -> new LongAdder());
+		}
+		count.increment();
+		handlerTime.record(nanos);
+	}
+
+	/**
+	 * Records a response having been sent, making its connection idle again.
+	 *
+	 * @param request    the request responded to, or null if the request could not be read
+	 * @param response   the response sent
+	 * @param bytes      the number of bytes sent
+	 * @param writeNanos the time spent writing the response, in nanoseconds
+	 */
+	public void responseSent(Request request, Response response, long bytes, long writeNanos) {
+		if (request != null) {
+			activeConnections.decrement();
+			methodCounts.get(request.method()).increment();
+		}
+		statusCounts.get(response.status()).increment();
+		bytesOut.add(bytes);
+		writeTime.record(writeNanos);
+	}
+
+	/**
+	 * Records a client having been shed, i.e. answered with a 503 Service Unavailable response instead of being
+	 * serviced. The response itself is recorded separately with {@link #responseSent(Request, Response, long, long)}.
+	 *
+	 * @param reason why the client was shed
+	 */
+	public void clientShed(ShedReason reason) {
+		shedCounts.get(reason).increment();
+	}
+
+	/**
+	 * Sets where the depth of the worker pool's queue is read from.
+	 *
+	 * @param queueDepth supplies the number of tasks waiting for a worker
+	 */
+	public void queueDepth(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Sets where the current concurrency limit is read from, if requests are admitted by an adaptive limit.
+	 *
+	 * @param concurrencyLimit supplies the number of requests which may be handled at once
+	 */
+	public void concurrencyLimit(IntSupplier concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * Sets where the number of access log entries dropped because the log's buffer was full is read from.
+	 *
+	 * @param accessLogDropped supplies the number of dropped access log entries
+	 */
+	public void accessLogDropped(LongSupplier accessLogDropped) {
+		this.accessLogDropped = accessLogDropped;
+	}
+
+	/**
+	 * Gets the number of responses sent with a status.
+	 *
+	 * @param status the status
+	 * @return Returns the number of responses.
+	 */
+	public long responses(HttpStatus status) {
+		return statusCounts.get(status).sum();
+	}
+
+	/**
+	 * Gets the number of clients shed for a reason.
+	 *
+	 * @param reason the reason
+	 * @return Returns the number of clients shed.
+	 */
+	public long shed(ShedReason reason) {
+		return shedCounts.get(reason).sum();
+	}
+
+	/**
+	 * Gets the number of requests responded to with a method.
+	 *
+	 * @param method the method
+	 * @return Returns the number of requests.
+	 */
+	public long requests(HttpMethod method) {
+		return methodCounts.get(method).sum();
+	}
+
+	/**
+	 * Gets the number of requests handled by handlers with a name.
+	 *
+	 * @param handlerName the name of the handler
+	 * @return Returns the number of requests.
+	 */
+	public long handled(String handlerName) {
+		LongAdder count = handlerCounts.get(handlerName);
+		return count != null ? count.sum() : 0;
+	}
+
+	/**
+	 * Gets the total size of the requests read.
+	 *
+	 * @return Returns the number of bytes received.
+	 */
+	public long bytesIn() {
+		return bytesIn.sum();
+	}
+
+	/**
+	 * Gets the total size of the responses sent.
+	 *
+	 * @return Returns the number of bytes sent.
+	 */
+	public long bytesOut() {
+		return bytesOut.sum();
+	}
+
+	/**
+	 * Gets the number of open client connections.
+	 *
+	 * @return Returns the number of connections.
+	 */
+	public long openConnections() {
+		return openConnections.sum();
+	}
+
+	/**
+	 * Gets the number of client connections which are being responded to.
+	 *
+	 * @return Returns the number of active connections.
+	 */
+	public long activeConnections() {
+		return activeConnections.sum();
+	}
+
+	/**
+	 * Gets the times spent parsing request heads.
+	 *
+	 * @return Returns the histogram of parse times.
+	 */
+	public LatencyHistogram parseTime() {
+		return parseTime;
+	}
+
+	/**
+	 * Gets the times taken by handlers to provide responses.
+	 *
+	 * @return Returns the histogram of handler times.
+	 */
+	public LatencyHistogram handlerTime() {
+		return handlerTime;
+	}
+
+	/**
+	 * Gets the times spent writing responses.
+	 *
+	 * @return Returns the histogram of write times.
+	 */
+	public LatencyHistogram writeTime() {
+		return writeTime;
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text exposition format (version 0.0.4). Counters which are still zero are
+	 * left out, except for the totals.
+	 *
+	 * @param out where to write the metrics
+	 * @throws IOException if the metrics cannot be written.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		header(out, "http_server_requests_total", "counter", "Requests responded to, by method.");
+		for (Map.Entry<HttpMethod, LongAdder> count : methodCounts.entrySet()) {
+			sample(out, "http_server_requests_total", "method", count.getKey().name(), count.getValue().sum());
+		}
+
+		header(out, "http_server_responses_total", "counter", "Responses sent, by status code.");
+		for (Map.Entry<HttpStatus, LongAdder> count : statusCounts.entrySet()) {
+			sample(out, "http_server_responses_total", "code", String.valueOf(count.getKey().code()), count.getValue().sum());
+		}
+
+		header(out, "http_server_handler_requests_total", "counter", "Requests handled, by handler.");
+		for (Map.Entry<String, LongAdder> count : handlerCounts.entrySet()) {
+			sample(out, "http_server_handler_requests_total", "handler", escape(count.getKey()), count.getValue().sum());
+		}
+
+		header(out, "http_server_request_bytes_total", "counter", "Bytes of requests received.");
+		out.append("http_server_request_bytes_total ").append(String.valueOf(bytesIn.sum())).append('\n');
+		header(out, "http_server_response_bytes_total", "counter", "Bytes of responses sent.");
+		out.append("http_server_response_bytes_total ").append(String.valueOf(bytesOut.sum())).append('\n');
+
+		histogram(out, "http_server_parse_seconds", "Time spent parsing request heads.", parseTime);
+		histogram(out, "http_server_handler_seconds", "Time taken by handlers to provide responses.", handlerTime);
+		histogram(out, "http_server_write_seconds", "Time spent writing responses.", writeTime);
+
+		long open = openConnections.sum();
+		long active = Math.min(activeConnections.sum(), open);
+		header(out, "http_server_connections", "gauge", "Open client connections, by state.");
+		out.append("http_server_connections{state=\"active\"} ").append(String.valueOf(active)).append('\n');
+		out.append("http_server_connections{state=\"idle\"} ").append(String.valueOf(Math.max(open - active, 0))).append('\n');
+
+		header(out, "http_server_queued_tasks", "gauge", "Tasks waiting for a worker thread.");
+		out.append("http_server_queued_tasks ").append(String.valueOf(queueDepth.getAsInt())).append('\n');
+
+		header(out, "http_server_concurrency_limit", "gauge", "Requests which may be handled at once, or 0 if unlimited.");
+		out.append("http_server_concurrency_limit ").append(String.valueOf(concurrencyLimit.getAsInt())).append('\n');
+
+		header(out, "http_server_shed_total", "counter", "Clients answered with 503 Service Unavailable while overloaded, by reason.");
+		for (Map.Entry<ShedReason, LongAdder> count : shedCounts.entrySet()) {
+			sample(out, "http_server_shed_total", "reason", count.getKey().label(), count.getValue().sum());
+		}
+
+		header(out, "http_server_access_log_dropped_total", "counter", "Access log entries dropped because the log's buffer was full.");
+		out.append("http_server_access_log_dropped_total ").append(String.valueOf(accessLogDropped.getAsLong())).append('\n');
+	}
+
+	private static void header(Appendable out, String name, String type, String help) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(Appendable out, String name, String label, String value, long count) throws IOException {
+		if (count > 0) {
+			out.append(name).append('{').append(label).append("=\"").append(value).append("\"} ")
+					.append(String.valueOf(count)).append('\n');
+		}
+	}
+
+	private static void histogram(Appendable out, String name, String help, LatencyHistogram histogram) throws IOException {
+		header(out, name, "histogram", help);
+
+		long cumulative = 0;
+		for (int i = 0; i < LatencyHistogram.bounds(); i++) {
+			cumulative += histogram.count(i);
+			out.append(name).append("_bucket{le=\"").append(String.valueOf(LatencyHistogram.upperBound(i) / NANOS_PER_SECOND))
+					.append("\"} ").append(String.valueOf(cumulative)).append('\n');
+		}
+		cumulative += histogram.count(LatencyHistogram.bounds());
+		out.append(name).append("_bucket{le=\"+Inf\"} ").append(String.valueOf(cumulative)).append('\n');
+		out.append(name).append("_sum ").append(String.valueOf(histogram.sum() / NANOS_PER_SECOND)).append('\n');
+		out.append(name).append("_count ").append(String.valueOf(cumulative)).append('\n');
+	}
+
+	/**
+	 * Anonymous handlers have no simple name, so are named by their class's full name instead.
+	 */
+	private static String handlerName(RequestHandler handler) {
+		String name = handler.name();
+		return name == null || name.isEmpty() ? handler.getClass().getName() : name;
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
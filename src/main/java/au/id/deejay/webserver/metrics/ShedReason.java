@@ -0,0 +1,40 @@
+package au.id.deejay.webserver.metrics;
+
+/**
+ * The reasons the server may shed load, answering a client with a 503 Service Unavailable response instead of servicing
+ * it.
+ *
+ * @author David Jessup
+ */
+public enum ShedReason {
+
+	/**
+	 * The queue of work waiting for a worker thread was full.
+	 */
+	QUEUE_FULL("queue_full"),
+
+	/**
+	 * The work waited for a worker thread for longer than the maximum queue wait.
+	 */
+	QUEUE_TIMEOUT("queue_timeout"),
+
+	/**
+	 * As many requests as the adaptive concurrency limit allows were already being handled.
+	 */
+	CONCURRENCY_LIMIT("concurrency_limit");
+
+	private final String label;
+
+	ShedReason(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * Gets the name the reason is exported with in the server's metrics.
+	 *
+	 * @return Returns the metrics label value.
+	 */
+	public String label() {
+		return label;
+	}
+}
@@ -0,0 +1,110 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Evaluates the Accept-Encoding header of a request, to choose which content coding (if any) a response should be sent
+ * with, as specified in RFC7231.
+ *
+ * @author David Jessup
+ */
+public final class AcceptEncoding {
+
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String ANY = "*";
+
+	private AcceptEncoding() {
+	}
+
+	/**
+	 * Chooses the content coding a request most prefers from those available. Codings the client gives a higher
+	 * quality value are preferred, and codings with equal quality values are chosen in the order they are offered.
+	 * <p>
+	 * Requests without an Accept-Encoding header are sent the unencoded representation, rather than assuming the
+	 * client accepts any coding.
+	 *
+	 * @param request  the request
+	 * @param codings  the content codings available, e.g. "gzip", in order of preference
+	 * @return Returns the preferred coding, or null if the request doesn't accept any of the codings.
+	 */
+	public static String preferred(Request request, String... codings) {
+		if (codings.length == 0) {
+			return null;
+		}
+
+		List<String> acceptEncoding = request.headers().values(ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return null;
+		}
+
+		String preferred = null;
+		float preferredQuality = 0;
+
+		for (String coding : codings) {
+			float quality = quality(acceptEncoding, coding);
+			if (quality > preferredQuality) {
+				preferred = coding;
+				preferredQuality = quality;
+			}
+		}
+
+		return preferred;
+	}
+
+	/**
+	 * Checks if a request accepts a content coding.
+	 *
+	 * @param request the request
+	 * @param coding  the content coding, e.g. "gzip"
+	 * @return Returns true if the coding is acceptable to the client.
+	 */
+	public static boolean accepts(Request request, String coding) {
+		return preferred(request, coding) != null;
+	}
+
+	/**
+	 * Determines the quality value a client has given a coding, either explicitly or via the "*" wildcard.
+	 *
+	 * @return Returns the quality value, or 0 if the coding isn't acceptable.
+	 */
+	private static float quality(List<String> acceptEncoding, String coding) {
+		float wildcard = 0;
+
+		// Header values are split on commas, so each value is a single coding with optional parameters
+		for (String value : acceptEncoding) {
+			int semicolon = value.indexOf(';');
+			String name = (semicolon < 0 ? value : value.substring(0, semicolon)).trim();
+
+			if (name.equalsIgnoreCase(coding)) {
+				return semicolon < 0 ? 1 : parseQuality(value.substring(semicolon + 1));
+			} else if (ANY.equals(name)) {
+				wildcard = semicolon < 0 ? 1 : parseQuality(value.substring(semicolon + 1));
+			}
+		}
+
+		return wildcard;
+	}
+
+	/**
+	 * Parses the quality value from the parameters of a coding, e.g. "q=0.5".
+	 *
+	 * @return Returns the quality value, 1 if there isn't one, or 0 if it is invalid.
+	 */
+	private static float parseQuality(String parameters) {
+		for (String parameter : parameters.split(";")) {
+			String trimmed = parameter.trim().toLowerCase(Locale.ROOT);
+			if (trimmed.startsWith("q=")) {
+				try {
+					float quality = Float.parseFloat(trimmed.substring(2));
+					return quality >= 0 && quality <= 1 ? quality : 0;
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+}
@@ -0,0 +1,83 @@
+package au.id.deejay.webserver.request;
+
+import java.util.Objects;
+
+/**
+ * A range of bytes within a representation, as requested by a Range header.
+ *
+ * @author David Jessup
+ */
+public final class ByteRange {
+
+	private final long first;
+	private final long last;
+
+	/**
+	 * Creates a new {@link ByteRange}.
+	 *
+	 * @param first the offset of the first byte in the range
+	 * @param last  the offset of the last byte in the range (inclusive)
+	 * @throws IllegalArgumentException if the first byte is negative or the last byte is before the first.
+	 */
+	public ByteRange(long first, long last) {
+		if (first < 0 || last < first) {
+			throw new IllegalArgumentException("Invalid byte range: " + first + "-" + last);
+		}
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Gets the offset of the first byte in the range.
+	 *
+	 * @return Returns the offset of the first byte.
+	 */
+	public long first() {
+		return first;
+	}
+
+	/**
+	 * Gets the offset of the last byte in the range.
+	 *
+	 * @return Returns the offset of the last byte, inclusive.
+	 */
+	public long last() {
+		return last;
+	}
+
+	/**
+	 * Gets the number of bytes in the range.
+	 *
+	 * @return Returns the length of the range.
+	 */
+	public long length() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Formats the range as the value of a Content-Range header.
+	 *
+	 * @param completeLength the length of the complete representation
+	 * @return Returns the range formatted as e.g. "bytes 0-499/1234".
+	 */
+	public String contentRange(long completeLength) {
+		return "bytes " + first + "-" + last + "/" + completeLength;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(first, last);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof ByteRange
+				&& first == ((ByteRange) obj).first
+				&& last == ((ByteRange) obj).last;
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+}
@@ -0,0 +1,73 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.HttpDate;
+
+import java.util.List;
+
+/**
+ * Evaluates the conditional headers of a request (If-None-Match and If-Modified-Since) against the current validators
+ * of the requested resource, as specified in RFC7232.
+ *
+ * @author David Jessup
+ */
+public final class ConditionalRequest {
+
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String WEAK_PREFIX = "W/";
+
+	private ConditionalRequest() {
+	}
+
+	/**
+	 * Checks if the client already has the current version of a resource, so it can be sent a "304 Not Modified"
+	 * response instead of the resource itself.
+	 * <p>
+	 * If-None-Match takes precedence over If-Modified-Since when a request has both, and entity tags are compared
+	 * using the weak comparison function.
+	 *
+	 * @param request      the request for the resource
+	 * @param etag         the current entity tag of the resource, or null if it doesn't have one
+	 * @param lastModified the time the resource was last modified in milliseconds since the epoch, or a negative value
+	 *                     if it is unknown
+	 * @return Returns true if the resource has not been modified.
+	 */
+	public static boolean notModified(Request request, String etag, long lastModified) {
+		List<String> ifNoneMatch = request.headers().values(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return etag != null && anyTagMatches(ifNoneMatch, etag);
+		}
+
+		List<String> ifModifiedSince = request.headers().values(IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null && lastModified >= 0) {
+			// Header values are split on commas, which HTTP dates contain
+			long since = HttpDate.parse(String.join(", ", ifModifiedSince));
+
+			// HTTP dates only have a resolution of one second
+			return since >= 0 && lastModified / 1000 <= since / 1000;
+		}
+
+		return false;
+	}
+
+	private static boolean anyTagMatches(List<String> tags, String etag) {
+		for (String tag : tags) {
+			if ("*".equals(tag) || weakMatch(tag, etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares two entity tags, ignoring whether either is weak.
+	 */
+	private static boolean weakMatch(String tag, String other) {
+		return opaqueTag(tag).equals(opaqueTag(other));
+	}
+
+	private static String opaqueTag(String tag) {
+		return tag.startsWith(WEAK_PREFIX) ? tag.substring(WEAK_PREFIX.length()) : tag;
+	}
+}
@@ -0,0 +1,152 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.HttpDate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates the Range and If-Range headers of a request against a representation, as specified in RFC7233. Only the
+ * "bytes" range unit is supported.
+ *
+ * @author David Jessup
+ */
+public final class RangeRequest {
+
+	/**
+	 * The maximum number of ranges honoured in a single request. Requests for more are served in full, rather than
+	 * letting a client ask for a large number of tiny or overlapping ranges.
+	 */
+	public static final int MAX_RANGES = 16;
+
+	private static final String RANGE = "Range";
+	private static final String IF_RANGE = "If-Range";
+	private static final String BYTES_UNIT = "bytes=";
+	private static final long INVALID = -2;
+
+	private RangeRequest() {
+	}
+
+	/**
+	 * Determines the ranges of a representation a request asks for.
+	 * <p>
+	 * Range headers which are malformed, use an unsupported unit, or ask for more than {@link #MAX_RANGES} ranges are
+	 * ignored, as are requests with an If-Range condition which doesn't match the current representation. Ranges
+	 * extending beyond the end of the representation are truncated, and ranges which start beyond it are dropped.
+	 *
+	 * @param request      the request
+	 * @param length       the length of the complete representation, in bytes
+	 * @param etag         the current entity tag of the representation, or null if it doesn't have one
+	 * @param lastModified the time the representation was last modified in milliseconds since the epoch, or a negative
+	 *                     value if it is unknown
+	 * @return Returns the ranges requested, an empty list if none of the ranges can be satisfied, or null if the
+	 * complete representation should be sent.
+	 */
+	public static List<ByteRange> ranges(Request request, long length, String etag, long lastModified) {
+		List<String> range = request.headers().values(RANGE);
+
+		if (range == null || !ifRangeMatches(request, etag, lastModified)) {
+			return null;
+		}
+
+		// Header values are split on commas, which also separate each range
+		String first = range.get(0).trim();
+		if (!first.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()) || range.size() > MAX_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> ranges = new ArrayList<>(range.size());
+		for (int i = 0; i < range.size(); i++) {
+			String spec = i == 0 ? first.substring(BYTES_UNIT.length()) : range.get(i);
+			if (!parseRange(spec.trim(), length, ranges)) {
+				return null;
+			}
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Checks the If-Range condition of a request. Entity tags must match using the strong comparison function, and
+	 * dates must exactly match the last modification time.
+	 *
+	 * @return Returns true if the request has no If-Range header, or the condition matches.
+	 */
+	private static boolean ifRangeMatches(Request request, String etag, long lastModified) {
+		List<String> ifRange = request.headers().values(IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+
+		String condition = String.join(", ", ifRange).trim();
+
+		if (condition.startsWith("\"") || condition.startsWith("W/")) {
+			return etag != null && !etag.startsWith("W/") && condition.equals(etag);
+		}
+
+		long date = HttpDate.parse(condition);
+		return date >= 0 && lastModified >= 0 && date / 1000 == lastModified / 1000;
+	}
+
+	/**
+	 * Parses a single range specifier (e.g. "0-499", "500-" or "-500"), adding it to the list of ranges if it can be
+	 * satisfied.
+	 *
+	 * @return Returns false if the specifier is malformed.
+	 */
+	private static boolean parseRange(String spec, long length, List<ByteRange> ranges) {
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return false;
+		}
+
+		long first = parsePosition(spec.substring(0, dash).trim());
+		long last = parsePosition(spec.substring(dash + 1).trim());
+
+		if (first == INVALID || last == INVALID) {
+			return false;
+		}
+
+		if (first == -1) {
+			// Suffix range: the final N bytes
+			if (last <= 0) {
+				return last == 0;
+			}
+			if (length > 0) {
+				ranges.add(new ByteRange(Math.max(length - last, 0), length - 1));
+			}
+			return true;
+		}
+
+		if (last != -1 && last < first) {
+			return false;
+		}
+
+		if (first < length) {
+			ranges.add(new ByteRange(first, last == -1 ? length - 1 : Math.min(last, length - 1)));
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a byte position.
+	 *
+	 * @return Returns the position, -1 if it is empty, or {@link #INVALID} if it is not a valid number.
+	 */
+	private static long parsePosition(String position) {
+		if (position.isEmpty()) {
+			return -1;
+		}
+		for (int i = 0; i < position.length(); i++) {
+			if (!Character.isDigit(position.charAt(i))) {
+				return INVALID;
+			}
+		}
+		try {
+			return Long.parseLong(position);
+		} catch (NumberFormatException e) {
+			return INVALID;
+		}
+	}
+}
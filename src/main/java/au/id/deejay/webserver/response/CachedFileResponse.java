@@ -0,0 +1,84 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.BufferResponse;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.io.ByteBufferInputStream;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A response containing a file held in a {@link FileCache}. The response body and headers are the same as those of a
+ * {@link FileResponse} for the file, but are served from memory. As a {@link BufferResponse}, the cached content can be
+ * written to the client without being copied through a stream.
+ *
+ * @author David Jessup
+ */
+public class CachedFileResponse extends HttpResponse implements BufferResponse {
+
+	private final FileCache.CachedFile cached;
+
+	/**
+	 * Creates a new {@link CachedFileResponse}.
+	 *
+	 * @param cached  the cached file
+	 * @param version the HTTP version of the response
+	 */
+	CachedFileResponse(FileCache.CachedFile cached, HttpVersion version) {
+		this(cached, cached.headers(), version);
+	}
+
+	private CachedFileResponse(FileCache.CachedFile cached, Headers headers, HttpVersion version) {
+		super(HttpStatus.OK_200, headers, "", version);
+		this.cached = cached;
+	}
+
+	/**
+	 * Creates a copy of the response with an additional header value. The headers of a cached file are shared by every
+	 * response for it, and can't be modified directly.
+	 *
+	 * @param name  the name of the header
+	 * @param value the value to add to the header
+	 * @return Returns a new response for the same cached file, with its own copy of the headers.
+	 */
+	public CachedFileResponse withHeader(String name, String value) {
+		Headers headers = new HttpHeaders();
+		for (Header header : headers().headers()) {
+			headers.add(header);
+		}
+		headers.add(name, value);
+		return new CachedFileResponse(cached, headers, version());
+	}
+
+	/**
+	 * Gets the entity tag of the file, as sent in the ETag header.
+	 *
+	 * @return Returns the quoted entity tag.
+	 */
+	public String etag() {
+		return headers().value("ETag");
+	}
+
+	/**
+	 * Gets the time the file was last modified, as sent in the Last-Modified header.
+	 *
+	 * @return Returns the modification time in milliseconds since the epoch.
+	 */
+	public long lastModified() {
+		return cached.lastModified();
+	}
+
+	@Override
+	public ByteBuffer body() {
+		return cached.content();
+	}
+
+	@Override
+	public InputStream stream() {
+		return new ByteBufferInputStream(cached.content());
+	}
+}
@@ -0,0 +1,44 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.BufferResponse;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A response whose body has been compressed by a {@link ResponseCompressor}. The compressed body is held in memory, so
+ * as a {@link BufferResponse} it can be written to the client without being copied through a stream.
+ *
+ * @author David Jessup
+ */
+public class CompressedResponse extends HttpResponse implements BufferResponse {
+
+	private final byte[] compressed;
+
+	/**
+	 * Creates a new {@link CompressedResponse}.
+	 *
+	 * @param status     the HTTP status code of the response
+	 * @param headers    the headers of the response, including its Content-Encoding
+	 * @param compressed the compressed response body
+	 * @param version    the HTTP version of the response
+	 */
+	CompressedResponse(HttpStatus status, Headers headers, byte[] compressed, HttpVersion version) {
+		super(status, headers, "", version);
+		this.compressed = compressed;
+	}
+
+	@Override
+	public ByteBuffer body() {
+		return ByteBuffer.wrap(compressed).asReadOnlyBuffer();
+	}
+
+	@Override
+	public InputStream stream() {
+		return new ByteArrayInputStream(compressed);
+	}
+}
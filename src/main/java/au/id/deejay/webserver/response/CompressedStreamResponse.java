@@ -0,0 +1,39 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.Headers;
+
+import java.io.InputStream;
+
+/**
+ * A response whose body is compressed by a {@link ResponseCompressor} as it is streamed to the client. Used for bodies
+ * of unknown length, which are sent with the chunked transfer coding.
+ *
+ * @author David Jessup
+ */
+public class CompressedStreamResponse extends HttpResponse {
+
+	private final Response response;
+	private final String coding;
+	private final int level;
+
+	/**
+	 * Creates a new {@link CompressedStreamResponse}.
+	 *
+	 * @param response the uncompressed response
+	 * @param headers  the headers of the response, including its Content-Encoding
+	 * @param coding   the content coding to compress the body with
+	 * @param level    the compression level
+	 */
+	CompressedStreamResponse(Response response, Headers headers, String coding, int level) {
+		super(response.status(), headers, "", response.version());
+		this.response = response;
+		this.coding = coding;
+		this.level = level;
+	}
+
+	@Override
+	public InputStream stream() {
+		return ResponseCompressor.encodingStream(response.stream(), coding, level);
+	}
+}
@@ -0,0 +1,234 @@
+package au.id.deejay.webserver.response;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many requests may be handled at once, adapting the limit to how long requests take to serve.
+ * <p>
+ * The limit follows a gradient: after every window of requests their average latency is compared with a baseline, the
+ * lowest window average seen. While latency stays within a tolerance of the baseline the limit grows by roughly its
+ * square root each window, so it keeps probing for more throughput. Once latency rises beyond the tolerance, which is
+ * the sign of requests queueing for a saturated resource such as slow storage, the limit shrinks in proportion. The
+ * limit only grows while the requests in flight actually come close to it.
+ * <p>
+ * The baseline is the lowest average among the most recent windows, so it follows lasting changes in the handlers'
+ * latency, but a spell of high latency doesn't raise it while faster windows are still within that range. Admission is
+ * lock free; only the thread completing each window updates the limit.
+ *
+ * @author David Jessup
+ */
+public final class ConcurrencyLimiter {
+
+	/**
+	 * The limit requests start out with, unless the maximum is lower.
+	 */
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+	/**
+	 * The default number of requests whose latencies are averaged before the limit is updated.
+	 */
+	static final int DEFAULT_WINDOW_SIZE = 100;
+
+	private static final int MIN_LIMIT = 1;
+
+	/**
+	 * How far the average latency may rise above the baseline before the limit is reduced.
+	 */
+	private static final double TOLERANCE = 2.0;
+
+	/**
+	 * The most the limit may be reduced by in one window.
+	 */
+	private static final double MIN_GRADIENT = 0.5;
+
+	/**
+	 * How much weight each window's new limit is given, which smooths out noisy windows.
+	 */
+	private static final double SMOOTHING = 0.2;
+
+	/**
+	 * How many of the most recent windows the baseline is the lowest average of.
+	 */
+	private static final int BASELINE_WINDOWS = 100;
+
+	private final int maxLimit;
+	private final int windowSize;
+	private final AtomicInteger inFlight;
+	private final LongAdder windowNanos;
+	private final AtomicInteger windowCount;
+	private final LongAccumulator windowPeak;
+
+	private volatile int limit;
+	private double estimate;
+	private final double[] recentAverages;
+	private double baselineNanos;
+	private int nextWindow;
+	private int recordedWindows;
+
+	/**
+	 * Creates a new {@link ConcurrencyLimiter}.
+	 *
+	 * @param maxLimit the most requests the limit may grow to allow at once
+	 * @throws IllegalArgumentException if the maximum limit is less than 1
+	 */
+	public ConcurrencyLimiter(int maxLimit) {
+		this(Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link ConcurrencyLimiter}.
+	 *
+	 * @param initialLimit the limit to start out with
+	 * @param maxLimit     the most requests the limit may grow to allow at once
+	 * @param windowSize   the number of requests whose latencies are averaged before the limit is updated
+	 * @throws IllegalArgumentException if the maximum limit or window size is less than 1, or the initial limit is not
+	 *                                  between 1 and the maximum.
+	 */
+	ConcurrencyLimiter(int initialLimit, int maxLimit, int windowSize) {
+		if (maxLimit < MIN_LIMIT || initialLimit < MIN_LIMIT || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Concurrency limits must be at least 1, and the initial limit no more than the maximum.");
+		}
+
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be greater than zero.");
+		}
+
+		this.maxLimit = maxLimit;
+		this.windowSize = windowSize;
+		inFlight = new AtomicInteger();
+		windowNanos = new LongAdder();
+		windowCount = new AtomicInteger();
+		windowPeak = new LongAccumulator(Math::max, 0);
+		limit = initialLimit;
+		estimate = initialLimit;
+		recentAverages = new double[BASELINE_WINDOWS];
+		baselineNanos = Double.NaN;
+	}
+
+	/**
+	 * Admits a request if fewer than the limit are in flight. Every admitted request must be released once it has been
+	 * handled, and should have how long it took sampled.
+	 *
+	 * @return Returns true if the request was admitted, or false if it should be rejected.
+	 */
+	public boolean tryAcquire() {
+		int current = inFlight.get();
+		while (current < limit) {
+			if (inFlight.compareAndSet(current, current + 1)) {
+				windowPeak.accumulate(current + 1);
+				return true;
+			}
+			current = inFlight.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Releases an admitted request, recording how long it took to handle.
+	 *
+	 * @param nanos the time taken to handle the request, in nanoseconds
+	 */
+	public void release(long nanos) {
+		release();
+		sample(nanos);
+	}
+
+	/**
+	 * Releases an admitted request without recording how long it took, for when that has already been sampled.
+	 */
+	public void release() {
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Records how long an admitted request took to handle, towards the current window. The sample may be taken before
+	 * the request is released, so time the request is held for afterwards doesn't affect the limit.
+	 *
+	 * @param nanos the time taken to handle the request, in nanoseconds
+	 */
+	public void sample(long nanos) {
+		windowNanos.add(nanos);
+		if (windowCount.incrementAndGet() == windowSize) {
+			update();
+		}
+	}
+
+	/**
+	 * Gets the current limit.
+	 *
+	 * @return Returns the number of requests which may be handled at once.
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * Gets the most requests the limit may grow to allow.
+	 *
+	 * @return Returns the maximum limit.
+	 */
+	public int maxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Gets the number of requests being handled.
+	 *
+	 * @return Returns the number of admitted requests which have not been released yet.
+	 */
+	public int inFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Gets the baseline latency the average latency of each window is compared with.
+	 *
+	 * @return Returns the lowest average latency of the most recent windows in nanoseconds, or NaN if no window has
+	 * ended yet.
+	 */
+	synchronized double baselineNanos() {
+		return baselineNanos;
+	}
+
+	/**
+	 * Ends the current window, and moves the limit along the gradient between the window's average latency and the
+	 * baseline. Only the thread which filled the window calls this, but it is synchronized in case the next window is
+	 * filled before it finishes.
+	 */
+	private synchronized void update() {
+		// Samples recorded while the window is being reset count towards the next window instead
+		int count = windowCount.getAndSet(0);
+		double averageNanos = (double) windowNanos.sumThenReset() / Math.max(count, 1);
+		long peak = windowPeak.getThenReset();
+
+		updateBaseline(averageNanos);
+
+		double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * baselineNanos / Math.max(averageNanos, 1)));
+		double target = estimate * gradient + Math.sqrt(estimate);
+
+		// Don't grow the limit while too few requests arrive to tell whether the handlers could cope with more
+		if (target > estimate && peak < estimate / 2) {
+			return;
+		}
+
+		estimate = Math.max(MIN_LIMIT, Math.min(maxLimit, estimate * (1 - SMOOTHING) + target * SMOOTHING));
+		limit = (int) estimate;
+	}
+
+	/**
+	 * Records a window's average latency, and makes the baseline the lowest of the most recent averages.
+	 */
+	private void updateBaseline(double averageNanos) {
+		recentAverages[nextWindow] = averageNanos;
+		nextWindow = (nextWindow + 1) % BASELINE_WINDOWS;
+		recordedWindows = Math.min(recordedWindows + 1, BASELINE_WINDOWS);
+
+		double lowest = Double.MAX_VALUE;
+		for (int i = 0; i < recordedWindows; i++) {
+			lowest = Math.min(lowest, recentAverages[i]);
+		}
+		baselineNanos = lowest;
+	}
+}
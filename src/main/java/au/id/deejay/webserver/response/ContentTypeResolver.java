@@ -0,0 +1,183 @@
+package au.id.deejay.webserver.response;
+
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MediaType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Determines the MIME type of files served by the server. Resolvers are thread safe, and are intended to be shared by
+ * every request.
+ * <p>
+ * Types are resolved from the file's extension where possible, which doesn't require any I/O. Detection results are
+ * remembered for each extension, so the cost of matching the name is only paid once per extension. Files whose type
+ * can't be determined from their name have their content sniffed by Apache Tika, and the result is cached against
+ * the file's path and modification time, in a cache of bounded size.
+ *
+ * @author David Jessup
+ */
+public class ContentTypeResolver {
+
+	/**
+	 * The default number of content-sniffed files to remember the types of.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private static final String UNKNOWN_TYPE = MediaType.OCTET_STREAM.toString();
+
+	/**
+	 * Web content types which Tika either doesn't know or can only detect by sniffing.
+	 */
+	private static final Map<String, String> EXTENSION_OVERRIDES = new HashMap<>();
+
+	static {
+		EXTENSION_OVERRIDES.put("woff", "font/woff");
+		EXTENSION_OVERRIDES.put("woff2", "font/woff2");
+		EXTENSION_OVERRIDES.put("map", "application/json");
+	}
+
+	private final Map<String, String> extensionTypes;
+	private final Map<String, CachedType> sniffedTypes;
+	private volatile Tika tika;
+
+	/**
+	 * Creates a new {@link ContentTypeResolver} which remembers the types of up to {@link #DEFAULT_CACHE_SIZE}
+	 * content-sniffed files.
+	 */
+	public ContentTypeResolver() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link ContentTypeResolver}.
+	 *
+	 * @param cacheSize the maximum number of content-sniffed files to remember the types of
+	 * @throws IllegalArgumentException if the cache size is negative.
+	 */
+	public ContentTypeResolver(int cacheSize) {
+		if (cacheSize < 0) {
+			throw new IllegalArgumentException("Cache size cannot be negative");
+		}
+
+		extensionTypes = new ConcurrentHashMap<>(EXTENSION_OVERRIDES);
+		sniffedTypes = new LinkedHashMap<String, CachedType>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedType> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets the resolver shared by {@link FileResponse}s which aren't given one explicitly.
+	 *
+	 * @return Returns the default resolver.
+	 */
+	public static ContentTypeResolver defaultResolver() {
+		return DefaultResolverHolder.INSTANCE;
+	}
+
+	/**
+	 * Determines the MIME type of a file.
+	 *
+	 * @param file the file to check
+	 * @return Returns the MIME type of the file, e.g. "text/html".
+	 * @throws IOException if the file's content needs to be examined, and can't be read.
+	 */
+	public String contentType(File file) throws IOException {
+		String type = typeFromName(file.getName());
+		if (type != null) {
+			return type;
+		}
+
+		return sniffedType(file);
+	}
+
+	/**
+	 * Determines a MIME type from a file's extension.
+	 *
+	 * @return Returns the MIME type, or null if the file doesn't have an extension or it's not recognised.
+	 */
+	private String typeFromName(String name) {
+		int dot = name.lastIndexOf('.');
+		if (dot < 0 || dot == name.length() - 1) {
+			return null;
+		}
+
+		String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+		String type = extensionTypes.get(extension);
+
+		if (type == null) {
+			type = tika().detect("file." + extension);
+			extensionTypes.put(extension, type);
+		}
+
+		return UNKNOWN_TYPE.equals(type) ? null : type;
+	}
+
+	private String sniffedType(File file) throws IOException {
+		String path = file.getPath();
+		long lastModified = file.lastModified();
+
+		synchronized (sniffedTypes) {
+			CachedType cached = sniffedTypes.get(path);
+			if (cached != null && cached.lastModified == lastModified) {
+				return cached.type;
+			}
+		}
+
+		// Sniff outside of the lock, since it requires reading the file
+		String type = tika().detect(file);
+
+		synchronized (sniffedTypes) {
+			sniffedTypes.put(path, new CachedType(type, lastModified));
+		}
+
+		return type;
+	}
+
+	private Tika tika() {
+		Tika instance = tika;
+		if (instance == null) {
+			synchronized (this) {
+				instance = tika;
+				if (instance == null) {
+					instance = new Tika();
+					tika = instance;
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * A sniffed MIME type, and the modification time of the file when it was sniffed.
+	 */
+	private static final class CachedType {
+
+		private final String type;
+		private final long lastModified;
+
+		CachedType(String type, long lastModified) {
+			this.type = type;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * Lazily creates the default resolver the first time it's needed.
+	 */
+	private static final class DefaultResolverHolder {
+
+		private static final ContentTypeResolver INSTANCE = new ContentTypeResolver();
+
+		private DefaultResolverHolder() {
+		}
+	}
+}
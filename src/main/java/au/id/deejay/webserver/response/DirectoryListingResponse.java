@@ -4,20 +4,22 @@ import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
 import au.id.deejay.webserver.exception.ResponseException;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
  * An HTTP response which lists the contents of a directory.
+ * <p>
+ * The listing is generated as it is streamed, one entry at a time, rather than being built up in memory first, so it
+ * has no Content-length and is sent with the chunked transfer coding (or by closing the connection, for HTTP/1.0
+ * clients).
  *
  * @author David Jessup
  */
 public class DirectoryListingResponse extends HttpResponse {
 
 	private final File directory;
-	private String html;
 
 	/**
 	 * Creates a new {@link DirectoryListingResponse}.
@@ -33,40 +35,88 @@ public class DirectoryListingResponse extends HttpResponse {
 			throw new ResponseException("Requested directory does not exist or cannot be read: " + directory.getPath());
 		}
 
-		html = listing();
-		headers().set("Content-length", String.valueOf(html.length()));
 		headers().set("Content-type", "text/html");
 	}
 
-	private String listing() {
+	@Override
+	public InputStream stream() {
+		File[] files = directory.listFiles();
+		return new ListingInputStream(directory, files != null ? files : new File[0]);
+	}
 
-		StringBuilder output = new StringBuilder();
+	/**
+	 * Generates the HTML of a directory listing as it is read, encoding one entry at a time.
+	 */
+	private static class ListingInputStream extends InputStream {
 
-		output.append("<h1>Directory listing for: ")
-			.append(directory.getPath())
-			.append("</h1>")
-			.append("<ol>");
+		private final File directory;
+		private final File[] files;
 
-		listFile(output, "[ Up ]", "../");
-		for (File file : directory.listFiles()) {
-			listFile(output, file.getName(), file.getName() + (file.isDirectory() ? "/" : ""));
+		/**
+		 * The index of the next part of the listing to generate: the header, the "up" link, each file, then the footer.
+		 */
+		private int next;
+		private byte[] part = new byte[0];
+		private int position;
+
+		ListingInputStream(File directory, File[] files) {
+			this.directory = directory;
+			this.files = files;
 		}
 
-		output.append("</ol>");
+		@Override
+		public int read() {
+			if (!hasRemaining()) {
+				return -1;
+			}
+			return part[position++] & 0xFF;
+		}
 
-		return output.toString();
-	}
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
 
-	private void listFile(StringBuilder html, String name, String path) {
-		html.append("<li><a href=\"./")
-			.append(path)
-			.append("\">")
-			.append(name)
-			.append("</a></li>");
-	}
+			int read = 0;
+			while (read < len && hasRemaining()) {
+				int count = Math.min(len - read, part.length - position);
+				System.arraycopy(part, position, b, off + read, count);
+				position += count;
+				read += count;
+			}
+			return read > 0 ? read : -1;
+		}
 
-	@Override
-	public InputStream stream() {
-		return new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8));
+		private boolean hasRemaining() {
+			while (position == part.length) {
+				String html = nextPart();
+				if (html == null) {
+					return false;
+				}
+				part = html.getBytes(StandardCharsets.UTF_8);
+				position = 0;
+			}
+			return true;
+		}
+
+		private String nextPart() {
+			int index = next++;
+			if (index == 0) {
+				return "<h1>Directory listing for: " + directory.getPath() + "</h1><ol>" + entry("[ Up ]", "../");
+			}
+			if (index <= files.length) {
+				File file = files[index - 1];
+				return entry(file.getName(), file.getName() + (file.isDirectory() ? "/" : ""));
+			}
+			if (index == files.length + 1) {
+				return "</ol>";
+			}
+			return null;
+		}
+
+		private static String entry(String name, String path) {
+			return "<li><a href=\"./" + path + "\">" + name + "</a></li>";
+		}
 	}
 }
@@ -1,65 +1,149 @@
 package au.id.deejay.webserver.response;
 
+import au.id.deejay.webserver.api.EncodedResponse;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeader;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.headers.UnmodifiableHttpHeaders;
+import au.id.deejay.webserver.io.ResponseWriter;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 
 /**
  * A simple HTTP error response. Outputs the error code and description in the browser title, and as an H1 in the body.
+ * <p>
+ * Error responses are immutable, and their heads and bodies are encoded when they are created, so the shared instances
+ * can be sent repeatedly without being serialised again. They declare their length, so the connection can be kept alive after
+ * sending them.
  *
  * @author David Jessup
  */
 @SuppressWarnings("WeakerAccess")
-public class ErrorResponse extends HttpResponse {
+public class ErrorResponse extends HttpResponse implements EncodedResponse {
 
 	/**
 	 * 400 Bad Request response
 	 */
-	public static final ErrorResponse BAD_REQUEST_400 = new ErrorResponse(HttpStatus.BAD_REQUEST_400, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse BAD_REQUEST_400 = new ErrorResponse(HttpStatus.BAD_REQUEST_400, HttpVersion.HTTP_1_1);
 
 	/**
 	 * 403 Forbidden response
 	 */
-	public static final ErrorResponse FORBIDDEN_403 = new ErrorResponse(HttpStatus.FORBIDDEN_403, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse FORBIDDEN_403 = new ErrorResponse(HttpStatus.FORBIDDEN_403, HttpVersion.HTTP_1_1);
 
 	/**
 	 * 404 Not Found response
 	 */
-	public static final ErrorResponse NOT_FOUND_404 = new ErrorResponse(HttpStatus.NOT_FOUND_404, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse NOT_FOUND_404 = new ErrorResponse(HttpStatus.NOT_FOUND_404, HttpVersion.HTTP_1_1);
 
 	/**
 	 * 500 Internal Server Error response
 	 */
-	public static final ErrorResponse INTERNAL_SERVER_ERROR_500 = new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR_500, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse INTERNAL_SERVER_ERROR_500 = new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR_500, HttpVersion.HTTP_1_1);
 
 	/**
 	 * 501 Not Implemented response
 	 */
-	public static final ErrorResponse NOT_IMPLEMENTED_501 = new ErrorResponse(HttpStatus.NOT_IMPLEMENTED_501, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse NOT_IMPLEMENTED_501 = new ErrorResponse(HttpStatus.NOT_IMPLEMENTED_501, HttpVersion.HTTP_1_1);
+
+	/**
+	 * 503 Service Unavailable response
+	 */
+	public static final ErrorResponse SERVICE_UNAVAILABLE_503 = new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE_503, HttpVersion.HTTP_1_1);
+
+	/**
+	 * 503 Service Unavailable response for shedding load, which asks the client to retry after a second and closes the
+	 * connection
+	 */
+	public static final ErrorResponse OVERLOADED_503 = serviceUnavailable(1);
+
+	/**
+	 * 504 Gateway Timeout response
+	 */
+	public static final ErrorResponse GATEWAY_TIMEOUT_504 = new ErrorResponse(HttpStatus.GATEWAY_TIMEOUT_504, HttpVersion.HTTP_1_1);
 
 	/**
 	 * 505 HTTP Version Not Supported response
 	 */
-	public static final ErrorResponse HTTP_VERSION_NOT_SUPPORTED_505 = new ErrorResponse(HttpStatus.HTTP_VERSION_NOT_SUPPORTED_505, HttpVersion.HTTP_1_0);
+	public static final ErrorResponse HTTP_VERSION_NOT_SUPPORTED_505 = new ErrorResponse(HttpStatus.HTTP_VERSION_NOT_SUPPORTED_505, HttpVersion.HTTP_1_1);
+
+	private static final String CONTENT_TYPE = "text/html; charset=utf-8";
+
+	private final byte[] head;
+	private final byte[] body;
 
 	/**
-	 * Creates a new {@link ErrorResponse}.
+	 * Creates a new {@link ErrorResponse} with the default error page.
 	 *
 	 * @param status  the HTTP status code of the error
 	 * @param version the HTTP version of the response
 	 */
 	public ErrorResponse(HttpStatus status, HttpVersion version) {
-		super(status, version);
+		this(status, version, defaultPage(status));
+	}
+
+	/**
+	 * Creates a new {@link ErrorResponse} with a custom error page.
+	 *
+	 * @param status  the HTTP status code of the error
+	 * @param version the HTTP version of the response
+	 * @param page    the HTML error page
+	 */
+	public ErrorResponse(HttpStatus status, HttpVersion version, String page) {
+		this(status, version, page.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private ErrorResponse(HttpStatus status, HttpVersion version, byte[] body, HttpHeader... extraHeaders) {
+		super(status, headers(body, extraHeaders), "", version);
+		this.body = body;
+		head = ResponseWriter.encodeHead(this);
+	}
+
+	/**
+	 * Creates a 503 Service Unavailable response for shedding load, which asks the client to retry after a delay and
+	 * closes the connection.
+	 *
+	 * @param retryAfterSeconds how long the client should wait before retrying, in seconds
+	 * @return Returns the response.
+	 */
+	public static ErrorResponse serviceUnavailable(int retryAfterSeconds) {
+		HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE_503;
+		return new ErrorResponse(status, HttpVersion.HTTP_1_1, defaultPage(status).getBytes(StandardCharsets.UTF_8),
+								 new HttpHeader("Retry-After", String.valueOf(retryAfterSeconds)),
+								 new HttpHeader("Connection", "close"));
 	}
 
 	@Override
 	public InputStream stream() {
-		String body = MessageFormat.format("<title>{0} {1}</title><h1>{0} {1}</h1>", status().code(), status().description());
-		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+		return new ByteArrayInputStream(body);
 	}
 
+	@Override
+	public ByteBuffer head() {
+		return ByteBuffer.wrap(head).asReadOnlyBuffer();
+	}
+
+	@Override
+	public ByteBuffer body() {
+		return ByteBuffer.wrap(body).asReadOnlyBuffer();
+	}
+
+	private static String defaultPage(HttpStatus status) {
+		return MessageFormat.format("<title>{0} {1}</title><h1>{0} {1}</h1>", status.code(), status.description());
+	}
+
+	private static Headers headers(byte[] body, HttpHeader... extraHeaders) {
+		HttpHeaders headers = new HttpHeaders(new HttpHeader("Content-type", CONTENT_TYPE),
+											  new HttpHeader("Content-length", String.valueOf(body.length)));
+		for (HttpHeader header : extraHeaders) {
+			headers.add(header);
+		}
+		return new UnmodifiableHttpHeaders(headers);
+	}
 }
@@ -0,0 +1,420 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpDate;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.headers.UnmodifiableHttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of small, frequently requested files. Each entry holds the content of a file along with the
+ * headers of its response, so a cached file can be served without touching the file system.
+ * <p>
+ * Files are held in one of two tiers, each bounded by the total size of the files it holds. Small files are held on
+ * the Java heap, while larger files (up to the off-heap tier's maximum entry size) are held in direct buffers outside
+ * of the heap, so they don't add to the heap's size or to garbage collection times. Direct buffers can also be written
+ * to a socket without first being copied. Files larger than both tiers' maximum entry sizes are never cached.
+ * <p>
+ * Each tier evicts its least recently used files to make room for new ones. Off-heap memory is released once an
+ * evicted buffer is garbage collected, so the JVM's direct memory limit ({@code -XX:MaxDirectMemorySize}) should allow
+ * some headroom over the off-heap budget.
+ * <p>
+ * Entries are revalidated against the file's size and modification time at most once per revalidation interval, and
+ * are reloaded if the file has changed (or dropped if it no longer exists), so a changed file may be served stale for
+ * up to one interval.
+ * <p>
+ * Caches are thread safe, and are intended to be shared by every request.
+ *
+ * @author David Jessup
+ */
+public class FileCache {
+
+	/**
+	 * The default interval between checks that a cached file hasn't changed, in milliseconds.
+	 */
+	public static final long DEFAULT_REVALIDATE_MILLIS = 1000;
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileCache.class);
+
+	private final long maxBytes;
+	private final long maxEntrySize;
+	private final long maxOffHeapBytes;
+	private final long maxOffHeapEntrySize;
+	private final long revalidateMillis;
+	private final ContentTypeResolver contentTypes;
+
+	private final Map<String, CachedFile> entries;
+	private long heapBytes;
+	private long offHeapBytes;
+	private int offHeapSize;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a new {@link FileCache} which only holds files on the heap, revalidates entries every {@link
+	 * #DEFAULT_REVALIDATE_MILLIS} milliseconds and uses the {@link ContentTypeResolver#defaultResolver() default
+	 * resolver} to determine the types of files.
+	 *
+	 * @param maxBytes     the maximum total size of the cached files, in bytes
+	 * @param maxEntrySize the size of the largest file which may be cached, in bytes
+	 */
+	public FileCache(long maxBytes, long maxEntrySize) {
+		this(maxBytes, maxEntrySize, 0, 0);
+	}
+
+	/**
+	 * Creates a new {@link FileCache}, which revalidates entries every {@link #DEFAULT_REVALIDATE_MILLIS} milliseconds
+	 * and uses the {@link ContentTypeResolver#defaultResolver() default resolver} to determine the types of files.
+	 *
+	 * @param maxBytes            the maximum total size of the files cached on the heap, in bytes
+	 * @param maxEntrySize        the size of the largest file which may be cached on the heap, in bytes
+	 * @param maxOffHeapBytes     the maximum total size of the files cached off the heap, in bytes
+	 * @param maxOffHeapEntrySize the size of the largest file which may be cached off the heap, in bytes
+	 */
+	public FileCache(long maxBytes, long maxEntrySize, long maxOffHeapBytes, long maxOffHeapEntrySize) {
+		this(maxBytes, maxEntrySize, maxOffHeapBytes, maxOffHeapEntrySize, DEFAULT_REVALIDATE_MILLIS, ContentTypeResolver.defaultResolver());
+	}
+
+	/**
+	 * Creates a new {@link FileCache}.
+	 *
+	 * @param maxBytes            the maximum total size of the files cached on the heap, in bytes
+	 * @param maxEntrySize        the size of the largest file which may be cached on the heap, in bytes
+	 * @param maxOffHeapBytes     the maximum total size of the files cached off the heap, in bytes
+	 * @param maxOffHeapEntrySize the size of the largest file which may be cached off the heap, in bytes
+	 * @param revalidateMillis    the interval between checks that a cached file hasn't changed, in milliseconds
+	 * @param contentTypes        the resolver used to determine the MIME types of files
+	 * @throws IllegalArgumentException if any of the sizes or the interval are negative.
+	 */
+	public FileCache(long maxBytes, long maxEntrySize, long maxOffHeapBytes, long maxOffHeapEntrySize, long revalidateMillis,
+					 ContentTypeResolver contentTypes) {
+		if (maxBytes < 0 || maxEntrySize < 0 || maxOffHeapBytes < 0 || maxOffHeapEntrySize < 0 || revalidateMillis < 0) {
+			throw new IllegalArgumentException("Cache sizes and revalidation interval cannot be negative");
+		}
+
+		this.maxBytes = maxBytes;
+		this.maxEntrySize = Math.min(maxEntrySize, Math.min(maxBytes, Integer.MAX_VALUE));
+		this.maxOffHeapBytes = maxOffHeapBytes;
+		this.maxOffHeapEntrySize = Math.min(maxOffHeapEntrySize, Math.min(maxOffHeapBytes, Integer.MAX_VALUE));
+		this.revalidateMillis = revalidateMillis;
+		this.contentTypes = contentTypes;
+
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Gets a response for a file from the cache, loading the file into the cache if it isn't already held.
+	 *
+	 * @param file    the file to respond with
+	 * @param version the HTTP version of the response
+	 * @return Returns a response containing the file, or null if the file doesn't exist, can't be read, or is too
+	 * large to be cached.
+	 */
+	public CachedFileResponse get(File file, HttpVersion version) {
+		return get(file, null, false, version);
+	}
+
+	/**
+	 * Gets a response for a file, or a precompressed copy of a file, from the cache, loading the file into the cache
+	 * if it isn't already held.
+	 *
+	 * @param file    the file to respond with
+	 * @param coding  the content coding of the file if it is a precompressed copy of another file (see {@link
+	 *                PrecompressedFiles}), or null if it is sent as-is
+	 * @param vary    if the response should have a "Vary: Accept-Encoding" header, since it was chosen based on the
+	 *                codings the client accepts
+	 * @param version the HTTP version of the response
+	 * @return Returns a response containing the file, or null if the file doesn't exist, can't be read, or is too
+	 * large to be cached.
+	 */
+	public CachedFileResponse get(File file, String coding, boolean vary, HttpVersion version) {
+		String path = file.getPath();
+		long now = System.currentTimeMillis();
+
+		CachedFile cached;
+		synchronized (this) {
+			cached = entries.get(path);
+		}
+
+		if (cached != null && cached.isVariant(coding, vary) && revalidate(cached, file, now)) {
+			hits.incrementAndGet();
+			return new CachedFileResponse(cached, version);
+		}
+
+		CachedFile loaded = null;
+
+		// Only count requests for regular files as misses, not directories or missing files
+		if (file.isFile()) {
+			misses.incrementAndGet();
+
+			// Read the file outside of the lock, so other files can be served in the meantime
+			loaded = load(file, coding, vary, now);
+		}
+
+		if (cached != null || loaded != null) {
+			synchronized (this) {
+				remove(path);
+				if (loaded != null) {
+					put(path, loaded);
+				}
+			}
+		}
+
+		return loaded != null ? new CachedFileResponse(loaded, version) : null;
+	}
+
+	/**
+	 * Gets the number of requests which were served from the cache.
+	 *
+	 * @return Returns the number of cache hits.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of requests for files which weren't in the cache, or had changed since they were cached.
+	 *
+	 * @return Returns the number of cache misses.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of files which have been evicted from the cache to make room for others.
+	 *
+	 * @return Returns the number of evictions.
+	 */
+	public long evictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the number of files currently held in the cache, both on and off the heap.
+	 *
+	 * @return Returns the number of cached files.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the total size of the files currently held in the cache, both on and off the heap.
+	 *
+	 * @return Returns the size of the cached files, in bytes.
+	 */
+	public synchronized long bytes() {
+		return heapBytes + offHeapBytes;
+	}
+
+	/**
+	 * Gets the number of files currently held in off-heap buffers.
+	 *
+	 * @return Returns the number of files cached off the heap.
+	 */
+	public synchronized int offHeapSize() {
+		return offHeapSize;
+	}
+
+	/**
+	 * Gets the total size of the files currently held in off-heap buffers.
+	 *
+	 * @return Returns the size of the files cached off the heap, in bytes.
+	 */
+	public synchronized long offHeapBytes() {
+		return offHeapBytes;
+	}
+
+	/**
+	 * Checks that a cached file is still current, if it hasn't been checked within the revalidation interval.
+	 *
+	 * @return Returns true if the cached file can be served.
+	 */
+	private boolean revalidate(CachedFile cached, File file, long now) {
+		if (now - cached.validatedAt < revalidateMillis) {
+			return true;
+		}
+
+		if (file.lastModified() != cached.lastModified || file.length() != cached.length() || !file.isFile()) {
+			return false;
+		}
+
+		cached.validatedAt = now;
+		return true;
+	}
+
+	/**
+	 * Reads a file and builds the headers of its response.
+	 *
+	 * @return Returns the cache entry for the file, or null if it can't be cached.
+	 */
+	private CachedFile load(File file, String coding, boolean vary, long now) {
+		if (!file.canRead()) {
+			return null;
+		}
+
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		boolean offHeap = length > maxEntrySize;
+		if (offHeap && length > maxOffHeapEntrySize) {
+			return null;
+		}
+
+		try {
+			ByteBuffer content = read(file, (int) length, offHeap);
+			if (content == null) {
+				// The file changed while it was being read, leave it to be served from disk
+				return null;
+			}
+
+			Headers headers = new HttpHeaders();
+			headers.set("Content-length", String.valueOf(length));
+			headers.set("Last-Modified", HttpDate.format(lastModified));
+			headers.set("ETag", FileResponse.etag(length, lastModified));
+			headers.set("Accept-Ranges", "bytes");
+			headers.set("Content-type", contentTypes.contentType(coding != null ? PrecompressedFiles.originalFile(file) : file));
+			if (coding != null) {
+				headers.set("Content-Encoding", coding);
+			}
+			if (vary) {
+				headers.set("Vary", "Accept-Encoding");
+			}
+
+			return new CachedFile(content, new UnmodifiableHttpHeaders(headers), coding, vary, lastModified, now);
+		} catch (IOException e) {
+			LOG.debug("Unable to cache " + file.getPath(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the content of a file into a new buffer.
+	 *
+	 * @return Returns the buffer, ready for reading, or null if the file isn't the expected length.
+	 */
+	private static ByteBuffer read(File file, int length, boolean direct) throws IOException {
+		ByteBuffer content = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (content.hasRemaining()) {
+				if (channel.read(content) < 0) {
+					return null;
+				}
+			}
+			if (channel.size() != length) {
+				return null;
+			}
+		}
+
+		content.flip();
+		return content;
+	}
+
+	private void put(String path, CachedFile cached) {
+		entries.put(path, cached);
+		account(cached, 1);
+
+		// Evict the least recently used files from the new file's tier until it fits
+		boolean offHeap = cached.offHeap();
+		Iterator<CachedFile> eldest = entries.values().iterator();
+		while (overBudget(offHeap) && eldest.hasNext()) {
+			CachedFile candidate = eldest.next();
+			if (candidate.offHeap() == offHeap) {
+				eldest.remove();
+				account(candidate, -1);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(String path) {
+		CachedFile removed = entries.remove(path);
+		if (removed != null) {
+			account(removed, -1);
+		}
+	}
+
+	private boolean overBudget(boolean offHeap) {
+		return offHeap ? offHeapBytes > maxOffHeapBytes : heapBytes > maxBytes;
+	}
+
+	/**
+	 * Adds (or with a sign of -1, subtracts) a file to the size of its tier.
+	 */
+	private void account(CachedFile cached, int sign) {
+		if (cached.offHeap()) {
+			offHeapBytes += sign * cached.length();
+			offHeapSize += sign;
+		} else {
+			heapBytes += sign * cached.length();
+		}
+	}
+
+	/**
+	 * The cached content and response headers of a file.
+	 */
+	static final class CachedFile {
+
+		private final ByteBuffer content;
+		private final Headers headers;
+		private final String coding;
+		private final boolean vary;
+		private final long lastModified;
+		private volatile long validatedAt;
+
+		CachedFile(ByteBuffer content, Headers headers, String coding, boolean vary, long lastModified, long validatedAt) {
+			this.content = content;
+			this.headers = headers;
+			this.coding = coding;
+			this.vary = vary;
+			this.lastModified = lastModified;
+			this.validatedAt = validatedAt;
+		}
+
+		/**
+		 * Gets a read-only view of the file's content, which can be consumed independently of any other view.
+		 */
+		ByteBuffer content() {
+			return content.asReadOnlyBuffer();
+		}
+
+		/**
+		 * Checks if the file was cached with the same content coding and Vary header as a request for it expects.
+		 */
+		boolean isVariant(String otherCoding, boolean otherVary) {
+			return vary == otherVary && (coding == null ? otherCoding == null : coding.equals(otherCoding));
+		}
+
+		int length() {
+			return content.limit();
+		}
+
+		boolean offHeap() {
+			return content.isDirect();
+		}
+
+		Headers headers() {
+			return headers;
+		}
+
+		long lastModified() {
+			return lastModified;
+		}
+	}
+}
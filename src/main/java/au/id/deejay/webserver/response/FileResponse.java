@@ -1,47 +1,116 @@
 package au.id.deejay.webserver.response;
 
+import au.id.deejay.webserver.api.FileRegionResponse;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
 import au.id.deejay.webserver.exception.ResponseException;
-import org.apache.tika.Tika;
+import au.id.deejay.webserver.headers.HttpDate;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
- * An HTTP response which streams a file back to the client in the response body.
+ * An HTTP response which streams a file back to the client in the response body. As a {@link FileRegionResponse}, the
+ * file can also be sent without copying it through the Java heap, when the connection supports it.
  *
  * @author David Jessup
  */
-public class FileResponse extends HttpResponse {
+public class FileResponse extends HttpResponse implements FileRegionResponse {
 
 	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final String etag;
 
 	/**
-	 * Creates a new {@link FileResponse}.
+	 * Creates a new {@link FileResponse}, using the {@link ContentTypeResolver#defaultResolver() default resolver} to
+	 * determine the file's MIME type.
 	 *
 	 * @param file    the file to be streamed in the response body.
 	 * @param version the HTTP version of the response.
 	 */
 	public FileResponse(File file, HttpVersion version) {
+		this(file, version, ContentTypeResolver.defaultResolver());
+	}
+
+	/**
+	 * Creates a new {@link FileResponse}.
+	 *
+	 * @param file         the file to be streamed in the response body.
+	 * @param version      the HTTP version of the response.
+	 * @param contentTypes the resolver used to determine the file's MIME type.
+	 */
+	public FileResponse(File file, HttpVersion version, ContentTypeResolver contentTypes) {
+		this(file, version, contentType(file, contentTypes));
+	}
+
+	/**
+	 * Creates a new {@link FileResponse} with a known MIME type.
+	 *
+	 * @param file        the file to be streamed in the response body.
+	 * @param version     the HTTP version of the response.
+	 * @param contentType the MIME type of the file.
+	 */
+	FileResponse(File file, HttpVersion version, String contentType) {
 		super(HttpStatus.OK_200, version);
 		this.file = file;
 
+		length = file.length();
+		lastModified = file.lastModified();
+		etag = etag(length, lastModified);
+
+		headers().set("Content-length", String.valueOf(length));
+		headers().set("Last-Modified", HttpDate.format(lastModified));
+		headers().set("ETag", etag);
+		headers().set("Accept-Ranges", "bytes");
+		headers().set("Content-type", contentType);
+	}
+
+	/**
+	 * Determines the MIME type of a file, checking that it can be read first.
+	 *
+	 * @param file         the file
+	 * @param contentTypes the resolver used to determine the file's MIME type
+	 * @return Returns the MIME type of the file.
+	 * @throws ResponseException if the file can't be read.
+	 */
+	static String contentType(File file, ContentTypeResolver contentTypes) {
 		if (!file.canRead()) {
 			throw new ResponseException("Requested file does not exist or cannot be read: " + file.getPath());
 		}
 
-		headers().set("Content-length", String.valueOf(file.length()));
-
 		try {
-			headers().set("Content-type", contentType(file));
+			return contentTypes.contentType(file);
 		} catch (IOException e) {
 			throw new ResponseException("Failed to detect MIME type of " + file.getPath(), e);
 		}
 	}
 
-	private String contentType(File file) throws IOException {
-		Tika tika = new Tika();
-		return tika.detect(file);
+	/**
+	 * Derives a strong entity tag from the size and modification time of a file, so it changes whenever the file does
+	 * without the file's content needing to be read.
+	 */
+	static String etag(long length, long lastModified) {
+		return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	/**
+	 * Gets the entity tag of the file, as sent in the ETag header.
+	 *
+	 * @return Returns the quoted entity tag.
+	 */
+	public String etag() {
+		return etag;
+	}
+
+	/**
+	 * Gets the time the file was last modified, as sent in the Last-Modified header.
+	 *
+	 * @return Returns the modification time in milliseconds since the epoch.
+	 */
+	public long lastModified() {
+		return lastModified;
 	}
 
 	@Override
@@ -52,4 +121,23 @@ public class FileResponse extends HttpResponse {
 			throw new ResponseException("Requested file does not exist", e);
 		}
 	}
+
+	@Override
+	public FileChannel channel() {
+		try {
+			return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			throw new ResponseException("Requested file does not exist or cannot be read: " + file.getPath(), e);
+		}
+	}
+
+	@Override
+	public long position() {
+		return 0;
+	}
+
+	@Override
+	public long count() {
+		return length;
+	}
 }
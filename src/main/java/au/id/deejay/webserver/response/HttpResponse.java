@@ -50,14 +50,15 @@ public class HttpResponse implements Response {
 	}
 
 	/**
-	 * Creates a new {@link HttpResponse} with a string-based response body and automatic Content-length header.
+	 * Creates a new {@link HttpResponse} with a string-based response body and automatic Content-length header. The
+	 * body is encoded as UTF-8, so its length is measured in encoded bytes rather than characters.
 	 *
 	 * @param status  the HTTP status code of the response
 	 * @param body    the response body
 	 * @param version the HTTP version of the response
 	 */
 	public HttpResponse(HttpStatus status, String body, HttpVersion version) {
-		this(status, new HttpHeaders(new HttpHeader("Content-length", String.valueOf(body.length()))), body, version);
+		this(status, new HttpHeaders(new HttpHeader("Content-length", String.valueOf(body.getBytes(StandardCharsets.UTF_8).length))), body, version);
 	}
 
 	@Override
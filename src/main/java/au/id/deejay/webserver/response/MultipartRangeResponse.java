@@ -0,0 +1,107 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.request.ByteRange;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+
+/**
+ * A "206 Partial Content" response which sends several ranges of a file as a "multipart/byteranges" body. Each range is
+ * read from its position in the file as the body is streamed, so only the requested ranges are read.
+ *
+ * @author David Jessup
+ */
+public class MultipartRangeResponse extends HttpResponse {
+
+	private static final String[] RETAINED_HEADERS = {"ETag", "Last-Modified", "Accept-Ranges", "Cache-Control", "Expires"};
+
+	private final FileResponse fileResponse;
+	private final List<ByteRange> ranges;
+	private final byte[][] partHeaders;
+	private final byte[] closeDelimiter;
+
+	/**
+	 * Creates a new {@link MultipartRangeResponse}.
+	 *
+	 * @param fileResponse the response which would have sent the complete file
+	 * @param ranges       the ranges of the file to send, which must be within the file
+	 */
+	public MultipartRangeResponse(FileResponse fileResponse, List<ByteRange> ranges) {
+		super(HttpStatus.PARTIAL_CONTENT_206, fileResponse.version());
+		this.fileResponse = fileResponse;
+		this.ranges = ranges;
+
+		String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+		String contentType = fileResponse.headers().value("Content-type");
+
+		partHeaders = new byte[ranges.size()][];
+		long contentLength = 0;
+
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			partHeaders[i] = (CRLF + "--" + boundary + CRLF
+					+ "Content-type: " + contentType + CRLF
+					+ "Content-Range: " + range.contentRange(fileResponse.count()) + CRLF
+					+ CRLF).getBytes(StandardCharsets.US_ASCII);
+			contentLength += partHeaders[i].length + range.length();
+		}
+
+		closeDelimiter = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+		contentLength += closeDelimiter.length;
+
+		for (String name : RETAINED_HEADERS) {
+			if (fileResponse.headers().contains(name)) {
+				headers().set(fileResponse.headers().header(name));
+			}
+		}
+
+		headers().set("Content-length", String.valueOf(contentLength));
+		headers().set("Content-type", "multipart/byteranges; boundary=" + boundary);
+	}
+
+	@Override
+	public InputStream stream() {
+		return new SequenceInputStream(new PartEnumeration());
+	}
+
+	/**
+	 * Enumerates the streams making up the body, only opening the file for each range when it is reached.
+	 */
+	private class PartEnumeration implements Enumeration<InputStream> {
+
+		private int index;
+
+		@Override
+		public boolean hasMoreElements() {
+			return index <= ranges.size() * 2;
+		}
+
+		@Override
+		public InputStream nextElement() {
+			if (!hasMoreElements()) {
+				throw new NoSuchElementException();
+			}
+
+			int part = index / 2;
+			boolean header = index % 2 == 0;
+			index++;
+
+			if (part == ranges.size()) {
+				return new ByteArrayInputStream(closeDelimiter);
+			}
+
+			return header
+					? new ByteArrayInputStream(partHeaders[part])
+					: PartialFileResponse.regionStream(fileResponse, ranges.get(part));
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.Response;
+
+/**
+ * A bodiless "304 Not Modified" response, sent in place of a resource the client already holds the current version of.
+ *
+ * @author David Jessup
+ */
+public class NotModifiedResponse extends HttpResponse {
+
+	private static final String[] VALIDATOR_HEADERS = {"ETag", "Last-Modified", "Cache-Control", "Expires", "Vary"};
+
+	/**
+	 * Creates a new {@link NotModifiedResponse} in place of a full response. The validator and caching headers of the
+	 * full response are retained, so the client can update its cached copy.
+	 *
+	 * @param response the response which would have been sent had the resource been modified
+	 */
+	public NotModifiedResponse(Response response) {
+		super(HttpStatus.NOT_MODIFIED_304, response.version());
+
+		for (String name : VALIDATOR_HEADERS) {
+			if (response.headers().contains(name)) {
+				headers().set(response.headers().header(name));
+			}
+		}
+	}
+}
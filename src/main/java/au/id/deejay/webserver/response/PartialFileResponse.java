@@ -0,0 +1,87 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.FileRegionResponse;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.request.ByteRange;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * A "206 Partial Content" response which sends a single range of a file. Like a {@link FileResponse}, the range can be
+ * transferred straight from the file to the client without being copied through the Java heap.
+ *
+ * @author David Jessup
+ */
+public class PartialFileResponse extends HttpResponse implements FileRegionResponse {
+
+	private final FileResponse fileResponse;
+	private final ByteRange range;
+
+	/**
+	 * Creates a new {@link PartialFileResponse}.
+	 *
+	 * @param fileResponse the response which would have sent the complete file
+	 * @param range        the range of the file to send, which must be within the file
+	 */
+	public PartialFileResponse(FileResponse fileResponse, ByteRange range) {
+		super(HttpStatus.PARTIAL_CONTENT_206, fileResponse.version());
+		this.fileResponse = fileResponse;
+		this.range = range;
+
+		for (Header header : fileResponse.headers().headers()) {
+			headers().set(header);
+		}
+
+		headers().set("Content-length", String.valueOf(range.length()));
+		headers().set("Content-Range", range.contentRange(fileResponse.count()));
+	}
+
+	@Override
+	public FileChannel channel() {
+		return fileResponse.channel();
+	}
+
+	@Override
+	public long position() {
+		return range.first();
+	}
+
+	@Override
+	public long count() {
+		return range.length();
+	}
+
+	@Override
+	public InputStream stream() {
+		return regionStream(fileResponse, range);
+	}
+
+	/**
+	 * Opens a stream which reads a range of a file, starting at the first byte of the range rather than reading
+	 * through the file from the start.
+	 *
+	 * @param fileResponse the response for the complete file
+	 * @param range        the range to read
+	 * @return Returns a stream of the bytes within the range.
+	 */
+	static InputStream regionStream(FileResponse fileResponse, ByteRange range) {
+		FileChannel channel = fileResponse.channel();
+		try {
+			channel.position(range.first());
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw new ResponseException("Unable to read requested range of file", e);
+		}
+		return new BoundedInputStream(Channels.newInputStream(channel), range.length());
+	}
+}
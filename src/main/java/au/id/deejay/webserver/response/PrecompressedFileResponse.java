@@ -0,0 +1,49 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.exception.ResponseException;
+
+import java.io.File;
+
+/**
+ * A {@link FileResponse} which sends a precompressed copy of a file (e.g. "style.css.gz") in place of the file itself,
+ * with a Content-Encoding header identifying the compression and the Content-type of the original file.
+ *
+ * @author David Jessup
+ */
+public class PrecompressedFileResponse extends FileResponse {
+
+	/**
+	 * Creates a new {@link PrecompressedFileResponse}, using the {@link ContentTypeResolver#defaultResolver() default
+	 * resolver} to determine the original file's MIME type.
+	 *
+	 * @param encodedFile the precompressed copy of the file, named after the original with an extension for its coding
+	 * @param coding      the content coding of the copy, e.g. "gzip"
+	 * @param version     the HTTP version of the response
+	 */
+	public PrecompressedFileResponse(File encodedFile, String coding, HttpVersion version) {
+		this(encodedFile, coding, version, ContentTypeResolver.defaultResolver());
+	}
+
+	/**
+	 * Creates a new {@link PrecompressedFileResponse}.
+	 *
+	 * @param encodedFile  the precompressed copy of the file, named after the original with an extension for its coding
+	 * @param coding       the content coding of the copy, e.g. "gzip"
+	 * @param version      the HTTP version of the response
+	 * @param contentTypes the resolver used to determine the original file's MIME type
+	 */
+	public PrecompressedFileResponse(File encodedFile, String coding, HttpVersion version, ContentTypeResolver contentTypes) {
+		super(encodedFile, version, originalContentType(encodedFile, contentTypes));
+
+		headers().set("Content-Encoding", coding);
+		headers().set("Vary", "Accept-Encoding");
+	}
+
+	private static String originalContentType(File encodedFile, ContentTypeResolver contentTypes) {
+		if (!encodedFile.canRead()) {
+			throw new ResponseException("Requested file does not exist or cannot be read: " + encodedFile.getPath());
+		}
+		return contentType(PrecompressedFiles.originalFile(encodedFile), contentTypes);
+	}
+}
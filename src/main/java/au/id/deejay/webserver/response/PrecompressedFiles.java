@@ -0,0 +1,163 @@
+package au.id.deejay.webserver.response;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which files have precompressed copies alongside them, e.g. "style.css.br" or "style.css.gz" next to
+ * "style.css", so they can be sent to clients which accept the matching content coding in place of the original.
+ * <p>
+ * Checking for a file's precompressed copies takes a file system call per content coding, so the result is remembered
+ * and only checked again once the revalidation interval has passed. The results are held in a cache of bounded size.
+ * Copies older than the original file are assumed to be out of date, and are ignored.
+ * <p>
+ * Instances are thread safe, and are intended to be shared by every request.
+ *
+ * @author David Jessup
+ */
+public class PrecompressedFiles {
+
+	/**
+	 * The default number of files to remember the precompressed copies of.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	/**
+	 * The content codings precompressed copies are looked for with, in order of preference.
+	 */
+	private static final String[] CODINGS = {"br", "gzip"};
+
+	/**
+	 * The file extension of each coding's precompressed copies.
+	 */
+	private static final String[] EXTENSIONS = {".br", ".gz"};
+
+	private final long revalidateMillis;
+	private final Map<String, Siblings> siblings;
+
+	/**
+	 * Creates a new {@link PrecompressedFiles}, which remembers the precompressed copies of up to {@link
+	 * #DEFAULT_CACHE_SIZE} files and checks them again every {@link FileCache#DEFAULT_REVALIDATE_MILLIS} milliseconds.
+	 */
+	public PrecompressedFiles() {
+		this(DEFAULT_CACHE_SIZE, FileCache.DEFAULT_REVALIDATE_MILLIS);
+	}
+
+	/**
+	 * Creates a new {@link PrecompressedFiles}.
+	 *
+	 * @param cacheSize        the maximum number of files to remember the precompressed copies of
+	 * @param revalidateMillis the interval between checks of a file's precompressed copies, in milliseconds
+	 * @throws IllegalArgumentException if the cache size or interval are negative.
+	 */
+	public PrecompressedFiles(int cacheSize, long revalidateMillis) {
+		if (cacheSize < 0 || revalidateMillis < 0) {
+			throw new IllegalArgumentException("Cache size and revalidation interval cannot be negative");
+		}
+
+		this.revalidateMillis = revalidateMillis;
+		siblings = new LinkedHashMap<String, Siblings>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Siblings> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets the content codings a file has precompressed copies for.
+	 *
+	 * @param file the original file
+	 * @return Returns the available codings, in order of preference. The array must not be modified.
+	 */
+	public String[] codings(File file) {
+		return siblings(file).codings;
+	}
+
+	/**
+	 * Gets the precompressed copy of a file for a content coding.
+	 *
+	 * @param file   the original file
+	 * @param coding the content coding, as returned by {@link #codings(File)}
+	 * @return Returns the file containing the encoded copy.
+	 */
+	public File encodedFile(File file, String coding) {
+		for (int i = 0; i < CODINGS.length; i++) {
+			if (CODINGS[i].equals(coding)) {
+				return new File(file.getPath() + EXTENSIONS[i]);
+			}
+		}
+		throw new IllegalArgumentException("Unsupported content coding: " + coding);
+	}
+
+	/**
+	 * Gets the file a precompressed copy was made from, by removing the copy's content coding extension.
+	 *
+	 * @param encodedFile the precompressed copy
+	 * @return Returns the original file.
+	 */
+	static File originalFile(File encodedFile) {
+		String path = encodedFile.getPath();
+		return new File(path.substring(0, path.lastIndexOf('.')));
+	}
+
+	private Siblings siblings(File file) {
+		String path = file.getPath();
+		long now = System.currentTimeMillis();
+
+		Siblings cached;
+		synchronized (siblings) {
+			cached = siblings.get(path);
+		}
+
+		if (cached != null && now - cached.checkedAt < revalidateMillis) {
+			return cached;
+		}
+
+		Siblings checked = new Siblings(find(file), now);
+		synchronized (siblings) {
+			siblings.put(path, checked);
+		}
+		return checked;
+	}
+
+	/**
+	 * Looks for the current precompressed copies of a file.
+	 */
+	private static String[] find(File file) {
+		long lastModified = file.lastModified();
+		if (lastModified == 0 || !file.isFile()) {
+			return new String[0];
+		}
+
+		String[] found = new String[CODINGS.length];
+		int count = 0;
+
+		for (int i = 0; i < CODINGS.length; i++) {
+			File sibling = new File(file.getPath() + EXTENSIONS[i]);
+			// lastModified() is 0 if the sibling doesn't exist
+			if (sibling.lastModified() >= lastModified && sibling.isFile()) {
+				found[count++] = CODINGS[i];
+			}
+		}
+
+		String[] codings = new String[count];
+		System.arraycopy(found, 0, codings, 0, count);
+		return codings;
+	}
+
+	/**
+	 * The precompressed copies of a file, and the time they were checked.
+	 */
+	private static final class Siblings {
+
+		private final String[] codings;
+		private final long checkedAt;
+
+		Siblings(String[] codings, long checkedAt) {
+			this.codings = codings;
+			this.checkedAt = checkedAt;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.headers.Header;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.io.GzipCompressingInputStream;
+import au.id.deejay.webserver.request.AcceptEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Compresses response bodies on the fly with the gzip or deflate content codings, for clients which accept them.
+ * <p>
+ * Only successful ("200 OK") responses are compressed, and only if their MIME type is one of the compressible types and
+ * they are at least the minimum size (smaller bodies don't compress well enough to be worth the CPU time). Responses
+ * which already have a Content-Encoding, such as precompressed files, are left alone. Bodies of unknown length, such as
+ * directory listings, are compressed as they are streamed to the client.
+ * <p>
+ * Compressed copies of responses with an entity tag (i.e. files) are kept in a cache of bounded size, keyed by the
+ * request path, the entity tag (which changes whenever the file does) and the coding, so each version of a file is only
+ * compressed once. Compressed responses are given a weak version of the original entity tag, since they aren't
+ * byte-for-byte identical to the original representation. This keeps conditional requests working, since If-None-Match
+ * uses weak comparison, while preventing compressed bytes from being used to satisfy a range request.
+ * <p>
+ * Compressors are thread safe, and are intended to be shared by every request.
+ *
+ * @author David Jessup
+ */
+public class ResponseCompressor {
+
+	/**
+	 * The default compression level, which balances speed and compression ratio.
+	 */
+	public static final int DEFAULT_LEVEL = 6;
+
+	/**
+	 * The default size of the smallest response body which will be compressed, in bytes.
+	 */
+	public static final int DEFAULT_MIN_SIZE = 1024;
+
+	/**
+	 * The default maximum total size of the cached compressed responses, in bytes.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * The size of the largest response body of known length which will be compressed, in bytes. Bodies of known length
+	 * are compressed into memory, so larger bodies are sent uncompressed.
+	 */
+	public static final long MAX_SIZE = 8L * 1024 * 1024;
+
+	/**
+	 * The MIME types compressed by default. Types ending with "/*" match any subtype.
+	 */
+	public static final List<String> DEFAULT_TYPES = Collections.unmodifiableList(Arrays.asList(
+			"text/*",
+			"application/javascript",
+			"application/json",
+			"application/xml",
+			"application/xhtml+xml",
+			"image/svg+xml"));
+
+	private static final String GZIP = "gzip";
+	private static final String DEFLATE = "deflate";
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String CONTENT_LENGTH = "Content-length";
+	private static final String WEAK_PREFIX = "W/";
+
+	/**
+	 * Headers which describe the uncompressed body, and aren't copied to compressed responses.
+	 */
+	private static final List<String> EXCLUDED_HEADERS = Arrays.asList("content-length", "accept-ranges", "etag", "vary");
+
+	private final int level;
+	private final int minSize;
+	private final List<String> types;
+	private final long maxCacheBytes;
+
+	private final Map<String, byte[]> cache;
+	private long cacheBytes;
+
+	/**
+	 * Creates a new {@link ResponseCompressor} with the default level, minimum size, compressible types and cache
+	 * size.
+	 */
+	public ResponseCompressor() {
+		this(DEFAULT_LEVEL, DEFAULT_MIN_SIZE, DEFAULT_TYPES, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link ResponseCompressor}.
+	 *
+	 * @param level     the compression level, from 1 (fastest) to 9 (smallest)
+	 * @param minSize   the size of the smallest response body which will be compressed, in bytes
+	 * @param types     the MIME types to compress, where types ending with "/*" match any subtype
+	 * @param cacheSize the maximum total size of the cached compressed responses, in bytes
+	 * @throws IllegalArgumentException if the level is out of range, or the sizes are negative.
+	 */
+	public ResponseCompressor(int level, int minSize, List<String> types, long cacheSize) {
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Compression level must be in the range 1-9");
+		}
+		if (minSize < 0 || cacheSize < 0) {
+			throw new IllegalArgumentException("Minimum size and cache size cannot be negative");
+		}
+
+		this.level = level;
+		this.minSize = minSize;
+		this.types = types;
+		this.maxCacheBytes = cacheSize;
+
+		cache = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Compresses a response, if it is compressible and the client accepts a coding it can be compressed with.
+	 *
+	 * @param request  the request being responded to
+	 * @param response the uncompressed response
+	 * @return Returns a compressed copy of the response, or the original response if it should be sent uncompressed.
+	 * @throws ResponseException if the response body can't be read.
+	 */
+	public Response compress(Request request, Response response) {
+		if (!compressible(response)) {
+			return response;
+		}
+
+		String coding = AcceptEncoding.preferred(request, GZIP, DEFLATE);
+		if (coding == null) {
+			// The response would have been compressed had the client accepted it
+			return withVary(response);
+		}
+
+		if (!response.headers().contains(CONTENT_LENGTH)) {
+			return new CompressedStreamResponse(response, compressedHeaders(response, coding, -1), coding, level);
+		}
+
+		String etag = response.headers().value("ETag");
+		String key = etag != null ? request.uri().getPath() + '\n' + etag + '\n' + coding : null;
+
+		byte[] compressed = key != null ? cached(key) : null;
+		if (compressed == null) {
+			compressed = compress(response, coding);
+			if (key != null) {
+				cache(key, compressed);
+			}
+		}
+
+		return new CompressedResponse(response.status(), compressedHeaders(response, coding, compressed.length), compressed,
+									  response.version());
+	}
+
+	/**
+	 * Gets the total size of the compressed responses currently cached.
+	 *
+	 * @return Returns the size of the cached responses, in bytes.
+	 */
+	public synchronized long cacheBytes() {
+		return cacheBytes;
+	}
+
+	private boolean compressible(Response response) {
+		if (response.status() != HttpStatus.OK_200 || response.headers().contains("Content-Encoding")) {
+			return false;
+		}
+
+		String contentLength = response.headers().value(CONTENT_LENGTH);
+		String contentType = response.headers().value("Content-type");
+		if (contentType == null || !compressibleType(contentType)) {
+			return false;
+		}
+		if (contentLength == null) {
+			return true;
+		}
+
+		try {
+			long length = Long.parseLong(contentLength);
+			return length >= minSize && length <= MAX_SIZE;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private boolean compressibleType(String contentType) {
+		int semicolon = contentType.indexOf(';');
+		String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+
+		for (String candidate : types) {
+			boolean matches = candidate.endsWith("/*")
+					? type.startsWith(candidate.substring(0, candidate.length() - 1))
+					: type.equals(candidate);
+			if (matches) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] compress(Response response, String coding) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		try (InputStream body = encodingStream(response.stream(), coding, level)) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = body.read(buffer)) >= 0) {
+				compressed.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new ResponseException("Failed to compress response", e);
+		}
+
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * Creates a stream which compresses another stream as it is read.
+	 *
+	 * @param source the stream to compress
+	 * @param coding the content coding to compress it with, "gzip" or "deflate"
+	 * @param level  the compression level
+	 * @return Returns the compressing stream.
+	 */
+	static InputStream encodingStream(InputStream source, String coding, int level) {
+		if (GZIP.equals(coding)) {
+			return new GzipCompressingInputStream(source, level);
+		}
+
+		// The "deflate" coding is the zlib format, as produced by DeflaterInputStream by default
+		Deflater deflater = new Deflater(level);
+		return new DeflaterInputStream(source, deflater) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	private static Headers compressedHeaders(Response response, String coding, int length) {
+		Headers headers = new HttpHeaders();
+		for (Header header : response.headers().headers()) {
+			if (!EXCLUDED_HEADERS.contains(header.name().toLowerCase(Locale.ROOT))) {
+				headers.add(header);
+			}
+		}
+
+		String etag = response.headers().value("ETag");
+		if (etag != null) {
+			headers.set("ETag", etag.startsWith(WEAK_PREFIX) ? etag : WEAK_PREFIX + etag);
+		}
+
+		headers.set("Content-Encoding", coding);
+		if (length >= 0) {
+			headers.set(CONTENT_LENGTH, String.valueOf(length));
+		}
+		headers.set("Vary", ACCEPT_ENCODING);
+		return headers;
+	}
+
+	/**
+	 * Adds a "Vary: Accept-Encoding" header to an uncompressed response, since whether it was compressed depended on
+	 * the request's Accept-Encoding.
+	 */
+	private static Response withVary(Response response) {
+		List<String> vary = response.headers().values("Vary");
+		if (vary != null && vary.stream().anyMatch(ACCEPT_ENCODING::equalsIgnoreCase)) {
+			return response;
+		}
+
+		if (response instanceof CachedFileResponse) {
+			// Cached files share their headers between responses
+			return ((CachedFileResponse) response).withHeader("Vary", ACCEPT_ENCODING);
+		}
+
+		response.headers().add("Vary", ACCEPT_ENCODING);
+		return response;
+	}
+
+	private synchronized byte[] cached(String key) {
+		return cache.get(key);
+	}
+
+	private synchronized void cache(String key, byte[] compressed) {
+		if (compressed.length > maxCacheBytes) {
+			return;
+		}
+
+		byte[] replaced = cache.put(key, compressed);
+		cacheBytes += compressed.length - (replaced != null ? replaced.length : 0);
+
+		Iterator<byte[]> eldest = cache.values().iterator();
+		while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+			cacheBytes -= eldest.next().length;
+			eldest.remove();
+		}
+	}
+}
@@ -1,23 +1,65 @@
 package au.id.deejay.webserver.response;
 
+import au.id.deejay.webserver.api.AsyncRequestHandler;
 import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.api.RequestHandler;
 import au.id.deejay.webserver.api.Response;
 import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.io.ResponseWriter;
+import au.id.deejay.webserver.log.AccessLog;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.route.RouteTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Creates a {@link Response} to a {@link Request} by asking each {@link RequestHandler}, in order, until one is able to
- * service the request.
+ * Creates a {@link Response} to a {@link Request} using the {@link RequestHandler} its {@link RouteTable} finds for the
+ * request: the handler routed for the request's method and path, or else the first of the table's fallback handlers
+ * which is able to service the request.
  * <p>
  * If no {@link RequestHandler} provides a {@link Response} a 501 error response will be returned.
+ * <p>
+ * Responses from {@link AsyncRequestHandler}s can be awaited without blocking with {@link #responseAsync(Request)}. If
+ * an asynchronous handler takes longer than the factory's timeout a 504 error response is returned instead, and if it
+ * rejects or cancels the request a 503 error response is returned.
+ * <p>
+ * If the factory has a {@link ConcurrencyLimiter}, the server's connections {@link #admit()} each request before asking
+ * for a response to it, and answer requests beyond the limit with {@link ErrorResponse#OVERLOADED_503} before a handler
+ * is even looked for, so no file I/O is done for them. An admitted request is only {@link #release() released} once
+ * its response has been written, since file bodies are read while the response is written rather than by the handler.
+ * Its latency is {@link #sample(long) sampled} as soon as the response has been generated though, so clients which are
+ * slow to read their responses don't make the limit shrink.
+ * <p>
+ * Factories for a {@link RouteTable} are created with a {@link Builder}.
  *
  * @author David Jessup
  */
 public class ResponseFactory {
 
-	private List<RequestHandler> requestHandlers;
+	/**
+	 * The default time to wait for asynchronous handlers, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private static final Logger LOG = LoggerFactory.getLogger(ResponseFactory.class);
+
+	private final RouteTable routes;
+	private final String serverName;
+	private final long timeoutMillis;
+	private final ServerMetrics metrics;
+	private final AccessLog accessLog;
+	private final ConcurrencyLimiter limiter;
 
 	/**
 	 * Constructs a new response factory and registers the provided {@link RequestHandler}s to handle generation of
@@ -27,12 +69,63 @@ public class ResponseFactory {
 	 * @param requestHandlers the list of request handlers to register for response generation.
 	 */
 	public ResponseFactory(List<RequestHandler> requestHandlers) {
-		this.requestHandlers = requestHandlers;
+		this(new Builder(RouteTable.of(requestHandlers)));
+	}
+
+	private ResponseFactory(Builder builder) {
+		routes = builder.routes;
+		serverName = builder.serverName;
+		timeoutMillis = builder.timeoutMillis;
+		metrics = builder.metrics != null ? builder.metrics : new ServerMetrics();
+		accessLog = builder.accessLog;
+		limiter = builder.limiter;
+		if (limiter != null) {
+			metrics.concurrencyLimit(limiter::limit);
+		}
+	}
+
+	/**
+	 * Gets the name the server identifies itself with in the Server header of its responses.
+	 *
+	 * @return Returns the server name, or null (or empty) if responses are sent without a Server header.
+	 */
+	public String serverName() {
+		return serverName;
+	}
+
+	/**
+	 * Gets the metrics of the server the factory generates responses for, which the server's connections record their
+	 * requests in.
+	 *
+	 * @return Returns the server's metrics.
+	 */
+	public ServerMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Gets the access log the server's connections log their requests to.
+	 *
+	 * @return Returns the access log, or null if requests are logged with the application logger.
+	 */
+	public AccessLog accessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Gets the limit of requests handled at once.
+	 *
+	 * @return Returns the concurrency limiter, or null if every request is handled.
+	 */
+	public ConcurrencyLimiter concurrencyLimiter() {
+		return limiter;
 	}
 
 	/**
-	 * Generates a response to a request by asking each of the registered {@link RequestHandler}s in turn if they can
-	 * handle the request. If no handler opts to provide a response a 501-Not-Implemented response is returned.
+	 * Generates a response to a request with the handler the route table finds for it. If there is no handler for the
+	 * request, or it doesn't provide a response, a 501-Not-Implemented response is returned.
+	 * <p>
+	 * Responses from {@link AsyncRequestHandler}s are waited for, blocking the calling thread.
 	 *
 	 * @param request the request to be responded to
 	 * @return Returns a response to the request.
@@ -43,12 +136,14 @@ public class ResponseFactory {
 		Response response = null;
 
 		try {
-			for (RequestHandler handler : requestHandlers) {
-				if (handler.canHandle(request)) {
-					response = handler.handle(request);
-					break;
-				}
+			RequestHandler handler = routes.handler(request);
+			if (handler instanceof AsyncRequestHandler) {
+				response = await((AsyncRequestHandler) handler, request).join();
+			} else if (handler != null) {
+				response = handle(handler, request);
 			}
+		} catch (CompletionException e) {
+			throw responseException(e.getCause());
 		} catch (Exception e) {
 			// Wrap the exception for upstream handling
 			throw new ResponseException(e);
@@ -60,4 +155,251 @@ public class ResponseFactory {
 
 		return response;
 	}
+
+	/**
+	 * Generates a response to a request with the handler the route table finds for it, without blocking while an
+	 * {@link AsyncRequestHandler} provides its response. Responses from other handlers are generated by the calling
+	 * thread, so the future returned for them is already complete.
+	 *
+	 * @param request the request to be responded to
+	 * @return Returns a future which completes with the response to the request, or completes exceptionally with a
+	 * {@link ResponseException} if the handler fails.
+	 */
+	public CompletableFuture<Response> responseAsync(Request request) {
+		CompletableFuture<Response> response = new CompletableFuture<>();
+
+		try {
+			RequestHandler handler = routes.handler(request);
+			if (handler instanceof AsyncRequestHandler) {
+				return await((AsyncRequestHandler) handler, request);
+			}
+			Response result = handler != null ? handle(handler, request) : null;
+			response.complete(result != null ? result : ErrorResponse.NOT_IMPLEMENTED_501);
+		} catch (Exception e) {
+			response.completeExceptionally(responseException(e));
+		}
+
+		return response;
+	}
+
+	/**
+	 * Admits a request within the concurrency limit, counting it as shed if it is rejected. Every admitted request
+	 * must be sampled with {@link #sample(long)} once its response has been generated, and released with {@link
+	 * #release()} once it has been written.
+	 *
+	 * @return Returns true if the request may be responded to, or false if it should be answered with {@link
+	 * ErrorResponse#OVERLOADED_503} instead. Every request is admitted if the factory has no concurrency limit.
+	 */
+	public boolean admit() {
+		if (limiter == null || limiter.tryAcquire()) {
+			return true;
+		}
+		metrics.clientShed(ShedReason.CONCURRENCY_LIMIT);
+		return false;
+	}
+
+	/**
+	 * Records how long a request admitted with {@link #admit()} took to generate its response, which the concurrency
+	 * limit adapts to. The time taken to write the response isn't included, as that depends on the client.
+	 *
+	 * @param nanos the time from the request being admitted until its response was generated, in nanoseconds
+	 */
+	public void sample(long nanos) {
+		if (limiter != null) {
+			limiter.sample(nanos);
+		}
+	}
+
+	/**
+	 * Releases a request admitted with {@link #admit()}, once its response has been written.
+	 */
+	public void release() {
+		if (limiter != null) {
+			limiter.release();
+		}
+	}
+
+	private Response handle(RequestHandler handler, Request request) {
+		long start = System.nanoTime();
+		try {
+			return handler.handle(request);
+		} finally {
+			metrics.handled(handler, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Starts an asynchronous handler and waits for its response, or for the timeout.
+	 */
+	private CompletableFuture<Response> await(AsyncRequestHandler handler, Request request) {
+		CompletableFuture<Response> response = new CompletableFuture<>();
+		long start = System.nanoTime();
+		CompletionStage<Response> pending = handler.handleAsync(request);
+		if (pending == null) {
+			response.complete(ErrorResponse.NOT_IMPLEMENTED_501);
+			return response;
+		}
+
+		// Handlers which respond immediately don't need a timer
+		CompletableFuture<Response> future = pending instanceof CompletableFuture ? (CompletableFuture<Response>) pending : null;
+		ScheduledFuture<?> timer = future != null && future.isDone() ? null : Timeouts.schedule(() -> {
+			if (response.complete(ErrorResponse.GATEWAY_TIMEOUT_504)) {
+				LOG.warn("Handler did not respond to {} {} within {}ms", request.method(), request.uri(), timeoutMillis);
+				if (future != null) {
+					future.cancel(false);
+				}
+			}
+		}, timeoutMillis);
+
+		pending.whenComplete((result, error) -> {
+			if (timer != null) {
+				timer.cancel(false);
+			}
+			metrics.handled(handler, System.nanoTime() - start);
+			complete(response, result, error);
+		});
+
+		return response;
+	}
+
+	private static void complete(CompletableFuture<Response> response, Response result, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause == null) {
+			response.complete(result != null ? result : ErrorResponse.NOT_IMPLEMENTED_501);
+		} else if (cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+			response.complete(ErrorResponse.SERVICE_UNAVAILABLE_503);
+		} else {
+			response.completeExceptionally(responseException(cause));
+		}
+	}
+
+	private static ResponseException responseException(Throwable cause) {
+		return cause instanceof ResponseException ? (ResponseException) cause : new ResponseException(cause);
+	}
+
+	/**
+	 * Builds a {@link ResponseFactory} which generates responses with the handlers of a {@link RouteTable}. Anything
+	 * not set on the builder takes its default: the default server name and timeout, new metrics, no access log, and
+	 * no concurrency limit.
+	 */
+	public static class Builder {
+
+		private final RouteTable routes;
+		private String serverName = ResponseWriter.DEFAULT_SERVER_NAME;
+		private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+		private ServerMetrics metrics;
+		private AccessLog accessLog;
+		private ConcurrencyLimiter limiter;
+
+		/**
+		 * Creates a new {@link Builder}.
+		 *
+		 * @param routes the routes to find the handler for each request in
+		 * @throws IllegalArgumentException if the routes are null.
+		 */
+		public Builder(RouteTable routes) {
+			if (routes == null) {
+				throw new IllegalArgumentException("Routes cannot be null");
+			}
+			this.routes = routes;
+		}
+
+		/**
+		 * Sets the name the server identifies itself with.
+		 *
+		 * @param serverName the Server header value responses are sent with, or null (or empty) to omit the header
+		 * @return Returns the builder.
+		 */
+		public Builder serverName(String serverName) {
+			this.serverName = serverName;
+			return this;
+		}
+
+		/**
+		 * Sets how long to wait for asynchronous handlers.
+		 *
+		 * @param timeoutMillis the time to wait for asynchronous handlers to respond, in milliseconds
+		 * @return Returns the builder.
+		 * @throws IllegalArgumentException if the timeout is not positive.
+		 */
+		public Builder timeoutMillis(long timeoutMillis) {
+			if (timeoutMillis <= 0) {
+				throw new IllegalArgumentException("Timeout must be greater than zero");
+			}
+			this.timeoutMillis = timeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Sets the registry the server's metrics are recorded in.
+		 *
+		 * @param metrics the metrics of the server the factory generates responses for
+		 * @return Returns the builder.
+		 * @throws IllegalArgumentException if the metrics are null.
+		 */
+		public Builder metrics(ServerMetrics metrics) {
+			if (metrics == null) {
+				throw new IllegalArgumentException("Metrics cannot be null");
+			}
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Sets the access log requests are logged to.
+		 *
+		 * @param accessLog the access log, or null to log requests with the application logger
+		 * @return Returns the builder.
+		 */
+		public Builder accessLog(AccessLog accessLog) {
+			this.accessLog = accessLog;
+			return this;
+		}
+
+		/**
+		 * Sets the limit of requests handled at once.
+		 *
+		 * @param limiter the concurrency limiter, or null to handle every request
+		 * @return Returns the builder.
+		 */
+		public Builder concurrencyLimiter(ConcurrencyLimiter limiter) {
+			this.limiter = limiter;
+			return this;
+		}
+
+		/**
+		 * Builds the response factory.
+		 *
+		 * @return Returns the response factory.
+		 */
+		public ResponseFactory build() {
+			return new ResponseFactory(this);
+		}
+	}
+
+	/**
+	 * The timer used to time out asynchronous handlers, which is shared by all factories and only started if needed.
+	 */
+	private static final class Timeouts {
+
+		private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+		private Timeouts() {
+		}
+
+		static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+			return TIMER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		private static ScheduledThreadPoolExecutor timer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "async-handler-timeouts");
+				thread.setDaemon(true);
+				return thread;
+			});
+			// Most handlers respond before they time out, so don't keep their timers around until they would have fired
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
+	}
 }
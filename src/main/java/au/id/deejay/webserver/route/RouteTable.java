@@ -0,0 +1,157 @@
+package au.id.deejay.webserver.route;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the {@link RequestHandler} for each request. Handlers are either routed, registered for a request method and a
+ * path pattern, or fallback handlers, which are asked in turn if they {@link RequestHandler#canHandle(Request) can
+ * handle} any request no route matches.
+ * <p>
+ * Routes are compiled into a radix tree when the table is built, so finding a routed handler takes time proportional
+ * to the length of the request path, however many routes there are, and doesn't involve any of the other handlers.
+ * Routed handlers are not asked if they can handle the requests routed to them. Path patterns may be exact paths (e.g.
+ * {@code /serverInfo}), contain {@code *} wildcards matching a single path segment (e.g. {@code /users/*}{@code
+ * /profile}), or end with a {@code **} wildcard matching the rest of the path (e.g. {@code /static/**}). The most
+ * specific matching route is used.
+ * <p>
+ * Route tables are immutable, and are created with a {@link Builder}.
+ *
+ * @author David Jessup
+ */
+public class RouteTable {
+
+	private final RouteTrie routes;
+	private final List<RequestHandler> fallbackHandlers;
+	private final int size;
+
+	private RouteTable(Builder builder) {
+		routes = new RouteTrie();
+		for (Route route : builder.routes) {
+			routes.add(route.method, route.pattern, route.handler);
+		}
+		fallbackHandlers = Collections.unmodifiableList(new ArrayList<>(builder.fallbackHandlers));
+		size = builder.routes.size() + fallbackHandlers.size();
+	}
+
+	/**
+	 * Creates a route table which only has fallback handlers, for a list of handlers which are asked in order if they
+	 * can handle each request.
+	 *
+	 * @param handlers the handlers, in order of priority
+	 * @return Returns the route table.
+	 */
+	public static RouteTable of(List<RequestHandler> handlers) {
+		Builder builder = new Builder();
+		for (RequestHandler handler : handlers) {
+			builder.fallback(handler);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Finds the handler for a request: the handler of the most specific route matching its method and path, or else
+	 * the first fallback handler which can handle it.
+	 *
+	 * @param request the request
+	 * @return Returns the request's handler, or null if there is none.
+	 */
+	public RequestHandler handler(Request request) {
+		URI uri = request.uri();
+		RequestHandler handler = uri != null ? routes.find(request.method(), uri.getPath()) : null;
+		if (handler != null) {
+			return handler;
+		}
+
+		for (RequestHandler fallbackHandler : fallbackHandlers) {
+			if (fallbackHandler.canHandle(request)) {
+				return fallbackHandler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the table has no routes or fallback handlers, in which case no request can be handled.
+	 *
+	 * @return Returns true if the table is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Builds {@link RouteTable}s.
+	 */
+	public static class Builder {
+
+		private final List<Route> routes = new ArrayList<>();
+		private final List<RequestHandler> fallbackHandlers = new ArrayList<>();
+
+		/**
+		 * Adds a route.
+		 *
+		 * @param method  the request method the route applies to
+		 * @param pattern the path pattern of the route, which must start with '/'
+		 * @param handler the handler for requests matching the route
+		 * @return Returns the builder.
+		 * @throws IllegalArgumentException if any of the arguments are null.
+		 */
+		public Builder route(HttpMethod method, String pattern, RequestHandler handler) {
+			if (method == null || pattern == null || handler == null) {
+				throw new IllegalArgumentException("Routes must have a method, pattern and handler");
+			}
+			routes.add(new Route(method, pattern, handler));
+			return this;
+		}
+
+		/**
+		 * Adds a fallback handler, which is asked if it can handle requests that don't match any route, after any
+		 * fallback handlers added before it.
+		 *
+		 * @param handler the handler
+		 * @return Returns the builder.
+		 * @throws IllegalArgumentException if the handler is null.
+		 */
+		public Builder fallback(RequestHandler handler) {
+			if (handler == null) {
+				throw new IllegalArgumentException("Handler cannot be null");
+			}
+			fallbackHandlers.add(handler);
+			return this;
+		}
+
+		/**
+		 * Builds the route table, compiling its routes.
+		 *
+		 * @return Returns the route table.
+		 * @throws IllegalArgumentException if any route's pattern is invalid, or two routes have the same method and
+		 *                                  pattern.
+		 */
+		public RouteTable build() {
+			return new RouteTable(this);
+		}
+	}
+
+	/**
+	 * A route registered with a {@link Builder}.
+	 */
+	private static final class Route {
+
+		private final HttpMethod method;
+		private final String pattern;
+		private final RequestHandler handler;
+
+		private Route(HttpMethod method, String pattern, RequestHandler handler) {
+			this.method = method;
+			this.pattern = pattern;
+			this.handler = handler;
+		}
+	}
+}
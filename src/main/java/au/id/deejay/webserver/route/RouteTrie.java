@@ -0,0 +1,246 @@
+package au.id.deejay.webserver.route;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.RequestHandler;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A radix tree of request paths, mapping each route's method and path pattern to the {@link RequestHandler} registered
+ * for it. Paths are matched in time proportional to their length, regardless of the number of routes.
+ * <p>
+ * Static parts of patterns are stored in edges labelled with the longest prefix their paths share, so a lookup compares
+ * each character of the path at most once on its way down the tree. Wildcards hang off the node where they appear:
+ * <ul>
+ * <li>{@code *} matches a single, non-empty path segment, e.g. {@code /users/*}{@code /profile}</li>
+ * <li>{@code **}, as the last segment of a pattern, matches the rest of the path, e.g. {@code /static/**} matches
+ * {@code /static/} and everything beneath it</li>
+ * </ul>
+ * Where routes overlap, static paths take priority over single segment wildcards, which take priority over trailing
+ * wildcards.
+ * <p>
+ * The tree is not thread-safe while routes are being added, but can be shared freely once built.
+ *
+ * @author David Jessup
+ */
+class RouteTrie {
+
+	private static final String SEGMENT_WILDCARD = "*";
+	private static final String TRAILING_WILDCARD = "**";
+
+	private final Node root = new Node("");
+
+	/**
+	 * Adds a route to the tree.
+	 *
+	 * @param method  the request method the route applies to
+	 * @param pattern the path pattern of the route
+	 * @param handler the handler for requests matching the route
+	 * @throws IllegalArgumentException if the pattern is invalid, or a handler is already registered for it.
+	 */
+	void add(HttpMethod method, String pattern, RequestHandler handler) {
+		if (pattern == null || !pattern.startsWith("/")) {
+			throw new IllegalArgumentException("Route patterns must start with '/': " + pattern);
+		}
+
+		Node node = root;
+		String[] segments = pattern.substring(1).split("/", -1);
+		StringBuilder literal = new StringBuilder("/");
+
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if (TRAILING_WILDCARD.equals(segment)) {
+				if (i != segments.length - 1) {
+					throw new IllegalArgumentException("'**' may only be the last segment of a route pattern: " + pattern);
+				}
+				register(insert(node, literal.toString()).trailingHandlers(), method, handler, pattern);
+				return;
+			}
+			if (SEGMENT_WILDCARD.equals(segment)) {
+				node = insert(node, literal.toString()).segmentWildcard();
+				literal.setLength(0);
+			} else if (segment.contains(SEGMENT_WILDCARD)) {
+				throw new IllegalArgumentException("Wildcards must be whole path segments: " + pattern);
+			} else {
+				literal.append(segment);
+			}
+			if (i < segments.length - 1) {
+				literal.append('/');
+			}
+		}
+
+		register(insert(node, literal.toString()).handlers(), method, handler, pattern);
+	}
+
+	/**
+	 * Finds the handler for a request.
+	 *
+	 * @param method the request method
+	 * @param path   the request path
+	 * @return Returns the handler of the most specific route matching the request, or null if there is none.
+	 */
+	RequestHandler find(HttpMethod method, String path) {
+		return path == null ? null : find(root, method, path, 0);
+	}
+
+	private static RequestHandler find(Node node, HttpMethod method, String path, int position) {
+		RequestHandler handler = null;
+
+		if (position == path.length()) {
+			handler = node.handler(method);
+		} else {
+			Node child = node.child(path.charAt(position));
+			if (child != null && path.startsWith(child.label, position)) {
+				handler = find(child, method, path, position + child.label.length());
+			}
+
+			if (handler == null && node.segmentWildcard != null) {
+				handler = findSegment(node.segmentWildcard, method, path, position);
+			}
+		}
+
+		return handler != null ? handler : node.trailingHandler(method);
+	}
+
+	/**
+	 * Matches a single segment wildcard against the path segment starting at a position, which must not be empty.
+	 */
+	private static RequestHandler findSegment(Node wildcard, HttpMethod method, String path, int position) {
+		int end = path.indexOf('/', position);
+		if (end < 0) {
+			end = path.length();
+		}
+		return end > position ? find(wildcard, method, path, end) : null;
+	}
+
+	/**
+	 * Inserts a static path beneath a node, splitting edges where the path diverges from them.
+	 *
+	 * @return Returns the node at the end of the path.
+	 */
+	private static Node insert(Node start, String path) {
+		Node node = start;
+		String remaining = path;
+
+		while (!remaining.isEmpty()) {
+			Node child = node.child(remaining.charAt(0));
+			if (child == null) {
+				child = new Node(remaining);
+				node.addChild(child);
+				return child;
+			}
+
+			int common = commonPrefixLength(child.label, remaining);
+			if (common < child.label.length()) {
+				child = node.split(child, common);
+			}
+
+			node = child;
+			remaining = remaining.substring(common);
+		}
+
+		return node;
+	}
+
+	private static int commonPrefixLength(String a, String b) {
+		int length = Math.min(a.length(), b.length());
+		for (int i = 0; i < length; i++) {
+			if (a.charAt(i) != b.charAt(i)) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static void register(Map<HttpMethod, RequestHandler> handlers, HttpMethod method, RequestHandler handler, String pattern) {
+		if (handlers.putIfAbsent(method, handler) != null) {
+			throw new IllegalArgumentException("A handler is already registered for " + method + " " + pattern);
+		}
+	}
+
+	/**
+	 * A node of the tree, reached by following an edge with the node's label from its parent.
+	 */
+	private static final class Node {
+
+		private String label;
+		private char[] firstChars = new char[0];
+		private Node[] children = new Node[0];
+		private Node segmentWildcard;
+		private Map<HttpMethod, RequestHandler> handlers;
+		private Map<HttpMethod, RequestHandler> trailingHandlers;
+
+		private Node(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Finds the child whose label starts with a character. Nodes have few children, so a linear scan is fastest.
+		 */
+		private Node child(char first) {
+			for (int i = 0; i < firstChars.length; i++) {
+				if (firstChars[i] == first) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private void addChild(Node child) {
+			firstChars = Arrays.copyOf(firstChars, firstChars.length + 1);
+			children = Arrays.copyOf(children, children.length + 1);
+			firstChars[firstChars.length - 1] = child.label.charAt(0);
+			children[children.length - 1] = child;
+		}
+
+		/**
+		 * Splits the edge to a child in two, inserting a new node after the first <code>length</code> characters of
+		 * its label.
+		 *
+		 * @return Returns the new node.
+		 */
+		private Node split(Node child, int length) {
+			Node middle = new Node(child.label.substring(0, length));
+			child.label = child.label.substring(length);
+			middle.addChild(child);
+
+			for (int i = 0; i < children.length; i++) {
+				if (children[i] == child) {
+					children[i] = middle;
+				}
+			}
+			return middle;
+		}
+
+		private Node segmentWildcard() {
+			if (segmentWildcard == null) {
+				segmentWildcard = new Node("");
+			}
+			return segmentWildcard;
+		}
+
+		private Map<HttpMethod, RequestHandler> handlers() {
+			if (handlers == null) {
+				handlers = new EnumMap<>(HttpMethod.class);
+			}
+			return handlers;
+		}
+
+		private Map<HttpMethod, RequestHandler> trailingHandlers() {
+			if (trailingHandlers == null) {
+				trailingHandlers = new EnumMap<>(HttpMethod.class);
+			}
+			return trailingHandlers;
+		}
+
+		private RequestHandler handler(HttpMethod method) {
+			return handlers != null ? handlers.get(method) : null;
+		}
+
+		private RequestHandler trailingHandler(HttpMethod method) {
+			return trailingHandlers != null ? trailingHandlers.get(method) : null;
+		}
+	}
+}
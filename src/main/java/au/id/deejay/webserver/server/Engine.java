@@ -0,0 +1,31 @@
+package au.id.deejay.webserver.server;
+
+/**
+ * The connection handling engines a {@link WebServer} can be run with.
+ *
+ * @author David Jessup
+ */
+public enum Engine {
+
+	/**
+	 * Blocking I/O, with each client connection assigned to a pooled worker thread for its whole lifetime. See {@link
+	 * WebServerExecutor}.
+	 */
+	THREADS,
+
+	/**
+	 * Blocking I/O, with each client connection assigned its own virtual thread and the number of concurrent
+	 * connections bounded by a semaphore. See {@link VirtualThreadWebServerExecutor}.
+	 */
+	VIRTUAL,
+
+	/**
+	 * Non-blocking I/O, with a small number of event loop threads multiplexing all client connections and only handing
+	 * them to a worker thread once a complete request has been read. See {@link SelectorWebServerExecutor}.
+	 * <p>
+	 * Since a request's body is read in full before it is handled, this engine is limited in the bodies it accepts: a
+	 * body larger than 1MB is answered with 413 Request Entity Too Large, and a chunked body (or any other whose length
+	 * isn't given by Content-Length) with 501 Not Implemented. Use one of the blocking engines to accept these.
+	 */
+	SELECTOR
+}
@@ -0,0 +1,106 @@
+package au.id.deejay.webserver.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits of the queue of work waiting for a pooled worker thread: how many tasks may wait, and for how long.
+ * <p>
+ * Work which arrives when the queue is full is rejected by the pool, and work which has waited longer than the maximum
+ * wait by the time a worker takes it is not run. Either way the executor sheds the connection by answering it with
+ * {@link au.id.deejay.webserver.response.ErrorResponse#OVERLOADED_503}, rather than leaving the client waiting behind
+ * an ever growing queue.
+ *
+ * @author David Jessup
+ */
+public final class QueueLimits {
+
+	/**
+	 * No limits: the queue is unbounded and work may wait in it indefinitely.
+	 */
+	public static final QueueLimits UNBOUNDED = new QueueLimits(Integer.MAX_VALUE, 0);
+
+	private final int capacity;
+	private final long maxWaitMillis;
+
+	/**
+	 * Creates a new {@link QueueLimits}.
+	 *
+	 * @param capacity      the number of tasks which may wait for a worker, or 0 to hand tasks straight to idle workers
+	 *                      without queueing them
+	 * @param maxWaitMillis the longest a task may wait for a worker in milliseconds, or 0 to wait indefinitely
+	 * @throws IllegalArgumentException if the capacity or maximum wait is negative
+	 */
+	public QueueLimits(int capacity, long maxWaitMillis) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Queue capacity cannot be negative.");
+		}
+
+		if (maxWaitMillis < 0) {
+			throw new IllegalArgumentException("Maximum queue wait cannot be negative.");
+		}
+
+		this.capacity = capacity;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Gets the number of tasks which may wait for a worker.
+	 *
+	 * @return Returns the capacity of the queue.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the longest a task may wait for a worker.
+	 *
+	 * @return Returns the maximum wait in milliseconds, or 0 if tasks may wait indefinitely.
+	 */
+	public long maxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * Creates a fixed size pool of worker threads whose queue is bounded by these limits. Tasks submitted while the
+	 * queue is full are rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+	 *
+	 * @param threads the number of worker threads
+	 * @return Returns the thread pool.
+	 */
+	public ThreadPoolExecutor threadPool(int threads) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+									  capacity == 0 ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(capacity));
+	}
+
+	/**
+	 * Wraps a task so that it is abandoned if it waits for a worker for longer than the maximum wait.
+	 *
+	 * @param task    the task to queue
+	 * @param expired what to run instead of the task if it has waited too long
+	 * @return Returns the wrapped task, or the task itself if tasks may wait indefinitely.
+	 */
+	public Runnable expiring(Runnable task, Runnable expired) {
+		if (maxWaitMillis == 0) {
+			return task;
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		return () -> {
+			if (System.nanoTime() - deadline > 0) {
+				expired.run();
+			} else {
+				task.run();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return (capacity == Integer.MAX_VALUE ? "unbounded" : String.valueOf(capacity)) + " queued tasks, "
+				+ (maxWaitMillis == 0 ? "no maximum wait" : maxWaitMillis + "ms maximum wait");
+	}
+}
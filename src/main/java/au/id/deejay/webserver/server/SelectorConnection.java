@@ -0,0 +1,452 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.exception.RequestException;
+import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.io.ChannelOutputStream;
+import au.id.deejay.webserver.io.RequestParser;
+import au.id.deejay.webserver.io.ResponseWriter;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.response.ErrorResponse;
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single client connection being serviced by a {@link SelectorEventLoop}.
+ * <p>
+ * The event loop reads data from the client into the connection's buffer and parses it incrementally as it arrives.
+ * Once the buffer holds a complete request the connection stops listening for reads, and the request is handed to a
+ * worker thread to be responded to and have its response written back to the client. Once the response has been sent the event loop is asked to
+ * resume reading, either from the bytes of any pipelined requests already buffered, or from the client.
+ * <p>
+ * If the worker pool's queue is full, or a request waits in it for longer than the {@link QueueLimits} allow, the
+ * connection is shed with a 503 Service Unavailable response. It then lingers, discarding whatever else the client sends,
+ * until the client closes it or the limits of {@link WebWorker#shed} are reached.
+ *
+ * @author David Jessup
+ */
+class SelectorConnection {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SelectorConnection.class);
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	/**
+	 * The largest request body the connection buffers, in bytes. Larger bodies are answered with 413 Request Entity
+	 * Too Large.
+	 */
+	static final int MAX_REQUEST_SIZE = 1048576;
+
+	private static final ErrorResponse REQUEST_ENTITY_TOO_LARGE_413 = new ErrorResponse(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413, HttpVersion.HTTP_1_1);
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final SelectorEventLoop eventLoop;
+	private final ResponseFactory responseFactory;
+	private final ExecutorService threadPool;
+	private final QueueLimits queueLimits;
+	private final long timeoutMillis;
+
+	private final RequestParser parser;
+	private final AtomicBoolean closed;
+	private ByteBuffer buffer;
+	private boolean busy;
+	private long lastActive;
+	private long lingerDeadline;
+	private int drainRemaining;
+	private ChannelOutputStream outputStream;
+	private ResponseWriter responseWriter;
+
+	/**
+	 * Creates a new {@link SelectorConnection}.
+	 *
+	 * @param channel         the client channel, already registered with the event loop's selector
+	 * @param key             the selection key of the client channel
+	 * @param eventLoop       the event loop servicing the connection
+	 * @param responseFactory the response factory used to generate {@link Response}s
+	 * @param threadPool      the pool of worker threads requests are handed to once read
+	 * @param queueLimits     the limits of the worker pool's queue
+	 * @param timeoutMillis   the idle/write timeout of the connection, in milliseconds
+	 */
+	SelectorConnection(SocketChannel channel, SelectionKey key, SelectorEventLoop eventLoop, ResponseFactory responseFactory,
+					   ExecutorService threadPool, QueueLimits queueLimits, long timeoutMillis) {
+		this.channel = channel;
+		this.key = key;
+		this.eventLoop = eventLoop;
+		this.responseFactory = responseFactory;
+		this.threadPool = threadPool;
+		this.queueLimits = queueLimits;
+		this.timeoutMillis = timeoutMillis;
+
+		parser = new RequestParser();
+		buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		lastActive = System.currentTimeMillis();
+		closed = new AtomicBoolean();
+		responseFactory.metrics().connectionOpened();
+	}
+
+	/**
+	 * Reads any available data from the client, and dispatches a request to a worker once one has been fully read.
+	 * Must only be called from the event loop thread.
+	 */
+	void read() {
+		if (lingering()) {
+			discard();
+			return;
+		}
+
+		try {
+			if (!buffer.hasRemaining()) {
+				growBuffer();
+			}
+
+			if (channel.read(buffer) < 0) {
+				// Client has closed the connection
+				close();
+				return;
+			}
+		} catch (IOException e) {
+			LOG.debug("Error reading from client connection", e);
+			close();
+			return;
+		}
+
+		lastActive = System.currentTimeMillis();
+		dispatch();
+	}
+
+	/**
+	 * Resumes reading from the client after a response has been sent. Must only be called from the event loop thread.
+	 */
+	void resume() {
+		busy = false;
+		lastActive = System.currentTimeMillis();
+
+		if (key.isValid()) {
+			key.interestOps(SelectionKey.OP_READ);
+			dispatch();
+		}
+	}
+
+	/**
+	 * Checks if the connection has been idle (i.e. waiting for a request) for longer than the timeout.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return Returns true if the connection has timed out.
+	 */
+	boolean timedOut(long now) {
+		if (lingering()) {
+			return now - lingerDeadline > 0;
+		}
+		return !busy && now - lastActive > timeoutMillis;
+	}
+
+	/**
+	 * Gets when the connection should be closed, if it has been shed and is lingering.
+	 *
+	 * @return Returns the linger deadline in milliseconds, or 0 if the connection isn't lingering.
+	 */
+	long lingerDeadline() {
+		return lingerDeadline;
+	}
+
+	/**
+	 * Closes the client connection if it is waiting for a request, rather than busy with one. Must only be called from
+	 * the event loop thread.
+	 */
+	void closeIfIdle() {
+		if (!busy && !lingering()) {
+			close();
+		}
+	}
+
+	/**
+	 * Closes the client connection.
+	 */
+	void close() {
+		// Connections can be closed by both the event loop and a worker, but should only be counted once
+		if (closed.compareAndSet(false, true)) {
+			responseFactory.metrics().connectionClosed();
+		}
+
+		key.cancel();
+		if (outputStream != null) {
+			IOUtils.closeQuietly(outputStream);
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.error("Failed to close client connection", e);
+		}
+	}
+
+	private void growBuffer() throws IOException {
+		if (buffer.capacity() >= MAX_REQUEST_SIZE) {
+			throw new IOException("Request exceeds the maximum buffer size");
+		}
+
+		ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_REQUEST_SIZE));
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+	/**
+	 * Hands the next buffered request to a worker, if a complete request has been read and the connection is not
+	 * already busy servicing a previous one.
+	 */
+	private void dispatch() {
+		if (busy) {
+			return;
+		}
+
+		if (eventLoop.draining()) {
+			// The server is shutting down, so don't start on another request
+			close();
+			return;
+		}
+
+		buffer.flip();
+		try {
+			Request request = parseRequest();
+			if (request != null) {
+				submit(request, () -> respond(request));
+			}
+		} catch (RequestException e) {
+			LOG.error("Bad request from " + channel.socket().getRemoteSocketAddress(), e);
+			submit(null, () -> respondAndClose(ErrorResponse.BAD_REQUEST_400));
+		} finally {
+			// Retain the bytes of any requests which follow, ready for further reads
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Parses the next request from the buffer.
+	 *
+	 * @return Returns the request, or null if it has not been fully read yet or has already been rejected.
+	 */
+	private Request parseRequest() {
+		if (!parser.parse(buffer)) {
+			return null;
+		}
+
+		if (parser.hasTransferEncoding()) {
+			// Request bodies of unknown length are not supported by this engine
+			submit(null, () -> respondAndClose(ErrorResponse.NOT_IMPLEMENTED_501));
+			return null;
+		}
+
+		long contentLength = Math.max(parser.contentLength(), 0);
+
+		if (contentLength > MAX_REQUEST_SIZE) {
+			submit(null, () -> respondAndClose(REQUEST_ENTITY_TOO_LARGE_413));
+			return null;
+		}
+
+		if (buffer.remaining() < contentLength) {
+			// Wait for the rest of the entity body
+			return null;
+		}
+
+		byte[] body = new byte[(int) contentLength];
+		buffer.get(body);
+		responseFactory.metrics().requestRead(parser.headSize() + contentLength, parser.parseNanos());
+
+		return parser.request(body);
+	}
+
+	/**
+	 * Hands a task to a worker, shedding the connection if the worker pool's queue is full, or if the task waits in it
+	 * for too long.
+	 *
+	 * @param request the request the task responds to, or null if it could not be read
+	 */
+	private void submit(Request request, Runnable task) {
+		busy = true;
+		key.interestOps(0);
+
+		try {
+			threadPool.execute(queueLimits.expiring(task, () -> shed(request, ShedReason.QUEUE_TIMEOUT)));
+		} catch (RejectedExecutionException e) {
+			if (threadPool.isShutdown()) {
+				LOG.debug("Worker pool is shutting down, dropping client connection", e);
+				close();
+			} else {
+				// The response is small enough to write from the event loop without waiting for the client
+				shed(request, ShedReason.QUEUE_FULL);
+			}
+		}
+	}
+
+	private void shed(Request request, ShedReason reason) {
+		LOG.debug("Server overloaded, shedding client {} ({})", channel.socket().getRemoteSocketAddress(), reason);
+		responseFactory.metrics().clientShed(reason);
+		if (!writeResponse(request, ErrorResponse.OVERLOADED_503)) {
+			close();
+			return;
+		}
+
+		try {
+			channel.shutdownOutput();
+			eventLoop.execute(this::linger);
+		} catch (IOException e) {
+			LOG.debug("Unable to shed client connection", e);
+			close();
+		}
+	}
+
+	/**
+	 * Resumes reading from a shed client, only to discard what it sends until it closes the connection, so closing it
+	 * with unread data doesn't reset the connection and lose the response. Must only be called from the event loop
+	 * thread.
+	 */
+	private void linger() {
+		busy = false;
+		lingerDeadline = System.currentTimeMillis() + WebWorker.SHED_LINGER_MILLIS;
+		drainRemaining = WebWorker.SHED_DRAIN_BYTES;
+		buffer.clear();
+		eventLoop.lingerUntil(lingerDeadline);
+
+		if (key.isValid()) {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private boolean lingering() {
+		return lingerDeadline != 0;
+	}
+
+	private void discard() {
+		try {
+			buffer.clear();
+			int read = channel.read(buffer);
+			drainRemaining -= Math.max(read, 0);
+			if (read < 0 || drainRemaining <= 0) {
+				close();
+			}
+		} catch (IOException e) {
+			LOG.debug("Error reading from client connection", e);
+			close();
+		}
+	}
+
+	/**
+	 * Responds to a request, if the server's concurrency limit admits it. Runs on a worker thread, which is released
+	 * while an asynchronous handler provides its response; the response is then sent by whichever worker is free once
+	 * it completes.
+	 */
+	private void respond(Request request) {
+		if (!responseFactory.admit()) {
+			send(request, ErrorResponse.OVERLOADED_503);
+			return;
+		}
+
+		long admitted = System.nanoTime();
+		CompletableFuture<Response> pending = WebWorker.generateResponseAsync(responseFactory, request);
+		if (pending.isDone()) {
+			responseFactory.sample(System.nanoTime() - admitted);
+			sendAdmitted(request, pending.join());
+			return;
+		}
+
+		pending.thenAccept(response -> {
+			responseFactory.sample(System.nanoTime() - admitted);
+			try {
+				threadPool.execute(() -> sendAdmitted(request, response));
+			} catch (RejectedExecutionException e) {
+				if (threadPool.isShutdown()) {
+					LOG.debug("Worker pool is shutting down, dropping client connection", e);
+					responseFactory.release();
+					close();
+				} else {
+					// The response is ready, so rather than shedding it, send it from the thread which completed it
+					sendAdmitted(request, response);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sends the response to an admitted request, only releasing the request from the concurrency limit once the
+	 * response has been written, as file bodies are read while it is written.
+	 */
+	private void sendAdmitted(Request request, Response response) {
+		boolean written;
+		try {
+			written = writeResponse(request, response);
+		} finally {
+			responseFactory.release();
+		}
+		finish(request, response, written);
+	}
+
+	private void send(Request request, Response response) {
+		finish(request, response, writeResponse(request, response));
+	}
+
+	/**
+	 * Resumes reading from the client once a response has been written, or closes the connection if it can't be kept
+	 * alive.
+	 */
+	private void finish(Request request, Response response, boolean written) {
+		// If the client has requested keep-alive, check that the response hasn't overridden it, and that the client will
+		// be able to tell where it ends without the connection being closed
+		boolean keepAlive = WebWorker.shouldKeepAlive(request) && WebWorker.shouldKeepAlive(response)
+				&& ResponseWriter.isDelimited(response);
+
+		if (written && keepAlive) {
+			eventLoop.execute(this::resume);
+		} else {
+			close();
+		}
+	}
+
+	private void respondAndClose(Response response) {
+		writeResponse(null, response);
+		close();
+	}
+
+	private boolean writeResponse(Request request, Response response) {
+		ResponseWriter writer = responseWriter();
+		long written = writer.bytesWritten();
+		long writeStart = System.nanoTime();
+		try {
+			writer.writeResponse(response);
+			return true;
+		} catch (ResponseException e) {
+			LOG.error("Unable to send response", e);
+			return false;
+		} finally {
+			responseFactory.metrics().responseSent(request, response, writer.bytesWritten() - written, System.nanoTime() - writeStart);
+			if (request != null) {
+				WebWorker.logRequest(responseFactory.accessLog(), channel.socket().getInetAddress(), request, response, writer.bodySize());
+			}
+		}
+	}
+
+	/**
+	 * Gets the writer for the connection's responses, which is kept for the life of the connection so its write buffer
+	 * is reused. Responses are only written by one worker at a time.
+	 */
+	private ResponseWriter responseWriter() {
+		if (responseWriter == null) {
+			outputStream = new ChannelOutputStream(channel, timeoutMillis);
+			responseWriter = new ResponseWriter(outputStream, responseFactory.serverName());
+		}
+		return responseWriter;
+	}
+}
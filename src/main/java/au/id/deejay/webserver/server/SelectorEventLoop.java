@@ -0,0 +1,269 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An event loop which multiplexes reads from any number of client connections on a single thread using a {@link
+ * Selector}. Idle keep-alive connections only consume a selection key, not a thread.
+ *
+ * @author David Jessup
+ */
+class SelectorEventLoop implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SelectorEventLoop.class);
+
+	/**
+	 * How often idle connections are checked for timeouts, in milliseconds.
+	 */
+	private static final long SWEEP_INTERVAL = 1000;
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	private final ResponseFactory responseFactory;
+	private final ExecutorService threadPool;
+	private final QueueLimits queueLimits;
+	private final long timeoutMillis;
+
+	private volatile boolean running;
+	private volatile boolean draining;
+	private long lastSweep;
+	private long nextLingerDeadline;
+
+	/**
+	 * Creates a new {@link SelectorEventLoop}.
+	 *
+	 * @param responseFactory the response factory used to generate responses
+	 * @param threadPool      the pool of worker threads requests are handed to once read
+	 * @param queueLimits     the limits of the worker pool's queue
+	 * @param timeout         the timeout in seconds for client connections
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	SelectorEventLoop(ResponseFactory responseFactory, ExecutorService threadPool, QueueLimits queueLimits, int timeout) throws IOException {
+		this.responseFactory = responseFactory;
+		this.threadPool = threadPool;
+		this.queueLimits = queueLimits;
+		this.timeoutMillis = timeout * 1000L;
+
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<>();
+		running = true;
+	}
+
+	@Override
+	public void run() {
+		lastSweep = System.currentTimeMillis();
+
+		try {
+			while (running) {
+				selector.select(selectTimeout());
+				runTasks();
+				processSelectedKeys();
+				closeLingeringConnections();
+				sweepTimedOutConnections();
+			}
+		} catch (IOException e) {
+			LOG.error("Event loop failed, dropping its client connections.", e);
+		} finally {
+			closeAll();
+		}
+	}
+
+	/**
+	 * Hands a newly accepted client connection to the event loop.
+	 *
+	 * @param channel the client channel
+	 */
+	void register(SocketChannel channel) {
+		execute(() -> accept(channel));
+	}
+
+	/**
+	 * Queues a task to be run on the event loop thread.
+	 *
+	 * @param task the task to run
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Makes sure the event loop wakes up in time to close a lingering connection at its deadline. Must only be called
+	 * from the event loop thread.
+	 *
+	 * @param deadline when the connection should be closed, in milliseconds
+	 */
+	void lingerUntil(long deadline) {
+		if (nextLingerDeadline == 0 || deadline - nextLingerDeadline < 0) {
+			nextLingerDeadline = deadline;
+		}
+	}
+
+	/**
+	 * Stops the event loop from dispatching any more requests, ready for the server to shut down. Connections waiting
+	 * for a request are closed, as are connections once the response they are busy with has been sent, but the loop
+	 * keeps running until {@link #stop()} so those responses can finish.
+	 */
+	void drain() {
+		draining = true;
+		execute(this::closeIdleConnections);
+	}
+
+	/**
+	 * Checks if the event loop has been drained, and is no longer dispatching requests.
+	 *
+	 * @return Returns true if no more requests should be dispatched.
+	 */
+	boolean draining() {
+		return draining;
+	}
+
+	/**
+	 * Stops the event loop and closes all of its client connections.
+	 */
+	void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	private void accept(SocketChannel channel) {
+		if (draining) {
+			closeQuietly(channel);
+			return;
+		}
+
+		try {
+			configure(channel);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new SelectorConnection(channel, key, this, responseFactory, threadPool, queueLimits, timeoutMillis));
+		} catch (IOException e) {
+			LOG.warn("Unable to register client connection", e);
+			closeQuietly(channel);
+		}
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.error("Failed to close client connection", e);
+		}
+	}
+
+	/**
+	 * Makes a newly accepted client connection non-blocking, and sets TCP_NODELAY to disable Nagle's algorithm. A
+	 * response's head and body may be sent in separate writes, and with Nagle's algorithm enabled the body would wait
+	 * for the client to acknowledge the head, which it may delay doing.
+	 *
+	 * @param channel the client connection
+	 * @throws IOException if the connection could not be configured
+	 */
+	static void configure(SocketChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	private void runTasks() {
+		Runnable task = tasks.poll();
+		while (task != null) {
+			task.run();
+			task = tasks.poll();
+		}
+	}
+
+	private void processSelectedKeys() {
+		Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+		while (selectedKeys.hasNext()) {
+			SelectionKey key = selectedKeys.next();
+			selectedKeys.remove();
+
+			if (key.isValid() && key.isReadable()) {
+				((SelectorConnection) key.attachment()).read();
+			}
+		}
+	}
+
+	/**
+	 * Gets how long to wait for activity, which is until the next sweep or the nearest linger deadline.
+	 */
+	private long selectTimeout() {
+		if (nextLingerDeadline == 0) {
+			return SWEEP_INTERVAL;
+		}
+		// A timeout of 0 would wait indefinitely, so wait at least a millisecond
+		return Math.max(1, Math.min(SWEEP_INTERVAL, nextLingerDeadline - System.currentTimeMillis()));
+	}
+
+	private void closeLingeringConnections() {
+		long now = System.currentTimeMillis();
+		if (nextLingerDeadline == 0 || now - nextLingerDeadline < 0) {
+			return;
+		}
+		nextLingerDeadline = 0;
+
+		for (SelectionKey key : selector.keys()) {
+			SelectorConnection connection = (SelectorConnection) key.attachment();
+			if (!key.isValid() || connection == null || connection.lingerDeadline() == 0) {
+				continue;
+			}
+
+			if (connection.timedOut(now)) {
+				connection.close();
+			} else {
+				lingerUntil(connection.lingerDeadline());
+			}
+		}
+	}
+
+	private void sweepTimedOutConnections() {
+		long now = System.currentTimeMillis();
+		if (now - lastSweep < SWEEP_INTERVAL) {
+			return;
+		}
+		lastSweep = now;
+
+		for (SelectionKey key : selector.keys()) {
+			SelectorConnection connection = (SelectorConnection) key.attachment();
+			if (key.isValid() && connection != null && connection.timedOut(now)) {
+				LOG.trace("Client connection timed out");
+				connection.close();
+			}
+		}
+	}
+
+	private void closeIdleConnections() {
+		for (SelectionKey key : selector.keys()) {
+			SelectorConnection connection = (SelectorConnection) key.attachment();
+			if (key.isValid() && connection != null) {
+				connection.closeIfIdle();
+			}
+		}
+	}
+
+	private void closeAll() {
+		for (SelectionKey key : selector.keys()) {
+			SelectorConnection connection = (SelectorConnection) key.attachment();
+			if (connection != null) {
+				connection.close();
+			}
+		}
+
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOG.error("Failed to close selector", e);
+		}
+	}
+}
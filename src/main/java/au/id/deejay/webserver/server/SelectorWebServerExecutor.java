@@ -0,0 +1,222 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking alternative to {@link WebServerExecutor}. Client connections are accepted on a {@link
+ * ServerSocketChannel} and distributed between a small number of {@link SelectorEventLoop}s, which read requests from
+ * all their connections without blocking. Worker threads from the pool are only used once a complete request has been
+ * read, to generate and send the response, so idle keep-alive connections do not tie up workers.
+ * <p>
+ * Request bodies are buffered by the event loop, so only bodies with a Content-Length of up to 1MB are accepted (see
+ * {@link Engine#SELECTOR}).
+ * <p>
+ * Requests wait for a worker in the pool's queue, within the executor's {@link QueueLimits}. When the queue is full, or
+ * a request has waited too long by the time a worker is free, its connection is shed with a 503 Service Unavailable
+ * response.
+ *
+ * @author David Jessup
+ */
+public class SelectorWebServerExecutor implements ServerExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SelectorWebServerExecutor.class);
+
+	/**
+	 * Default number of event loops, one per two available processors.
+	 */
+	private static final int DEFAULT_EVENT_LOOPS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	private final ResponseFactory responseFactory;
+	private int port;
+	private int timeout;
+	private int maxThreads;
+	private int eventLoopCount;
+	private QueueLimits queueLimits;
+	private ExecutorService threadPool;
+	private SelectorEventLoop[] eventLoops;
+	private boolean running;
+
+	/**
+	 * Creates a new {@link SelectorWebServerExecutor} with the default number of event loops.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxThreads      the maximum number of worker threads to use for handling requests
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 */
+	public SelectorWebServerExecutor(int port, int timeout, int maxThreads, ResponseFactory responseFactory) {
+		this(port, timeout, maxThreads, DEFAULT_EVENT_LOOPS, responseFactory);
+	}
+
+	/**
+	 * Creates a new {@link SelectorWebServerExecutor} with the default number of event loops, whose workers' queue is
+	 * bounded.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxThreads      the maximum number of worker threads to use for handling requests
+	 * @param queueLimits     the limits of the queue of requests waiting for a worker
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 */
+	public SelectorWebServerExecutor(int port, int timeout, int maxThreads, QueueLimits queueLimits, ResponseFactory responseFactory) {
+		this(port, timeout, maxThreads, DEFAULT_EVENT_LOOPS, queueLimits, responseFactory);
+	}
+
+	/**
+	 * Creates a new {@link SelectorWebServerExecutor}.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxThreads      the maximum number of worker threads to use for handling requests
+	 * @param eventLoops      the number of event loop threads to multiplex client connections over
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 * @throws IllegalArgumentException if eventLoops is less than 1
+	 */
+	public SelectorWebServerExecutor(int port, int timeout, int maxThreads, int eventLoops, ResponseFactory responseFactory) {
+		this(port, timeout, maxThreads, eventLoops, QueueLimits.UNBOUNDED, responseFactory);
+	}
+
+	/**
+	 * Creates a new {@link SelectorWebServerExecutor} whose workers' queue is bounded.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxThreads      the maximum number of worker threads to use for handling requests
+	 * @param eventLoops      the number of event loop threads to multiplex client connections over
+	 * @param queueLimits     the limits of the queue of requests waiting for a worker
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 * @throws IllegalArgumentException if eventLoops is less than 1
+	 */
+	public SelectorWebServerExecutor(int port, int timeout, int maxThreads, int eventLoops, QueueLimits queueLimits,
+									 ResponseFactory responseFactory) {
+		if (eventLoops < 1) {
+			throw new IllegalArgumentException("At least one event loop is required.");
+		}
+
+		this.port = port;
+		this.timeout = timeout;
+		this.maxThreads = maxThreads;
+		this.eventLoopCount = eventLoops;
+		this.queueLimits = queueLimits;
+		this.responseFactory = responseFactory;
+
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		synchronized (this) {
+			running = true;
+			threadPool = queueLimits.threadPool(maxThreads);
+			WebServerExecutor.reportQueueDepth(threadPool, responseFactory.metrics());
+			eventLoops = new SelectorEventLoop[0];
+		}
+
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			 Selector acceptSelector = Selector.open()) {
+
+			serverChannel.bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+			startEventLoops();
+
+			LOG.info("Server listening on port {} with {} event loops", serverChannel.socket().getLocalPort(), eventLoopCount);
+
+			int next = 0;
+			while (running()) {
+				// Only block for 1 second so the accept loop can escape if the server is stopped.
+				acceptSelector.select(1000);
+				acceptSelector.selectedKeys().clear();
+				next = acceptConnections(serverChannel, next);
+			}
+
+		} catch (IOException e) {
+			LOG.warn("Error listening for client connection.", e);
+			stop();
+		}
+	}
+
+	@Override
+	public synchronized boolean running() {
+		return running;
+	}
+
+	@Override
+	public void stop() {
+		SelectorEventLoop[] loops;
+		ExecutorService pool;
+
+		// Don't hold the lock while waiting for the workers, so the accept loop can see that the executor has stopped
+		synchronized (this) {
+			running = false;
+			loops = eventLoops;
+			pool = threadPool;
+		}
+
+		LOG.info("Shutting down selector web server executor.");
+
+		// Stop dispatching requests before the pool shuts down, but let the workers finish sending their responses
+		for (SelectorEventLoop eventLoop : loops) {
+			eventLoop.drain();
+		}
+
+		try {
+			pool.shutdown();
+			pool.awaitTermination(timeout, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			LOG.error("Worker thread pool was interrupted while shutting down. Some client connections may have been terminated prematurely.", e);
+			Thread.currentThread().interrupt();
+		}
+
+		for (SelectorEventLoop eventLoop : loops) {
+			eventLoop.stop();
+		}
+
+		LOG.info("Selector web server executor has shutdown.");
+	}
+
+	private synchronized void startEventLoops() throws IOException {
+		eventLoops = new SelectorEventLoop[eventLoopCount];
+		for (int i = 0; i < eventLoopCount; i++) {
+			eventLoops[i] = new SelectorEventLoop(responseFactory, threadPool, queueLimits, timeout);
+
+			Thread eventLoopThread = new Thread(eventLoops[i], "selector-event-loop-" + i);
+			eventLoopThread.setDaemon(true);
+			eventLoopThread.start();
+		}
+	}
+
+	/**
+	 * Accepts all pending client connections, distributing them between the event loops in turn.
+	 *
+	 * @return Returns the index of the event loop the next connection should be assigned to.
+	 */
+	private int acceptConnections(ServerSocketChannel serverChannel, int next) throws IOException {
+		int eventLoop = next;
+
+		SocketChannel client = serverChannel.accept();
+		while (client != null) {
+			eventLoops[eventLoop].register(client);
+			eventLoop = (eventLoop + 1) % eventLoops.length;
+			client = serverChannel.accept();
+		}
+
+		return eventLoop;
+	}
+}
@@ -0,0 +1,22 @@
+package au.id.deejay.webserver.server;
+
+/**
+ * A {@link ServerExecutor} listens for client connections on the server port and services the requests made over them.
+ * It is run on a dedicated thread by {@link WebServer}, which starts and stops it.
+ *
+ * @author David Jessup
+ */
+public interface ServerExecutor extends Runnable {
+
+	/**
+	 * Checks if the executor is running.
+	 *
+	 * @return Returns true if the executor is running.
+	 */
+	boolean running();
+
+	/**
+	 * Stops the executor, waiting for in-progress requests to either complete or timeout.
+	 */
+	void stop();
+}
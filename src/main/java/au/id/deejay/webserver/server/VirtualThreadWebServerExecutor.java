@@ -0,0 +1,159 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WebServerExecutor} which runs each {@link WebWorker} on its own virtual thread, rather than a thread from a
+ * fixed size pool. Workers still use blocking I/O, but a worker blocked reading from an idle keep-alive connection no
+ * longer occupies a platform thread.
+ * <p>
+ * Since virtual threads are not pooled, the number of concurrently serviced connections is instead bounded by a
+ * semaphore. When every permit is in use the executor stops accepting new connections until a worker finishes. A new
+ * connection waits for a permit for up to the {@link QueueLimits} maximum wait, or {@link #DEFAULT_MAX_WAIT_MILLIS} if
+ * there isn't one, after which the client is shed with a 503 Service Unavailable response. The wait blocks the accept
+ * loop, so it is kept short.
+ * <p>
+ * Virtual threads are only available on Java 21 or later. On older runtimes each worker falls back to a new platform
+ * thread, still bounded by the same semaphore.
+ *
+ * @author David Jessup
+ */
+public class VirtualThreadWebServerExecutor extends WebServerExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadWebServerExecutor.class);
+
+	/**
+	 * How often a connection waiting for a permit checks whether the executor has been stopped, in milliseconds.
+	 */
+	private static final long PERMIT_POLL_MILLIS = 100;
+
+	/**
+	 * How long a new connection waits for a permit if the {@link QueueLimits} have no maximum wait, in milliseconds.
+	 */
+	static final long DEFAULT_MAX_WAIT_MILLIS = 100;
+
+	private final Semaphore permits;
+	private final long maxWaitMillis;
+
+	/**
+	 * Creates a new {@link VirtualThreadWebServerExecutor}.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxConnections  the maximum number of client connections to service concurrently
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 */
+	public VirtualThreadWebServerExecutor(int port, int timeout, int maxConnections, ResponseFactory responseFactory) {
+		this(port, timeout, maxConnections, QueueLimits.UNBOUNDED, responseFactory);
+	}
+
+	/**
+	 * Creates a new {@link VirtualThreadWebServerExecutor} whose connections wait for a permit for no longer than the
+	 * maximum queue wait. The queue's capacity doesn't apply, as connections wait to be accepted instead.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxConnections  the maximum number of client connections to service concurrently
+	 * @param queueLimits     the limits of the wait for a permit
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 */
+	public VirtualThreadWebServerExecutor(int port, int timeout, int maxConnections, QueueLimits queueLimits,
+										  ResponseFactory responseFactory) {
+		super(port, timeout, maxConnections, queueLimits, responseFactory);
+		permits = new Semaphore(maxConnections);
+		maxWaitMillis = queueLimits.maxWaitMillis() > 0 ? queueLimits.maxWaitMillis() : DEFAULT_MAX_WAIT_MILLIS;
+	}
+
+	/**
+	 * Creates an executor which starts a new virtual thread for each worker.
+	 *
+	 * @return Returns a virtual thread per task executor, or an unpooled platform thread executor if virtual threads
+	 * are not supported by the runtime.
+	 */
+	@Override
+	protected ExecutorService createThreadPool() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			LOG.warn("Virtual threads are not supported by this Java runtime, falling back to a thread per connection.", e);
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Starts a worker once a permit is available, blocking the accept loop if the server is at capacity.
+	 *
+	 * @param worker the worker servicing a newly accepted client connection
+	 * @throws RejectedExecutionException if no permit became available in time, or the executor was stopped while
+	 *                                    waiting for one.
+	 */
+	@Override
+	protected void execute(Runnable worker) {
+		if (!acquirePermit()) {
+			if (running()) {
+				throw new ShedException("Maximum concurrent connections reached", ShedReason.QUEUE_TIMEOUT);
+			}
+			throw new RejectedExecutionException("Executor stopped while waiting for a permit");
+		}
+
+		try {
+			super.execute(() -> {
+				try {
+					worker.run();
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private boolean acquirePermit() {
+		if (permits.tryAcquire()) {
+			return true;
+		}
+
+		LOG.debug("Maximum concurrent connections reached, waiting for a worker to finish.");
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+		try {
+			// Wait in short steps, so the accept loop still notices if the executor is stopped
+			while (running()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				if (permits.tryAcquire(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(PERMIT_POLL_MILLIS)), TimeUnit.NANOSECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of connections which could currently be accepted without waiting.
+	 *
+	 * @return Returns the number of available permits.
+	 */
+	public int availablePermits() {
+		return permits.availablePermits();
+	}
+}
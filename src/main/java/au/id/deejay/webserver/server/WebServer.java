@@ -1,6 +1,7 @@
 package au.id.deejay.webserver.server;
 
 import au.id.deejay.webserver.response.ResponseFactory;
+import au.id.deejay.webserver.route.RouteTable;
 import au.id.deejay.webserver.api.RequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +10,10 @@ import java.util.List;
 
 /**
  * The main web server class,
+ * <p>
+ * Servers are either created for a list of {@link RequestHandler}s, or built for a {@link ResponseFactory} with a
+ * {@link Builder}, which also chooses the server's {@link Engine} and its limits.
+ *
  * @author David Jessup
  */
 public class WebServer {
@@ -17,10 +22,13 @@ public class WebServer {
 
 	private int port;
 	private int maxThreads;
+	private int maxConnections;
+	private Engine engine;
+	private QueueLimits queueLimits;
 
 	private boolean running;
 
-	private WebServerExecutor executor;
+	private ServerExecutor executor;
 	private Thread executorThread;
 
 	/**
@@ -38,24 +46,69 @@ public class WebServer {
 	 * @throws IllegalArgumentException if no {@link RequestHandler}s are provided
 	 */
 	public WebServer(int port, int timeout, int maxThreads, List<RequestHandler> requestHandlers) {
+		this(new Builder(responseFactory(timeout, requestHandlers)).port(port).timeout(timeout).maxThreads(maxThreads));
+	}
+
+	private WebServer(Builder builder) {
 
-		if (port < 0 || port > 65535) {
+		if (builder.port < 0 || builder.port > 65535) {
 			throw new IllegalArgumentException("Port must be in the range 0-65535.");
 		}
 
-		if (maxThreads < 1) {
+		if (builder.maxThreads < 1) {
 			throw new IllegalArgumentException("Max threads must be greater than zero.");
 		}
 
+		if (builder.maxConnections() < 1) {
+			throw new IllegalArgumentException("Max connections must be greater than zero.");
+		}
+
+		if (builder.engine == null) {
+			throw new IllegalArgumentException("Engine cannot be null.");
+		}
+
+		if (builder.queueLimits == null) {
+			throw new IllegalArgumentException("Queue limits cannot be null.");
+		}
+
+		this.port = builder.port;
+		this.maxThreads = builder.maxThreads;
+		this.maxConnections = builder.maxConnections();
+		this.engine = builder.engine;
+		this.queueLimits = builder.queueLimits;
+		this.executor = createExecutor(builder.timeout, builder.responseFactory);
+	}
+
+	/**
+	 * Gets the time asynchronous handlers are given to respond, which is as long as a client is given to send its
+	 * request.
+	 *
+	 * @param timeout the request timeout, in seconds
+	 * @return Returns the handler timeout in milliseconds.
+	 */
+	public static long handlerTimeoutMillis(int timeout) {
+		return timeout > 0 ? timeout * 1000L : ResponseFactory.DEFAULT_TIMEOUT_MILLIS;
+	}
+
+	private static ResponseFactory responseFactory(int timeout, List<RequestHandler> requestHandlers) {
 		if (requestHandlers == null || requestHandlers.isEmpty()) {
 			throw new IllegalArgumentException("At least one request handler must be provided, otherwise the server won't be able to do anything!");
 		}
+		return new ResponseFactory.Builder(RouteTable.of(requestHandlers))
+				.timeoutMillis(handlerTimeoutMillis(timeout))
+				.build();
+	}
 
-		this.port = port;
-		this.maxThreads = maxThreads;
-
-		ResponseFactory responseFactory = new ResponseFactory(requestHandlers);
-		this.executor = new WebServerExecutor(port, timeout, maxThreads, responseFactory);
+	private ServerExecutor createExecutor(int timeout, ResponseFactory responseFactory) {
+		switch (engine) {
+			case SELECTOR:
+				return new SelectorWebServerExecutor(port, timeout, maxThreads, queueLimits, responseFactory);
+			case VIRTUAL:
+				return new VirtualThreadWebServerExecutor(port, timeout, maxConnections, queueLimits, responseFactory);
+			case THREADS:
+			default:
+				return new WebServerExecutor(port, timeout, maxThreads, queueLimits, responseFactory);
+		}
 	}
 
 	/**
@@ -69,7 +122,10 @@ public class WebServer {
 			throw new IllegalStateException("Server is already running.");
 		}
 
-		LOG.info("Starting web server on {} with {} worker threads.", port == 0 ? "dynamically allocated port" : "port " + port, maxThreads);
+		LOG.info("Starting web server on {} with {} using the {} engine.",
+				 port == 0 ? "dynamically allocated port" : "port " + port,
+				 engine == Engine.VIRTUAL ? "up to " + maxConnections + " concurrent connections" : maxThreads + " worker threads (" + queueLimits + ")",
+				 engine);
 
 		executorThread = new Thread(executor);
 		executorThread.start();
@@ -106,4 +162,115 @@ public class WebServer {
 		return running;
 	}
 
+
+	/**
+	 * Builds a {@link WebServer} which generates responses with a {@link ResponseFactory}. Anything not set on the
+	 * builder takes its default: a dynamically allocated port, a 10 second timeout, 10 worker threads, as many
+	 * connections serviced at once as there are worker threads, the {@link Engine#THREADS} engine, and an unbounded
+	 * worker queue.
+	 */
+	public static class Builder {
+
+		private final ResponseFactory responseFactory;
+		private int port;
+		private int timeout = 10;
+		private int maxThreads = 10;
+		private Integer maxConnections;
+		private Engine engine = Engine.THREADS;
+		private QueueLimits queueLimits = QueueLimits.UNBOUNDED;
+
+		/**
+		 * Creates a new {@link Builder}.
+		 *
+		 * @param responseFactory the response factory used to service requests, which also holds the server's metrics
+		 * @throws IllegalArgumentException if the response factory is null.
+		 */
+		public Builder(ResponseFactory responseFactory) {
+			if (responseFactory == null) {
+				throw new IllegalArgumentException("Response factory cannot be null.");
+			}
+			this.responseFactory = responseFactory;
+		}
+
+		/**
+		 * Sets the port the server listens on.
+		 *
+		 * @param port the port number to bind the server to, or 0 to have one allocated
+		 * @return Returns the builder.
+		 */
+		public Builder port(int port) {
+			this.port = port;
+			return this;
+		}
+
+		/**
+		 * Sets the request timeout. Requests which take longer than this will be terminated.
+		 *
+		 * @param timeout the request timeout, in seconds
+		 * @return Returns the builder.
+		 */
+		public Builder timeout(int timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		/**
+		 * Sets the size of the worker pool used by the pooled engines.
+		 *
+		 * @param maxThreads the maximum number of pooled worker threads to use for servicing requests
+		 * @return Returns the builder.
+		 */
+		public Builder maxThreads(int maxThreads) {
+			this.maxThreads = maxThreads;
+			return this;
+		}
+
+		/**
+		 * Sets how many client connections the {@link Engine#VIRTUAL} engine services at once.
+		 *
+		 * @param maxConnections the maximum number of client connections to service concurrently with virtual threads
+		 * @return Returns the builder.
+		 */
+		public Builder maxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * Sets the engine used to handle client connections.
+		 *
+		 * @param engine the engine
+		 * @return Returns the builder.
+		 */
+		public Builder engine(Engine engine) {
+			this.engine = engine;
+			return this;
+		}
+
+		/**
+		 * Sets the limits of the queue of work waiting for a pooled worker thread, beyond which work is shed.
+		 *
+		 * @param queueLimits the worker queue's limits
+		 * @return Returns the builder.
+		 */
+		public Builder queueLimits(QueueLimits queueLimits) {
+			this.queueLimits = queueLimits;
+			return this;
+		}
+
+		/**
+		 * Builds the server.
+		 *
+		 * @return Returns a new {@link WebServer}.
+		 * @throws IllegalArgumentException if the port number is outside the valid range (i.e. 0-65535), maxThreads or
+		 *                                  maxConnections is less than 1, or the engine or queue limits are null.
+		 */
+		public WebServer build() {
+			return new WebServer(this);
+		}
+
+		private int maxConnections() {
+			return maxConnections != null ? maxConnections : maxThreads;
+		}
+	}
 }
@@ -1,31 +1,51 @@
 package au.id.deejay.webserver.server;
 
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
 import au.id.deejay.webserver.response.ResponseFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * The executor maintains a thread pool for worker threads servicing individual client connections.
+ * <p>
+ * Connections wait for a worker in the pool's queue, within the executor's {@link QueueLimits}. When the queue is full,
+ * or a connection has waited too long by the time a worker is free, the connection is shed with a 503 Service
+ * Unavailable response. Connections shed because the queue is full linger on a small pool of their own, so the accept
+ * loop can carry on accepting connections in the meantime.
  *
  * @author David Jessup
  */
-public class WebServerExecutor implements Runnable {
+public class WebServerExecutor implements ServerExecutor {
 
 	private static final Logger LOG = LoggerFactory.getLogger(WebServerExecutor.class);
+
+	/**
+	 * The most connections shed by the accept loop which may linger at once. Any more are closed as soon as their
+	 * response has been sent.
+	 */
+	static final int MAX_LINGERING_SHEDS = 16;
+
 	private final ResponseFactory responseFactory;
 	private int port;
 	private int timeout;
 	private int maxThreads;
+	private QueueLimits queueLimits;
 	private ExecutorService threadPool;
+	private ExecutorService shedPool;
 	private boolean running;
 
 	/**
@@ -38,9 +58,24 @@ public class WebServerExecutor implements Runnable {
 	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
 	 */
 	public WebServerExecutor(int port, int timeout, int maxThreads, ResponseFactory responseFactory) {
+		this(port, timeout, maxThreads, QueueLimits.UNBOUNDED, responseFactory);
+	}
+
+	/**
+	 * Creates a new {@link WebServerExecutor} whose workers' queue is bounded.
+	 *
+	 * @param port            the port the executor will listen for client connections on
+	 * @param timeout         the timeout in seconds for client connections
+	 * @param maxThreads      the maximum number of worker threads to use for handling requests
+	 * @param queueLimits     the limits of the queue of connections waiting for a worker
+	 * @param responseFactory the response factory to use to generate {@link au.id.deejay.webserver.api.Response}s for
+	 *                        incoming {@link au.id.deejay.webserver.api.Request}s
+	 */
+	public WebServerExecutor(int port, int timeout, int maxThreads, QueueLimits queueLimits, ResponseFactory responseFactory) {
 		this.port = port;
 		this.timeout = timeout;
 		this.maxThreads = maxThreads;
+		this.queueLimits = queueLimits;
 		this.responseFactory = responseFactory;
 
 		running = false;
@@ -50,9 +85,15 @@ public class WebServerExecutor implements Runnable {
 	public void run() {
 		running = true;
 
-		threadPool = Executors.newFixedThreadPool(maxThreads);
+		threadPool = createThreadPool();
+		shedPool = shedPool();
+		reportQueueDepth(threadPool, responseFactory.metrics());
+
+		// Accept connections through a channel, so client sockets have channels files can be transferred to directly
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
 
-		try (ServerSocket serverSocket = new ServerSocket(port)) {
+			ServerSocket serverSocket = serverChannel.socket();
+			serverSocket.bind(new InetSocketAddress(port));
 
 			// Only block for 1 second so the running loop can escape if the server is stopped.
 			serverSocket.setSoTimeout(1000);
@@ -69,24 +110,22 @@ public class WebServerExecutor implements Runnable {
 		}
 	}
 
-	/**
-	 * Checks if the executor is running.
-	 *
-	 * @return Returns true if the executor is running.
-	 */
+	@Override
 	public synchronized boolean running() {
 		return running;
 	}
 
-	/**
-	 * Stops the executor.
-	 */
-	public synchronized void stop() {
-		running = false;
+	@Override
+	public void stop() {
+		// Don't hold the lock while waiting for the workers, so the accept loop can see that the executor has stopped
+		synchronized (this) {
+			running = false;
+		}
 
 		LOG.info("Shutting down web server executor.");
 
 		try {
+			shedPool.shutdown();
 			threadPool.shutdown();
 			threadPool.awaitTermination(timeout, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
@@ -97,6 +136,46 @@ public class WebServerExecutor implements Runnable {
 		LOG.info("Web server executor has shutdown.");
 	}
 
+	/**
+	 * Reports the number of tasks waiting in a worker pool's queue in the server's metrics, if it has a queue.
+	 *
+	 * @param threadPool the worker pool
+	 * @param metrics    the server's metrics
+	 */
+	static void reportQueueDepth(ExecutorService threadPool, ServerMetrics metrics) {
+		if (threadPool instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) threadPool;
+			metrics.queueDepth(() -> pool.getQueue().size());
+		}
+	}
+
+	private static ExecutorService shedPool() {
+		return new ThreadPoolExecutor(0, MAX_LINGERING_SHEDS, 1L, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "shed-linger");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates the thread pool used to run {@link WebWorker}s.
+	 *
+	 * @return Returns a fixed size thread pool of <code>maxThreads</code> threads, whose queue is bounded by the
+	 * executor's {@link QueueLimits}.
+	 */
+	protected ExecutorService createThreadPool() {
+		return queueLimits.threadPool(maxThreads);
+	}
+
+	/**
+	 * Queues a worker for execution on the thread pool.
+	 *
+	 * @param worker the worker servicing a newly accepted client connection
+	 */
+	protected void execute(Runnable worker) {
+		threadPool.execute(worker);
+	}
+
 	@SuppressWarnings("squid:S1166") // Ignore the suppressed SocketTimeoutException
 	private void handleConnection(ServerSocket serverSocket) throws IOException {
 		try {
@@ -106,8 +185,14 @@ public class WebServerExecutor implements Runnable {
 			// Assign the connection to a worker
 			Runnable worker = assignWorker(client);
 
-			// Queue the worker for execution
-			threadPool.execute(worker);
+			// Queue the worker for execution, shedding the connection if the queue is full
+			try {
+				execute(worker);
+			} catch (ShedException e) {
+				shed(client, e.reason());
+			} catch (RejectedExecutionException e) {
+				reject(client, e);
+			}
 		} catch (SocketTimeoutException e) {
 			/* This exception is expected due to the short socket timeout set in run(), which gives the connection loop
 			 a chance to escape if the server is stopped. Here we just swallow the exception and return control to the
@@ -116,12 +201,72 @@ public class WebServerExecutor implements Runnable {
 	}
 
 	private Runnable assignWorker(Socket client) {
+		configureClient(client);
+		return queueLimits.expiring(new WebWorker(client, responseFactory),
+									() -> WebWorker.shed(client, responseFactory, ShedReason.QUEUE_TIMEOUT));
+	}
+
+	/**
+	 * Sets the socket options of a newly accepted client connection: its read timeout, and TCP_NODELAY, which disables
+	 * Nagle's algorithm. A response's head and body may be sent in separate writes, and with Nagle's algorithm enabled
+	 * the body would wait for the client to acknowledge the head, which it may delay doing.
+	 *
+	 * @param client the client connection
+	 */
+	void configureClient(Socket client) {
 		try {
 			client.setSoTimeout(timeout * 1000);
+			client.setTcpNoDelay(true);
 		} catch (SocketException e) {
-			LOG.warn("Unable to set socket timeout", e);
+			LOG.warn("Unable to set socket options", e);
+		}
+	}
+
+	private void reject(Socket client, RejectedExecutionException e) {
+		if (!threadPool.isShutdown()) {
+			shed(client, ShedReason.QUEUE_FULL);
+			return;
+		}
+
+		LOG.debug("Worker pool is shutting down, dropping client connection", e);
+		try {
+			client.close();
+		} catch (IOException closeException) {
+			LOG.error("Failed to close client connection", closeException);
+		}
+	}
+
+	private void shed(Socket client, ShedReason reason) {
+		WebWorker.shed(client, responseFactory, reason, shedPool);
+	}
+
+	/**
+	 * Thrown by {@link #execute(Runnable)} when a worker can't be executed, and its client should be shed for the given
+	 * reason rather than because the queue is full.
+	 */
+	static class ShedException extends RejectedExecutionException {
+
+		private final ShedReason reason;
+
+		/**
+		 * Creates a new {@link ShedException}.
+		 *
+		 * @param message the detail message
+		 * @param reason  why the client is being shed
+		 */
+		ShedException(String message, ShedReason reason) {
+			super(message);
+			this.reason = reason;
+		}
+
+		/**
+		 * Gets why the client is being shed.
+		 *
+		 * @return Returns the shed reason.
+		 */
+		ShedReason reason() {
+			return reason;
 		}
-		return new WebWorker(client, responseFactory);
 	}
 
 }
@@ -6,19 +6,31 @@ import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.api.Response;
 import au.id.deejay.webserver.exception.RequestException;
 import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.io.ChannelOutputStream;
 import au.id.deejay.webserver.io.RequestReader;
 import au.id.deejay.webserver.io.ResponseWriter;
+import au.id.deejay.webserver.log.AccessLog;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
 import au.id.deejay.webserver.response.ErrorResponse;
 import au.id.deejay.webserver.response.ResponseFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link WebWorker} is a worker thread that handle a single client connection before terminating. It will read
@@ -32,10 +44,22 @@ public class WebWorker implements Runnable {
 	private static final Logger LOG = LoggerFactory.getLogger(WebWorker.class);
 
 	private static final String CONNECTION_HEADER = "Connection";
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The longest a shed connection is kept open to discard whatever else its client sends, in milliseconds.
+	 */
+	static final int SHED_LINGER_MILLIS = 100;
+
+	/**
+	 * The most a shed connection reads from its client before it is closed anyway.
+	 */
+	static final int SHED_DRAIN_BYTES = 65536;
 
 	private final Socket client;
 	private final ResponseFactory responseFactory;
 	private boolean keepAlive = false;
+	private boolean admitted;
 
 	/**
 	 * Creates a new {@link WebWorker}.
@@ -51,12 +75,14 @@ public class WebWorker implements Runnable {
 
 	@Override
 	public void run() {
+		responseFactory.metrics().connectionOpened();
 		try {
 			handleConnection();
 		} catch (Exception e) {
 			LOG.error("An unhandled exception was caught while attempting to handle a client connection.", e);
 		} finally {
 			closeConnection();
+			responseFactory.metrics().connectionClosed();
 		}
 	}
 
@@ -66,54 +92,97 @@ public class WebWorker implements Runnable {
 
 		try {
 			inputStream = client.getInputStream();
-			outputStream = client.getOutputStream();
+			outputStream = outputStream();
 		} catch (IOException e) {
 			LOG.error("Failed to acquire I/O streams from client connection", e);
 			return;
 		}
 
 		RequestReader requestReader = new RequestReader(inputStream);
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = new ResponseWriter(outputStream, responseFactory.serverName());
+		ServerMetrics metrics = responseFactory.metrics();
 
 		while (isKeepAliveConnection()) {
 
-			Request request;
+			Request request = null;
 			Response response;
 
 			try {
 				// Read in the request and update the thread's keep-alive status
 				request = requestReader.readRequest();
+				metrics.requestRead(requestReader.requestSize(), requestReader.parseNanos());
 				keepAliveConnection(shouldKeepAlive(request));
 
-				response = generateResponse(request);
-
-				// Log the request
-				LOG.info("({}) - \"{} {} {}\" {} {}",
-						 client.getRemoteSocketAddress(),
-						 request.method(),
-						 request.uri(),
-						 request.version(),
-						 response.status().code(),
-						 response.headers().value("Content-length"));
+				response = respond(request);
 
 			} catch (RequestException e) {
 				LOG.error("Bad request from " + client.getRemoteSocketAddress(), e);
 				response = ErrorResponse.BAD_REQUEST_400;
+				// The rest of the request can't be found reliably, so no further requests can be read
+				keepAliveConnection(false);
 			} catch (SocketTimeoutException e) {
 				// Allow the connection to drop
 				LOG.trace("Client connection timed out", e);
 				return;
+			} catch (EOFException e) {
+				// The client has closed the connection
+				LOG.trace("Client connection closed", e);
+				return;
 			}
 
-			// If the client has requested keep-alive, check that the response hasn't overridden it
+			// If the client has requested keep-alive, check that the response hasn't overridden it, and that the client
+			// will be able to tell where it ends without the connection being closed
 			if (isKeepAliveConnection()) {
-				keepAliveConnection(shouldKeepAlive(response));
+				keepAliveConnection(shouldKeepAlive(response) && ResponseWriter.isDelimited(response));
+			}
+
+			writeResponse(responseWriter, request, response);
+
+			// Discard any of the request body the handler didn't read, unless it's cheaper to close the connection
+			if (isKeepAliveConnection() && !requestReader.drain()) {
+				keepAliveConnection(false);
 			}
 
-			writeResponse(responseWriter, response);
+			// If the client has pipelined another request, hold the response back so the responses to the whole batch
+			// are sent together. Responses must be flushed before waiting for more data from the client.
+			if (!isKeepAliveConnection() || !requestReader.hasBufferedRequest()) {
+				flush(responseWriter);
+			}
 		}
 	}
 
+	/**
+	 * Responds to a request if the server's concurrency limit admits it, or answers it with {@link
+	 * ErrorResponse#OVERLOADED_503} if not. An admitted request's latency is sampled once its response has been
+	 * generated, but the request is only released once the response has been written.
+	 */
+	private Response respond(Request request) {
+		admitted = responseFactory.admit();
+		if (!admitted) {
+			return ErrorResponse.OVERLOADED_503;
+		}
+
+		long admittedAt = System.nanoTime();
+		try {
+			return generateResponse(responseFactory, request);
+		} finally {
+			responseFactory.sample(System.nanoTime() - admittedAt);
+		}
+	}
+
+	/**
+	 * Prefers writing through the socket's channel (if it has one), so file bodies can be transferred to the client
+	 * without being copied through the Java heap. Either way the stream is buffered, so a response head and the start of
+	 * its body are sent to the client together.
+	 */
+	private OutputStream outputStream() throws IOException {
+		SocketChannel channel = client.getChannel();
+		if (channel != null) {
+			return new ChannelOutputStream(channel, client.getSoTimeout());
+		}
+		return new BufferedOutputStream(client.getOutputStream(), BUFFER_SIZE);
+	}
+
 	private void closeConnection() {
 		try {
 			client.close();
@@ -130,7 +199,14 @@ public class WebWorker implements Runnable {
 		this.keepAlive = keepAlive;
 	}
 
-	private boolean shouldKeepAlive(HttpMessage message) {
+	/**
+	 * Checks if a message indicates the connection it was sent over should be kept alive once the current request has
+	 * been serviced.
+	 *
+	 * @param message the request or response message
+	 * @return Returns true if the connection should be kept alive.
+	 */
+	static boolean shouldKeepAlive(HttpMessage message) {
 		List<String> connectionValues = message.headers().values(CONNECTION_HEADER);
 		if (connectionValues != null) {
 			if (connectionValues.contains("keep-alive")) {
@@ -143,7 +219,14 @@ public class WebWorker implements Runnable {
 		return HttpVersion.HTTP_1_1.compareTo(message.version()) <= 0;
 	}
 
-	private Response generateResponse(Request request) {
+	/**
+	 * Generates a response to a request, falling back to a 500 error response if the {@link ResponseFactory} fails.
+	 *
+	 * @param responseFactory the response factory to use
+	 * @param request         the request to respond to
+	 * @return Returns the response to the request.
+	 */
+	static Response generateResponse(ResponseFactory responseFactory, Request request) {
 		try {
 			return responseFactory.response(request);
 		} catch (Exception e) {
@@ -152,11 +235,164 @@ public class WebWorker implements Runnable {
 		}
 	}
 
-	private void writeResponse(ResponseWriter responseWriter, Response response) {
+	/**
+	 * Generates a response to a request without waiting for asynchronous handlers. If the response cannot be generated
+	 * an internal server error response is returned instead.
+	 *
+	 * @param responseFactory the factory to generate the response with
+	 * @param request         the request to respond to
+	 * @return Returns a future which completes with the response to send. It is never completed exceptionally.
+	 */
+	static CompletableFuture<Response> generateResponseAsync(ResponseFactory responseFactory, Request request) {
+		return responseFactory.responseAsync(request).exceptionally(e -> {
+			LOG.error("Error generating response message", e);
+			return ErrorResponse.INTERNAL_SERVER_ERROR_500;
+		});
+	}
+
+	/**
+	 * Writes an access log entry for a request once its response has been sent. Entries are handed to the server's
+	 * {@link AccessLog} to be written in the background, or logged with the application logger if there isn't one.
+	 *
+	 * @param accessLog     the access log, or null to use the application logger
+	 * @param remoteAddress the address of the client that made the request
+	 * @param request       the request made
+	 * @param response      the response sent
+	 * @param bytes         the size of the response body sent
+	 */
+	static void logRequest(AccessLog accessLog, InetAddress remoteAddress, Request request, Response response, long bytes) {
+		if (accessLog != null) {
+			accessLog.log(remoteAddress, request, response.status(), bytes);
+			return;
+		}
+		LOG.info("({}) - \"{} {} {}\" {} {}",
+				 remoteAddress,
+				 request.method(),
+				 request.uri(),
+				 request.version(),
+				 response.status().code(),
+				 bytes);
+	}
+
+	/**
+	 * Sheds a client connection which the server is too busy to service, answering it with {@link
+	 * ErrorResponse#OVERLOADED_503} without reading its request, then closing it. The response is small enough to fit
+	 * in the socket's send buffer, so this does not block waiting for the client.
+	 * <p>
+	 * Closing a socket with unread data makes it reset the connection, which can lose the response before the client
+	 * reads it. So once the response is sent the output is shut down, and whatever the client sends is discarded until
+	 * it closes its end, for up to {@link #SHED_LINGER_MILLIS} and {@link #SHED_DRAIN_BYTES}.
+	 *
+	 * @param client          the client connection
+	 * @param responseFactory the response factory holding the server's name and metrics
+	 * @param reason          why the client is being shed
+	 */
+	static void shed(Socket client, ResponseFactory responseFactory, ShedReason reason) {
+		shed(client, responseFactory, reason, Runnable::run);
+	}
+
+	/**
+	 * Sheds a client connection as {@link #shed(Socket, ResponseFactory, ShedReason)} does, but lingers on the given
+	 * executor, so the caller isn't blocked while the client's input is discarded. If the executor can't take the
+	 * connection it is closed straight away, at the risk of the client losing the response.
+	 *
+	 * @param client          the client connection
+	 * @param responseFactory the response factory holding the server's name and metrics
+	 * @param reason          why the client is being shed
+	 * @param lingerExecutor  the executor to linger on
+	 */
+	static void shed(Socket client, ResponseFactory responseFactory, ShedReason reason, Executor lingerExecutor) {
+		ServerMetrics metrics = responseFactory.metrics();
+		metrics.clientShed(reason);
+		LOG.debug("Server overloaded, shedding client {} ({})", client.getRemoteSocketAddress(), reason);
+
 		try {
-			responseWriter.writeResponse(response);
+			ResponseWriter responseWriter = new ResponseWriter(new BufferedOutputStream(client.getOutputStream(), BUFFER_SIZE),
+																responseFactory.serverName());
+			long writeStart = System.nanoTime();
+			responseWriter.writeResponse(ErrorResponse.OVERLOADED_503);
+			metrics.responseSent(null, ErrorResponse.OVERLOADED_503, responseWriter.bytesWritten(), System.nanoTime() - writeStart);
+
+			client.shutdownOutput();
+			lingerExecutor.execute(() -> linger(client));
+		} catch (IOException | ResponseException | RejectedExecutionException e) {
+			LOG.debug("Unable to shed client connection", e);
+			closeQuietly(client);
+		}
+	}
+
+	private static void linger(Socket client) {
+		try (Socket socket = client) {
+			discardInput(socket);
+		} catch (IOException e) {
+			LOG.debug("Unable to shed client connection", e);
+		}
+	}
+
+	private static void closeQuietly(Socket client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			LOG.error("Failed to close client connection", e);
+		}
+	}
+
+	@SuppressWarnings("squid:S1166") // Ignore the suppressed SocketTimeoutException
+	private static void discardInput(Socket socket) throws IOException {
+		InputStream inputStream = socket.getInputStream();
+		byte[] discarded = new byte[BUFFER_SIZE];
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHED_LINGER_MILLIS);
+		int remaining = SHED_DRAIN_BYTES;
+
+		try {
+			while (remaining > 0) {
+				long waitMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (waitMillis <= 0) {
+					return;
+				}
+
+				socket.setSoTimeout((int) waitMillis);
+				int read = inputStream.read(discarded, 0, Math.min(discarded.length, remaining));
+				if (read < 0) {
+					return;
+				}
+				remaining -= read;
+			}
+		} catch (SocketTimeoutException e) {
+			// The client is still connected, but the connection has lingered for long enough
+		}
+	}
+
+	/**
+	 * Writes a response (without flushing it), then records it in the server's metrics and access log.
+	 *
+	 * @param request the request responded to, or null if it could not be read
+	 */
+	private void writeResponse(ResponseWriter responseWriter, Request request, Response response) {
+		long written = responseWriter.bytesWritten();
+		long writeStart = System.nanoTime();
+		try {
+			responseWriter.writeResponse(response, false);
 		} catch (ResponseException e) {
 			LOG.error("Unable to send response", e);
+		} finally {
+			if (admitted) {
+				admitted = false;
+				responseFactory.release();
+			}
+		}
+		responseFactory.metrics().responseSent(request, response, responseWriter.bytesWritten() - written, System.nanoTime() - writeStart);
+		if (request != null) {
+			logRequest(responseFactory.accessLog(), client.getInetAddress(), request, response, responseWriter.bodySize());
+		}
+	}
+
+	private void flush(ResponseWriter responseWriter) {
+		try {
+			responseWriter.flush();
+		} catch (IOException e) {
+			LOG.error("Unable to send response", e);
+			keepAliveConnection(false);
 		}
 	}
 }
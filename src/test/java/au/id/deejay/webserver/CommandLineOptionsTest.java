@@ -1,5 +1,8 @@
 package au.id.deejay.webserver;
 
+import au.id.deejay.webserver.log.LogFormat;
+import au.id.deejay.webserver.log.OverflowPolicy;
+import au.id.deejay.webserver.server.Engine;
 import joptsimple.OptionException;
 import org.junit.Test;
 
@@ -146,6 +149,151 @@ public class CommandLineOptionsTest {
 		options = new CommandLineOptions("--maxthreads");
 	}
 
+	@Test
+	public void testMaxConnections() throws Exception {
+		// long-form
+		options = new CommandLineOptions("--maxconnections", "1000");
+		assertThat(options.maxConnections(), is(equalTo(1000)));
+
+		// short-form with "equals" syntax
+		options = new CommandLineOptions("-c=2000");
+		assertThat(options.maxConnections(), is(equalTo(2000)));
+
+		// default
+		options = new CommandLineOptions();
+		assertThat(options.maxConnections(), is(equalTo(10000)));
+	}
+
+	@Test(expected = OptionException.class)
+	public void testNonNumericMaxConnectionsThrowsException() throws Exception {
+		new CommandLineOptions("--maxconnections", "notanumber").maxConnections();
+	}
+
+	@Test
+	public void testEngine() throws Exception {
+		// long-form
+		options = new CommandLineOptions("--engine", "selector");
+		assertThat(options.engine(), is(equalTo(Engine.SELECTOR)));
+
+		// long-form with "equals" syntax, ignoring case
+		options = new CommandLineOptions("--engine=THREADS");
+		assertThat(options.engine(), is(equalTo(Engine.THREADS)));
+
+		// short-form
+		options = new CommandLineOptions("-e", "selector");
+		assertThat(options.engine(), is(equalTo(Engine.SELECTOR)));
+
+		options = new CommandLineOptions("--engine", "virtual");
+		assertThat(options.engine(), is(equalTo(Engine.VIRTUAL)));
+
+		// default
+		options = new CommandLineOptions();
+		assertThat(options.engine(), is(equalTo(Engine.THREADS)));
+	}
+
+	@Test
+	public void testCacheSize() throws Exception {
+		options = new CommandLineOptions("--cachesize", "64");
+		assertThat(options.cacheSize(), is(equalTo(64)));
+
+		// default
+		options = new CommandLineOptions();
+		assertThat(options.cacheSize(), is(equalTo(0)));
+	}
+
+	@Test
+	public void testCacheMaxFileSize() throws Exception {
+		options = new CommandLineOptions("--cachemaxfile=256");
+		assertThat(options.cacheMaxFileSize(), is(equalTo(256)));
+
+		// default
+		options = new CommandLineOptions();
+		assertThat(options.cacheMaxFileSize(), is(equalTo(1024)));
+	}
+
+	@Test
+	public void testOffHeapCacheSize() throws Exception {
+		options = new CommandLineOptions("--offheapcachesize", "256", "--offheapcachemaxfile", "4096");
+		assertThat(options.offHeapCacheSize(), is(equalTo(256)));
+		assertThat(options.offHeapCacheMaxFileSize(), is(equalTo(4096)));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.offHeapCacheSize(), is(equalTo(0)));
+		assertThat(options.offHeapCacheMaxFileSize(), is(equalTo(16384)));
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		options = new CommandLineOptions("--compression", "9", "--compressioncache", "64");
+		assertThat(options.compressionLevel(), is(equalTo(9)));
+		assertThat(options.compressionCacheSize(), is(equalTo(64)));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.compressionLevel(), is(equalTo(6)));
+		assertThat(options.compressionCacheSize(), is(equalTo(16)));
+	}
+
+	@Test
+	public void testServerName() throws Exception {
+		options = new CommandLineOptions("--servername", "example");
+		assertThat(options.serverName(), is(equalTo("example")));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.serverName(), is(equalTo("java-webserver")));
+	}
+
+	@Test
+	public void testQueueLimits() throws Exception {
+		options = new CommandLineOptions("--queuecapacity", "50", "--queuewait", "250");
+		assertThat(options.queueCapacity(), is(equalTo(50)));
+		assertThat(options.queueWait(), is(equalTo(250)));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.queueCapacity(), is(equalTo(1000)));
+		assertThat(options.queueWait(), is(equalTo(0)));
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		options = new CommandLineOptions("--concurrencylimit", "200");
+		assertThat(options.concurrencyLimit(), is(equalTo(200)));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.concurrencyLimit(), is(equalTo(0)));
+	}
+
+	@Test
+	public void testAccessLog() throws Exception {
+		options = new CommandLineOptions("--accesslog", "/var/log/access.log", "--accesslogformat", "common", "--accesslogoverflow", "BLOCK",
+										 "--accesslogbuffer", "1024");
+		assertThat(options.accessLog(), is(equalTo("/var/log/access.log")));
+		assertThat(options.accessLogFormat(), is(equalTo(LogFormat.COMMON)));
+		assertThat(options.accessLogOverflow(), is(equalTo(OverflowPolicy.BLOCK)));
+		assertThat(options.accessLogBuffer(), is(equalTo(1024)));
+
+		// defaults
+		options = new CommandLineOptions();
+		assertThat(options.accessLog(), is(equalTo("logs/access.log")));
+		assertThat(options.accessLogFormat(), is(equalTo(LogFormat.COMBINED)));
+		assertThat(options.accessLogOverflow(), is(equalTo(OverflowPolicy.DROP)));
+		assertThat(options.accessLogBuffer(), is(equalTo(8192)));
+	}
+
+	@Test(expected = OptionException.class)
+	public void testUnknownAccessLogFormatThrowsException() throws Exception {
+		new CommandLineOptions("--accesslogformat", "notaformat").accessLogFormat();
+	}
+
+	@Test(expected = OptionException.class)
+	public void testUnknownEngineThrowsException() throws Exception {
+		new CommandLineOptions("--engine", "notanengine").engine();
+	}
+
 	@Test
 	public void testHelp() throws Exception {
 		// long-form
@@ -0,0 +1,47 @@
+package au.id.deejay.webserver.api;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author David Jessup
+ */
+public class AsyncRequestHandlerTest {
+
+	@Test
+	public void testHandleWaitsForAsyncResponse() throws Exception {
+		Response response = mock(Response.class);
+
+		assertThat(handler(CompletableFuture.completedFuture(response)).handle(mock(Request.class)), is(sameInstance(response)));
+	}
+
+	@Test(expected = CompletionException.class)
+	public void testHandleThrowsAsyncFailures() throws Exception {
+		CompletableFuture<Response> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new IllegalStateException());
+
+		handler(failed).handle(mock(Request.class));
+	}
+
+	private static AsyncRequestHandler handler(CompletionStage<Response> response) {
+		return new AsyncRequestHandler() {
+			@Override
+			public CompletionStage<Response> handleAsync(Request request) {
+				return response;
+			}
+
+			@Override
+			public boolean canHandle(Request request) {
+				return true;
+			}
+		};
+	}
+}
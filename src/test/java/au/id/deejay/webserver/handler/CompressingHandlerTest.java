@@ -0,0 +1,100 @@
+package au.id.deejay.webserver.handler;
+
+import au.id.deejay.webserver.api.AsyncRequestHandler;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.response.HttpResponse;
+import au.id.deejay.webserver.response.ResponseCompressor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class CompressingHandlerTest {
+
+	private RequestHandler delegate;
+	private Request request;
+	private CompressingHandler handler;
+
+	@Before
+	public void setUp() throws Exception {
+		delegate = mock(RequestHandler.class);
+		request = mock(Request.class);
+		when(request.headers()).thenReturn(new HttpHeaders());
+		when(request.uri()).thenReturn(new URI("/"));
+		handler = new CompressingHandler(delegate, new ResponseCompressor(1, 0, ResponseCompressor.DEFAULT_TYPES, 0));
+	}
+
+	@Test
+	public void testCanHandleDelegates() throws Exception {
+		when(delegate.canHandle(request)).thenReturn(true);
+		assertThat(handler.canHandle(request), is(true));
+
+		when(delegate.canHandle(request)).thenReturn(false);
+		assertThat(handler.canHandle(request), is(false));
+	}
+
+	@Test
+	public void testResponsesAreCompressed() throws Exception {
+		request.headers().set("Accept-Encoding", "gzip");
+		Response response = new HttpResponse(HttpStatus.OK_200, "Hello world", HttpVersion.HTTP_1_1);
+		response.headers().set("Content-type", "text/plain");
+		when(delegate.handle(request)).thenReturn(response);
+
+		assertThat(handler.handle(request).headers().value("Content-Encoding"), is("gzip"));
+	}
+
+	@Test
+	public void testUncompressibleResponsesArePassedThrough() throws Exception {
+		request.headers().set("Accept-Encoding", "gzip");
+		Response response = new HttpResponse(HttpStatus.OK_200, "Hello world", HttpVersion.HTTP_1_1);
+		when(delegate.handle(request)).thenReturn(response);
+
+		assertThat(handler.handle(request), is(sameInstance(response)));
+	}
+
+	@Test
+	public void testAsyncResponsesAreCompressedOnceComplete() throws Exception {
+		request.headers().set("Accept-Encoding", "gzip");
+		Response response = new HttpResponse(HttpStatus.OK_200, "Hello world", HttpVersion.HTTP_1_1);
+		response.headers().set("Content-type", "text/plain");
+		CompletableFuture<Response> pending = new CompletableFuture<>();
+		AsyncRequestHandler asyncDelegate = mock(AsyncRequestHandler.class);
+		when(asyncDelegate.handleAsync(request)).thenReturn(pending);
+		handler = new CompressingHandler(asyncDelegate, new ResponseCompressor(1, 0, ResponseCompressor.DEFAULT_TYPES, 0));
+
+		CompletionStage<Response> compressed = handler.handleAsync(request);
+		assertThat(compressed.toCompletableFuture().isDone(), is(false));
+
+		pending.complete(response);
+		assertThat(compressed.toCompletableFuture().join().headers().value("Content-Encoding"), is("gzip"));
+	}
+
+	@Test
+	public void testSynchronousResponsesAreCompletedImmediately() throws Exception {
+		Response response = new HttpResponse(HttpStatus.OK_200, "Hello world", HttpVersion.HTTP_1_1);
+		when(delegate.handle(request)).thenReturn(response);
+
+		assertThat(handler.handleAsync(request).toCompletableFuture().getNow(null), is(sameInstance(response)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullHandler() throws Exception {
+		new CompressingHandler(null, new ResponseCompressor());
+	}
+}
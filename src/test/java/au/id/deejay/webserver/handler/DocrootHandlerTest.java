@@ -4,8 +4,16 @@ import au.id.deejay.webserver.api.HttpMethod;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import au.id.deejay.webserver.response.CachedFileResponse;
 import au.id.deejay.webserver.response.DirectoryListingResponse;
 import au.id.deejay.webserver.response.ErrorResponse;
+import au.id.deejay.webserver.response.FileCache;
+import au.id.deejay.webserver.response.MultipartRangeResponse;
+import au.id.deejay.webserver.response.NotModifiedResponse;
+import au.id.deejay.webserver.response.PartialFileResponse;
+import au.id.deejay.webserver.response.PrecompressedFileResponse;
+import au.id.deejay.webserver.response.PrecompressedFiles;
 import au.id.deejay.webserver.response.RedirectResponse;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -14,6 +22,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -78,6 +88,118 @@ public class DocrootHandlerTest {
 		);
 	}
 
+	@Test
+	public void testFileResponsesHaveValidators() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.headers().contains("ETag"), is(true));
+		assertThat(response.headers().contains("Last-Modified"), is(true));
+	}
+
+	@Test
+	public void testMatchingEtagReturnsNotModified() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+		String etag = requestHandler.handle(request).headers().value("ETag");
+
+		request.headers().add("If-None-Match", "\"other\"", etag);
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(NotModifiedResponse.class)));
+		assertThat(response.status(), is(HttpStatus.NOT_MODIFIED_304));
+		assertThat(response.headers().value("ETag"), is(etag));
+		assertThat(response.stream().read(), is(-1));
+	}
+
+	@Test
+	public void testChangedEtagReturnsFile() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+
+		request.headers().add("If-None-Match", "\"other\"");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.OK_200));
+	}
+
+	@Test
+	public void testUnmodifiedSinceReturnsNotModified() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+		String lastModified = requestHandler.handle(request).headers().value("Last-Modified");
+
+		request.headers().add("If-Modified-Since", lastModified);
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.NOT_MODIFIED_304));
+		assertThat(response.headers().value("Last-Modified"), is(lastModified));
+	}
+
+	@Test
+	public void testConditionalIndexFileRequestReturnsNotModified() throws Exception {
+		withHandler();
+		withMockGetDirectoryRequest();
+
+		request.headers().add("If-None-Match", "*");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.NOT_MODIFIED_304));
+	}
+
+	@Test
+	public void testRangeRequestReturnsPartialContent() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+
+		request.headers().add("Range", "bytes=0-5");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(PartialFileResponse.class)));
+		assertThat(response.status(), is(HttpStatus.PARTIAL_CONTENT_206));
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("<html>"));
+	}
+
+	@Test
+	public void testMultipleRangeRequestReturnsMultipartContent() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+
+		request.headers().add("Range", "bytes=0-5", "-8");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(MultipartRangeResponse.class)));
+		assertThat(response.status(), is(HttpStatus.PARTIAL_CONTENT_206));
+	}
+
+	@Test
+	public void testUnsatisfiableRangeRequest() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+		File indexFile = getDocrootFile("/index.html");
+
+		request.headers().add("Range", "bytes=100000-");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE_416));
+		assertThat(response.headers().value("Content-Range"), is("bytes */" + indexFile.length()));
+	}
+
+	@Test
+	public void testStaleIfRangeReturnsCompleteFile() throws Exception {
+		withHandler();
+		withMockGetIndexRequest();
+
+		request.headers().add("Range", "bytes=0-5");
+		request.headers().add("If-Range", "\"stale\"");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.OK_200));
+		assertThat(response.headers().value("Accept-Ranges"), is("bytes"));
+	}
+
 	@Test
 	public void testHandleNonExistingFile() throws Exception {
 		withHandler();
@@ -121,6 +243,114 @@ public class DocrootHandlerTest {
 		assertThat(response, is(instanceOf(DirectoryListingResponse.class)));
 	}
 
+	@Test
+	public void testCachedFilesAreServedFromCache() throws Exception {
+		FileCache fileCache = withCachingHandler();
+		withMockGetIndexRequest();
+		File indexFile = getDocrootFile("/index.html");
+
+		requestHandler.handle(request);
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(CachedFileResponse.class)));
+		assertThat(response.status(), is(HttpStatus.OK_200));
+		assertThat(IOUtils.contentEquals(response.stream(), new FileInputStream(indexFile)), is(true));
+		assertThat(fileCache.hits(), is(1L));
+		assertThat(fileCache.misses(), is(1L));
+	}
+
+	@Test
+	public void testIndexFilesAreServedFromCache() throws Exception {
+		FileCache fileCache = withCachingHandler();
+		withMockGetDirectoryRequest();
+
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(CachedFileResponse.class)));
+		assertThat(fileCache.size(), is(1));
+	}
+
+	@Test
+	public void testCachedFilesSupportConditionalRequests() throws Exception {
+		withCachingHandler();
+		withMockGetIndexRequest();
+		String etag = requestHandler.handle(request).headers().value("ETag");
+
+		request.headers().add("If-None-Match", etag);
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(NotModifiedResponse.class)));
+	}
+
+	@Test
+	public void testRangeRequestsBypassCache() throws Exception {
+		FileCache fileCache = withCachingHandler();
+		withMockGetIndexRequest();
+
+		request.headers().add("Range", "bytes=0-5");
+		Response response = requestHandler.handle(request);
+
+		assertThat(response, is(instanceOf(PartialFileResponse.class)));
+		assertThat(fileCache.size(), is(0));
+	}
+
+	@Test
+	public void testPrecompressedFileIsServedWhenAccepted() throws Exception {
+		Path docroot = withPrecompressedDocroot();
+		try {
+			withMockGetIndexRequest();
+			request.headers().set("Accept-Encoding", "gzip", "br");
+
+			Response response = requestHandler.handle(request);
+
+			assertThat(response, is(instanceOf(PrecompressedFileResponse.class)));
+			assertThat(response.headers().value("Content-Encoding"), is("br"));
+			assertThat(response.headers().value("Content-type"), is("text/html"));
+			assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+			assertThat(IOUtils.toString(response.stream(), UTF_8), is("brotli"));
+		} finally {
+			deleteDocroot(docroot);
+		}
+	}
+
+	@Test
+	public void testOriginalFileIsServedWhenCodingsNotAccepted() throws Exception {
+		Path docroot = withPrecompressedDocroot();
+		try {
+			withMockGetIndexRequest();
+			request.headers().set("Accept-Encoding", "deflate");
+
+			Response response = requestHandler.handle(request);
+
+			assertThat(response.headers().contains("Content-Encoding"), is(false));
+			assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+			assertThat(IOUtils.toString(response.stream(), UTF_8), is("<html></html>"));
+		} finally {
+			deleteDocroot(docroot);
+		}
+	}
+
+	@Test
+	public void testCachedPrecompressedFileIsServedWhenAccepted() throws Exception {
+		FileCache fileCache = new FileCache(1024, 1024);
+		Path docroot = withPrecompressedDocroot(fileCache);
+		try {
+			withMockGetIndexRequest();
+			request.headers().set("Accept-Encoding", "gzip");
+
+			requestHandler.handle(request);
+			Response response = requestHandler.handle(request);
+
+			assertThat(response, is(instanceOf(CachedFileResponse.class)));
+			assertThat(response.headers().value("Content-Encoding"), is("gzip"));
+			assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+			assertThat(IOUtils.toString(response.stream(), UTF_8), is("gzip"));
+			assertThat(fileCache.hits(), is(1L));
+		} finally {
+			deleteDocroot(docroot);
+		}
+	}
+
 	@Test
 	public void testDirectoryWithoutIndexAndNoListingsReturns403Error() throws Exception {
 		withNoListingHandler();
@@ -137,6 +367,39 @@ public class DocrootHandlerTest {
 		requestHandler = new DocrootHandler(docroot, Collections.singletonList("index.html"), true);
 	}
 
+	private FileCache withCachingHandler() throws Exception {
+		FileCache fileCache = new FileCache(1024 * 1024, 1024 * 1024);
+		File docroot = new File(URLDecoder.decode(getClass().getResource("/docroot").getFile(), UTF_8.toString()));
+		requestHandler = new DocrootHandler(docroot, Collections.singletonList("index.html"), true, fileCache, null);
+		return fileCache;
+	}
+
+	private Path withPrecompressedDocroot() throws Exception {
+		return withPrecompressedDocroot(null);
+	}
+
+	/**
+	 * Creates a docroot containing an index file with brotli and gzip copies, each containing the name of its coding.
+	 */
+	private Path withPrecompressedDocroot(FileCache fileCache) throws Exception {
+		Path docroot = Files.createTempDirectory("docroot");
+		File index = Files.write(docroot.resolve("index.html"), "<html></html>".getBytes(UTF_8)).toFile();
+		Files.write(docroot.resolve("index.html.gz"), "gzip".getBytes(UTF_8));
+		Files.write(docroot.resolve("index.html.br"), "brotli".getBytes(UTF_8));
+		assertThat(index.setLastModified(index.lastModified() - 5000), is(true));
+
+		requestHandler = new DocrootHandler(docroot.toFile(), Collections.singletonList("index.html"), true, fileCache,
+											new PrecompressedFiles());
+		return docroot;
+	}
+
+	private void deleteDocroot(Path docroot) throws Exception {
+		for (String name : new String[]{"index.html", "index.html.gz", "index.html.br"}) {
+			Files.delete(docroot.resolve(name));
+		}
+		Files.delete(docroot);
+	}
+
 	private void withNoListingHandler() throws Exception {
 		String docroot = URLDecoder.decode(getClass().getResource("/docroot").getFile(), UTF_8.toString());
 		requestHandler = new DocrootHandler(docroot, Collections.singletonList("index.html"), false);
@@ -145,30 +408,35 @@ public class DocrootHandlerTest {
 	private void withMockGetIndexRequest() throws Exception {
 		request = mock(Request.class);
 		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.headers()).thenReturn(new HttpHeaders());
 		when(request.uri()).thenReturn(new URI("/index.html"));
 	}
 
 	private void withMockGetSlashlessDirectoryRequest() throws Exception {
 		request = mock(Request.class);
 		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.headers()).thenReturn(new HttpHeaders());
 		when(request.uri()).thenReturn(new URI("/dir"));
 	}
 
 	private void withMockGetNoIndexFileDirectoryRequest() throws Exception {
 		request = mock(Request.class);
 		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.headers()).thenReturn(new HttpHeaders());
 		when(request.uri()).thenReturn(new URI("/noindexdir/"));
 	}
 
 	private void withMockGetDirectoryRequest() throws Exception {
 		request = mock(Request.class);
 		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.headers()).thenReturn(new HttpHeaders());
 		when(request.uri()).thenReturn(new URI("/dir/"));
 	}
 
 	private void withMockGetNonExistingFileRequest() throws Exception {
 		request = mock(Request.class);
 		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.headers()).thenReturn(new HttpHeaders());
 		when(request.uri()).thenReturn(new URI("/missing.html"));
 	}
 
@@ -0,0 +1,68 @@
+package au.id.deejay.webserver.handler;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class MetricsHandlerTest {
+
+	private ServerMetrics metrics;
+	private MetricsHandler handler;
+	private Request request;
+
+	@Before
+	public void setUp() throws Exception {
+		metrics = new ServerMetrics();
+		handler = new MetricsHandler(metrics);
+		request = mock(Request.class);
+		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.uri()).thenReturn(new URI("/metrics"));
+		when(request.version()).thenReturn(HttpVersion.HTTP_1_1);
+	}
+
+	@Test
+	public void testHandle() throws Exception {
+		metrics.requestRead(123, 1000);
+
+		Response response = handler.handle(request);
+
+		assertThat(response.status(), is(HttpStatus.OK_200));
+		assertThat(response.headers().value("Content-type"), is(ServerMetrics.CONTENT_TYPE));
+		assertThat(IOUtils.toString(response.stream(), StandardCharsets.UTF_8), containsString("http_server_request_bytes_total 123\n"));
+	}
+
+	@Test
+	public void testCanHandle() throws Exception {
+		assertThat(handler.canHandle(request), is(true));
+
+		when(request.uri()).thenReturn(new URI("/metrics/other"));
+		assertThat(handler.canHandle(request), is(false));
+
+		when(request.uri()).thenReturn(new URI("/metrics"));
+		when(request.method()).thenReturn(HttpMethod.POST);
+		assertThat(handler.canHandle(request), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetrics() throws Exception {
+		new MetricsHandler(null);
+	}
+}
@@ -1,6 +1,8 @@
 package au.id.deejay.webserver.handler;
 
 import au.id.deejay.webserver.api.*;
+import au.id.deejay.webserver.response.ConcurrencyLimiter;
+import au.id.deejay.webserver.response.FileCache;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
@@ -37,6 +39,33 @@ public class ServerInfoHandlerTest {
 		assertThat(responseBody, containsString("8080"));
 		assertThat(responseBody, containsString("8"));
 		assertThat(responseBody, containsString("10s"));
+		assertThat(responseBody, containsString("Disabled"));
+	}
+
+	@Test
+	public void testHandleWithFileCache() throws Exception {
+		requestHandler = new ServerInfoHandler(8080, 10, 8, "/path/to/docroot", System.currentTimeMillis(), new FileCache(1024, 1024), null);
+		withMockServerInfoRequest();
+
+		Response response = requestHandler.handle(request);
+
+		String responseBody = IOUtils.toString(response.stream(), StandardCharsets.UTF_8);
+
+		assertThat(responseBody, containsString("0 files (0 bytes, of which 0 files (0 bytes) off-heap), 0 hits, 0 misses, 0 evictions"));
+	}
+
+	@Test
+	public void testHandleWithConcurrencyLimiter() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(50);
+		limiter.tryAcquire();
+		requestHandler = new ServerInfoHandler(8080, 10, 8, "/path/to/docroot", System.currentTimeMillis(), null, limiter);
+		withMockServerInfoRequest();
+
+		Response response = requestHandler.handle(request);
+
+		String responseBody = IOUtils.toString(response.stream(), StandardCharsets.UTF_8);
+
+		assertThat(responseBody, containsString("<th>Concurrency limit</th><td>20 (up to 50), 1 requests in flight</td>"));
 	}
 
 	@Test
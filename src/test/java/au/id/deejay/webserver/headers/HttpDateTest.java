@@ -0,0 +1,34 @@
+package au.id.deejay.webserver.headers;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class HttpDateTest {
+
+	private static final long EXAMPLE_TIME = 784111777000L;
+
+	@Test
+	public void testFormat() throws Exception {
+		assertThat(HttpDate.format(EXAMPLE_TIME), is("Sun, 06 Nov 1994 08:49:37 GMT"));
+
+		// Sub-second precision is dropped
+		assertThat(HttpDate.format(EXAMPLE_TIME + 999), is("Sun, 06 Nov 1994 08:49:37 GMT"));
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		assertThat(HttpDate.parse("Sun, 06 Nov 1994 08:49:37 GMT"), is(EXAMPLE_TIME));
+		assertThat(HttpDate.parse(" Sun, 6 Nov 1994 08:49:37 GMT "), is(EXAMPLE_TIME));
+	}
+
+	@Test
+	public void testParseInvalidDate() throws Exception {
+		assertThat(HttpDate.parse("not a date"), is(-1L));
+		assertThat(HttpDate.parse("Sunday, 06-Nov-94 08:49:37 GMT"), is(-1L));
+	}
+}
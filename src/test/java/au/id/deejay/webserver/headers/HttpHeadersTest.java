@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -202,6 +203,23 @@ public class HttpHeadersTest {
 		assertThat(headers.names(), hasItems("test", "other"));
 	}
 
+	@Test
+	public void testIterator() throws Exception {
+		withHeaders();
+
+		Iterator<Header> iterator = headers.iterator();
+		assertThat(iterator.next().toString(), is(equalTo("Test: value1,value2")));
+		assertThat(iterator.next().toString(), is(equalTo("Other: value")));
+		assertThat(iterator.hasNext(), is(false));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testIteratedHeadersAreUnmodifiable() throws Exception {
+		withHeaders();
+
+		headers.iterator().next().add("value3");
+	}
+
 	@Test
 	public void testToString() throws Exception {
 		withHeaders();
@@ -0,0 +1,46 @@
+package au.id.deejay.webserver.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class ByteBufferInputStreamTest {
+
+	@Test
+	public void testRead() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap("Hello world!".getBytes(UTF_8));
+		InputStream stream = new ByteBufferInputStream(buffer);
+
+		assertThat(stream.available(), is(12));
+		assertThat(stream.read(), is((int) 'H'));
+		assertThat(stream.skip(5), is(5L));
+		assertThat(IOUtils.toString(stream, UTF_8), is("world!"));
+		assertThat(stream.read(), is(-1));
+		assertThat(stream.read(new byte[4], 0, 4), is(-1));
+		assertThat(buffer.hasRemaining(), is(false));
+	}
+
+	@Test
+	public void testReadsHighBytesAsPositive() throws Exception {
+		InputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[]{(byte) 0xFF}));
+
+		assertThat(stream.read(), is(255));
+	}
+
+	@Test
+	public void testReadsDirectBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(5);
+		buffer.put("Hello".getBytes(UTF_8)).flip();
+
+		assertThat(IOUtils.toString(new ByteBufferInputStream(buffer), UTF_8), is("Hello"));
+	}
+}
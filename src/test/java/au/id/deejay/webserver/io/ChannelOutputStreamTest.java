@@ -0,0 +1,187 @@
+package au.id.deejay.webserver.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class ChannelOutputStreamTest {
+
+	private ByteArrayOutputStream collector;
+	private ChannelOutputStream outputStream;
+
+	@Test
+	public void testWritesAreBufferedUntilFlush() throws Exception {
+		withCollectingStream();
+
+		outputStream.write('H');
+		outputStream.write("ello".getBytes(UTF_8));
+		assertThat(collector.size(), is(0));
+
+		outputStream.flush();
+		assertThat(collector.toString(UTF_8.name()), is(equalTo("Hello")));
+	}
+
+	@Test
+	public void testLargeWritesPreserveOrdering() throws Exception {
+		withCollectingStream();
+
+		byte[] large = new byte[20000];
+		outputStream.write("head".getBytes(UTF_8));
+		outputStream.write(large);
+		outputStream.write(ByteBuffer.wrap("tail".getBytes(UTF_8)));
+		outputStream.close();
+
+		byte[] written = collector.toByteArray();
+		assertThat(written.length, is(20008));
+		assertThat(new String(written, 0, 4, UTF_8), is(equalTo("head")));
+		assertThat(new String(written, 20004, 4, UTF_8), is(equalTo("tail")));
+	}
+
+	@Test
+	public void testBufferedDataIsGatheredWithBuffer() throws Exception {
+		GatheringCollector channel = new GatheringCollector();
+		outputStream = new ChannelOutputStream(channel, 1000);
+
+		outputStream.write("head ".getBytes(UTF_8));
+		outputStream.write(ByteBuffer.wrap("body".getBytes(UTF_8)));
+
+		assertThat(channel.writes, is(1));
+		assertThat(channel.collector.toString(UTF_8.name()), is(equalTo("head body")));
+
+		// The buffer is reused once the gathering write is complete
+		outputStream.write("more".getBytes(UTF_8));
+		outputStream.flush();
+		assertThat(channel.collector.toString(UTF_8.name()), is(equalTo("head bodymore")));
+	}
+
+	@Test
+	public void testBufferedDataIsWrittenWithEmptyBuffer() throws Exception {
+		GatheringCollector channel = new GatheringCollector();
+		outputStream = new ChannelOutputStream(channel, 1000);
+
+		outputStream.write("head".getBytes(UTF_8));
+		outputStream.write(ByteBuffer.allocate(0));
+
+		assertThat(channel.collector.toString(UTF_8.name()), is(equalTo("head")));
+	}
+
+	@Test
+	public void testTransferFrom() throws Exception {
+		withCollectingStream();
+
+		Path file = withFile("Hello world!");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			outputStream.write("> ".getBytes(UTF_8));
+			outputStream.transferFrom(channel, 6, 5);
+		} finally {
+			Files.delete(file);
+		}
+
+		assertThat(collector.toString(UTF_8.name()), is(equalTo("> world")));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testTransferPastEndOfFileThrowsException() throws Exception {
+		withCollectingStream();
+
+		Path file = withFile("Hello");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			outputStream.transferFrom(channel, 0, 10);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void testUnwritableChannelTimesOut() throws Exception {
+		try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+			 SocketChannel client = SocketChannel.open(server.getLocalAddress());
+			 SocketChannel accepted = server.accept()) {
+
+			client.configureBlocking(false);
+
+			// Nothing reads from the accepted end, so the client's buffers will eventually fill up
+			try (ChannelOutputStream channelStream = new ChannelOutputStream(client, 100)) {
+				byte[] chunk = new byte[65536];
+				while (accepted.isOpen()) {
+					channelStream.write(chunk);
+				}
+			}
+		}
+	}
+
+	private void withCollectingStream() {
+		collector = new ByteArrayOutputStream();
+		outputStream = new ChannelOutputStream(Channels.newChannel(collector), 1000);
+	}
+
+	/**
+	 * A gathering channel which collects everything written to it and counts the gathering writes, accepting at most a
+	 * few bytes from each buffer at a time to simulate a busy socket.
+	 */
+	private static class GatheringCollector implements GatheringByteChannel {
+
+		private final ByteArrayOutputStream collector = new ByteArrayOutputStream();
+		private int writes;
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			writes++;
+			long written = 0;
+			for (int i = offset; i < offset + length; i++) {
+				written += write(srcs[i]);
+			}
+			return written;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int count = src.remaining();
+			while (src.hasRemaining()) {
+				collector.write(src.get());
+			}
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			// Nothing to release
+		}
+	}
+
+	private Path withFile(String content) throws Exception {
+		Path file = Files.createTempFile("channel-output-stream", ".txt");
+		Files.write(file, content.getBytes(UTF_8));
+		return file;
+	}
+}
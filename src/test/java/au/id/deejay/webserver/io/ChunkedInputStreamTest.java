@@ -0,0 +1,85 @@
+package au.id.deejay.webserver.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class ChunkedInputStreamTest {
+
+	@Test
+	public void testDecodesChunks() throws Exception {
+		InputStream source = source("5" + CRLF + "Hello" + CRLF
+											+ "7;ext=1" + CRLF + " world!" + CRLF
+											+ "0" + CRLF + CRLF
+											+ "next");
+		InputStream body = new ChunkedInputStream(source);
+
+		assertThat(IOUtils.toString(body, UTF_8), is("Hello world!"));
+		assertThat(body.read(), is(-1));
+		assertThat(IOUtils.toString(source, UTF_8), is("next"));
+	}
+
+	@Test
+	public void testSingleByteReads() throws Exception {
+		InputStream body = new ChunkedInputStream(source("2\nab\n1\nc\n0\n\n"));
+
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		int b;
+		while ((b = body.read()) >= 0) {
+			decoded.write(b);
+		}
+		assertThat(decoded.toString(UTF_8.name()), is("abc"));
+	}
+
+	@Test
+	public void testRoundTripWithChunkedOutputStream() throws Exception {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		try (ChunkedOutputStream chunked = new ChunkedOutputStream(encoded)) {
+			chunked.write("The quick brown fox ".getBytes(UTF_8));
+			chunked.write("jumps over the lazy dog".getBytes(UTF_8));
+		}
+
+		InputStream body = new ChunkedInputStream(new ByteArrayInputStream(encoded.toByteArray()));
+		assertThat(IOUtils.toString(body, UTF_8), is("The quick brown fox jumps over the lazy dog"));
+	}
+
+	@Test
+	public void testTrailersAreDiscarded() throws Exception {
+		InputStream source = source("1" + CRLF + "a" + CRLF + "0" + CRLF + "Expires: never" + CRLF + "X-Other: 1" + CRLF + CRLF + "next");
+
+		assertThat(IOUtils.toString(new ChunkedInputStream(source), UTF_8), is("a"));
+		assertThat(IOUtils.toString(source, UTF_8), is("next"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidChunkSizeThrowsException() throws Exception {
+		IOUtils.toString(new ChunkedInputStream(source("zz" + CRLF + "a" + CRLF)), UTF_8);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingLineBreakAfterChunkThrowsException() throws Exception {
+		IOUtils.toString(new ChunkedInputStream(source("1" + CRLF + "abc" + CRLF + "0" + CRLF + CRLF)), UTF_8);
+	}
+
+	@Test(expected = EOFException.class)
+	public void testEndOfSourceWithinChunkThrowsException() throws Exception {
+		IOUtils.toString(new ChunkedInputStream(source("10" + CRLF + "short")), UTF_8);
+	}
+
+	private static InputStream source(String data) {
+		return new ByteArrayInputStream(data.getBytes(UTF_8));
+	}
+}
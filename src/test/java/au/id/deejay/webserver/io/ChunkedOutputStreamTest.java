@@ -0,0 +1,68 @@
+package au.id.deejay.webserver.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author David Jessup
+ */
+public class ChunkedOutputStreamTest {
+
+	private ByteArrayOutputStream collector;
+	private ChunkedOutputStream chunked;
+
+	@Before
+	public void setUp() throws Exception {
+		collector = new ByteArrayOutputStream();
+		chunked = new ChunkedOutputStream(collector);
+	}
+
+	@Test
+	public void testEachWriteIsAChunk() throws Exception {
+		chunked.write("Hello".getBytes(UTF_8));
+		chunked.write(" ".getBytes(UTF_8)[0]);
+		chunked.write(new byte[0]);
+		chunked.write("0123456789abcdefg".getBytes(UTF_8));
+		chunked.close();
+
+		assertThat(collector.toString(UTF_8.name()), is("5" + CRLF + "Hello" + CRLF
+																+ "1" + CRLF + " " + CRLF
+																+ "11" + CRLF + "0123456789abcdefg" + CRLF
+																+ "0" + CRLF + CRLF));
+	}
+
+	@Test
+	public void testFinishIsOnlyWrittenOnce() throws Exception {
+		chunked.finish();
+		chunked.close();
+
+		assertThat(collector.toString(UTF_8.name()), is("0" + CRLF + CRLF));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterFinishThrowsException() throws Exception {
+		chunked.finish();
+		chunked.write(1);
+	}
+
+	@Test
+	public void testCloseDoesNotCloseUnderlyingStream() throws Exception {
+		ByteArrayOutputStream underlying = mock(ByteArrayOutputStream.class);
+
+		new ChunkedOutputStream(underlying).close();
+
+		verify(underlying).flush();
+		verify(underlying, never()).close();
+	}
+}
@@ -0,0 +1,82 @@
+package au.id.deejay.webserver.io;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class DateHeaderTest {
+
+	@Test
+	public void testField() throws Exception {
+		DateHeader dateHeader = new DateHeader(Clock.fixed(Instant.parse("1994-11-06T08:49:37.500Z"), ZoneOffset.UTC));
+
+		assertThat(new String(dateHeader.field(), US_ASCII), is("Date: Sun, 06 Nov 1994 08:49:37 GMT\r\n"));
+	}
+
+	@Test
+	public void testFieldIsFormattedOncePerSecond() throws Exception {
+		SteppingClock clock = new SteppingClock(Instant.parse("1994-11-06T08:49:37.000Z").toEpochMilli());
+		DateHeader dateHeader = new DateHeader(clock);
+
+		byte[] first = dateHeader.field();
+		clock.millis += 999;
+		assertThat(dateHeader.field(), is(sameInstance(first)));
+
+		clock.millis += 1;
+		byte[] next = dateHeader.field();
+		assertThat(next, is(not(sameInstance(first))));
+		assertThat(new String(next, US_ASCII), is("Date: Sun, 06 Nov 1994 08:49:38 GMT\r\n"));
+	}
+
+	@Test
+	public void testSharedInstanceUsesCurrentTime() throws Exception {
+		String field = new String(DateHeader.shared().field(), US_ASCII);
+
+		assertThat(field.startsWith("Date: "), is(true));
+		assertThat(field.endsWith(" GMT\r\n"), is(true));
+	}
+
+	/**
+	 * A clock which only moves when told to.
+	 */
+	private static class SteppingClock extends Clock {
+
+		private long millis;
+
+		SteppingClock(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.HttpHeader;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class EncodedFieldsTest {
+
+	@Test
+	public void testStatusLines() throws Exception {
+		assertThat(string(EncodedFields.statusLine(HttpVersion.HTTP_1_1, HttpStatus.OK_200)), is("HTTP/1.1 200 OK\r\n"));
+		assertThat(string(EncodedFields.statusLine(HttpVersion.HTTP_1_0, HttpStatus.NOT_FOUND_404)), is("HTTP/1.0 404 Not Found\r\n"));
+		assertThat(EncodedFields.statusLine(HttpVersion.HTTP_1_1, HttpStatus.OK_200),
+				   is(sameInstance(EncodedFields.statusLine(HttpVersion.HTTP_1_1, HttpStatus.OK_200))));
+	}
+
+	@Test
+	public void testCommonFieldsArePreEncoded() throws Exception {
+		byte[] field = EncodedFields.field(new HttpHeader("Content-type", "text/html"));
+
+		assertThat(string(field), is("Content-type: text/html\r\n"));
+		assertThat(EncodedFields.field(new HttpHeader("Content-type", "text/html")), is(sameInstance(field)));
+	}
+
+	@Test
+	public void testOtherFieldsAreEncoded() throws Exception {
+		assertThat(string(EncodedFields.field(new HttpHeader("Content-length", "1234"))), is("Content-length: 1234\r\n"));
+		assertThat(string(EncodedFields.field(new HttpHeader("Vary", "Accept-Encoding", "Cookie"))), is("Vary: Accept-Encoding,Cookie\r\n"));
+		assertThat(string(EncodedFields.field(new HttpHeader("CONTENT-TYPE", "text/html"))), is("CONTENT-TYPE: text/html\r\n"));
+
+		byte[] uncommon = EncodedFields.field(new HttpHeader("Content-type", "text/x-unusual"));
+		assertThat(uncommon, is(not(sameInstance(EncodedFields.field(new HttpHeader("Content-type", "text/x-unusual"))))));
+	}
+
+	private static String string(byte[] bytes) {
+		return new String(bytes, UTF_8);
+	}
+}
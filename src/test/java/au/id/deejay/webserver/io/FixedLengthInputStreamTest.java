@@ -0,0 +1,47 @@
+package au.id.deejay.webserver.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author David Jessup
+ */
+public class FixedLengthInputStreamTest {
+
+	@Test
+	public void testReadsOnlyTheDeclaredLength() throws Exception {
+		InputStream source = new ByteArrayInputStream("Hello world!".getBytes(UTF_8));
+		InputStream body = new FixedLengthInputStream(source, 5);
+
+		assertThat(body.read(), is((int) 'H'));
+		assertThat(IOUtils.toString(body, UTF_8), is("ello"));
+		assertThat(body.read(), is(-1));
+		assertThat(body.available(), is(0));
+		assertThat(IOUtils.toString(source, UTF_8), is(" world!"));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testEndOfSourceWithinBodyThrowsException() throws Exception {
+		IOUtils.toString(new FixedLengthInputStream(new ByteArrayInputStream("short".getBytes(UTF_8)), 10), UTF_8);
+	}
+
+	@Test
+	public void testCloseDoesNotCloseSource() throws Exception {
+		InputStream source = mock(InputStream.class);
+
+		new FixedLengthInputStream(source, 10).close();
+
+		verify(source, never()).close();
+	}
+}
@@ -0,0 +1,65 @@
+package au.id.deejay.webserver.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author David Jessup
+ */
+public class GzipCompressingInputStreamTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		for (int i = 0; i < data.length; i += 2) {
+			// Make half of the data compressible
+			data[i] = 'a';
+		}
+
+		byte[] compressed = IOUtils.toByteArray(new GzipCompressingInputStream(new ByteArrayInputStream(data), 6));
+
+		assertThat(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))), is(data));
+	}
+
+	@Test
+	public void testSingleByteReads() throws Exception {
+		InputStream gzip = new GzipCompressingInputStream(new ByteArrayInputStream("Hello world!".getBytes("UTF-8")), 1);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		int b;
+		while ((b = gzip.read()) >= 0) {
+			compressed.write(b);
+		}
+
+		InputStream decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+		assertThat(IOUtils.toString(decompressed, "UTF-8"), is("Hello world!"));
+	}
+
+	@Test
+	public void testEmptySource() throws Exception {
+		byte[] compressed = IOUtils.toByteArray(new GzipCompressingInputStream(new ByteArrayInputStream(new byte[0]), 6));
+
+		assertThat(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))).length, is(0));
+	}
+
+	@Test
+	public void testCloseClosesSource() throws Exception {
+		InputStream source = spy(new ByteArrayInputStream(new byte[0]));
+
+		new GzipCompressingInputStream(source, 6).close();
+
+		verify(source).close();
+	}
+}
@@ -0,0 +1,109 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.headers.HttpHeader;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class ParsedHeadersTest {
+
+	private ParsedHeaders headers;
+
+	@Test
+	public void testLookups() throws Exception {
+		withHeaders("Host: localhost", "Accept:text/html ,\t*/*", "X-Empty:");
+
+		assertThat(headers.contains("host"), is(true));
+		assertThat(headers.contains("Missing"), is(false));
+		assertThat(headers.value("HOST"), is(equalTo("localhost")));
+		assertThat(headers.values("accept"), is(equalTo(Arrays.asList("text/html", "*/*"))));
+		assertThat(headers.value("X-Empty"), is(equalTo("")));
+		assertThat(headers.value("Missing"), is(nullValue()));
+		assertThat(headers.values("Missing"), is(nullValue()));
+	}
+
+	@Test
+	public void testRepeatedHeadersAreCombined() throws Exception {
+		withHeaders("Cache-Control: no-cache", "cache-control: no-store");
+
+		assertThat(headers.values("Cache-Control"), is(equalTo(Arrays.asList("no-cache", "no-store"))));
+		assertThat(headers.size(), is(1));
+	}
+
+	@Test
+	public void testDecodedHeaders() throws Exception {
+		withHeaders("Host: localhost", "Accept: text/html, */*");
+
+		HttpHeaders expected = new HttpHeaders(new HttpHeader("Host", "localhost"), new HttpHeader("Accept", "text/html", "*/*"));
+
+		assertThat(headers.size(), is(2));
+		assertThat(headers.header("accept").values(), is(equalTo(Arrays.asList("text/html", "*/*"))));
+		assertThat(headers.names(), is(equalTo(expected.names())));
+		assertThat(headers.equals(expected), is(true));
+		assertThat(headers.toString(), is(equalTo("Host: localhost" + CRLF + "Accept: text/html,*/*" + CRLF)));
+	}
+
+	@Test
+	public void testContentLength() throws Exception {
+		withHeaders("Content-Length: 1234");
+		assertThat(headers.contentLength(), is(1234L));
+
+		withHeaders("Host: localhost");
+		assertThat(headers.contentLength(), is(-1L));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testAddThrowsException() throws Exception {
+		withHeaders("Host: localhost");
+		headers.add("Accept", "text/html");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSetThrowsException() throws Exception {
+		withHeaders("Host: localhost");
+		headers.set("Host", "example.com");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRemoveThrowsException() throws Exception {
+		withHeaders("Host: localhost");
+		headers.remove("Host");
+	}
+
+	/**
+	 * Builds headers the same way the parser does, by locating each name and value within the raw head.
+	 */
+	private void withHeaders(String... lines) {
+		StringBuilder head = new StringBuilder();
+		int[] slices = new int[lines.length * 4];
+
+		for (int i = 0; i < lines.length; i++) {
+			int start = head.length();
+			int colon = lines[i].indexOf(':');
+			int valueStart = colon + 1;
+			while (valueStart < lines[i].length() && lines[i].charAt(valueStart) == ' ') {
+				valueStart++;
+			}
+
+			slices[i * 4] = start;
+			slices[i * 4 + 1] = start + colon;
+			slices[i * 4 + 2] = start + valueStart;
+			slices[i * 4 + 3] = start + lines[i].length();
+
+			head.append(lines[i]).append(CRLF);
+		}
+
+		headers = new ParsedHeaders(head.toString().getBytes(UTF_8), slices);
+	}
+}
@@ -0,0 +1,248 @@
+package au.id.deejay.webserver.io;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.exception.RequestException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class RequestParserTest {
+
+	private RequestParser parser;
+	private ByteBuffer buffer;
+
+	@Before
+	public void setUp() throws Exception {
+		parser = new RequestParser();
+		buffer = ByteBuffer.allocate(1024);
+		buffer.flip();
+	}
+
+	@Test
+	public void testParseCompleteHead() throws Exception {
+		withData("GET /index.html?q=1 HTTP/1.1" + CRLF + "Host: localhost" + CRLF + "Accept: text/html, */*" + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.complete(), is(true));
+		assertThat(buffer.hasRemaining(), is(false));
+
+		Request request = parser.request(new byte[0]);
+
+		assertThat(request.method(), is(HttpMethod.GET));
+		assertThat(request.uri(), is(equalTo(new URI("/index.html?q=1"))));
+		assertThat(request.version(), is(HttpVersion.HTTP_1_1));
+		assertThat(request.headers().value("host"), is(equalTo("localhost")));
+		assertThat(request.headers().values("ACCEPT"), is(equalTo(Arrays.asList("text/html", "*/*"))));
+		assertThat(parser.complete(), is(false));
+	}
+
+	@Test
+	public void testParseHeadSplitAcrossReads() throws Exception {
+		String head = "POST /form HTTP/1.0\r\nContent-length: 4\r\nConnection: keep-alive\r\n\r\n";
+
+		// Feed the parser one byte at a time
+		for (int i = 0; i < head.length() - 1; i++) {
+			withData(head.substring(i, i + 1));
+			assertThat(parser.parse(buffer), is(false));
+		}
+		withData(head.substring(head.length() - 1) + "body");
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.contentLength(), is(4L));
+		assertThat(parser.hasTransferEncoding(), is(false));
+		assertThat(buffer.remaining(), is(4));
+
+		Request request = parser.request("body".getBytes(UTF_8));
+
+		assertThat(request.method(), is(HttpMethod.POST));
+		assertThat(request.version(), is(HttpVersion.HTTP_1_0));
+		assertThat(request.headers().value("Connection"), is(equalTo("keep-alive")));
+	}
+
+	@Test
+	public void testChunkedRequestWithStreamedBody() throws Exception {
+		withData("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.hasTransferEncoding(), is(true));
+		assertThat(parser.isChunked(), is(true));
+
+		InputStream body = new ByteArrayInputStream(new byte[0]);
+		assertThat(parser.request(body).stream(), is(sameInstance(body)));
+		assertThat(parser.complete(), is(false));
+
+		withData("POST /upload HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n");
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.isChunked(), is(false));
+	}
+
+	@Test
+	public void testParsePipelinedRequests() throws Exception {
+		withData("GET /one HTTP/1.1\n\nGET /two HTTP/1.1\n\n");
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.request(new byte[0]).uri(), is(equalTo(new URI("/one"))));
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.request(new byte[0]).uri(), is(equalTo(new URI("/two"))));
+
+		assertThat(parser.parse(buffer), is(false));
+	}
+
+	@Test
+	public void testHeadSizeAndParseTime() throws Exception {
+		String head = "GET /index.html HTTP/1.1" + CRLF + "Host: localhost" + CRLF + CRLF;
+		withData(head.substring(0, 10));
+		assertThat(parser.parse(buffer), is(false));
+
+		withData(head.substring(10));
+		assertThat(parser.parse(buffer), is(true));
+
+		assertThat(parser.headSize(), is(head.length()));
+		assertThat(parser.parseNanos() > 0, is(true));
+	}
+
+	@Test
+	public void testLeadingEmptyLinesAreIgnored() throws Exception {
+		withData(CRLF + CRLF + "GET / HTTP/1.1" + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.request(new byte[0]).uri(), is(equalTo(new URI("/"))));
+	}
+
+	@Test
+	public void testRepeatedSpacesInRequestLine() throws Exception {
+		withData("GET   /   HTTP/1.1  " + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+
+		Request request = parser.request(new byte[0]);
+		assertThat(request.uri(), is(equalTo(new URI("/"))));
+		assertThat(request.version(), is(HttpVersion.HTTP_1_1));
+	}
+
+	@Test
+	public void testOtherHttpVersion() throws Exception {
+		withData("GET / HTTP/2.0" + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.request(new byte[0]).version(), is(equalTo(new HttpVersion(2, 0))));
+	}
+
+	@Test
+	public void testMissingContentLength() throws Exception {
+		withData("GET / HTTP/1.1" + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.contentLength(), is(-1L));
+	}
+
+	@Test(expected = RequestException.class)
+	public void testInvalidContentLengthThrowsException() throws Exception {
+		withData("POST / HTTP/1.1" + CRLF + "Content-length: -5" + CRLF + CRLF);
+
+		parser.parse(buffer);
+		parser.contentLength();
+	}
+
+	@Test
+	public void testRepeatedContentLengthWithSameValue() throws Exception {
+		withData("POST / HTTP/1.1" + CRLF + "Content-length: 5" + CRLF + "Content-length: 5" + CRLF + CRLF);
+
+		assertThat(parser.parse(buffer), is(true));
+		assertThat(parser.contentLength(), is(5L));
+	}
+
+	@Test(expected = RequestException.class)
+	public void testConflictingContentLengthsThrowsException() throws Exception {
+		withData("POST / HTTP/1.1" + CRLF + "Content-length: 5" + CRLF + "Content-length: 50" + CRLF + CRLF);
+
+		parser.parse(buffer);
+		parser.contentLength();
+	}
+
+	@Test(expected = RequestException.class)
+	public void testTransferEncodingWithContentLengthThrowsException() throws Exception {
+		withData("POST / HTTP/1.1" + CRLF + "Transfer-Encoding: chunked" + CRLF + "Content-length: 5" + CRLF + CRLF);
+
+		parser.parse(buffer);
+		parser.hasTransferEncoding();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequestBeforeCompleteThrowsException() throws Exception {
+		withData("GET / HTTP/1.1" + CRLF);
+
+		parser.parse(buffer);
+		parser.request(new byte[0]);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testInvalidRequestLineThrowsException() throws Exception {
+		withData("GET /index.html" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testUnknownMethodThrowsException() throws Exception {
+		withData("FETCH / HTTP/1.1" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testInvalidVersionThrowsException() throws Exception {
+		withData("GET / HTTQ/1.1" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testInvalidUriThrowsException() throws Exception {
+		withData("GET /bad|uri HTTP/1.1" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testMalformedHeaderThrowsException() throws Exception {
+		withData("GET / HTTP/1.1" + CRLF + "Bad-Header" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testFoldedHeaderThrowsException() throws Exception {
+		withData("GET / HTTP/1.1" + CRLF + "Accept: text/html," + CRLF + " text/plain" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	@Test(expected = RequestException.class)
+	public void testOversizedHeadThrowsException() throws Exception {
+		parser = new RequestParser(32);
+		withData("GET / HTTP/1.1" + CRLF + "Host: a-rather-long-host-name" + CRLF + CRLF);
+		parser.parse(buffer);
+	}
+
+	/**
+	 * Appends data to the buffer, leaving it ready for reading.
+	 */
+	private void withData(String data) {
+		buffer.compact();
+		buffer.put(data.getBytes(UTF_8));
+		buffer.flip();
+	}
+}
@@ -8,7 +8,9 @@ import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -67,6 +69,16 @@ public class RequestReaderTest {
 		assertThat(request.version(), is(HttpVersion.HTTP_1_1));
 	}
 
+	@Test
+	public void testRequestSize() throws Exception {
+		String head = "POST /form HTTP/1.1" + CRLF + "Content-length: 11" + CRLF + CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream((head + "Entity-body").getBytes(UTF_8)));
+		requestReader.readRequest();
+
+		assertThat(requestReader.requestSize(), is(head.length() + 11L));
+	}
+
 	@Test
 	public void testReadValidRequestWithEntityBody() throws Exception {
 		String rawRequest = "POST /index.html HTTP/1.1" + CRLF
@@ -100,6 +112,198 @@ public class RequestReaderTest {
 		Request request = requestReader.readRequest();
 	}
 
+	@Test
+	public void testReadPipelinedRequests() throws Exception {
+		String rawRequests = "POST /one HTTP/1.1" + CRLF
+				+ "Content-length: 3" + CRLF
+				+ CRLF
+				+ "abc"
+				+ "GET /two HTTP/1.1" + CRLF
+				+ CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequests.getBytes(UTF_8)));
+
+		Request first = requestReader.readRequest();
+		assertThat(first.uri(), is(equalTo(new URI("/one"))));
+		assertThat(IOUtils.toString(first.stream(), UTF_8), is(equalTo("abc")));
+
+		Request second = requestReader.readRequest();
+		assertThat(second.uri(), is(equalTo(new URI("/two"))));
+		assertThat(second.stream().read(), is(-1));
+	}
+
+	@Test
+	public void testHasBufferedRequest() throws Exception {
+		String rawRequests = "POST /one HTTP/1.1" + CRLF
+				+ "Content-length: 3" + CRLF
+				+ CRLF
+				+ "abc"
+				+ "GET /two HTTP/1.1" + CRLF
+				+ CRLF
+				+ "GET /thr";
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequests.getBytes(UTF_8)));
+		assertThat(requestReader.hasBufferedRequest(), is(false));
+
+		requestReader.readRequest();
+		// The body of the first request hasn't been read yet
+		assertThat(requestReader.hasBufferedRequest(), is(false));
+
+		requestReader.drain();
+		assertThat(requestReader.hasBufferedRequest(), is(true));
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/two"))));
+
+		// Only part of the third request has been read
+		assertThat(requestReader.hasBufferedRequest(), is(false));
+	}
+
+	@Test
+	public void testUnreadBodyIsSkippedBeforeNextRequest() throws Exception {
+		String rawRequests = "POST /one HTTP/1.1" + CRLF
+				+ "Content-length: 3" + CRLF
+				+ CRLF
+				+ "abc"
+				+ "POST /two HTTP/1.1" + CRLF
+				+ "Transfer-Encoding: chunked" + CRLF
+				+ CRLF
+				+ "3" + CRLF + "def" + CRLF + "0" + CRLF + CRLF
+				+ "GET /three HTTP/1.1" + CRLF
+				+ CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequests.getBytes(UTF_8)));
+
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/one"))));
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/two"))));
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/three"))));
+	}
+
+	@Test
+	public void testReadChunkedBody() throws Exception {
+		String rawRequests = "POST /upload HTTP/1.1" + CRLF
+				+ "Transfer-Encoding: chunked" + CRLF
+				+ CRLF
+				+ "6;name=value" + CRLF + "Hello " + CRLF
+				+ "6" + CRLF + "world!" + CRLF
+				+ "0" + CRLF
+				+ "Trailer: value" + CRLF
+				+ CRLF
+				+ "GET /next HTTP/1.1" + CRLF
+				+ CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequests.getBytes(UTF_8)));
+
+		assertThat(IOUtils.toString(requestReader.readRequest().stream(), UTF_8), is(equalTo("Hello world!")));
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/next"))));
+	}
+
+	@Test
+	public void testLargeBodyIsStreamed() throws Exception {
+		byte[] body = new byte[3 * 1024 * 1024];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (byte) i;
+		}
+		byte[] head = ("POST /upload HTTP/1.1" + CRLF + "Content-length: " + body.length + CRLF + CRLF).getBytes(UTF_8);
+		byte[] rawRequest = new byte[head.length + body.length];
+		System.arraycopy(head, 0, rawRequest, 0, head.length);
+		System.arraycopy(body, 0, rawRequest, head.length, body.length);
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequest));
+
+		assertThat(IOUtils.toByteArray(requestReader.readRequest().stream()), is(body));
+	}
+
+	@Test
+	public void testDrain() throws Exception {
+		String rawRequests = "POST /one HTTP/1.1" + CRLF
+				+ "Content-length: 3" + CRLF
+				+ CRLF
+				+ "abc"
+				+ "GET /two HTTP/1.1" + CRLF
+				+ CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequests.getBytes(UTF_8)));
+		requestReader.readRequest();
+
+		assertThat(requestReader.drain(), is(true));
+		assertThat(requestReader.readRequest().uri(), is(equalTo(new URI("/two"))));
+		assertThat(requestReader.drain(), is(true));
+	}
+
+	@Test
+	public void testDrainGivesUpOnLargeBodies() throws Exception {
+		String rawRequest = "POST /upload HTTP/1.1" + CRLF
+				+ "Content-length: " + (RequestReader.MAX_DRAIN_SIZE * 2) + CRLF
+				+ CRLF;
+		InputStream inputStream = new SequenceInputStream(new ByteArrayInputStream(rawRequest.getBytes(UTF_8)),
+																  new ByteArrayInputStream(new byte[(int) RequestReader.MAX_DRAIN_SIZE * 2]));
+
+		requestReader = new RequestReader(inputStream);
+		requestReader.readRequest();
+
+		assertThat(requestReader.drain(), is(false));
+	}
+
+	@Test(expected = RequestException.class)
+	public void testUnsupportedTransferEncodingThrowsException() throws Exception {
+		String rawRequest = "POST /index.html HTTP/1.1" + CRLF
+				+ "Transfer-Encoding: gzip, chunked" + CRLF
+				+ CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequest.getBytes(UTF_8)));
+		requestReader.readRequest();
+	}
+
+	@Test
+	public void testReadRequestSplitAcrossReads() throws Exception {
+		String rawRequest = "POST /index.html HTTP/1.1" + CRLF
+				+ "Content-length: 11" + CRLF
+				+ CRLF
+				+ "Entity-body";
+
+		// Deliver the request one byte per read
+		InputStream inputStream = new ByteArrayInputStream(rawRequest.getBytes(UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+
+		requestReader = new RequestReader(inputStream);
+
+		Request request = requestReader.readRequest();
+
+		assertThat(request.headers().value("Content-length"), is(equalTo("11")));
+		assertThat(IOUtils.toString(request.stream(), UTF_8), is(equalTo("Entity-body")));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testEndOfStreamBetweenRequestsThrowsEOFException() throws Exception {
+		String rawRequest = "GET /index.html HTTP/1.1" + CRLF + CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequest.getBytes(UTF_8)));
+		requestReader.readRequest();
+		requestReader.readRequest();
+	}
+
+	@Test(expected = RequestException.class)
+	public void testEndOfStreamWithinRequestThrowsException() throws Exception {
+		String rawRequest = "GET /index.html HTTP/1.1" + CRLF;
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequest.getBytes(UTF_8)));
+		requestReader.readRequest();
+	}
+
+	@Test(expected = EOFException.class)
+	public void testEndOfStreamWithinBodyThrowsException() throws Exception {
+		String rawRequest = "POST /index.html HTTP/1.1" + CRLF
+				+ "Content-length: 100" + CRLF
+				+ CRLF
+				+ "Entity-body";
+
+		requestReader = new RequestReader(new ByteArrayInputStream(rawRequest.getBytes(UTF_8)));
+		IOUtils.toString(requestReader.readRequest().stream(), UTF_8);
+	}
+
 	@Test(expected = SocketTimeoutException.class)
 	public void testSocketTimeoutsArePropagated() throws Exception {
 		InputStream inputStream = mock(InputStream.class);
@@ -1,6 +1,9 @@
 package au.id.deejay.webserver.io;
 
 import au.id.deejay.webserver.StringCollectorOutputStream;
+import au.id.deejay.webserver.api.BufferResponse;
+import au.id.deejay.webserver.api.EncodedResponse;
+import au.id.deejay.webserver.api.FileRegionResponse;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
 import au.id.deejay.webserver.api.Response;
@@ -8,18 +11,33 @@ import au.id.deejay.webserver.exception.ResponseException;
 import au.id.deejay.webserver.headers.HttpHeader;
 import au.id.deejay.webserver.headers.HttpHeaders;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 
 import static au.id.deejay.webserver.MessageConstants.CRLF;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -27,6 +45,9 @@ import static org.mockito.Mockito.*;
  */
 public class ResponseWriterTest {
 
+	private static final DateHeader FIXED_DATE = new DateHeader(Clock.fixed(Instant.parse("1994-11-06T08:49:37Z"), ZoneOffset.UTC));
+	private static final String DATE_FIELD = "Date: Sun, 06 Nov 1994 08:49:37 GMT" + CRLF;
+
 	private Response response;
 
 	@Test
@@ -34,23 +55,281 @@ public class ResponseWriterTest {
 		withMockResponse();
 
 		OutputStream outputStream = new StringCollectorOutputStream();
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = writer(outputStream);
 
 		responseWriter.writeResponse(response);
 
 		String expectedOutput = "HTTP/1.1 200 OK" + CRLF
 				+ "Content-type: text/plain" + CRLF
+				+ "Content-length: 12" + CRLF
+				+ DATE_FIELD
 				+ CRLF
 				+ "Hello world!";
 		
 		assertThat(outputStream.toString(), is(equalTo(expectedOutput)));
 	}
 
+	@Test
+	public void testBytesWrittenCountsHeadAndBody() throws Exception {
+		withMockResponse();
+		StringCollectorOutputStream outputStream = new StringCollectorOutputStream();
+		ResponseWriter responseWriter = writer(outputStream);
+
+		responseWriter.writeResponse(response);
+
+		assertThat(responseWriter.bytesWritten(), is((long) outputStream.toString().length()));
+	}
+
+	@Test
+	public void testBodySizeCountsLastBody() throws Exception {
+		withMockResponse();
+		ResponseWriter responseWriter = writer(new StringCollectorOutputStream());
+
+		responseWriter.writeResponse(response);
+
+		assertThat(responseWriter.bodySize(), is(12L));
+	}
+
+	@Test
+	public void testFileRegionIsTransferredToChannel() throws Exception {
+		Path file = Files.createTempFile("response-writer", ".txt");
+		try {
+			Files.write(file, "Hello world! Goodbye world!".getBytes(UTF_8));
+			withMockFileRegionResponse(file, 6, 6);
+
+			ByteArrayOutputStream collector = new ByteArrayOutputStream();
+			ResponseWriter responseWriter = writer(new ChannelOutputStream(Channels.newChannel(collector), 1000));
+
+			responseWriter.writeResponse(response);
+
+			String expectedOutput = "HTTP/1.1 200 OK" + CRLF
+					+ "Content-type: text/plain" + CRLF
+					+ "Content-length: 6" + CRLF
+					+ DATE_FIELD
+					+ CRLF
+					+ "world!";
+
+			assertThat(collector.toString(UTF_8.name()), is(equalTo(expectedOutput)));
+			verify(response, never()).stream();
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testFileRegionIsStreamedWithoutChannel() throws Exception {
+		Path file = Files.createTempFile("response-writer", ".txt");
+		try {
+			withMockFileRegionResponse(file, 0, 12);
+
+			OutputStream outputStream = new StringCollectorOutputStream();
+			writer(outputStream).writeResponse(response);
+
+			assertThat(outputStream.toString().endsWith(CRLF + "Hello world!"), is(true));
+			verify((FileRegionResponse) response, never()).channel();
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testBufferIsWrittenToChannel() throws Exception {
+		withMockBufferResponse(ByteBuffer.allocateDirect(12).put("Hello world!".getBytes(UTF_8)));
+
+		ByteArrayOutputStream collector = new ByteArrayOutputStream();
+		writer(new ChannelOutputStream(Channels.newChannel(collector), 1000)).writeResponse(response);
+
+		assertThat(collector.toString(UTF_8.name()).endsWith(CRLF + "Hello world!"), is(true));
+		verify(response, never()).stream();
+	}
+
+	@Test
+	public void testBufferIsStreamedWithoutChannel() throws Exception {
+		withMockBufferResponse(ByteBuffer.allocate(0));
+
+		OutputStream outputStream = new StringCollectorOutputStream();
+		writer(outputStream).writeResponse(response);
+
+		assertThat(outputStream.toString().endsWith(CRLF + "Hello world!"), is(true));
+		verify((BufferResponse) response, never()).body();
+	}
+
+	@Test
+	public void testWriteResponseWithoutFlushing() throws Exception {
+		withMockResponse();
+		OutputStream outputStream = mock(OutputStream.class);
+
+		writer(outputStream).writeResponse(response, false);
+
+		verify(outputStream, atLeastOnce()).write(any(), anyInt(), anyInt());
+		verify(outputStream, never()).flush();
+	}
+
+	@Test
+	public void testBodyStreamIsClosedWhenWriteFails() throws Exception {
+		withMockResponse();
+		InputStream body = spy(new ByteArrayInputStream("Hello world!".getBytes(UTF_8)));
+		when(response.stream()).thenReturn(body);
+		OutputStream outputStream = mock(OutputStream.class);
+		// The head is written, but the client resets the connection before the body is
+		doNothing().doThrow(new IOException("Connection reset")).when(outputStream).write(any(), anyInt(), anyInt());
+
+		try {
+			writer(outputStream).writeResponse(response);
+		} catch (ResponseException e) {
+			verify(body).close();
+			return;
+		}
+		throw new AssertionError("Writing the response should have failed");
+	}
+
+	@Test
+	public void testHeadIsWrittenAtOnce() throws Exception {
+		withMockResponse();
+		OutputStream outputStream = mock(OutputStream.class);
+
+		writer(outputStream).writeResponse(response);
+
+		String head = "HTTP/1.1 200 OK" + CRLF
+				+ "Content-type: text/plain" + CRLF
+				+ "Content-length: 12" + CRLF
+				+ DATE_FIELD
+				+ CRLF;
+		ArgumentCaptor<byte[]> written = ArgumentCaptor.forClass(byte[].class);
+		verify(outputStream, atLeastOnce()).write(written.capture(), eq(0), anyInt());
+		verify(outputStream, never()).write(anyInt());
+		assertThat(new String(written.getAllValues().get(0), 0, head.length(), UTF_8), is(equalTo(head)));
+	}
+
+	@Test
+	public void testDateAndServerHeadersAreAdded() throws Exception {
+		withMockResponse();
+		OutputStream outputStream = new StringCollectorOutputStream();
+
+		new ResponseWriter(outputStream, "test-server", FIXED_DATE).writeResponse(response);
+
+		assertThat(outputStream.toString(), containsString("Content-length: 12" + CRLF + DATE_FIELD + "Server: test-server" + CRLF + CRLF));
+	}
+
+	@Test
+	public void testResponseDateAndServerHeadersAreNotReplaced() throws Exception {
+		withMockResponse();
+		response.headers().set("Date", "Mon, 07 Nov 1994 08:49:37 GMT");
+		response.headers().set("Server", "upstream");
+		OutputStream outputStream = new StringCollectorOutputStream();
+
+		new ResponseWriter(outputStream, "test-server", FIXED_DATE).writeResponse(response);
+
+		String output = outputStream.toString();
+		assertThat(output, containsString("Date: Mon, 07 Nov 1994 08:49:37 GMT" + CRLF));
+		assertThat(output, containsString("Server: upstream" + CRLF));
+		assertThat(output, not(containsString(DATE_FIELD)));
+		assertThat(output, not(containsString("test-server")));
+	}
+
+	@Test
+	public void testDefaultServerName() throws Exception {
+		withMockResponse();
+		OutputStream outputStream = new StringCollectorOutputStream();
+
+		new ResponseWriter(outputStream).writeResponse(response);
+
+		assertThat(outputStream.toString(), containsString("Server: " + ResponseWriter.DEFAULT_SERVER_NAME + CRLF));
+		assertThat(outputStream.toString(), containsString("Date: "));
+	}
+
+	@Test
+	public void testEncodedHeadIsWrittenAsEncoded() throws Exception {
+		EncodedResponse encoded = mock(EncodedResponse.class);
+		when(encoded.status()).thenReturn(HttpStatus.NOT_FOUND_404);
+		when(encoded.version()).thenReturn(HttpVersion.HTTP_1_1);
+		when(encoded.headers()).thenReturn(new HttpHeaders(new HttpHeader("Content-length", "9")));
+		when(encoded.head()).thenReturn(ByteBuffer.wrap(("HTTP/1.1 404 Not Found" + CRLF + "Content-length: 9" + CRLF).getBytes(UTF_8)));
+		when(encoded.body()).thenReturn(ByteBuffer.wrap("Not found".getBytes(UTF_8)));
+
+		ByteArrayOutputStream collector = new ByteArrayOutputStream();
+		writer(new ChannelOutputStream(Channels.newChannel(collector), 1000)).writeResponse(encoded);
+
+		String expectedOutput = "HTTP/1.1 404 Not Found" + CRLF
+				+ "Content-length: 9" + CRLF
+				+ DATE_FIELD
+				+ CRLF
+				+ "Not found";
+		assertThat(collector.toString(UTF_8.name()), is(equalTo(expectedOutput)));
+		verify(encoded, never()).stream();
+	}
+
+	@Test
+	public void testEncodeHead() throws Exception {
+		withMockResponse();
+
+		String head = new String(ResponseWriter.encodeHead(response), UTF_8);
+
+		assertThat(head, is(equalTo("HTTP/1.1 200 OK" + CRLF + "Content-type: text/plain" + CRLF + "Content-length: 12" + CRLF)));
+	}
+
+	@Test
+	public void testResponseWithoutLengthIsChunked() throws Exception {
+		withMockResponse();
+		response.headers().remove("Content-length");
+
+		OutputStream outputStream = new StringCollectorOutputStream();
+		writer(outputStream).writeResponse(response);
+
+		String expectedOutput = "HTTP/1.1 200 OK" + CRLF
+				+ "Content-type: text/plain" + CRLF
+				+ "Transfer-Encoding: chunked" + CRLF
+				+ DATE_FIELD
+				+ CRLF
+				+ "c" + CRLF
+				+ "Hello world!" + CRLF
+				+ "0" + CRLF
+				+ CRLF;
+
+		assertThat(outputStream.toString(), is(equalTo(expectedOutput)));
+		assertThat(ResponseWriter.isChunked(response), is(true));
+		assertThat(ResponseWriter.isDelimited(response), is(true));
+	}
+
+	@Test
+	public void testHttp10ResponseWithoutLengthIsNotChunked() throws Exception {
+		withMockResponse();
+		response.headers().remove("Content-length");
+		when(response.version()).thenReturn(HttpVersion.HTTP_1_0);
+
+		OutputStream outputStream = new StringCollectorOutputStream();
+		writer(outputStream).writeResponse(response);
+
+		assertThat(outputStream.toString().endsWith("text/plain" + CRLF + DATE_FIELD + CRLF + "Hello world!"), is(true));
+		assertThat(ResponseWriter.isChunked(response), is(false));
+		assertThat(ResponseWriter.isDelimited(response), is(false));
+	}
+
+	@Test
+	public void testResponsesWithoutBodiesAreNotChunked() throws Exception {
+		withMockResponse();
+		response.headers().remove("Content-length");
+
+		for (HttpStatus status : new HttpStatus[]{HttpStatus.NO_CONTENT_204, HttpStatus.NOT_MODIFIED_304}) {
+			when(response.status()).thenReturn(status);
+			assertThat(ResponseWriter.isChunked(response), is(false));
+			assertThat(ResponseWriter.isDelimited(response), is(true));
+		}
+	}
+
+	@Test
+	public void testResponsesWithLengthAreDelimited() throws Exception {
+		withMockResponse();
+
+		assertThat(ResponseWriter.isChunked(response), is(false));
+		assertThat(ResponseWriter.isDelimited(response), is(true));
+	}
+
 	@Test(expected = ResponseException.class)
 	public void testBrokenOutputStreamThrowsException() throws Exception {
 		withMockResponse();
 		OutputStream outputStream = new ExplodingOutputStream();
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = writer(outputStream);
 
 		responseWriter.writeResponse(response);
 	}
@@ -58,7 +337,7 @@ public class ResponseWriterTest {
 	@Test
 	public void testWriteIsPassedThroughToUnderlyingStream() throws Exception {
 		OutputStream outputStream = mock(OutputStream.class);
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = writer(outputStream);
 		responseWriter.write(new char[]{}, 0, 0);
 
 		verify(outputStream).write(any(), anyInt(), anyInt());
@@ -67,7 +346,7 @@ public class ResponseWriterTest {
 	@Test
 	public void testFlushIsPassedThroughToUnderlyingStream() throws Exception {
 		OutputStream outputStream = mock(OutputStream.class);
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = writer(outputStream);
 		responseWriter.flush();
 
 		verify(outputStream).flush();
@@ -76,20 +355,49 @@ public class ResponseWriterTest {
 	@Test
 	public void testCloseIsPassedThroughToUnderlyingStream() throws Exception {
 		OutputStream outputStream = mock(OutputStream.class);
-		ResponseWriter responseWriter = new ResponseWriter(outputStream);
+		ResponseWriter responseWriter = writer(outputStream);
 		responseWriter.close();
 
 		verify(outputStream).close();
 	}
 
+	private static ResponseWriter writer(OutputStream outputStream) {
+		return new ResponseWriter(outputStream, null, FIXED_DATE);
+	}
+
 	private void withMockResponse() {
 		response = mock(Response.class);
 		when(response.status()).thenReturn(HttpStatus.OK_200);
-		when(response.headers()).thenReturn(new HttpHeaders(new HttpHeader("Content-type", "text/plain")));
+		when(response.headers()).thenReturn(new HttpHeaders(new HttpHeader("Content-type", "text/plain"), new HttpHeader("Content-length", "12")));
 		when(response.version()).thenReturn(HttpVersion.HTTP_1_1);
 		when(response.stream()).thenReturn(new ByteArrayInputStream("Hello world!".getBytes(UTF_8)));
 	}
 
+	private void withMockFileRegionResponse(Path file, long position, long count) throws IOException {
+		FileRegionResponse fileResponse = mock(FileRegionResponse.class);
+		when(fileResponse.status()).thenReturn(HttpStatus.OK_200);
+		when(fileResponse.headers()).thenReturn(new HttpHeaders(new HttpHeader("Content-type", "text/plain"),
+																new HttpHeader("Content-length", String.valueOf(count))));
+		when(fileResponse.version()).thenReturn(HttpVersion.HTTP_1_1);
+		when(fileResponse.stream()).thenReturn(new ByteArrayInputStream("Hello world!".getBytes(UTF_8)));
+		when(fileResponse.channel()).thenReturn(FileChannel.open(file, StandardOpenOption.READ));
+		when(fileResponse.position()).thenReturn(position);
+		when(fileResponse.count()).thenReturn(count);
+		response = fileResponse;
+	}
+
+	private void withMockBufferResponse(ByteBuffer body) {
+		body.flip();
+		BufferResponse bufferResponse = mock(BufferResponse.class);
+		when(bufferResponse.status()).thenReturn(HttpStatus.OK_200);
+		when(bufferResponse.headers()).thenReturn(new HttpHeaders(new HttpHeader("Content-type", "text/plain"),
+																  new HttpHeader("Content-length", "12")));
+		when(bufferResponse.version()).thenReturn(HttpVersion.HTTP_1_1);
+		when(bufferResponse.stream()).thenReturn(new ByteArrayInputStream("Hello world!".getBytes(UTF_8)));
+		when(bufferResponse.body()).thenReturn(body);
+		response = bufferResponse;
+	}
+
 	/**
 	 * A deliberately broken OutputStream for testing purposes.
 	 */
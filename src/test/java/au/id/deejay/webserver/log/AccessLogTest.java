@@ -0,0 +1,223 @@
+package au.id.deejay.webserver.log;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class AccessLogTest {
+
+	private static final String DATE = "\\[\\d{2}/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} \\+0000\\]";
+
+	private Path directory;
+	private Path file;
+	private Request request;
+	private InetAddress client;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("access-log");
+		file = directory.resolve("access.log");
+		client = InetAddress.getByName("192.168.0.1");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Referer", "http://example.com/");
+		headers.set("User-Agent", "curl/7.0 \"test\"");
+		request = mock(Request.class);
+		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.uri()).thenReturn(new URI("/index.html"));
+		when(request.version()).thenReturn(HttpVersion.HTTP_1_1);
+		when(request.headers()).thenReturn(headers);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testCommonLogFormat() throws Exception {
+		try (AccessLog log = accessLog(new RollingFileWriter(file, 1024, 0), 16, LogFormat.COMMON, OverflowPolicy.DROP)) {
+			assertThat(log.log(client, request, HttpStatus.OK_200, 1234), is(true));
+			assertThat(log.log(null, request, HttpStatus.NOT_MODIFIED_304, 0), is(true));
+		}
+
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertThat(lines.size(), is(2));
+		assertThat(lines.get(0), lines.get(0).matches("192\\.168\\.0\\.1 - - " + DATE + " \"GET /index\\.html HTTP/1\\.1\" 200 1234"), is(true));
+		assertThat(lines.get(1), lines.get(1).matches("- - - " + DATE + " \"GET /index\\.html HTTP/1\\.1\" 304 -"), is(true));
+	}
+
+	@Test
+	public void testCombinedLogFormat() throws Exception {
+		try (AccessLog log = accessLog(new RollingFileWriter(file, 1024, 0), 16, LogFormat.COMBINED, OverflowPolicy.DROP)) {
+			log.log(client, request, HttpStatus.OK_200, 10);
+			Request noReferer = mock(Request.class);
+			when(noReferer.method()).thenReturn(HttpMethod.GET);
+			when(noReferer.uri()).thenReturn(new URI("/"));
+			when(noReferer.version()).thenReturn(HttpVersion.HTTP_1_0);
+			when(noReferer.headers()).thenReturn(new HttpHeaders());
+			log.log(client, noReferer, HttpStatus.OK_200, 10);
+		}
+
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertThat(lines.get(0), lines.get(0).endsWith(" 200 10 \"http://example.com/\" \"curl/7.0 \\\"test\\\"\""), is(true));
+		assertThat(lines.get(1), lines.get(1).endsWith("\"GET / HTTP/1.0\" 200 10 \"-\" \"-\""), is(true));
+	}
+
+	@Test
+	public void testEntriesCopyRequestFields() throws Exception {
+		BlockingWriter writer = new BlockingWriter(file);
+		try (AccessLog log = accessLog(writer, 16, LogFormat.COMBINED, OverflowPolicy.DROP)) {
+			log.log(client, request, HttpStatus.OK_200, 1);
+			assertThat(writer.writing.await(5, TimeUnit.SECONDS), is(true));
+
+			// The second entry waits in the buffer while its request's headers are changed
+			log.log(client, request, HttpStatus.OK_200, 2);
+			request.headers().set("Referer", "http://example.com/changed");
+			writer.release.countDown();
+		}
+
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertThat(lines.get(1), lines.get(1).contains(" 200 2 \"http://example.com/\" "), is(true));
+	}
+
+	@Test
+	public void testIdleWriterSleepsUntilEntryIsLogged() throws Exception {
+		try (AccessLog log = accessLog(new RollingFileWriter(file, 1024, 0), 16, LogFormat.COMMON, OverflowPolicy.DROP)) {
+			// With nothing to write, the writer waits without a timeout rather than polling
+			await().atMost(5, TimeUnit.SECONDS).until(() -> writerState() == Thread.State.WAITING);
+
+			log.log(client, request, HttpStatus.OK_200, 1);
+			await().atMost(1, TimeUnit.SECONDS).until(() -> Files.readAllLines(file, UTF_8).size() == 1);
+		}
+	}
+
+	@Test
+	public void testEntriesAreDroppedWhenBufferIsFull() throws Exception {
+		BlockingWriter writer = new BlockingWriter(file);
+		try (AccessLog log = accessLog(writer, 1, LogFormat.COMMON, OverflowPolicy.DROP)) {
+			// The first entry is taken from the buffer, and holds up the writer thread
+			assertThat(log.log(client, request, HttpStatus.OK_200, 1), is(true));
+			assertThat(writer.writing.await(5, TimeUnit.SECONDS), is(true));
+
+			assertThat(log.log(client, request, HttpStatus.OK_200, 2), is(true));
+			assertThat(log.log(client, request, HttpStatus.OK_200, 3), is(false));
+			assertThat(log.dropped(), is(1L));
+
+			writer.release.countDown();
+		}
+
+		List<String> lines = Files.readAllLines(file, UTF_8);
+		assertThat(lines.size(), is(2));
+		assertThat(lines.get(1).endsWith(" 200 2"), is(true));
+	}
+
+	@Test
+	public void testBlockingLogWaitsForSpace() throws Exception {
+		BlockingWriter writer = new BlockingWriter(file);
+		try (AccessLog log = accessLog(writer, 1, LogFormat.COMMON, OverflowPolicy.BLOCK)) {
+			log.log(client, request, HttpStatus.OK_200, 1);
+			assertThat(writer.writing.await(5, TimeUnit.SECONDS), is(true));
+			log.log(client, request, HttpStatus.OK_200, 2);
+
+			Thread worker = new Thread(() -> log.log(client, request, HttpStatus.OK_200, 3));
+			worker.start();
+			worker.join(100);
+			assertThat(worker.isAlive(), is(true));
+
+			writer.release.countDown();
+			worker.join(5000);
+			assertThat(worker.isAlive(), is(false));
+		}
+
+		assertThat(Files.readAllLines(file, UTF_8).size(), is(3));
+	}
+
+	@Test
+	public void testEntriesAreNotLoggedOnceClosed() throws Exception {
+		AccessLog log = accessLog(new RollingFileWriter(file, 1024, 0), 16, LogFormat.COMMON, OverflowPolicy.DROP);
+		log.close();
+
+		assertThat(log.log(client, request, HttpStatus.OK_200, 1), is(false));
+	}
+
+	@Test
+	public void testLogIsWrittenToFile() throws Exception {
+		try (AccessLog log = new AccessLog(file, 1000, LogFormat.COMBINED, OverflowPolicy.BLOCK)) {
+			for (int i = 0; i < 5000; i++) {
+				log.log(client, request, HttpStatus.OK_200, i);
+			}
+		}
+
+		assertThat(Files.readAllLines(file, UTF_8).size(), is(5000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() throws Exception {
+		accessLog(new RollingFileWriter(file, 1024, 0), 0, LogFormat.COMMON, OverflowPolicy.DROP);
+	}
+
+	private static Thread.State writerState() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("access-log-writer".equals(thread.getName()) && thread.isAlive()) {
+				return thread.getState();
+			}
+		}
+		return null;
+	}
+
+	private static AccessLog accessLog(RollingFileWriter writer, int capacity, LogFormat format, OverflowPolicy overflow) {
+		return new AccessLog(writer, capacity, format, overflow, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Holds up the first write until it is released.
+	 */
+	private static class BlockingWriter extends RollingFileWriter {
+
+		private final CountDownLatch writing = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		BlockingWriter(Path file) throws IOException {
+			super(file, 1024 * 1024, 0);
+		}
+
+		@Override
+		void write(ByteBuffer bytes) throws IOException {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.write(bytes);
+		}
+	}
+}
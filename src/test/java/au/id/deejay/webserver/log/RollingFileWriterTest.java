@@ -0,0 +1,96 @@
+package au.id.deejay.webserver.log;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class RollingFileWriterTest {
+
+	private Path directory;
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("rolling-file-writer");
+		file = directory.resolve("logs").resolve("access.log");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testWritesAreAppended() throws Exception {
+		try (RollingFileWriter writer = new RollingFileWriter(file, 1024, 1)) {
+			write(writer, "one\n");
+		}
+		try (RollingFileWriter writer = new RollingFileWriter(file, 1024, 1)) {
+			write(writer, "two\n");
+		}
+
+		assertThat(read(file), is("one\ntwo\n"));
+	}
+
+	@Test
+	public void testFileIsRolledOverAtMaxSize() throws Exception {
+		try (RollingFileWriter writer = new RollingFileWriter(file, 8, 2)) {
+			write(writer, "first\n");
+			write(writer, "second\n");
+			write(writer, "third\n");
+			write(writer, "fourth\n");
+			write(writer, "fifth\n");
+		}
+
+		// Each file is rolled over once it reaches the max size, and only two backups are kept
+		assertThat(read(file), is("fifth\n"));
+		assertThat(read(backup(1)), is("third\nfourth\n"));
+		assertThat(read(backup(2)), is("first\nsecond\n"));
+		assertThat(Files.exists(backup(3)), is(false));
+	}
+
+	@Test
+	public void testFileIsTruncatedWithoutBackups() throws Exception {
+		try (RollingFileWriter writer = new RollingFileWriter(file, 4, 0)) {
+			write(writer, "first\n");
+			write(writer, "2\n");
+		}
+
+		assertThat(read(file), is("2\n"));
+		assertThat(Files.exists(backup(1)), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxFileSize() throws Exception {
+		new RollingFileWriter(file, 0, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxBackups() throws Exception {
+		new RollingFileWriter(file, 1024, -1);
+	}
+
+	private Path backup(int index) {
+		return file.resolveSibling("access.log." + index);
+	}
+
+	private static void write(RollingFileWriter writer, String text) throws Exception {
+		writer.write(ByteBuffer.wrap(text.getBytes(UTF_8)));
+	}
+
+	private static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), UTF_8);
+	}
+}
@@ -0,0 +1,71 @@
+package au.id.deejay.webserver.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testDurationsAreCountedInTheirBucket() throws Exception {
+		for (int i = 1; i < LatencyHistogram.bounds(); i++) {
+			long lower = LatencyHistogram.upperBound(i - 1);
+			long upper = LatencyHistogram.upperBound(i);
+
+			assertThat(LatencyHistogram.index(lower + 1), is(i));
+			assertThat(LatencyHistogram.index(upper), is(i));
+			assertThat(LatencyHistogram.index(upper + 1), is(i + 1));
+		}
+	}
+
+	@Test
+	public void testBoundsGrowLogLinearly() throws Exception {
+		assertThat(LatencyHistogram.upperBound(0), is(1024L));
+		assertThat(LatencyHistogram.upperBound(1), is(1536L));
+		assertThat(LatencyHistogram.upperBound(2), is(2048L));
+		assertThat(LatencyHistogram.upperBound(3), is(3072L));
+		assertThat(LatencyHistogram.upperBound(LatencyHistogram.bounds() - 1), is(1L << 35));
+	}
+
+	@Test
+	public void testExtremeDurations() throws Exception {
+		assertThat(LatencyHistogram.index(0), is(0));
+		assertThat(LatencyHistogram.index(Long.MAX_VALUE), is(LatencyHistogram.bounds()));
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+
+		assertThat(histogram.count(0), is(1L));
+		assertThat(histogram.count(LatencyHistogram.bounds()), is(1L));
+		assertThat(histogram.count(), is(2L));
+	}
+
+	@Test
+	public void testCountSumAndQuantiles() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertThat(histogram.quantile(0.5, TimeUnit.NANOSECONDS), is(0L));
+
+		for (int i = 0; i < 90; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+
+		assertThat(histogram.count(), is(100L));
+		assertThat(histogram.sum(), is(90 * 100000L + 10 * 100000000L));
+
+		// Quantiles are the upper bound of their bucket, which is within 50% of the durations in it
+		long median = histogram.quantile(0.5, TimeUnit.NANOSECONDS);
+		assertThat(median >= 100000 && median < 150000, is(true));
+		long p99 = histogram.quantile(0.99, TimeUnit.MICROSECONDS);
+		assertThat(p99 >= 100000 && p99 < 150000, is(true));
+	}
+}
@@ -0,0 +1,135 @@
+package au.id.deejay.webserver.metrics;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.response.ErrorResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class ServerMetricsTest {
+
+	private ServerMetrics metrics;
+	private Request request;
+	private Response response;
+
+	@Before
+	public void setUp() throws Exception {
+		metrics = new ServerMetrics();
+		request = mock(Request.class);
+		when(request.method()).thenReturn(HttpMethod.GET);
+		response = mock(Response.class);
+		when(response.status()).thenReturn(HttpStatus.OK_200);
+	}
+
+	@Test
+	public void testRequestsAreCounted() throws Exception {
+		metrics.connectionOpened();
+		metrics.requestRead(100, 2000);
+		assertThat(metrics.activeConnections(), is(1L));
+
+		metrics.responseSent(request, response, 500, 3000);
+		metrics.responseSent(null, ErrorResponse.BAD_REQUEST_400, 50, 1000);
+
+		assertThat(metrics.requests(HttpMethod.GET), is(1L));
+		assertThat(metrics.responses(HttpStatus.OK_200), is(1L));
+		assertThat(metrics.responses(HttpStatus.BAD_REQUEST_400), is(1L));
+		assertThat(metrics.bytesIn(), is(100L));
+		assertThat(metrics.bytesOut(), is(550L));
+		assertThat(metrics.parseTime().count(), is(1L));
+		assertThat(metrics.writeTime().count(), is(2L));
+		assertThat(metrics.openConnections(), is(1L));
+		assertThat(metrics.activeConnections(), is(0L));
+
+		metrics.connectionClosed();
+		assertThat(metrics.openConnections(), is(0L));
+	}
+
+	@Test
+	public void testHandlersAreCountedByName() throws Exception {
+		RequestHandler handler = new NamedHandler("Docroot");
+		metrics.handled(handler, 1000);
+		metrics.handled(handler, 2000);
+		metrics.handled(new NamedHandler(null), 1000);
+
+		assertThat(metrics.handled("Docroot"), is(2L));
+		assertThat(metrics.handled(NamedHandler.class.getName()), is(1L));
+		assertThat(metrics.handled("Other"), is(0L));
+		assertThat(metrics.handlerTime().sum(), is(4000L));
+	}
+
+	@Test
+	public void testPrometheusFormat() throws Exception {
+		metrics.connectionOpened();
+		metrics.connectionOpened();
+		metrics.requestRead(100, 2000);
+		metrics.handled(new NamedHandler("Say \"hi\""), 1000000);
+		metrics.queueDepth(() -> 3);
+		metrics.accessLogDropped(() -> 7L);
+		metrics.clientShed(ShedReason.QUEUE_FULL);
+		metrics.clientShed(ShedReason.QUEUE_FULL);
+
+		StringBuilder out = new StringBuilder();
+		metrics.writeTo(out);
+		String text = out.toString();
+
+		assertThat(text, containsString("# TYPE http_server_responses_total counter\n"));
+		assertThat(text, containsString("http_server_handler_requests_total{handler=\"Say \\\"hi\\\"\"} 1\n"));
+		assertThat(text, containsString("http_server_request_bytes_total 100\n"));
+		assertThat(text, containsString("# TYPE http_server_handler_seconds histogram\n"));
+		assertThat(text, containsString("http_server_handler_seconds_bucket{le=\"+Inf\"} 1\n"));
+		assertThat(text, containsString("http_server_handler_seconds_sum 0.001\n"));
+		assertThat(text, containsString("http_server_handler_seconds_count 1\n"));
+		assertThat(text, containsString("http_server_parse_seconds_bucket{le=\"2.048E-6\"} 1\n"));
+		assertThat(text, containsString("http_server_connections{state=\"active\"} 1\n"));
+		assertThat(text, containsString("http_server_connections{state=\"idle\"} 1\n"));
+		assertThat(text, containsString("http_server_queued_tasks 3\n"));
+		assertThat(text, containsString("http_server_concurrency_limit 0\n"));
+		assertThat(text, containsString("http_server_access_log_dropped_total 7\n"));
+		assertThat(text, containsString("# TYPE http_server_shed_total counter\n"));
+		assertThat(text, containsString("http_server_shed_total{reason=\"queue_full\"} 2\n"));
+		assertThat(text, not(containsString("reason=\"queue_timeout\"")));
+
+		// Counters which are still zero are left out
+		assertThat(text, not(containsString("code=\"404\"")));
+	}
+
+	/**
+	 * A handler with a fixed name.
+	 */
+	private static class NamedHandler implements RequestHandler {
+
+		private final String name;
+
+		NamedHandler(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean canHandle(Request request) {
+			return true;
+		}
+
+		@Override
+		public Response handle(Request request) {
+			return null;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+	}
+}
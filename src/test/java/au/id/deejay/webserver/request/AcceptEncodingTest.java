@@ -0,0 +1,71 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class AcceptEncodingTest {
+
+	private Request request;
+	private Headers headers;
+
+	@Before
+	public void setUp() throws Exception {
+		headers = new HttpHeaders();
+		request = mock(Request.class);
+		when(request.headers()).thenReturn(headers);
+	}
+
+	@Test
+	public void testNoAcceptEncoding() throws Exception {
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is(nullValue()));
+		assertThat(AcceptEncoding.accepts(request, "gzip"), is(false));
+	}
+
+	@Test
+	public void testCodingsAreChosenInOrderOfPreference() throws Exception {
+		headers.set("Accept-Encoding", "gzip", "deflate", "br");
+
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is("br"));
+		assertThat(AcceptEncoding.preferred(request, "gzip", "br"), is("gzip"));
+		assertThat(AcceptEncoding.preferred(request), is(nullValue()));
+	}
+
+	@Test
+	public void testQualityValues() throws Exception {
+		headers.set("Accept-Encoding", "gzip;q=0.8", "br;q=0.5");
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is("gzip"));
+
+		headers.set("Accept-Encoding", "gzip; q=1.0", "BR;Q=0");
+		assertThat(AcceptEncoding.preferred(request, "br"), is(nullValue()));
+		assertThat(AcceptEncoding.accepts(request, "gzip"), is(true));
+	}
+
+	@Test
+	public void testInvalidQualityValuesAreNotAcceptable() throws Exception {
+		headers.set("Accept-Encoding", "gzip;q=high", "br;q=2");
+
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is(nullValue()));
+	}
+
+	@Test
+	public void testWildcard() throws Exception {
+		headers.set("Accept-Encoding", "*");
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is("br"));
+
+		// Explicit codings override the wildcard
+		headers.set("Accept-Encoding", "br;q=0", "*;q=0.5");
+		assertThat(AcceptEncoding.preferred(request, "br", "gzip"), is("gzip"));
+	}
+}
@@ -0,0 +1,42 @@
+package au.id.deejay.webserver.request;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class ByteRangeTest {
+
+	@Test
+	public void testRange() throws Exception {
+		ByteRange range = new ByteRange(10, 19);
+
+		assertThat(range.first(), is(10L));
+		assertThat(range.last(), is(19L));
+		assertThat(range.length(), is(10L));
+		assertThat(range.contentRange(100), is("bytes 10-19/100"));
+		assertThat(range.toString(), is("10-19"));
+	}
+
+	@Test
+	public void testEquality() throws Exception {
+		assertThat(new ByteRange(0, 5), is(equalTo(new ByteRange(0, 5))));
+		assertThat(new ByteRange(0, 5).hashCode(), is(equalTo(new ByteRange(0, 5).hashCode())));
+		assertThat(new ByteRange(0, 5), is(not(equalTo(new ByteRange(0, 6)))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeFirstByteThrowsException() throws Exception {
+		new ByteRange(-1, 5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLastBeforeFirstThrowsException() throws Exception {
+		new ByteRange(5, 4);
+	}
+}
@@ -0,0 +1,96 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpDate;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class ConditionalRequestTest {
+
+	private static final String ETAG = "\"1f-15f1e0a8c00\"";
+	private static final long LAST_MODIFIED = 784111777000L;
+
+	private Request request;
+	private Headers headers;
+
+	@Before
+	public void setUp() throws Exception {
+		headers = new HttpHeaders();
+		request = mock(Request.class);
+		when(request.headers()).thenReturn(headers);
+	}
+
+	@Test
+	public void testUnconditionalRequest() throws Exception {
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(false));
+	}
+
+	@Test
+	public void testIfNoneMatch() throws Exception {
+		headers.set("If-None-Match", ETAG);
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+
+		headers.set("If-None-Match", "\"other\"", ETAG);
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+
+		headers.set("If-None-Match", "\"other\"");
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(false));
+
+		headers.set("If-None-Match", "*");
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+	}
+
+	@Test
+	public void testIfNoneMatchUsesWeakComparison() throws Exception {
+		headers.set("If-None-Match", "W/" + ETAG);
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+		assertThat(ConditionalRequest.notModified(request, "W/" + ETAG, LAST_MODIFIED), is(true));
+	}
+
+	@Test
+	public void testIfNoneMatchWithoutEtag() throws Exception {
+		headers.set("If-None-Match", ETAG);
+		assertThat(ConditionalRequest.notModified(request, null, LAST_MODIFIED), is(false));
+	}
+
+	@Test
+	public void testIfModifiedSince() throws Exception {
+		headers.set("If-Modified-Since", HttpDate.format(LAST_MODIFIED));
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+
+		// The modification time is compared to the second
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED + 500), is(true));
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED + 1000), is(false));
+		assertThat(ConditionalRequest.notModified(request, ETAG, -1), is(false));
+	}
+
+	@Test
+	public void testIfModifiedSinceSplitOnComma() throws Exception {
+		// As parsed from a raw request, where the comma in the date separates values
+		headers.set("If-Modified-Since", "Sun", "06 Nov 1994 08:49:37 GMT");
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(true));
+	}
+
+	@Test
+	public void testInvalidIfModifiedSinceIsIgnored() throws Exception {
+		headers.set("If-Modified-Since", "yesterday");
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(false));
+	}
+
+	@Test
+	public void testIfNoneMatchTakesPrecedence() throws Exception {
+		headers.set("If-None-Match", "\"other\"");
+		headers.set("If-Modified-Since", HttpDate.format(LAST_MODIFIED));
+		assertThat(ConditionalRequest.notModified(request, ETAG, LAST_MODIFIED), is(false));
+	}
+}
@@ -0,0 +1,145 @@
+package au.id.deejay.webserver.request;
+
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpDate;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class RangeRequestTest {
+
+	private static final long LENGTH = 1000;
+	private static final String ETAG = "\"3e8-15f1e0a8c00\"";
+	private static final long LAST_MODIFIED = 784111777000L;
+
+	private Request request;
+	private Headers headers;
+
+	@Before
+	public void setUp() throws Exception {
+		headers = new HttpHeaders();
+		request = mock(Request.class);
+		when(request.headers()).thenReturn(headers);
+	}
+
+	@Test
+	public void testNoRange() throws Exception {
+		assertThat(ranges(), is(nullValue()));
+	}
+
+	@Test
+	public void testSingleRanges() throws Exception {
+		withRange("bytes=0-499");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(0, 499)))));
+
+		withRange("bytes=500-");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(500, 999)))));
+
+		withRange("bytes=-200");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(800, 999)))));
+	}
+
+	@Test
+	public void testRangesAreTruncatedToLength() throws Exception {
+		withRange("bytes=900-2000");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(900, 999)))));
+
+		withRange("bytes=-5000");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(0, 999)))));
+	}
+
+	@Test
+	public void testMultipleRanges() throws Exception {
+		// As parsed from a raw request, where the commas separate values
+		headers.set("Range", "bytes=0-9", " 20-29", "-10");
+		assertThat(ranges(), is(equalTo(Arrays.asList(new ByteRange(0, 9), new ByteRange(20, 29), new ByteRange(990, 999)))));
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() throws Exception {
+		withRange("bytes=1000-1100");
+		assertThat(ranges().isEmpty(), is(true));
+
+		// Only the satisfiable ranges are kept
+		headers.set("Range", "bytes=1000-1100", "0-0");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(0, 0)))));
+	}
+
+	@Test
+	public void testInvalidRangesAreIgnored() throws Exception {
+		withRange("items=0-10");
+		assertThat(ranges(), is(nullValue()));
+
+		withRange("bytes=10-5");
+		assertThat(ranges(), is(nullValue()));
+
+		withRange("bytes=abc-10");
+		assertThat(ranges(), is(nullValue()));
+
+		withRange("bytes=10");
+		assertThat(ranges(), is(nullValue()));
+
+		withRange("bytes=-");
+		assertThat(ranges(), is(nullValue()));
+	}
+
+	@Test
+	public void testTooManyRangesAreIgnored() throws Exception {
+		String[] specs = new String[RangeRequest.MAX_RANGES + 1];
+		for (int i = 0; i < specs.length; i++) {
+			specs[i] = (i == 0 ? "bytes=" : "") + i + "-" + i;
+		}
+		headers.set("Range", specs);
+
+		assertThat(ranges(), is(nullValue()));
+	}
+
+	@Test
+	public void testIfRangeWithEtag() throws Exception {
+		withRange("bytes=0-9");
+
+		headers.set("If-Range", ETAG);
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(0, 9)))));
+
+		headers.set("If-Range", "\"other\"");
+		assertThat(ranges(), is(nullValue()));
+
+		// Weak entity tags never match
+		headers.set("If-Range", "W/" + ETAG);
+		assertThat(ranges(), is(nullValue()));
+	}
+
+	@Test
+	public void testIfRangeWithDate() throws Exception {
+		withRange("bytes=0-9");
+
+		headers.set("If-Range", "Sun", "06 Nov 1994 08:49:37 GMT");
+		assertThat(ranges(), is(equalTo(Collections.singletonList(new ByteRange(0, 9)))));
+
+		headers.set("If-Range", HttpDate.format(LAST_MODIFIED - 1000));
+		assertThat(ranges(), is(nullValue()));
+	}
+
+	private void withRange(String range) {
+		headers.set("Range", range);
+	}
+
+	private List<ByteRange> ranges() {
+		return RangeRequest.ranges(request, LENGTH, ETAG, LAST_MODIFIED);
+	}
+}
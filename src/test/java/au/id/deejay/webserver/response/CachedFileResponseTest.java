@@ -0,0 +1,61 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpVersion;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class CachedFileResponseTest {
+
+	private Path file;
+	private CachedFileResponse response;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("cached", ".txt");
+		Files.write(file, "cached content".getBytes(UTF_8));
+		response = new FileCache(1024, 1024).get(file.toFile(), HttpVersion.HTTP_1_0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.delete(file);
+	}
+
+	@Test
+	public void testStreamCanBeReadRepeatedly() throws Exception {
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("cached content"));
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("cached content"));
+	}
+
+	@Test
+	public void testVersion() throws Exception {
+		assertThat(response.version(), is(HttpVersion.HTTP_1_0));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testHeadersAreShared() throws Exception {
+		response.headers().set("Content-type", "text/html");
+	}
+
+	@Test
+	public void testWithHeaderCopiesHeaders() throws Exception {
+		CachedFileResponse copy = response.withHeader("Vary", "Accept-Encoding");
+
+		assertThat(copy.headers().value("Vary"), is("Accept-Encoding"));
+		assertThat(copy.headers().value("ETag"), is(response.etag()));
+		assertThat(response.headers().contains("Vary"), is(false));
+		assertThat(IOUtils.toString(copy.stream(), UTF_8), is("cached content"));
+	}
+}
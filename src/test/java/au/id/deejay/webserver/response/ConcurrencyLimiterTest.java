@@ -0,0 +1,135 @@
+package au.id.deejay.webserver.response;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * @author David Jessup
+ */
+public class ConcurrencyLimiterTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+	@Test
+	public void testRequestsBeyondLimitAreRejected() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, 100);
+
+		assertThat(limiter.tryAcquire(), is(true));
+		assertThat(limiter.tryAcquire(), is(true));
+		assertThat(limiter.tryAcquire(), is(false));
+		assertThat(limiter.inFlight(), is(2));
+
+		limiter.release(FAST);
+		assertThat(limiter.tryAcquire(), is(true));
+	}
+
+	@Test
+	public void testLimitGrowsWhileLatencyIsSteady() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 100, 10);
+
+		for (int i = 0; i < 20; i++) {
+			saturate(limiter, FAST);
+		}
+
+		assertThat(limiter.limit(), is(greaterThan(4)));
+	}
+
+	@Test
+	public void testLimitShrinksWhenLatencyRises() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(40, 100, 10);
+		saturate(limiter, FAST);
+		int limit = limiter.limit();
+
+		for (int i = 0; i < 20; i++) {
+			saturate(limiter, SLOW);
+		}
+
+		assertThat(limiter.limit(), is(lessThan(limit / 2)));
+		assertThat(limiter.limit(), is(greaterThan(0)));
+	}
+
+	@Test
+	public void testLimitDoesNotGrowWhileUnderused() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 100, 10);
+
+		// One request at a time can't show whether the handlers would cope with more
+		for (int i = 0; i < 100; i++) {
+			limiter.tryAcquire();
+			limiter.release(FAST);
+		}
+
+		assertThat(limiter.limit(), is(10));
+	}
+
+	@Test
+	public void testBaselineIsLowestRecentAverage() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, 1);
+		limiter.tryAcquire();
+		limiter.release(FAST);
+
+		// Mostly slow windows, with an occasional fast one, don't drag the baseline up
+		for (int i = 1; i <= 100; i++) {
+			limiter.tryAcquire();
+			limiter.release(i % 10 == 5 ? FAST : SLOW);
+		}
+		assertThat(limiter.baselineNanos(), is((double) FAST));
+
+		// ...but once every recent window is slow, the baseline follows them
+		for (int i = 0; i < 100; i++) {
+			limiter.tryAcquire();
+			limiter.release(SLOW);
+		}
+		assertThat(limiter.baselineNanos(), is((double) SLOW));
+	}
+
+	@Test
+	public void testLimitNeverExceedsMaximum() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 10, 10);
+
+		for (int i = 0; i < 50; i++) {
+			saturate(limiter, FAST);
+		}
+
+		assertThat(limiter.limit(), is(10));
+	}
+
+	@Test
+	public void testInitialLimitIsCappedByMaximum() throws Exception {
+		assertThat(new ConcurrencyLimiter(5).limit(), is(5));
+		assertThat(new ConcurrencyLimiter(1000).limit(), is(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumLessThanOneThrowsException() throws Exception {
+		new ConcurrencyLimiter(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitialLimitAboveMaximumThrowsException() throws Exception {
+		new ConcurrencyLimiter(20, 10, 10);
+	}
+
+	/**
+	 * Admits as many requests as the limit allows, then releases them all, until a whole window has been recorded.
+	 */
+	private static void saturate(ConcurrencyLimiter limiter, long nanos) {
+		int released = 0;
+		while (released < 10) {
+			int admitted = 0;
+			while (limiter.tryAcquire()) {
+				admitted++;
+			}
+			for (int i = 0; i < admitted; i++) {
+				limiter.release(nanos);
+			}
+			released += admitted;
+		}
+	}
+}
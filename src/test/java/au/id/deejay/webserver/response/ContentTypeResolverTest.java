@@ -0,0 +1,128 @@
+package au.id.deejay.webserver.response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author David Jessup
+ */
+public class ContentTypeResolverTest {
+
+	private ContentTypeResolver contentTypes;
+	private Path directory;
+
+	@Before
+	public void setUp() throws Exception {
+		contentTypes = new ContentTypeResolver();
+		directory = Files.createTempDirectory("content-types");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : directory.toFile().listFiles()) {
+			Files.delete(file.toPath());
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testTypeFromExtension() throws Exception {
+		assertThat(contentTypes.contentType(new File("/not/a/file.html")), is("text/html"));
+		assertThat(contentTypes.contentType(new File("/not/a/file.CSS")), is("text/css"));
+		assertThat(contentTypes.contentType(new File("/not/a/file.js")), is("application/javascript"));
+		assertThat(contentTypes.contentType(new File("/not/a/file.woff2")), is("font/woff2"));
+	}
+
+	@Test
+	public void testExtensionFastPathDoesNotReadFile() throws Exception {
+		File file = spy(new File("/not/a/file.png"));
+
+		assertThat(contentTypes.contentType(file), is("image/png"));
+
+		verify(file, never()).toURI();
+		verify(file, never()).lastModified();
+	}
+
+	@Test
+	public void testTypeFromContent() throws Exception {
+		File file = withFile("README", "Some plain text");
+		assertThat(contentTypes.contentType(file), is("text/plain"));
+
+		// Unrecognised extensions also fall back to the content
+		file = withFile("notes.unknownextension", "<html><body>Hello</body></html>");
+		assertThat(contentTypes.contentType(file), is("text/html"));
+	}
+
+	@Test
+	public void testSniffedTypeIsCached() throws Exception {
+		File file = spy(withFile("README", "Some plain text"));
+
+		contentTypes.contentType(file);
+		contentTypes.contentType(file);
+
+		// Content is only examined once
+		verify(file, times(1)).toURI();
+	}
+
+	@Test
+	public void testSniffedTypeIsRedetectedWhenFileChanges() throws Exception {
+		File file = spy(withFile("README", "Some plain text"));
+
+		contentTypes.contentType(file);
+		long modified = file.lastModified() + 1000;
+		when(file.lastModified()).thenReturn(modified);
+		contentTypes.contentType(file);
+
+		verify(file, times(2)).toURI();
+	}
+
+	@Test
+	public void testCacheIsBounded() throws Exception {
+		contentTypes = new ContentTypeResolver(1);
+		File first = spy(withFile("first", "Some plain text"));
+		File second = spy(withFile("second", "Some more plain text"));
+
+		contentTypes.contentType(first);
+		contentTypes.contentType(second);
+		contentTypes.contentType(first);
+
+		// The first file was evicted by the second, and had to be sniffed again
+		verify(first, times(2)).toURI();
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnreadableFileThrowsException() throws Exception {
+		File file = spy(withFile("README", "Some plain text"));
+		when(file.toURI()).thenThrow(IOException.class);
+
+		contentTypes.contentType(file);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCacheSizeThrowsException() throws Exception {
+		new ContentTypeResolver(-1);
+	}
+
+	@Test
+	public void testDefaultResolverIsShared() throws Exception {
+		assertThat(ContentTypeResolver.defaultResolver(), is(sameInstance(ContentTypeResolver.defaultResolver())));
+	}
+
+	private File withFile(String name, String content) throws IOException {
+		Path file = directory.resolve(name);
+		Files.write(file, content.getBytes(UTF_8));
+		return file.toFile();
+	}
+}
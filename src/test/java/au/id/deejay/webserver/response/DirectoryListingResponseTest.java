@@ -0,0 +1,78 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.exception.ResponseException;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class DirectoryListingResponseTest {
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("listing");
+		Files.createFile(directory.resolve("notes.txt"));
+		Files.createDirectory(directory.resolve("sub"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.delete(directory.resolve("notes.txt"));
+		Files.delete(directory.resolve("sub"));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testListing() throws Exception {
+		DirectoryListingResponse response = new DirectoryListingResponse(directory.toFile(), HttpVersion.HTTP_1_1);
+
+		String html = IOUtils.toString(response.stream(), UTF_8);
+
+		assertThat(response.status(), is(HttpStatus.OK_200));
+		assertThat(response.headers().value("Content-type"), is("text/html"));
+		assertThat(html.startsWith("<h1>Directory listing for: " + directory.toFile().getPath() + "</h1><ol>"), is(true));
+		assertThat(html, containsString("<li><a href=\"./../\">[ Up ]</a></li>"));
+		assertThat(html, containsString("<li><a href=\"./notes.txt\">notes.txt</a></li>"));
+		assertThat(html, containsString("<li><a href=\"./sub/\">sub</a></li>"));
+		assertThat(html.endsWith("</ol>"), is(true));
+	}
+
+	@Test
+	public void testListingIsStreamedWithoutLength() throws Exception {
+		DirectoryListingResponse response = new DirectoryListingResponse(directory.toFile(), HttpVersion.HTTP_1_1);
+
+		assertThat(response.headers().contains("Content-length"), is(false));
+
+		// Single byte reads produce the same listing as bulk reads
+		InputStream stream = response.stream();
+		ByteArrayOutputStream collector = new ByteArrayOutputStream();
+		int b;
+		while ((b = stream.read()) >= 0) {
+			collector.write(b);
+		}
+		assertThat(new String(collector.toByteArray(), UTF_8), is(IOUtils.toString(response.stream(), UTF_8)));
+	}
+
+	@Test(expected = ResponseException.class)
+	public void testUnreadableDirectory() throws Exception {
+		new DirectoryListingResponse(new File(directory.toFile(), "missing"), HttpVersion.HTTP_1_1);
+	}
+}
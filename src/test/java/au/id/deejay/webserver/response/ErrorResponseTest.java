@@ -1,14 +1,18 @@
 package au.id.deejay.webserver.response;
 
 import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.io.ResponseWriter;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -34,6 +38,64 @@ public class ErrorResponseTest {
 		assertErrorResponseBodyContainsErrorDetails(ErrorResponse.HTTP_VERSION_NOT_SUPPORTED_505);
 	}
 
+	@Test
+	public void testErrorResponsesDeclareTheirLength() throws Exception {
+		ErrorResponse response = ErrorResponse.NOT_FOUND_404;
+
+		byte[] body = IOUtils.toByteArray(response.stream());
+
+		assertThat(response.version(), is(HttpVersion.HTTP_1_1));
+		assertThat(response.headers().value("Content-length"), is(String.valueOf(body.length)));
+		assertThat(response.headers().value("Content-type"), is("text/html; charset=utf-8"));
+		assertThat(ResponseWriter.isDelimited(response), is(true));
+	}
+
+	@Test
+	public void testHeadAndBodyAreEncoded() throws Exception {
+		ErrorResponse response = new ErrorResponse(HttpStatus.NOT_FOUND_404, HttpVersion.HTTP_1_1, "<p>Caf\u00e9 introuvable</p>");
+
+		String head = StandardCharsets.UTF_8.decode(response.head()).toString();
+		String body = StandardCharsets.UTF_8.decode(response.body()).toString();
+
+		assertThat(head, is(new String(ResponseWriter.encodeHead(response), StandardCharsets.UTF_8)));
+		assertThat(head, startsWith("HTTP/1.1 404 Not Found"));
+		assertThat(head, containsString("Content-length: " + IOUtils.toByteArray(response.stream()).length));
+		assertThat(body, is("<p>Caf\u00e9 introuvable</p>"));
+	}
+
+	@Test
+	public void testBuffersAreReadOnlyAndRewound() throws Exception {
+		ByteBuffer first = ErrorResponse.BAD_REQUEST_400.head();
+		first.position(first.limit());
+		ErrorResponse.BAD_REQUEST_400.body().position(1);
+
+		ByteBuffer head = ErrorResponse.BAD_REQUEST_400.head();
+		ByteBuffer body = ErrorResponse.BAD_REQUEST_400.body();
+
+		assertThat(head.isReadOnly(), is(true));
+		assertThat(head.position(), is(0));
+		assertThat(body.isReadOnly(), is(true));
+		assertThat(body.position(), is(0));
+	}
+
+	@Test
+	public void testServiceUnavailableAsksClientToRetry() throws Exception {
+		ErrorResponse response = ErrorResponse.serviceUnavailable(30);
+
+		String head = StandardCharsets.UTF_8.decode(response.head()).toString();
+
+		assertThat(response.status(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+		assertThat(response.headers().value("Retry-After"), is("30"));
+		assertThat(response.headers().value("Connection"), is("close"));
+		assertThat(head, containsString("Retry-After: 30"));
+		assertErrorResponseBodyContainsErrorDetails(response);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testHeadersAreUnmodifiable() throws Exception {
+		ErrorResponse.NOT_FOUND_404.headers().set("Connection", "close");
+	}
+
 	private void assertErrorResponseBodyContainsErrorDetails(ErrorResponse errorResponse) throws Exception {
 		InputStream stream = errorResponse.stream();
 		String body = IOUtils.toString(stream, StandardCharsets.UTF_8);
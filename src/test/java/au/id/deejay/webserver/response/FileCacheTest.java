@@ -0,0 +1,257 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class FileCacheTest {
+
+	private Path directory;
+	private FileCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("filecache");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = directory.toFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Files.delete(file.toPath());
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testCachedResponseMatchesFileResponse() throws Exception {
+		withCache(1024, 1024);
+		File file = file("style.css", "body {}");
+
+		CachedFileResponse cached = cache.get(file, HttpVersion.HTTP_1_1);
+		FileResponse uncached = new FileResponse(file, HttpVersion.HTTP_1_1);
+
+		assertThat(cached.status(), is(HttpStatus.OK_200));
+		assertThat(cached.version(), is(HttpVersion.HTTP_1_1));
+		assertThat(cached.headers(), is(uncached.headers()));
+		assertThat(cached.etag(), is(uncached.etag()));
+		assertThat(cached.lastModified(), is(uncached.lastModified()));
+		assertThat(IOUtils.toString(cached.stream(), UTF_8), is("body {}"));
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		withCache(1024, 1024);
+		File file = file("style.css", "body {}");
+
+		cache.get(file, HttpVersion.HTTP_1_1);
+		cache.get(file, HttpVersion.HTTP_1_1);
+		cache.get(file, HttpVersion.HTTP_1_0);
+
+		assertThat(cache.misses(), is(1L));
+		assertThat(cache.hits(), is(2L));
+		assertThat(cache.size(), is(1));
+		assertThat(cache.bytes(), is(7L));
+	}
+
+	@Test
+	public void testCachedFileIsNotReadAgain() throws Exception {
+		withCache(1024, 1024, FileCache.DEFAULT_REVALIDATE_MILLIS);
+		File file = file("style.css", "body {}");
+		long lastModified = file.lastModified();
+
+		cache.get(file, HttpVersion.HTTP_1_1);
+
+		// Changes within the revalidation interval aren't noticed
+		Files.write(file.toPath(), "p {}".getBytes(UTF_8));
+		assertThat(file.setLastModified(lastModified + 5000), is(true));
+
+		assertThat(IOUtils.toString(cache.get(file, HttpVersion.HTTP_1_1).stream(), UTF_8), is("body {}"));
+	}
+
+	@Test
+	public void testChangedFileIsReloaded() throws Exception {
+		withCache(1024, 1024);
+		File file = file("style.css", "body {}");
+		long lastModified = file.lastModified();
+
+		String etag = cache.get(file, HttpVersion.HTTP_1_1).etag();
+
+		Files.write(file.toPath(), "p {}".getBytes(UTF_8));
+		assertThat(file.setLastModified(lastModified + 5000), is(true));
+
+		CachedFileResponse response = cache.get(file, HttpVersion.HTTP_1_1);
+
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("p {}"));
+		assertThat(response.etag(), is(not(etag)));
+		assertThat(cache.misses(), is(2L));
+		assertThat(cache.bytes(), is(4L));
+	}
+
+	@Test
+	public void testDeletedFileIsDropped() throws Exception {
+		withCache(1024, 1024);
+		File file = file("style.css", "body {}");
+
+		cache.get(file, HttpVersion.HTTP_1_1);
+		Files.delete(file.toPath());
+
+		assertThat(cache.get(file, HttpVersion.HTTP_1_1), is(nullValue()));
+		assertThat(cache.size(), is(0));
+		assertThat(cache.bytes(), is(0L));
+	}
+
+	@Test
+	public void testLargeFilesAreNotCached() throws Exception {
+		withCache(1024, 4);
+		File file = file("style.css", "body {}");
+
+		assertThat(cache.get(file, HttpVersion.HTTP_1_1), is(nullValue()));
+		assertThat(cache.size(), is(0));
+		assertThat(cache.misses(), is(1L));
+	}
+
+	@Test
+	public void testDirectoriesAndMissingFilesAreNotCached() throws Exception {
+		withCache(1024, 1024);
+
+		assertThat(cache.get(directory.toFile(), HttpVersion.HTTP_1_1), is(nullValue()));
+		assertThat(cache.get(new File(directory.toFile(), "missing.css"), HttpVersion.HTTP_1_1), is(nullValue()));
+		assertThat(cache.size(), is(0));
+		assertThat(cache.misses(), is(0L));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedFilesAreEvicted() throws Exception {
+		withCache(10, 10);
+		File first = file("first.txt", "1111");
+		File second = file("second.txt", "2222");
+		File third = file("third.txt", "3333");
+
+		cache.get(first, HttpVersion.HTTP_1_1);
+		cache.get(second, HttpVersion.HTTP_1_1);
+		// Use the first file again, so the second is the least recently used
+		cache.get(first, HttpVersion.HTTP_1_1);
+		cache.get(third, HttpVersion.HTTP_1_1);
+
+		assertThat(cache.evictions(), is(1L));
+		assertThat(cache.size(), is(2));
+		assertThat(cache.bytes(), is(8L));
+
+		assertThat(cache.get(first, HttpVersion.HTTP_1_1), is(notNullValue()));
+		assertThat(cache.hits(), is(2L));
+		cache.get(second, HttpVersion.HTTP_1_1);
+		assertThat(cache.misses(), is(4L));
+	}
+
+	@Test
+	public void testLargerFilesAreCachedOffHeap() throws Exception {
+		cache = new FileCache(1024, 4, 1024, 16, 0, new ContentTypeResolver());
+		File small = file("small.txt", "1111");
+		File medium = file("medium.txt", "0123456789");
+		File large = file("large.txt", "0123456789abcdefghij");
+
+		CachedFileResponse smallResponse = cache.get(small, HttpVersion.HTTP_1_1);
+		CachedFileResponse mediumResponse = cache.get(medium, HttpVersion.HTTP_1_1);
+
+		assertThat(smallResponse.body().isDirect(), is(false));
+		assertThat(mediumResponse.body().isDirect(), is(true));
+		assertThat(IOUtils.toString(mediumResponse.stream(), UTF_8), is("0123456789"));
+		assertThat(cache.get(large, HttpVersion.HTTP_1_1), is(nullValue()));
+
+		assertThat(cache.size(), is(2));
+		assertThat(cache.bytes(), is(14L));
+		assertThat(cache.offHeapSize(), is(1));
+		assertThat(cache.offHeapBytes(), is(10L));
+	}
+
+	@Test
+	public void testTiersAreEvictedIndependently() throws Exception {
+		cache = new FileCache(8, 4, 20, 10, 0, new ContentTypeResolver());
+		File small = file("small.txt", "1111");
+		File first = file("first.txt", "0123456789");
+		File second = file("second.txt", "abcdefghij");
+		File third = file("third.txt", "ABCDEFGHIJ");
+
+		cache.get(small, HttpVersion.HTTP_1_1);
+		cache.get(first, HttpVersion.HTTP_1_1);
+		cache.get(second, HttpVersion.HTTP_1_1);
+		cache.get(third, HttpVersion.HTTP_1_1);
+
+		// The small file is the least recently used, but only the off-heap tier is over budget
+		assertThat(cache.evictions(), is(1L));
+		assertThat(cache.offHeapSize(), is(2));
+		assertThat(cache.offHeapBytes(), is(20L));
+		assertThat(cache.size(), is(3));
+	}
+
+	@Test
+	public void testBodyViewsAreIndependent() throws Exception {
+		withCache(1024, 1024);
+		File file = file("style.css", "body {}");
+
+		CachedFileResponse response = cache.get(file, HttpVersion.HTTP_1_1);
+		response.body().position(7);
+
+		assertThat(response.body().remaining(), is(7));
+		assertThat(response.body().isReadOnly(), is(true));
+	}
+
+	@Test
+	public void testPrecompressedVariants() throws Exception {
+		withCache(1024, 1024);
+		file("style.css", "body {}");
+		File encoded = file("style.css.gz", "compressed");
+
+		CachedFileResponse response = cache.get(encoded, "gzip", true, HttpVersion.HTTP_1_1);
+
+		assertThat(response.headers().value("Content-type"), is("text/css"));
+		assertThat(response.headers().value("Content-Encoding"), is("gzip"));
+		assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("compressed"));
+
+		// A direct request for the compressed file itself is a different variant
+		response = cache.get(encoded, HttpVersion.HTTP_1_1);
+
+		assertThat(response.headers().contains("Content-Encoding"), is(false));
+		assertThat(response.headers().contains("Vary"), is(false));
+		assertThat(cache.misses(), is(2L));
+		assertThat(cache.size(), is(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSizeThrowsException() throws Exception {
+		new FileCache(-1, 1024);
+	}
+
+	private void withCache(long maxBytes, long maxEntrySize) {
+		withCache(maxBytes, maxEntrySize, 0);
+	}
+
+	private void withCache(long maxBytes, long maxEntrySize, long revalidateMillis) {
+		cache = new FileCache(maxBytes, maxEntrySize, 0, 0, revalidateMillis, new ContentTypeResolver());
+	}
+
+	private File file(String name, String content) throws Exception {
+		return Files.write(directory.resolve(name), content.getBytes(UTF_8)).toFile();
+	}
+}
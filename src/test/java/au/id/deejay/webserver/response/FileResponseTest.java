@@ -3,6 +3,7 @@ package au.id.deejay.webserver.response;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
 import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.headers.HttpDate;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
@@ -11,6 +12,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -58,6 +61,30 @@ public class FileResponseTest {
 		response.stream();
 	}
 
+	@Test
+	public void testFileRegion() throws Exception {
+		withIndexFile();
+		withResponse();
+
+		assertThat(response.position(), is(0L));
+		assertThat(response.count(), is(file.length()));
+
+		try (FileChannel channel = response.channel()) {
+			assertThat(IOUtils.contentEquals(Channels.newInputStream(channel), new FileInputStream(file)), is(true));
+		}
+	}
+
+	@Test(expected = ResponseException.class)
+	public void testMissingFileChannelThrowsException() throws Exception {
+		withIndexFile();
+		withResponse();
+
+		// Simulate the file being removed in between the request construction and channel call
+		when(file.toPath()).thenReturn(new File("/not/a/file").toPath());
+
+		response.channel();
+	}
+
 	@Test
 	public void testContentLengthHeader() throws Exception {
 		withIndexFile();
@@ -67,6 +94,17 @@ public class FileResponseTest {
 		assertThat(response.headers().value("Content-length"), is(String.valueOf(file.length())));
 	}
 
+	@Test
+	public void testValidatorHeaders() throws Exception {
+		withIndexFile();
+		withResponse();
+
+		assertThat(response.lastModified(), is(file.lastModified()));
+		assertThat(response.headers().value("Last-Modified"), is(HttpDate.format(file.lastModified())));
+		assertThat(response.headers().value("ETag"), is(response.etag()));
+		assertThat(response.etag(), is("\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\""));
+	}
+
 	@Test
 	public void testContentTypeHeader() throws Exception {
 		withIndexFile();
@@ -76,15 +114,27 @@ public class FileResponseTest {
 		assertThat(response.headers().value("Content-type"), is("text/html"));
 	}
 
+	@Test
+	public void testContentTypeIsResolvedWithResolver() throws Exception {
+		withIndexFile();
+		ContentTypeResolver contentTypes = mock(ContentTypeResolver.class);
+		when(contentTypes.contentType(file)).thenReturn("application/x-test");
+
+		response = new FileResponse(file, HttpVersion.HTTP_1_1, contentTypes);
+
+		assertThat(response.headers().value("Content-type"), is("application/x-test"));
+	}
+
 	@Test(expected = ResponseException.class)
 	public void testUndetectableContentTypeThrowException() throws Exception {
 		withIndexFile();
 
 		// Another cludged exception to simulate a real-world error state when attempting to determine the MIME type of
 		// a file.
-		when(file.toURI()).thenThrow(IOException.class);
+		ContentTypeResolver contentTypes = mock(ContentTypeResolver.class);
+		when(contentTypes.contentType(file)).thenThrow(IOException.class);
 
-		withResponse();
+		response = new FileResponse(file, HttpVersion.HTTP_1_1, contentTypes);
 	}
 
 	private File getDocrootFile(String path) throws Exception {
@@ -0,0 +1,25 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class HttpResponseTest {
+
+	@Test
+	public void testContentLengthCountsEncodedBytes() throws Exception {
+		HttpResponse response = new HttpResponse(HttpStatus.OK_200, "na\u00efve caf\u00e9 \u2615", HttpVersion.HTTP_1_1);
+
+		byte[] body = IOUtils.toByteArray(response.stream());
+
+		assertThat(body.length, is(16));
+		assertThat(response.headers().value("Content-length"), is("16"));
+	}
+}
@@ -0,0 +1,77 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.request.ByteRange;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class MultipartRangeResponseTest {
+
+	private Path file;
+	private MultipartRangeResponse response;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("multipart", ".txt");
+		Files.write(file, "0123456789abcdefghij".getBytes(UTF_8));
+		response = new MultipartRangeResponse(new FileResponse(file.toFile(), HttpVersion.HTTP_1_1),
+											  Arrays.asList(new ByteRange(0, 3), new ByteRange(15, 19)));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.delete(file);
+	}
+
+	@Test
+	public void testHeaders() throws Exception {
+		assertThat(response.status(), is(HttpStatus.PARTIAL_CONTENT_206));
+		assertThat(response.headers().value("Content-type"), startsWith("multipart/byteranges; boundary="));
+		assertThat(response.headers().contains("ETag"), is(true));
+		assertThat(response.headers().contains("Content-Range"), is(false));
+	}
+
+	@Test
+	public void testBody() throws Exception {
+		String boundary = response.headers().value("Content-type").substring("multipart/byteranges; boundary=".length());
+
+		String expectedBody = CRLF + "--" + boundary + CRLF
+				+ "Content-type: text/plain" + CRLF
+				+ "Content-Range: bytes 0-3/20" + CRLF
+				+ CRLF
+				+ "0123"
+				+ CRLF + "--" + boundary + CRLF
+				+ "Content-type: text/plain" + CRLF
+				+ "Content-Range: bytes 15-19/20" + CRLF
+				+ CRLF
+				+ "fghij"
+				+ CRLF + "--" + boundary + "--" + CRLF;
+
+		byte[] body = IOUtils.toByteArray(response.stream());
+
+		assertThat(new String(body, UTF_8), is(expectedBody));
+		assertThat(response.headers().value("Content-length"), is(String.valueOf(body.length)));
+	}
+
+	@Test
+	public void testStreamCanBeReadRepeatedly() throws Exception {
+		String first = IOUtils.toString(response.stream(), UTF_8);
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is(first));
+	}
+}
@@ -0,0 +1,36 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.headers.HttpHeader;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class NotModifiedResponseTest {
+
+	@Test
+	public void testValidatorsAreRetained() throws Exception {
+		HttpHeaders headers = new HttpHeaders(
+				new HttpHeader("Content-length", "11"),
+				new HttpHeader("Content-type", "text/plain"),
+				new HttpHeader("ETag", "\"abc\""),
+				new HttpHeader("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT"));
+		HttpResponse original = new HttpResponse(HttpStatus.OK_200, headers, "Hello world", HttpVersion.HTTP_1_1);
+
+		NotModifiedResponse response = new NotModifiedResponse(original);
+
+		assertThat(response.status(), is(HttpStatus.NOT_MODIFIED_304));
+		assertThat(response.version(), is(HttpVersion.HTTP_1_1));
+		assertThat(response.headers().value("ETag"), is("\"abc\""));
+		assertThat(response.headers().value("Last-Modified"), is("Sun, 06 Nov 1994 08:49:37 GMT"));
+		assertThat(response.headers().contains("Content-length"), is(false));
+		assertThat(response.headers().contains("Content-type"), is(false));
+		assertThat(response.stream().read(), is(-1));
+	}
+}
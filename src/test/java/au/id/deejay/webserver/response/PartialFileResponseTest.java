@@ -0,0 +1,63 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.request.ByteRange;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class PartialFileResponseTest {
+
+	private Path file;
+	private PartialFileResponse response;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("partial", ".txt");
+		Files.write(file, "0123456789abcdefghij".getBytes(UTF_8));
+		response = new PartialFileResponse(new FileResponse(file.toFile(), HttpVersion.HTTP_1_1), new ByteRange(5, 14));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.delete(file);
+	}
+
+	@Test
+	public void testHeaders() throws Exception {
+		assertThat(response.status(), is(HttpStatus.PARTIAL_CONTENT_206));
+		assertThat(response.version(), is(HttpVersion.HTTP_1_1));
+		assertThat(response.headers().value("Content-length"), is("10"));
+		assertThat(response.headers().value("Content-Range"), is("bytes 5-14/20"));
+		assertThat(response.headers().value("Content-type"), is("text/plain"));
+		assertThat(response.headers().contains("ETag"), is(true));
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		assertThat(IOUtils.toString(response.stream(), UTF_8), is("56789abcde"));
+	}
+
+	@Test
+	public void testFileRegion() throws Exception {
+		assertThat(response.position(), is(5L));
+		assertThat(response.count(), is(10L));
+
+		try (FileChannel channel = response.channel()) {
+			assertThat(channel.size(), is(20L));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class PrecompressedFileResponseTest {
+
+	private Path directory;
+	private File encodedFile;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("precompressed");
+		Files.write(directory.resolve("style.css"), "body {}".getBytes(UTF_8));
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write("body {}".getBytes(UTF_8));
+		}
+		encodedFile = Files.write(directory.resolve("style.css.gz"), compressed.toByteArray()).toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.delete(directory.resolve("style.css"));
+		Files.delete(directory.resolve("style.css.gz"));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testHeaders() throws Exception {
+		PrecompressedFileResponse response = new PrecompressedFileResponse(encodedFile, "gzip", HttpVersion.HTTP_1_1);
+
+		assertThat(response.status(), is(HttpStatus.OK_200));
+		assertThat(response.headers().value("Content-type"), is("text/css"));
+		assertThat(response.headers().value("Content-Encoding"), is("gzip"));
+		assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+		assertThat(response.headers().value("Content-length"), is(String.valueOf(encodedFile.length())));
+		assertThat(response.etag(), is(new FileResponse(encodedFile, HttpVersion.HTTP_1_1).etag()));
+	}
+
+	@Test
+	public void testBody() throws Exception {
+		PrecompressedFileResponse response = new PrecompressedFileResponse(encodedFile, "gzip", HttpVersion.HTTP_1_1);
+
+		assertThat(IOUtils.toString(new GZIPInputStream(response.stream()), UTF_8), is("body {}"));
+		assertThat(response.count(), is(encodedFile.length()));
+	}
+}
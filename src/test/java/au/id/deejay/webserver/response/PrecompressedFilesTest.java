@@ -0,0 +1,106 @@
+package au.id.deejay.webserver.response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class PrecompressedFilesTest {
+
+	private Path directory;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("precompressed");
+		file = file("style.css", 0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = directory.toFile().listFiles();
+		if (files != null) {
+			for (File child : files) {
+				Files.delete(child.toPath());
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testNoPrecompressedCopies() throws Exception {
+		assertThat(new PrecompressedFiles().codings(file).length, is(0));
+	}
+
+	@Test
+	public void testPrecompressedCopiesAreFoundInOrderOfPreference() throws Exception {
+		file("style.css.gz", 1000);
+		file("style.css.br", 1000);
+
+		assertThat(new PrecompressedFiles().codings(file), is(new String[]{"br", "gzip"}));
+	}
+
+	@Test
+	public void testOutOfDateCopiesAreIgnored() throws Exception {
+		file("style.css.gz", -5000);
+
+		assertThat(new PrecompressedFiles().codings(file).length, is(0));
+	}
+
+	@Test
+	public void testMissingFilesAndDirectoriesHaveNoCopies() throws Exception {
+		PrecompressedFiles precompressedFiles = new PrecompressedFiles();
+
+		assertThat(precompressedFiles.codings(new File(directory.toFile(), "missing.css")).length, is(0));
+		assertThat(precompressedFiles.codings(directory.toFile()).length, is(0));
+	}
+
+	@Test
+	public void testCopiesAreRememberedUntilRevalidated() throws Exception {
+		PrecompressedFiles remembering = new PrecompressedFiles(16, FileCache.DEFAULT_REVALIDATE_MILLIS);
+		PrecompressedFiles revalidating = new PrecompressedFiles(16, 0);
+
+		assertThat(remembering.codings(file).length, is(0));
+		assertThat(revalidating.codings(file).length, is(0));
+
+		file("style.css.gz", 1000);
+
+		assertThat(remembering.codings(file).length, is(0));
+		assertThat(revalidating.codings(file), is(new String[]{"gzip"}));
+	}
+
+	@Test
+	public void testEncodedAndOriginalFiles() throws Exception {
+		PrecompressedFiles precompressedFiles = new PrecompressedFiles();
+
+		File encoded = precompressedFiles.encodedFile(file, "gzip");
+
+		assertThat(encoded.getName(), is("style.css.gz"));
+		assertThat(precompressedFiles.encodedFile(file, "br").getName(), is("style.css.br"));
+		assertThat(PrecompressedFiles.originalFile(encoded), is(file));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedCodingThrowsException() throws Exception {
+		new PrecompressedFiles().encodedFile(file, "deflate");
+	}
+
+	/**
+	 * Creates a file, modified a number of milliseconds after a fixed time.
+	 */
+	private File file(String name, long modifiedOffset) throws Exception {
+		File created = Files.write(directory.resolve(name), name.getBytes(UTF_8)).toFile();
+		assertThat(created.setLastModified(1500000000000L + modifiedOffset), is(true));
+		return created;
+	}
+}
@@ -0,0 +1,255 @@
+package au.id.deejay.webserver.response;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.headers.Headers;
+import au.id.deejay.webserver.headers.HttpHeaders;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class ResponseCompressorTest {
+
+	private static final String BODY = repeat("The quick brown fox jumps over the lazy dog. ", 100);
+
+	private ResponseCompressor compressor;
+	private Request request;
+	private Headers requestHeaders;
+
+	@Before
+	public void setUp() throws Exception {
+		compressor = new ResponseCompressor();
+		requestHeaders = new HttpHeaders();
+		request = mock(Request.class);
+		when(request.headers()).thenReturn(requestHeaders);
+		when(request.uri()).thenReturn(new URI("/file.html"));
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip", "deflate");
+		Response original = response("text/html; charset=utf-8", BODY);
+		original.headers().set("Accept-Ranges", "bytes");
+
+		Response compressed = compressor.compress(request, original);
+
+		assertThat(compressed.status(), is(HttpStatus.OK_200));
+		assertThat(compressed.headers().value("Content-Encoding"), is("gzip"));
+		assertThat(compressed.headers().value("Vary"), is("Accept-Encoding"));
+		assertThat(compressed.headers().value("Content-type"), is("text/html; charset=utf-8"));
+		assertThat(compressed.headers().contains("Accept-Ranges"), is(false));
+
+		byte[] body = IOUtils.toByteArray(compressed.stream());
+		assertThat(compressed.headers().value("Content-length"), is(String.valueOf(body.length)));
+		assertThat(body.length, is(lessThan(BODY.length())));
+		assertThat(IOUtils.toString(new GZIPInputStream(compressed.stream()), UTF_8), is(BODY));
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip;q=0.5", "deflate");
+
+		Response compressed = compressor.compress(request, response("application/json", BODY));
+
+		assertThat(compressed.headers().value("Content-Encoding"), is("deflate"));
+		assertThat(IOUtils.toString(new InflaterInputStream(compressed.stream()), UTF_8), is(BODY));
+	}
+
+	@Test
+	public void testBodiesOfUnknownLengthAreCompressedAsTheyAreStreamed() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+		Response original = response("text/html", BODY);
+		original.headers().remove("Content-length");
+
+		Response compressed = compressor.compress(request, original);
+
+		assertThat(compressed, is(instanceOf(CompressedStreamResponse.class)));
+		assertThat(compressed.headers().value("Content-Encoding"), is("gzip"));
+		assertThat(compressed.headers().contains("Content-length"), is(false));
+		assertThat(IOUtils.toString(new GZIPInputStream(compressed.stream()), UTF_8), is(BODY));
+
+		requestHeaders.set("Accept-Encoding", "deflate");
+		compressed = compressor.compress(request, original);
+		assertThat(IOUtils.toString(new InflaterInputStream(compressed.stream()), UTF_8), is(BODY));
+		assertThat(compressor.cacheBytes(), is(0L));
+	}
+
+	@Test
+	public void testBufferBodyMatchesStream() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+
+		Response compressed = compressor.compress(request, response("text/plain", BODY));
+
+		assertThat(compressed, is(instanceOf(CompressedResponse.class)));
+		byte[] buffer = new byte[((CompressedResponse) compressed).body().remaining()];
+		((CompressedResponse) compressed).body().get(buffer);
+		assertThat(buffer, is(IOUtils.toByteArray(compressed.stream())));
+	}
+
+	@Test
+	public void testUncompressedResponseVariesWhenCodingNotAccepted() throws Exception {
+		Response original = response("text/css", BODY);
+
+		Response response = compressor.compress(request, original);
+
+		assertThat(response, is(sameInstance(original)));
+		assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+		assertThat(response.headers().contains("Content-Encoding"), is(false));
+	}
+
+	@Test
+	public void testCachedFileVariesWhenCodingNotAccepted() throws Exception {
+		Path file = Files.createTempFile("compress", ".txt");
+		try {
+			Files.write(file, BODY.getBytes(UTF_8));
+			CachedFileResponse original = new FileCache(1024 * 1024, 1024 * 1024).get(file.toFile(), HttpVersion.HTTP_1_1);
+
+			Response response = compressor.compress(request, original);
+
+			assertThat(response.headers().value("Vary"), is("Accept-Encoding"));
+			assertThat(original.headers().contains("Vary"), is(false));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testUncompressibleResponsesAreUnchanged() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+
+		assertUnchanged(response("image/png", BODY));
+		assertUnchanged(response("text/plain", "too small"));
+
+		Response noType = response("text/plain", BODY);
+		noType.headers().remove("Content-type");
+		assertUnchanged(noType);
+
+		Response encoded = response("text/plain", BODY);
+		encoded.headers().set("Content-Encoding", "br");
+		assertUnchanged(encoded);
+
+		Response notFound = new HttpResponse(HttpStatus.NOT_FOUND_404, BODY, HttpVersion.HTTP_1_1);
+		notFound.headers().set("Content-type", "text/plain");
+		assertUnchanged(notFound);
+	}
+
+	@Test
+	public void testMinSizeAndTypesAreConfigurable() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+		compressor = new ResponseCompressor(1, 0, Collections.singletonList("image/*"), 0);
+
+		assertThat(compressor.compress(request, response("image/bmp", "tiny")).headers().value("Content-Encoding"), is("gzip"));
+		assertUnchanged(response("text/plain", BODY));
+	}
+
+	@Test
+	public void testEntityTagIsWeakened() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+		Response original = response("text/plain", BODY);
+		original.headers().set("ETag", "\"abc\"");
+
+		assertThat(compressor.compress(request, original).headers().value("ETag"), is("W/\"abc\""));
+
+		original.headers().set("ETag", "W/\"abc\"");
+		assertThat(compressor.compress(request, original).headers().value("ETag"), is("W/\"abc\""));
+	}
+
+	@Test
+	public void testFilesAreCompressedOnce() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+		Response original = response("text/plain", BODY);
+		original.headers().set("ETag", "\"v1\"");
+
+		byte[] first = IOUtils.toByteArray(compressor.compress(request, original).stream());
+		assertThat(compressor.cacheBytes(), is((long) first.length));
+
+		// Same path and entity tag, so the cached copy is used rather than the new body
+		Response same = response("text/plain", repeat("Something else entirely. ", 100));
+		same.headers().set("ETag", "\"v1\"");
+		assertThat(IOUtils.toByteArray(compressor.compress(request, same).stream()), is(first));
+
+		// A new entity tag means the file has changed
+		Response changed = response("text/plain", repeat("Something else entirely. ", 100));
+		changed.headers().set("ETag", "\"v2\"");
+		assertThat(IOUtils.toByteArray(compressor.compress(request, changed).stream()), is(not(first)));
+	}
+
+	@Test
+	public void testResponsesWithoutEntityTagsAreNotCached() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+
+		compressor.compress(request, response("text/plain", BODY));
+
+		assertThat(compressor.cacheBytes(), is(0L));
+	}
+
+	@Test
+	public void testCacheIsBounded() throws Exception {
+		requestHeaders.set("Accept-Encoding", "gzip");
+		compressor = new ResponseCompressor(ResponseCompressor.DEFAULT_LEVEL, 0, ResponseCompressor.DEFAULT_TYPES, 200);
+
+		for (int i = 0; i < 20; i++) {
+			Response response = response("text/plain", "Response number " + i);
+			response.headers().set("ETag", "\"" + i + "\"");
+			compressor.compress(request, response);
+		}
+
+		assertThat(compressor.cacheBytes(), is(lessThanOrEqualTo(200L)));
+		assertThat(compressor.cacheBytes() > 0, is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLevel() throws Exception {
+		new ResponseCompressor(0, 0, ResponseCompressor.DEFAULT_TYPES, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSize() throws Exception {
+		new ResponseCompressor(1, -1, ResponseCompressor.DEFAULT_TYPES, 0);
+	}
+
+	private void assertUnchanged(Response response) throws Exception {
+		Response result = compressor.compress(request, response);
+
+		assertThat(result, is(sameInstance(response)));
+		assertThat(result.headers().value("Vary"), is(nullValue()));
+	}
+
+	private static Response response(String contentType, String body) {
+		Response response = new HttpResponse(HttpStatus.OK_200, body, HttpVersion.HTTP_1_1);
+		response.headers().set("Content-type", contentType);
+		return response;
+	}
+
+	private static String repeat(String string, int times) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			builder.append(string);
+		}
+		return builder.toString();
+	}
+}
@@ -1,17 +1,32 @@
 package au.id.deejay.webserver.response;
 
+import au.id.deejay.webserver.api.AsyncRequestHandler;
+import au.id.deejay.webserver.api.HttpMethod;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.Request;
 import au.id.deejay.webserver.api.RequestHandler;
 import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.exception.ResponseException;
+import au.id.deejay.webserver.io.ResponseWriter;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.route.RouteTable;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.net.URI;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -33,6 +48,9 @@ public class ResponseFactoryTest {
 	@Mock
 	private RequestHandler handler3;
 
+	@Mock
+	private AsyncRequestHandler asyncHandler;
+
 	@Mock
 	private Request request;
 
@@ -67,7 +85,175 @@ public class ResponseFactoryTest {
 		assertThat(response.status(), is(HttpStatus.NOT_IMPLEMENTED_501));
 	}
 
+	@Test
+	public void testRoutedRequestsSkipOtherHandlers() throws Exception {
+		RouteTable routes = new RouteTable.Builder()
+				.route(HttpMethod.GET, "/routed", handler1)
+				.fallback(handler2)
+				.build();
+		responseFactory = new ResponseFactory.Builder(routes).serverName(null).build();
+		when(request.method()).thenReturn(HttpMethod.GET);
+		when(request.uri()).thenReturn(new URI("/routed"));
+
+		responseFactory.response(request);
+
+		verify(handler1).handle(request);
+		verify(handler1, never()).canHandle(request);
+		verify(handler2, never()).canHandle(request);
+	}
+
+	@Test(expected = ResponseException.class)
+	public void testHandlerExceptionsAreWrapped() throws Exception {
+		withResponseFactory();
+		when(handler1.canHandle(any())).thenReturn(true);
+		when(handler1.handle(any())).thenThrow(new IllegalStateException());
+
+		responseFactory.response(request);
+	}
+
+	@Test
+	public void testAsyncResponse() throws Exception {
+		withAsyncResponseFactory(1000);
+		Response response = new HttpResponse(HttpStatus.OK_200, "OK", null);
+		CompletableFuture<Response> pending = new CompletableFuture<>();
+		when(asyncHandler.handleAsync(request)).thenReturn(pending);
+
+		CompletableFuture<Response> future = responseFactory.responseAsync(request);
+		assertThat(future.isDone(), is(false));
+
+		pending.complete(response);
+		assertThat(future.join(), is(response));
+		verify(asyncHandler, never()).handle(request);
+	}
+
+	@Test
+	public void testSlowAsyncHandlersTimeOut() throws Exception {
+		withAsyncResponseFactory(10);
+		CompletableFuture<Response> pending = new CompletableFuture<>();
+		when(asyncHandler.handleAsync(request)).thenReturn(pending);
+
+		assertThat(responseFactory.responseAsync(request).join().status(), is(HttpStatus.GATEWAY_TIMEOUT_504));
+		// The handler's stage is cancelled once the timeout response has been completed
+		await().until(pending::isCancelled);
+	}
+
+	@Test
+	public void testRejectedAsyncRequestsAreUnavailable() throws Exception {
+		withAsyncResponseFactory(1000);
+		CompletableFuture<Response> rejected = new CompletableFuture<>();
+		rejected.completeExceptionally(new RejectedExecutionException());
+		when(asyncHandler.handleAsync(request)).thenReturn(rejected);
+
+		assertThat(responseFactory.responseAsync(request).join().status(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+		assertThat(responseFactory.response(request).status(), is(HttpStatus.SERVICE_UNAVAILABLE_503));
+	}
+
+	@Test
+	public void testAsyncHandlerExceptionsAreWrapped() throws Exception {
+		withAsyncResponseFactory(1000);
+		CompletableFuture<Response> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new IllegalStateException());
+		when(asyncHandler.handleAsync(request)).thenReturn(failed);
+
+		CompletableFuture<Response> future = responseFactory.responseAsync(request);
+		assertThat(future.isCompletedExceptionally(), is(true));
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			assertThat(e.getCause(), is(instanceOf(ResponseException.class)));
+			assertThat(e.getCause().getCause(), is(instanceOf(IllegalStateException.class)));
+		}
+	}
+
+	@Test
+	public void testSynchronousResponsesAreCompletedImmediately() throws Exception {
+		withResponseFactory();
+		when(handler1.canHandle(any())).thenReturn(false);
+		when(handler2.canHandle(any())).thenReturn(false);
+
+		CompletableFuture<Response> future = responseFactory.responseAsync(request);
+
+		assertThat(future.isDone(), is(true));
+		assertThat(future.join().status(), is(HttpStatus.NOT_IMPLEMENTED_501));
+	}
+
+	@Test
+	public void testHandlersAreTimed() throws Exception {
+		ServerMetrics metrics = new ServerMetrics();
+		responseFactory = new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).metrics(metrics).build();
+		when(handler1.canHandle(any())).thenReturn(true);
+		when(handler1.name()).thenReturn("First");
+
+		responseFactory.response(request);
+
+		assertThat(metrics.handled("First"), is(1L));
+		assertThat(metrics.handlerTime().count(), is(1L));
+	}
+
+	@Test
+	public void testRequestsBeyondConcurrencyLimitAreNotAdmitted() throws Exception {
+		ServerMetrics metrics = new ServerMetrics();
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+		responseFactory = new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).metrics(metrics).concurrencyLimiter(limiter).build();
+
+		assertThat(responseFactory.admit(), is(true));
+		assertThat(responseFactory.admit(), is(false));
+		assertThat(metrics.shed(ShedReason.CONCURRENCY_LIMIT), is(1L));
+
+		responseFactory.sample(1000);
+		responseFactory.release();
+		assertThat(limiter.inFlight(), is(0));
+		assertThat(responseFactory.admit(), is(true));
+	}
+
+	@Test
+	public void testEveryRequestIsAdmittedWithoutConcurrencyLimit() throws Exception {
+		withResponseFactory();
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(responseFactory.admit(), is(true));
+		}
+		responseFactory.sample(1000);
+		responseFactory.release();
+	}
+
+	@Test
+	public void testConcurrencyLimitIsExported() throws Exception {
+		ServerMetrics metrics = new ServerMetrics();
+		new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).metrics(metrics).concurrencyLimiter(new ConcurrencyLimiter(5, 10, 10)).build();
+
+		StringBuilder out = new StringBuilder();
+		metrics.writeTo(out);
+
+		assertThat(out.toString().contains("http_server_concurrency_limit 5\n"), is(true));
+	}
+
+	@Test
+	public void testBuilderDefaults() throws Exception {
+		responseFactory = new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).build();
+
+		assertThat(responseFactory.serverName(), is(ResponseWriter.DEFAULT_SERVER_NAME));
+		assertThat(responseFactory.metrics(), is(notNullValue()));
+		assertThat(responseFactory.accessLog(), is(nullValue()));
+		assertThat(responseFactory.concurrencyLimiter(), is(nullValue()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullMetricsThrowsException() throws Exception {
+		new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).metrics(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTimeout() throws Exception {
+		new ResponseFactory.Builder(RouteTable.of(Arrays.asList(handler1))).timeoutMillis(0);
+	}
+
 	private void withResponseFactory() {
 		responseFactory = new ResponseFactory(Arrays.asList(handler1, handler2));
 	}
-}
\ No newline at end of file
+
+	private void withAsyncResponseFactory(long timeoutMillis) {
+		responseFactory = new ResponseFactory.Builder(new RouteTable.Builder().fallback(asyncHandler).build()).timeoutMillis(timeoutMillis).build();
+		when(asyncHandler.canHandle(any())).thenReturn(true);
+	}
+}
@@ -0,0 +1,102 @@
+package au.id.deejay.webserver.route;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class RouteTableTest {
+
+	private RequestHandler routed;
+	private RequestHandler fallback1;
+	private RequestHandler fallback2;
+	private RouteTable routes;
+
+	@Before
+	public void setUp() throws Exception {
+		routed = mock(RequestHandler.class);
+		fallback1 = mock(RequestHandler.class);
+		fallback2 = mock(RequestHandler.class);
+		routes = new RouteTable.Builder()
+				.route(HttpMethod.GET, "/serverInfo", routed)
+				.fallback(fallback1)
+				.fallback(fallback2)
+				.build();
+	}
+
+	@Test
+	public void testRoutedHandlersAreFoundWithoutAskingFallbacks() throws Exception {
+		assertThat(routes.handler(request(HttpMethod.GET, "/serverInfo?verbose")), is(sameInstance(routed)));
+
+		verify(routed, never()).canHandle(any());
+		verify(fallback1, never()).canHandle(any());
+	}
+
+	@Test
+	public void testFallbacksAreAskedInOrder() throws Exception {
+		Request request = request(HttpMethod.POST, "/serverInfo");
+		when(fallback1.canHandle(request)).thenReturn(false);
+		when(fallback2.canHandle(request)).thenReturn(true);
+
+		assertThat(routes.handler(request), is(sameInstance(fallback2)));
+	}
+
+	@Test
+	public void testNoHandler() throws Exception {
+		assertThat(routes.handler(request(HttpMethod.GET, "/missing")), is(nullValue()));
+	}
+
+	@Test
+	public void testRequestWithoutUriUsesFallbacks() throws Exception {
+		Request request = mock(Request.class);
+		when(fallback1.canHandle(request)).thenReturn(true);
+
+		assertThat(routes.handler(request), is(sameInstance(fallback1)));
+	}
+
+	@Test
+	public void testOf() throws Exception {
+		RouteTable table = RouteTable.of(Arrays.asList(fallback1, fallback2));
+		Request request = request(HttpMethod.GET, "/");
+		when(fallback2.canHandle(request)).thenReturn(true);
+
+		assertThat(table.handler(request), is(sameInstance(fallback2)));
+		assertThat(table.isEmpty(), is(false));
+		assertThat(RouteTable.of(Collections.emptyList()).isEmpty(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullHandler() throws Exception {
+		new RouteTable.Builder().route(HttpMethod.GET, "/", null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPatternIsRejectedOnBuild() throws Exception {
+		new RouteTable.Builder().route(HttpMethod.GET, "/a/b*", routed).build();
+	}
+
+	private static Request request(HttpMethod method, String uri) throws Exception {
+		Request request = mock(Request.class);
+		when(request.method()).thenReturn(method);
+		when(request.uri()).thenReturn(new URI(uri));
+		return request;
+	}
+}
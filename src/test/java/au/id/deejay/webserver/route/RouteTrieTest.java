@@ -0,0 +1,120 @@
+package au.id.deejay.webserver.route;
+
+import au.id.deejay.webserver.api.HttpMethod;
+import au.id.deejay.webserver.api.RequestHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author David Jessup
+ */
+public class RouteTrieTest {
+
+	private RouteTrie trie;
+	private RequestHandler root;
+	private RequestHandler serverInfo;
+	private RequestHandler server;
+	private RequestHandler user;
+	private RequestHandler userProfile;
+	private RequestHandler files;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new RouteTrie();
+		root = mock(RequestHandler.class);
+		serverInfo = mock(RequestHandler.class);
+		server = mock(RequestHandler.class);
+		user = mock(RequestHandler.class);
+		userProfile = mock(RequestHandler.class);
+		files = mock(RequestHandler.class);
+
+		trie.add(HttpMethod.GET, "/", root);
+		trie.add(HttpMethod.GET, "/serverInfo", serverInfo);
+		trie.add(HttpMethod.GET, "/server", server);
+		trie.add(HttpMethod.GET, "/users/*", user);
+		trie.add(HttpMethod.GET, "/users/*/profile", userProfile);
+		trie.add(HttpMethod.GET, "/static/**", files);
+	}
+
+	@Test
+	public void testExactPaths() throws Exception {
+		assertThat(trie.find(HttpMethod.GET, "/"), is(sameInstance(root)));
+		assertThat(trie.find(HttpMethod.GET, "/serverInfo"), is(sameInstance(serverInfo)));
+		assertThat(trie.find(HttpMethod.GET, "/server"), is(sameInstance(server)));
+		assertThat(trie.find(HttpMethod.GET, "/serve"), is(nullValue()));
+		assertThat(trie.find(HttpMethod.GET, "/serverInfo/"), is(nullValue()));
+		assertThat(trie.find(HttpMethod.GET, "/other"), is(nullValue()));
+	}
+
+	@Test
+	public void testMethodsAreDispatchedSeparately() throws Exception {
+		RequestHandler post = mock(RequestHandler.class);
+		trie.add(HttpMethod.POST, "/serverInfo", post);
+
+		assertThat(trie.find(HttpMethod.POST, "/serverInfo"), is(sameInstance(post)));
+		assertThat(trie.find(HttpMethod.GET, "/serverInfo"), is(sameInstance(serverInfo)));
+		assertThat(trie.find(HttpMethod.PUT, "/serverInfo"), is(nullValue()));
+	}
+
+	@Test
+	public void testSegmentWildcards() throws Exception {
+		assertThat(trie.find(HttpMethod.GET, "/users/alice"), is(sameInstance(user)));
+		assertThat(trie.find(HttpMethod.GET, "/users/alice/profile"), is(sameInstance(userProfile)));
+		assertThat(trie.find(HttpMethod.GET, "/users/"), is(nullValue()));
+		assertThat(trie.find(HttpMethod.GET, "/users//profile"), is(nullValue()));
+		assertThat(trie.find(HttpMethod.GET, "/users/alice/posts"), is(nullValue()));
+	}
+
+	@Test
+	public void testTrailingWildcards() throws Exception {
+		assertThat(trie.find(HttpMethod.GET, "/static/"), is(sameInstance(files)));
+		assertThat(trie.find(HttpMethod.GET, "/static/css/site.css"), is(sameInstance(files)));
+		assertThat(trie.find(HttpMethod.GET, "/static"), is(nullValue()));
+	}
+
+	@Test
+	public void testMostSpecificRouteWins() throws Exception {
+		RequestHandler everything = mock(RequestHandler.class);
+		RequestHandler me = mock(RequestHandler.class);
+		trie.add(HttpMethod.GET, "/**", everything);
+		trie.add(HttpMethod.GET, "/users/me", me);
+
+		assertThat(trie.find(HttpMethod.GET, "/users/me"), is(sameInstance(me)));
+		assertThat(trie.find(HttpMethod.GET, "/users/you"), is(sameInstance(user)));
+		assertThat(trie.find(HttpMethod.GET, "/users/you/settings"), is(sameInstance(everything)));
+		assertThat(trie.find(HttpMethod.GET, "/serverInfo"), is(sameInstance(serverInfo)));
+		assertThat(trie.find(HttpMethod.GET, "/serve"), is(sameInstance(everything)));
+		assertThat(trie.find(HttpMethod.POST, "/serve"), is(nullValue()));
+	}
+
+	@Test
+	public void testNullPath() throws Exception {
+		assertThat(trie.find(HttpMethod.GET, null), is(nullValue()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateRoute() throws Exception {
+		trie.add(HttpMethod.GET, "/server", mock(RequestHandler.class));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRelativePattern() throws Exception {
+		trie.add(HttpMethod.GET, "relative", root);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPartialSegmentWildcard() throws Exception {
+		trie.add(HttpMethod.GET, "/files/*.txt", root);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTrailingWildcardMustBeLast() throws Exception {
+		trie.add(HttpMethod.GET, "/files/**/more", root);
+	}
+}
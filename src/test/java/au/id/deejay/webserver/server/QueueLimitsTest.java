@@ -0,0 +1,103 @@
+package au.id.deejay.webserver.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author David Jessup
+ */
+public class QueueLimitsTest {
+
+	@Test
+	public void testThreadPoolRejectsTasksWhenQueueIsFull() throws Exception {
+		ThreadPoolExecutor pool = new QueueLimits(1, 0).threadPool(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			pool.execute(() -> await(release));
+			pool.execute(() -> await(release));
+
+			assertRejected(pool);
+			assertThat(pool.getQueue().size(), is(1));
+		} finally {
+			release.countDown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testZeroCapacityOnlyHandsTasksToIdleWorkers() throws Exception {
+		ThreadPoolExecutor pool = new QueueLimits(0, 0).threadPool(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			pool.execute(() -> await(release));
+
+			assertRejected(pool);
+		} finally {
+			release.countDown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testExpiredTasksAreNotRun() throws Exception {
+		AtomicReference<String> ran = new AtomicReference<>();
+		Runnable task = new QueueLimits(10, 1).expiring(() -> ran.set("task"), () -> ran.set("expired"));
+
+		Thread.sleep(20);
+		task.run();
+
+		assertThat(ran.get(), is("expired"));
+	}
+
+	@Test
+	public void testTasksRunWithinMaxWait() throws Exception {
+		AtomicReference<String> ran = new AtomicReference<>();
+		Runnable task = new QueueLimits(10, 60000).expiring(() -> ran.set("task"), () -> ran.set("expired"));
+
+		task.run();
+
+		assertThat(ran.get(), is("task"));
+	}
+
+	@Test
+	public void testTasksAreNotWrappedWithoutMaxWait() throws Exception {
+		Runnable task = () -> { };
+
+		assertThat(QueueLimits.UNBOUNDED.expiring(task, () -> { }), is(sameInstance(task)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCapacityThrowsException() throws Exception {
+		new QueueLimits(-1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxWaitThrowsException() throws Exception {
+		new QueueLimits(10, -1);
+	}
+
+	private static void assertRejected(ThreadPoolExecutor pool) {
+		try {
+			pool.execute(() -> { });
+		} catch (RejectedExecutionException e) {
+			return;
+		}
+		throw new AssertionError("Task should have been rejected");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
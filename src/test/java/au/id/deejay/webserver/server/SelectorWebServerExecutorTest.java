@@ -0,0 +1,292 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.response.HttpResponse;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class SelectorWebServerExecutorTest {
+
+	private SelectorWebServerExecutor executor;
+
+	@After
+	public void tearDown() throws Exception {
+		if (executor != null && executor.running()) {
+			executor.stop();
+		}
+	}
+
+	@Test
+	public void testConstructor() throws Exception {
+		executor = new SelectorWebServerExecutor(0, 10, 10, mockResponseFactory());
+		assertThat(executor.running(), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoEventLoopsThrowsException() throws Exception {
+		new SelectorWebServerExecutor(0, 10, 10, 0, mockResponseFactory());
+	}
+
+	@Test
+	public void testClientChannelsHaveNoDelay() throws Exception {
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+			 SocketChannel client = SocketChannel.open(serverChannel.getLocalAddress());
+			 SocketChannel accepted = serverChannel.accept()) {
+			SelectorEventLoop.configure(accepted);
+
+			assertThat(accepted.getOption(StandardSocketOptions.TCP_NODELAY), is(true));
+			assertThat(accepted.isBlocking(), is(false));
+		}
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		executor = new SelectorWebServerExecutor(0, 10, 10, mockResponseFactory());
+
+		Thread executorThread = new Thread(executor);
+		executorThread.start();
+
+		await().until(executorThread::isAlive);
+
+		assertThat(executor.running(), is(true));
+	}
+
+	@Test
+	public void testPipelinedRequestsOnKeepAliveConnection() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.responseAsync(any())).thenAnswer(invocation ->
+				CompletableFuture.completedFuture(new HttpResponse(HttpStatus.OK_200, "Test response", HttpVersion.HTTP_1_1)));
+
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 2, 1, responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		String request = "GET /index.html HTTP/1.1" + CRLF + "Host: localhost" + CRLF + CRLF;
+		String lastRequest = "GET /index.html HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF;
+
+		try (Socket client = connect(port)) {
+			OutputStream outputStream = client.getOutputStream();
+			outputStream.write((request + request + lastRequest).getBytes(UTF_8));
+			outputStream.flush();
+
+			String responses = readFully(client.getInputStream());
+
+			assertThat(responses.split("HTTP/1.1 200 OK", -1).length, is(4));
+			assertThat(responses, containsString("Test response"));
+		}
+	}
+
+	@Test
+	public void testAsyncResponsesDoNotHoldWorkers() throws Exception {
+		CompletableFuture<Response> slow = new CompletableFuture<>();
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.responseAsync(any())).thenAnswer(invocation -> {
+			Request request = invocation.getArgumentAt(0, Request.class);
+			if ("/slow".equals(request.uri().getPath())) {
+				return slow;
+			}
+			return CompletableFuture.completedFuture(new HttpResponse(HttpStatus.OK_200, "Fast response", HttpVersion.HTTP_1_1));
+		});
+
+		// A single worker, which must be free to serve the second client while the first waits for its response
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 1, 1, responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket slowClient = connect(port); Socket fastClient = connect(port)) {
+			slowClient.getOutputStream().write(("GET /slow HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+			fastClient.getOutputStream().write(("GET /fast HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+
+			assertThat(readFully(fastClient.getInputStream()), containsString("Fast response"));
+
+			slow.complete(new HttpResponse(HttpStatus.OK_200, "Slow response", HttpVersion.HTTP_1_1));
+			assertThat(readFully(slowClient.getInputStream()), containsString("Slow response"));
+		}
+	}
+
+	@Test
+	public void testUnsupportedRequestBodiesAreRejected() throws Exception {
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 1, 1, mockResponseFactory());
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		// Bodies are buffered before the request is handled, so only bodies of a known, bounded size are accepted
+		try (Socket client = connect(port)) {
+			client.getOutputStream().write(("POST /upload HTTP/1.1" + CRLF + "Content-Length: " + (SelectorConnection.MAX_REQUEST_SIZE + 1)
+					+ CRLF + CRLF).getBytes(UTF_8));
+			assertThat(readFully(client.getInputStream()), startsWith("HTTP/1.1 413"));
+		}
+
+		try (Socket client = connect(port)) {
+			client.getOutputStream().write(("POST /upload HTTP/1.1" + CRLF + "Transfer-Encoding: chunked" + CRLF + CRLF).getBytes(UTF_8));
+			assertThat(readFully(client.getInputStream()), startsWith("HTTP/1.1 501"));
+		}
+	}
+
+	@Test
+	public void testRequestsAreShedWhenQueueIsFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.responseAsync(any())).thenAnswer(invocation -> {
+			// Hold the only worker until released
+			release.await();
+			return CompletableFuture.completedFuture(new HttpResponse(HttpStatus.OK_200, "Slow response", HttpVersion.HTTP_1_1));
+		});
+
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 1, 1, new QueueLimits(0, 0), responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket slowClient = connect(port); Socket shedClient = connect(port)) {
+			slowClient.getOutputStream().write(("GET /slow HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+			await().until(() -> responseFactory.metrics().activeConnections() == 1);
+
+			shedClient.getOutputStream().write(("GET /shed HTTP/1.1" + CRLF + CRLF).getBytes(UTF_8));
+			String response = readFully(shedClient.getInputStream());
+			assertThat(response, startsWith("HTTP/1.1 503 Service Unavailable"));
+			assertThat(response, containsString("Retry-After: 1"));
+			assertThat(responseFactory.metrics().shed(ShedReason.QUEUE_FULL), is(1L));
+
+			// The shed connection lingers, discarding anything else the client sends, until the client closes it
+			assertThat(responseFactory.metrics().openConnections(), is(2L));
+			shedClient.getOutputStream().write(("GET /ignored HTTP/1.1" + CRLF + CRLF).getBytes(UTF_8));
+			shedClient.shutdownOutput();
+			await().until(() -> responseFactory.metrics().openConnections() == 1);
+
+			release.countDown();
+			assertThat(readFully(slowClient.getInputStream()), containsString("Slow response"));
+		}
+	}
+
+	@Test
+	public void testShedConnectionsAreClosedAtTheirLingerDeadline() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.responseAsync(any())).thenAnswer(invocation -> {
+			// Hold the only worker until released
+			release.await();
+			return CompletableFuture.completedFuture(new HttpResponse(HttpStatus.OK_200, "Slow response", HttpVersion.HTTP_1_1));
+		});
+
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 1, 1, new QueueLimits(0, 0), responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket slowClient = connect(port); Socket shedClient = connect(port)) {
+			slowClient.getOutputStream().write(("GET /slow HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+			await().until(() -> responseFactory.metrics().activeConnections() == 1);
+
+			// The shed client never closes its end, so the server closes the connection once it has lingered long enough,
+			// well before the once a second sweep for timed out connections
+			shedClient.getOutputStream().write(("GET /shed HTTP/1.1" + CRLF + CRLF).getBytes(UTF_8));
+			await().until(() -> responseFactory.metrics().shed(ShedReason.QUEUE_FULL) == 1);
+			await().atMost(WebWorker.SHED_LINGER_MILLIS * 5, TimeUnit.MILLISECONDS)
+					.until(() -> responseFactory.metrics().openConnections() == 1);
+
+			release.countDown();
+			assertThat(readFully(slowClient.getInputStream()), containsString("Slow response"));
+		}
+	}
+
+	@Test
+	public void testStopDrainsConnectionsWithoutBlockingTheExecutor() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.responseAsync(any())).thenAnswer(invocation -> {
+			// Hold the only worker until released
+			release.await();
+			return CompletableFuture.completedFuture(new HttpResponse(HttpStatus.OK_200, "Slow response", HttpVersion.HTTP_1_1));
+		});
+
+		int port = freePort();
+		executor = new SelectorWebServerExecutor(port, 10, 1, 1, responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket slowClient = connect(port); Socket idleClient = connect(port)) {
+			slowClient.getOutputStream().write(("GET /slow HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+			await().until(() -> responseFactory.metrics().activeConnections() == 1);
+			await().until(() -> responseFactory.metrics().openConnections() == 2);
+
+			Thread stopThread = new Thread(executor::stop);
+			stopThread.start();
+
+			// Stopping waits for the busy worker, but mustn't hold the executor's lock while it does
+			await().atMost(1, TimeUnit.SECONDS).until(() -> !executor.running());
+			assertThat(stopThread.isAlive(), is(true));
+
+			// The idle connection is closed, while the in-flight response is still sent
+			assertThat(readFully(idleClient.getInputStream()), is(""));
+			release.countDown();
+			assertThat(readFully(slowClient.getInputStream()), containsString("Slow response"));
+			stopThread.join();
+		}
+	}
+
+	private Socket connect(int port) {
+		return await().ignoreExceptions().until(() -> new Socket("localhost", port), is(notNullValue()));
+	}
+
+	private String readFully(InputStream inputStream) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read = inputStream.read(buffer);
+		while (read != -1) {
+			output.write(buffer, 0, read);
+			read = inputStream.read(buffer);
+		}
+		return new String(output.toByteArray(), UTF_8);
+	}
+
+	private int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static ResponseFactory mockResponseFactory() {
+		ResponseFactory responseFactory = mock(ResponseFactory.class);
+		when(responseFactory.metrics()).thenReturn(new ServerMetrics());
+		when(responseFactory.admit()).thenReturn(true);
+		return responseFactory;
+	}
+}
@@ -0,0 +1,152 @@
+package au.id.deejay.webserver.server;
+
+import au.id.deejay.webserver.api.HttpStatus;
+import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.response.HttpResponse;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.response.ResponseFactory;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static au.id.deejay.webserver.MessageConstants.CRLF;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author David Jessup
+ */
+public class VirtualThreadWebServerExecutorTest {
+
+	private VirtualThreadWebServerExecutor executor;
+
+	@After
+	public void tearDown() throws Exception {
+		if (executor != null && executor.running()) {
+			executor.stop();
+		}
+	}
+
+	@Test
+	public void testConstructor() throws Exception {
+		executor = new VirtualThreadWebServerExecutor(0, 10, 100, mockResponseFactory());
+		assertThat(executor.running(), is(false));
+		assertThat(executor.availablePermits(), is(100));
+	}
+
+	@Test
+	public void testConnectionHoldsPermitUntilClosed() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		when(responseFactory.response(any())).thenReturn(new HttpResponse(HttpStatus.OK_200, "Test response", HttpVersion.HTTP_1_1));
+
+		int port = freePort();
+		executor = new VirtualThreadWebServerExecutor(port, 10, 2, responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket client = await().ignoreExceptions().until(() -> new Socket("localhost", port), is(notNullValue()))) {
+			// An open keep-alive connection holds a permit
+			await().until(() -> executor.availablePermits() == 1);
+
+			OutputStream outputStream = client.getOutputStream();
+			outputStream.write(("GET /index.html HTTP/1.1" + CRLF + "Connection: close" + CRLF + CRLF).getBytes(UTF_8));
+			outputStream.flush();
+
+			assertThat(IOUtils.toString(client.getInputStream(), UTF_8), containsString("Test response"));
+		}
+
+		// ...which is released once the connection is closed
+		await().until(() -> executor.availablePermits() == 2);
+	}
+
+	@Test
+	public void testClientsAreShedAfterWaitingTooLongForPermit() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		int port = freePort();
+		executor = new VirtualThreadWebServerExecutor(port, 10, 1, new QueueLimits(0, 50), responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		// The only permit is held by the first client's idle connection
+		try (Socket idleClient = connect(port)) {
+			await().until(() -> executor.availablePermits() == 0);
+
+			try (Socket shedClient = connect(port)) {
+				assertThat(IOUtils.toString(shedClient.getInputStream(), UTF_8), startsWith("HTTP/1.1 503 Service Unavailable"));
+			}
+		}
+		assertThat(responseFactory.metrics().shed(ShedReason.QUEUE_TIMEOUT), is(1L));
+	}
+
+	@Test
+	public void testAcceptLoopOnlyWaitsBrieflyForPermitByDefault() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		int port = freePort();
+		executor = new VirtualThreadWebServerExecutor(port, 10, 1, responseFactory);
+		new Thread(executor).start();
+		await().until(executor::running);
+
+		try (Socket idleClient = connect(port)) {
+			await().until(() -> executor.availablePermits() == 0);
+
+			// The client is shed well before the 10 second client timeout
+			long start = System.nanoTime();
+			try (Socket shedClient = connect(port)) {
+				assertThat(IOUtils.toString(shedClient.getInputStream(), UTF_8), startsWith("HTTP/1.1 503 Service Unavailable"));
+			}
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(1000L)));
+		}
+		assertThat(responseFactory.metrics().shed(ShedReason.QUEUE_TIMEOUT), is(1L));
+	}
+
+	@Test
+	public void testStopIsNotStalledWaitingForPermit() throws Exception {
+		int port = freePort();
+		executor = new VirtualThreadWebServerExecutor(port, 10, 1, mockResponseFactory());
+		Thread executorThread = new Thread(executor);
+		executorThread.start();
+		await().until(executor::running);
+
+		try (Socket idleClient = connect(port); Socket waitingClient = connect(port)) {
+			await().until(() -> executor.availablePermits() == 0);
+
+			// Stopping waits for the idle connection's worker, so stop from another thread
+			new Thread(executor::stop).start();
+
+			// ...but the accept loop gives up waiting for a permit well before the 10 second client timeout
+			await().atMost(2, TimeUnit.SECONDS).until(() -> !executorThread.isAlive());
+		}
+	}
+
+	private Socket connect(int port) {
+		return await().ignoreExceptions().until(() -> new Socket("localhost", port), is(notNullValue()));
+	}
+
+	private int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static ResponseFactory mockResponseFactory() {
+		ResponseFactory responseFactory = mock(ResponseFactory.class);
+		when(responseFactory.metrics()).thenReturn(new ServerMetrics());
+		when(responseFactory.admit()).thenReturn(true);
+		return responseFactory;
+	}
+}
@@ -1,13 +1,27 @@
 package au.id.deejay.webserver.server;
 
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
 import au.id.deejay.webserver.response.ResponseFactory;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Test;
 
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * @author David Jessup
@@ -25,13 +39,13 @@ public class WebServerExecutorTest {
 
 	@Test
 	public void testConstructor() throws Exception {
-		executor = new WebServerExecutor(0, 10, 10, mock(ResponseFactory.class));
+		executor = new WebServerExecutor(0, 10, 10, mockResponseFactory());
 		assertThat(executor.running(), is(false));
 	}
 
 	@Test
 	public void run() throws Exception {
-		executor = new WebServerExecutor(0, 10, 10, mock(ResponseFactory.class));
+		executor = new WebServerExecutor(0, 10, 10, mockResponseFactory());
 
 		Thread executorThread = new Thread(executor);
 		executorThread.start();
@@ -41,6 +55,89 @@ public class WebServerExecutorTest {
 		assertThat(executor.running(), is(true));
 	}
 
+	@Test
+	public void testClientsAreShedWhenQueueIsFull() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		int port = freePort();
+		executor = new WebServerExecutor(port, 10, 1, new QueueLimits(0, 0), responseFactory);
+		new Thread(executor).start();
+
+		// The only worker waits for a request from the first client, so there is no room for the second
+		try (Socket idleClient = connect(port)) {
+			await().until(() -> responseFactory.metrics().openConnections() == 1);
+
+			try (Socket shedClient = connect(port)) {
+				String response = IOUtils.toString(shedClient.getInputStream(), UTF_8);
+
+				assertThat(response, startsWith("HTTP/1.1 503 Service Unavailable"));
+				assertThat(response, containsString("Retry-After: 1"));
+			}
+		}
+		assertThat(responseFactory.metrics().shed(ShedReason.QUEUE_FULL), is(1L));
+	}
+
+	@Test
+	public void testAcceptingContinuesWhileShedClientsLinger() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		int port = freePort();
+		executor = new WebServerExecutor(port, 10, 1, new QueueLimits(0, 0), responseFactory);
+		new Thread(executor).start();
+
+		List<Socket> shedClients = new ArrayList<>();
+		try (Socket idleClient = connect(port)) {
+			await().until(() -> responseFactory.metrics().openConnections() == 1);
+
+			// None of the shed clients close their end, so each lingers for as long as it is allowed to
+			for (int i = 0; i < 10; i++) {
+				shedClients.add(new Socket("localhost", port));
+			}
+			await().atMost(WebWorker.SHED_LINGER_MILLIS * 5, TimeUnit.MILLISECONDS)
+					.until(() -> responseFactory.metrics().shed(ShedReason.QUEUE_FULL) == 10);
+
+			for (Socket shedClient : shedClients) {
+				assertThat(IOUtils.toString(shedClient.getInputStream(), UTF_8), startsWith("HTTP/1.1 503 Service Unavailable"));
+			}
+		} finally {
+			for (Socket shedClient : shedClients) {
+				shedClient.close();
+			}
+		}
+	}
+
+	@Test
+	public void testClientsAreShedAfterWaitingTooLong() throws Exception {
+		ResponseFactory responseFactory = mockResponseFactory();
+		int port = freePort();
+		executor = new WebServerExecutor(port, 10, 1, new QueueLimits(10, 50), responseFactory);
+		new Thread(executor).start();
+
+		Socket idleClient = connect(port);
+		await().until(() -> responseFactory.metrics().openConnections() == 1);
+
+		try (Socket shedClient = connect(port)) {
+			// Keep the worker busy until the second client has waited too long for it
+			Thread.sleep(200);
+			idleClient.close();
+
+			assertThat(IOUtils.toString(shedClient.getInputStream(), UTF_8), startsWith("HTTP/1.1 503 Service Unavailable"));
+		}
+		assertThat(responseFactory.metrics().shed(ShedReason.QUEUE_TIMEOUT), is(1L));
+	}
+
+	@Test
+	public void testClientSocketsHaveNoDelay() throws Exception {
+		executor = new WebServerExecutor(0, 10, 10, mockResponseFactory());
+
+		try (ServerSocket serverSocket = new ServerSocket(0);
+			 Socket client = new Socket("localhost", serverSocket.getLocalPort());
+			 Socket accepted = serverSocket.accept()) {
+			executor.configureClient(accepted);
+
+			assertThat(accepted.getTcpNoDelay(), is(true));
+			assertThat(accepted.getSoTimeout(), is(10000));
+		}
+	}
+
 	@Test
 	public void running() throws Exception {
 
@@ -51,4 +148,20 @@ public class WebServerExecutorTest {
 
 	}
 
-}
\ No newline at end of file
+	private Socket connect(int port) {
+		return await().ignoreExceptions().until(() -> new Socket("localhost", port), is(notNullValue()));
+	}
+
+	private int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static ResponseFactory mockResponseFactory() {
+		ResponseFactory responseFactory = mock(ResponseFactory.class);
+		when(responseFactory.metrics()).thenReturn(new ServerMetrics());
+		when(responseFactory.admit()).thenReturn(true);
+		return responseFactory;
+	}
+}
@@ -1,6 +1,7 @@
 package au.id.deejay.webserver.server;
 
 import au.id.deejay.webserver.api.RequestHandler;
+import au.id.deejay.webserver.response.ResponseFactory;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,6 +57,19 @@ public class WebServerTest {
 		new WebServer(0, 10, 0, Collections.singletonList(mock(RequestHandler.class)));
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxConnectionsLessThanOneThrowsException() throws Exception {
+		new WebServer.Builder(new ResponseFactory(Collections.singletonList(mock(RequestHandler.class))))
+				.maxConnections(0)
+				.engine(Engine.VIRTUAL)
+				.build();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullQueueLimitsThrowsException() throws Exception {
+		new WebServer.Builder(new ResponseFactory(Collections.singletonList(mock(RequestHandler.class)))).queueLimits(null).build();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testNullRequestHandlersThrowsException() throws Exception {
 		new WebServer(0, 10, 10, null);
@@ -1,22 +1,41 @@
 package au.id.deejay.webserver.server;
 
 import au.id.deejay.webserver.StringCollectorOutputStream;
+import au.id.deejay.webserver.api.HttpMethod;
 import au.id.deejay.webserver.api.HttpStatus;
 import au.id.deejay.webserver.api.HttpVersion;
+import au.id.deejay.webserver.api.Request;
+import au.id.deejay.webserver.api.RequestHandler;
 import au.id.deejay.webserver.api.Response;
+import au.id.deejay.webserver.metrics.ServerMetrics;
+import au.id.deejay.webserver.metrics.ShedReason;
+import au.id.deejay.webserver.response.ConcurrencyLimiter;
 import au.id.deejay.webserver.response.HttpResponse;
 import au.id.deejay.webserver.response.ResponseFactory;
+import au.id.deejay.webserver.route.RouteTable;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -52,6 +71,191 @@ public class WebWorkerTest {
 		assertThat(response.status(), is(HttpStatus.OK_200));
 	}
 
+	@Test
+	public void testRequestsAreRecordedInMetrics() throws Exception {
+		withResponseFactory();
+		withValidRequest();
+		withSocket();
+		withWorker();
+
+		worker.run();
+
+		ServerMetrics metrics = responseFactory.metrics();
+		assertThat(metrics.requests(HttpMethod.GET), is(1L));
+		assertThat(metrics.responses(HttpStatus.OK_200), is(1L));
+		assertThat(metrics.bytesIn(), is((long) requestString.length()));
+		assertThat(metrics.bytesOut(), is((long) responseStream.toString().length()));
+		assertThat(metrics.parseTime().count(), is(1L));
+		assertThat(metrics.openConnections(), is(0L));
+		assertThat(metrics.activeConnections(), is(0L));
+	}
+
+	@Test
+	public void testPipelinedResponsesAreFlushedTogether() throws Exception {
+		requestString = "GET /one HTTP/1.1\n\nGET /two HTTP/1.1\n\nGET /three HTTP/1.1\n\n";
+		FlushCountingOutputStream output = new FlushCountingOutputStream();
+		withSocket();
+		when(socket.getOutputStream()).thenReturn(output);
+		withResponseFactory();
+		when(responseFactory.response(any())).thenAnswer(
+				invocation -> new HttpResponse(HttpStatus.OK_200, ((Request) invocation.getArguments()[0]).uri().getPath(), HttpVersion.HTTP_1_1));
+		withWorker();
+
+		worker.run();
+
+		String responses = output.toString(StandardCharsets.UTF_8.name());
+		assertThat(responses.indexOf("/one") < responses.indexOf("/two"), is(true));
+		assertThat(responses.indexOf("/two") < responses.indexOf("/three"), is(true));
+		assertThat(output.flushes, is(1));
+	}
+
+	@Test
+	public void testBadRequestClosesConnection() throws Exception {
+		requestString = "NONSENSE\n\nGET /two HTTP/1.1\n\n";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		withSocket();
+		when(socket.getOutputStream()).thenReturn(output);
+		withResponseFactory();
+		withWorker();
+
+		worker.run();
+
+		assertThat(output.toString(StandardCharsets.UTF_8.name()).startsWith("HTTP/1.1 400 Bad Request"), is(true));
+		verify(responseFactory, never()).response(any());
+		verify(socket).close();
+	}
+
+	@Test
+	public void testMalformedPipelinedRequestIsRejected() throws Exception {
+		requestString = "GET /one HTTP/1.1\n\nGET /two HTTP/1.1\nBad-Header\nX-Injected: true\n\n";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		withSocket();
+		when(socket.getOutputStream()).thenReturn(output);
+		withResponseFactory();
+		when(responseFactory.response(any())).thenAnswer(
+				invocation -> new HttpResponse(HttpStatus.OK_200, ((Request) invocation.getArguments()[0]).uri().getPath(), HttpVersion.HTTP_1_1));
+		withWorker();
+
+		worker.run();
+
+		String responses = output.toString(StandardCharsets.UTF_8.name());
+		assertThat(responses.startsWith("HTTP/1.1 200 OK"), is(true));
+		assertThat(responses.indexOf("HTTP/1.1 400 Bad Request") > responses.indexOf("/one"), is(true));
+		verify(responseFactory, times(1)).response(any());
+		verify(socket).close();
+	}
+
+	@Test
+	public void testConcurrencyLimitIsHeldUntilResponseIsWritten() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		AtomicInteger inFlightWhileWriting = new AtomicInteger(-1);
+		RequestHandler handler = mock(RequestHandler.class);
+		when(handler.canHandle(any())).thenReturn(true);
+		when(handler.handle(any())).thenReturn(new HttpResponse(HttpStatus.OK_200, "Test response", HttpVersion.HTTP_1_1) {
+			@Override
+			public InputStream stream() {
+				// File bodies are read while the response is written, which the limit must still account for
+				inFlightWhileWriting.set(limiter.inFlight());
+				return super.stream();
+			}
+		});
+		responseFactory = new ResponseFactory.Builder(RouteTable.of(Collections.singletonList(handler))).concurrencyLimiter(limiter).build();
+		requestString = "GET /index.html HTTP/1.1\n\n";
+		withSocket();
+		withWorker();
+
+		worker.run();
+
+		assertThat(responseStream.toString().startsWith("HTTP/1.1 200 OK"), is(true));
+		assertThat(inFlightWhileWriting.get(), is(1));
+		assertThat(limiter.inFlight(), is(0));
+	}
+
+	@Test
+	public void testSlowClientsDoNotLowerConcurrencyLimit() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(100);
+		String body = StringUtils.repeat('x', 16384);
+		AtomicInteger handled = new AtomicInteger();
+		RequestHandler handler = mock(RequestHandler.class);
+		when(handler.canHandle(any())).thenReturn(true);
+		when(handler.handle(any())).thenAnswer(invocation -> {
+			handled.incrementAndGet();
+			return new HttpResponse(HttpStatus.OK_200, body, HttpVersion.HTTP_1_1);
+		});
+		responseFactory = new ResponseFactory.Builder(RouteTable.of(Collections.singletonList(handler))).concurrencyLimiter(limiter).build();
+
+		// Two windows of requests, the first read promptly and the second read slowly by the client
+		requestString = StringUtils.repeat("GET /index.html HTTP/1.1\n\n", 2 * 100);
+		withSocket();
+		when(socket.getOutputStream()).thenReturn(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (handled.get() > 100) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+		withWorker();
+
+		worker.run();
+
+		verify(handler, times(200)).handle(any());
+		assertThat(limiter.limit(), is(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT));
+		assertThat(limiter.inFlight(), is(0));
+	}
+
+	@Test
+	public void testRequestsBeyondConcurrencyLimitAreShed() throws Exception {
+		withResponseFactory();
+		withValidRequest();
+		when(responseFactory.admit()).thenReturn(false);
+		withSocket();
+		withWorker();
+
+		worker.run();
+
+		assertThat(responseStream.toString().startsWith("HTTP/1.1 503 Service Unavailable"), is(true));
+		verify(responseFactory, never()).response(any());
+		verify(responseFactory, never()).sample(anyLong());
+		verify(responseFactory, never()).release();
+	}
+
+	@Test
+	public void testShedDiscardsClientInputBeforeClosing() throws Exception {
+		requestString = "GET /index.html HTTP/1.1\n\n";
+		withSocket();
+		withResponseFactory();
+
+		WebWorker.shed(socket, responseFactory, ShedReason.QUEUE_FULL);
+
+		assertThat(responseStream.toString().startsWith("HTTP/1.1 503 Service Unavailable"), is(true));
+		assertThat(socket.getInputStream().available(), is(0));
+		InOrder inOrder = inOrder(socket);
+		inOrder.verify(socket).shutdownOutput();
+		inOrder.verify(socket).close();
+	}
+
+	@Test
+	public void testShedDiscardsLimitedClientInput() throws Exception {
+		requestString = StringUtils.repeat('x', WebWorker.SHED_DRAIN_BYTES + 100);
+		withSocket();
+		withResponseFactory();
+
+		WebWorker.shed(socket, responseFactory, ShedReason.QUEUE_FULL);
+
+		assertThat(socket.getInputStream().available(), is(100));
+		verify(socket).close();
+	}
+
 	private void withValidRequest() throws Exception {
 		requestString = "GET /index.html HTTP/1.1\n" +
 			"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8\n" +
@@ -71,9 +275,24 @@ public class WebWorkerTest {
 
 	private void withResponseFactory() {
 		responseFactory = mock(ResponseFactory.class);
+		when(responseFactory.metrics()).thenReturn(new ServerMetrics());
+		when(responseFactory.admit()).thenReturn(true);
 	}
 
 	private void withWorker() {
 		worker = new WebWorker(socket, responseFactory);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Counts the number of times it is flushed.
+	 */
+	private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+
+		private int flushes;
+
+		@Override
+		public void flush() throws IOException {
+			flushes++;
+		}
+	}
+}